@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.benchmark;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.felix.framework.benchmark.target.Target;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.launch.Framework;
+import org.osgi.framework.wiring.FrameworkWiring;
+
+/**
+ * Loading classes through the delegation chain of bundle class loaders: from
+ * the bundle itself, through an imported package, through a chain of
+ * re-exporting required bundles, from the boot class path, and classes that
+ * cannot be found.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class ClassLoadingBenchmark
+{
+    private static final String TARGET = Target.class.getName();
+    private static final String PACKAGE = Target.class.getPackage().getName();
+
+    /**
+     * Number of required bundles between the requiring bundle and the
+     * exporter.
+     */
+    @Param({ "1", "5" })
+    public int depth;
+
+    private Framework m_framework;
+    private Bundle m_exporter;
+    private Bundle m_importer;
+    private Bundle m_requirer;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        m_framework = Frameworks.start();
+        BundleContext context = m_framework.getBundleContext();
+        m_exporter = Frameworks.install(context, "exporter",
+            Collections.singletonMap(Constants.EXPORT_PACKAGE, PACKAGE), Target.class);
+        m_importer = Frameworks.install(context, "importer",
+            Collections.singletonMap(Constants.IMPORT_PACKAGE, PACKAGE));
+        String required = "exporter";
+        for (int i = 1; i < depth; i++)
+        {
+            Frameworks.install(context, "reexporter" + i,
+                Collections.singletonMap(Constants.REQUIRE_BUNDLE,
+                    required + ";" + Constants.VISIBILITY_DIRECTIVE + ":=" + Constants.VISIBILITY_REEXPORT));
+            required = "reexporter" + i;
+        }
+        m_requirer = Frameworks.install(context, "requirer",
+            Collections.singletonMap(Constants.REQUIRE_BUNDLE, required));
+        if (!m_framework.adapt(FrameworkWiring.class).resolveBundles(null))
+        {
+            throw new IllegalStateException("Bundles did not resolve");
+        }
+        if (m_requirer.loadClass(TARGET).getClassLoader() != m_exporter.loadClass(TARGET).getClassLoader())
+        {
+            throw new IllegalStateException("Target not loaded by the exporter");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        Frameworks.stop(m_framework);
+    }
+
+    @Benchmark
+    public Class<?> loadOwnClass() throws ClassNotFoundException
+    {
+        return m_exporter.loadClass(TARGET);
+    }
+
+    @Benchmark
+    public Class<?> loadImportedClass() throws ClassNotFoundException
+    {
+        return m_importer.loadClass(TARGET);
+    }
+
+    @Benchmark
+    public Class<?> loadRequiredClass() throws ClassNotFoundException
+    {
+        return m_requirer.loadClass(TARGET);
+    }
+
+    @Benchmark
+    public Class<?> loadBootClass() throws ClassNotFoundException
+    {
+        return m_importer.loadClass("java.lang.String");
+    }
+
+    @Benchmark
+    public Object loadMissingImportedClass()
+    {
+        return loadMissing(m_importer, PACKAGE + ".Missing");
+    }
+
+    @Benchmark
+    public Object loadMissingClass()
+    {
+        return loadMissing(m_importer, "org.example.Missing");
+    }
+
+    private static Object loadMissing(Bundle bundle, String name)
+    {
+        try
+        {
+            return bundle.loadClass(name);
+        }
+        catch (ClassNotFoundException e)
+        {
+            return e;
+        }
+    }
+}
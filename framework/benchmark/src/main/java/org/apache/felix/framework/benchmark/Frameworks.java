@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.Constants;
+import org.osgi.framework.launch.Framework;
+import org.osgi.framework.launch.FrameworkFactory;
+
+/**
+ * Starts frameworks and installs generated bundles for the benchmarks. Only
+ * standard OSGi APIs are used, so that any framework release can be
+ * measured.
+ */
+final class Frameworks
+{
+    private Frameworks()
+    {
+    }
+
+    /**
+     * Starts a framework with its storage in a new temporary directory.
+     */
+    static Framework start() throws IOException, BundleException
+    {
+        File storage = File.createTempFile("felix-benchmark", ".dir");
+        if (!storage.delete() || !storage.mkdirs())
+        {
+            throw new IOException("Cannot create " + storage);
+        }
+        Map<String, String> config = new HashMap<String, String>();
+        config.put(Constants.FRAMEWORK_STORAGE, storage.getAbsolutePath());
+        config.put(Constants.FRAMEWORK_STORAGE_CLEAN, Constants.FRAMEWORK_STORAGE_CLEAN_ONFIRSTINIT);
+
+        Iterator<FrameworkFactory> factories =
+            ServiceLoader.load(FrameworkFactory.class).iterator();
+        Framework framework = factories.next().newFramework(config);
+        framework.start();
+        return framework;
+    }
+
+    /**
+     * Stops the framework and deletes its storage.
+     */
+    static void stop(Framework framework) throws Exception
+    {
+        if (framework == null)
+        {
+            return;
+        }
+        File storage = new File(framework.getBundleContext().getProperty(Constants.FRAMEWORK_STORAGE));
+        framework.stop();
+        framework.waitForStop(0);
+        delete(storage);
+    }
+
+    private static void delete(File file)
+    {
+        File[] children = file.listFiles();
+        if (children != null)
+        {
+            for (File child : children)
+            {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Installs a bundle with the given manifest headers, containing the
+     * given classes.
+     */
+    static Bundle install(BundleContext context, String symbolicName,
+        Map<String, String> headers, Class<?>... classes) throws IOException, BundleException
+    {
+        Manifest manifest = new Manifest();
+        Attributes attrs = manifest.getMainAttributes();
+        attrs.putValue("Manifest-Version", "1.0");
+        attrs.putValue(Constants.BUNDLE_MANIFESTVERSION, "2");
+        attrs.putValue(Constants.BUNDLE_SYMBOLICNAME, symbolicName);
+        for (Map.Entry<String, String> header : headers.entrySet())
+        {
+            attrs.putValue(header.getKey(), header.getValue());
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        JarOutputStream jar = new JarOutputStream(bytes, manifest);
+        byte[] buffer = new byte[4096];
+        for (Class<?> clazz : classes)
+        {
+            String path = clazz.getName().replace('.', '/') + ".class";
+            jar.putNextEntry(new JarEntry(path));
+            InputStream in = clazz.getClassLoader().getResourceAsStream(path);
+            try
+            {
+                for (int n = in.read(buffer); n != -1; n = in.read(buffer))
+                {
+                    jar.write(buffer, 0, n);
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+            jar.closeEntry();
+        }
+        jar.close();
+
+        return context.installBundle(symbolicName, new ByteArrayInputStream(bytes.toByteArray()));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.benchmark;
+
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.framework.launch.Framework;
+
+/**
+ * Delivery of service events to many service listeners. Half of the
+ * listeners have a filter matching the service, a quarter a filter not
+ * matching it and a quarter no filter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class ListenerBenchmark
+{
+    private static final String SERVICE = Runnable.class.getName();
+
+    @Param({ "10", "1000" })
+    public int listeners;
+
+    private Framework m_framework;
+    private BundleContext m_context;
+    private Dictionary<String, Object> m_props;
+    private ServiceRegistration<?> m_registration;
+    private long m_events;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        m_framework = Frameworks.start();
+        Bundle client = Frameworks.install(m_framework.getBundleContext(), "client",
+            Collections.<String, String>emptyMap());
+        client.start();
+        m_context = client.getBundleContext();
+
+        ServiceListener listener = new ServiceListener()
+        {
+            public void serviceChanged(ServiceEvent event)
+            {
+                m_events++;
+            }
+        };
+        for (int i = 0; i < listeners; i++)
+        {
+            // Each listener has to be a different object to be added again.
+            ServiceListener l = new DelegatingListener(listener);
+            switch (i % 4)
+            {
+                case 0:
+                case 1:
+                    m_context.addServiceListener(l, "(objectClass=" + SERVICE + ")");
+                    break;
+                case 2:
+                    m_context.addServiceListener(l, "(id=-1)");
+                    break;
+                default:
+                    m_context.addServiceListener(l);
+            }
+        }
+
+        m_props = new Hashtable<String, Object>();
+        m_props.put("id", 1);
+        m_registration = m_context.registerService(SERVICE, new Task(), m_props);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        Frameworks.stop(m_framework);
+    }
+
+    @Benchmark
+    public long modifyService()
+    {
+        m_registration.setProperties(m_props);
+        return m_events;
+    }
+
+    @Benchmark
+    public long registerAndUnregisterService()
+    {
+        m_context.registerService(SERVICE, new Task(), m_props).unregister();
+        return m_events;
+    }
+
+    private static class DelegatingListener implements ServiceListener
+    {
+        private final ServiceListener m_listener;
+
+        DelegatingListener(ServiceListener listener)
+        {
+            m_listener = listener;
+        }
+
+        public void serviceChanged(ServiceEvent event)
+        {
+            m_listener.serviceChanged(event);
+        }
+    }
+
+    private static class Task implements Runnable
+    {
+        public void run()
+        {
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.launch.Framework;
+import org.osgi.framework.wiring.FrameworkWiring;
+
+/**
+ * Resolving freshly installed bundles. Bundle <i>i</i> exports the packages
+ * whose number modulo the number of bundles is <i>i</i>, and imports up to
+ * ten packages of bundles with lower numbers, favoring the lowest ones like
+ * applications built on common libraries. Exports use the imports of their
+ * bundle. The bundles are generated from a fixed seed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(2)
+public class ResolveBenchmark
+{
+    private static final long SEED = 42;
+    private static final int IMPORTS = 10;
+
+    @Param({ "100", "500" })
+    public int bundles;
+
+    @Param({ "200", "1000" })
+    public int packages;
+
+    private Framework m_framework;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws Exception
+    {
+        m_framework = Frameworks.start();
+        BundleContext context = m_framework.getBundleContext();
+        Random random = new Random(SEED);
+        for (int b = 0; b < bundles; b++)
+        {
+            List<Integer> below = new ArrayList<Integer>();
+            for (int p = 0; p < packages; p++)
+            {
+                if (p % bundles < b)
+                {
+                    below.add(p);
+                }
+            }
+            Set<Integer> imports = new LinkedHashSet<Integer>();
+            while (imports.size() < Math.min(IMPORTS, below.size()))
+            {
+                double r = random.nextDouble();
+                imports.add(below.get((int) (r * r * below.size())));
+            }
+
+            StringBuilder uses = new StringBuilder();
+            StringBuilder importHeader = new StringBuilder();
+            for (int p : imports)
+            {
+                if (uses.length() > 0)
+                {
+                    uses.append(',');
+                    importHeader.append(',');
+                }
+                uses.append("pkg").append(p);
+                importHeader.append("pkg").append(p).append(";version=\"[1,2)\"");
+            }
+            StringBuilder exportHeader = new StringBuilder();
+            for (int p = b; p < packages; p += bundles)
+            {
+                if (exportHeader.length() > 0)
+                {
+                    exportHeader.append(',');
+                }
+                exportHeader.append("pkg").append(p).append(";version=1.0.0");
+                if (uses.length() > 0)
+                {
+                    exportHeader.append(";uses:=\"").append(uses).append('"');
+                }
+            }
+
+            Map<String, String> headers = new HashMap<String, String>();
+            if (exportHeader.length() > 0)
+            {
+                headers.put(Constants.EXPORT_PACKAGE, exportHeader.toString());
+            }
+            if (importHeader.length() > 0)
+            {
+                headers.put(Constants.IMPORT_PACKAGE, importHeader.toString());
+            }
+            Frameworks.install(context, "bundle" + b, headers);
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws Exception
+    {
+        Frameworks.stop(m_framework);
+    }
+
+    @Benchmark
+    public boolean resolve()
+    {
+        return m_framework.adapt(FrameworkWiring.class).resolveBundles(null);
+    }
+}
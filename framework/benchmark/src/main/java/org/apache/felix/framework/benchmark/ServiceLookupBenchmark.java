@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.benchmark;
+
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.launch.Framework;
+
+/**
+ * Service lookups by a bundle, by class name with and without filters,
+ * by filter only, and getting and releasing a service.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class ServiceLookupBenchmark
+{
+    private static final String SERVICE = Runnable.class.getName();
+    private static final String OTHER_SERVICE = Object.class.getName();
+    private static final int GROUPS = 10;
+
+    /**
+     * Number of services registered under the looked up class, the same
+     * number is registered under another class.
+     */
+    @Param({ "10", "1000" })
+    public int services;
+
+    private Framework m_framework;
+    private BundleContext m_context;
+    private ServiceReference<?> m_reference;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        m_framework = Frameworks.start();
+        Bundle client = Frameworks.install(m_framework.getBundleContext(), "client",
+            Collections.<String, String>emptyMap());
+        client.start();
+        m_context = client.getBundleContext();
+        BundleContext context = m_framework.getBundleContext();
+        for (int i = 0; i < services; i++)
+        {
+            Dictionary<String, Object> props = new Hashtable<String, Object>();
+            props.put("id", i);
+            props.put("group", "g" + (i % GROUPS));
+            context.registerService(SERVICE, new Runnable()
+            {
+                public void run()
+                {
+                }
+            }, props);
+            context.registerService(OTHER_SERVICE, new Object(), props);
+        }
+        m_reference = m_context.getServiceReference(SERVICE);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        Frameworks.stop(m_framework);
+    }
+
+    @Benchmark
+    public Object lookupByClass() throws InvalidSyntaxException
+    {
+        return m_context.getServiceReferences(SERVICE, null);
+    }
+
+    @Benchmark
+    public Object lookupByClassAndFilter() throws InvalidSyntaxException
+    {
+        return m_context.getServiceReferences(SERVICE, "(group=g3)");
+    }
+
+    @Benchmark
+    public Object lookupByFilter() throws InvalidSyntaxException
+    {
+        return m_context.getServiceReferences((String) null, "(&(group=g3)(id=3))");
+    }
+
+    @Benchmark
+    public Object lookupHighestRanked()
+    {
+        return m_context.getServiceReference(SERVICE);
+    }
+
+    @Benchmark
+    public Object getAndUngetService()
+    {
+        Object service = m_context.getService(m_reference);
+        m_context.ungetService(m_reference);
+        return service;
+    }
+}
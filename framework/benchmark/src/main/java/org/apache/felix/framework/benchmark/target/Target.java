@@ -16,30 +16,12 @@
  * specific language governing permissions and limitations
  * under the License.
  */
-package org.apache.felix.resolver.util;
-
-import org.osgi.resource.Requirement;
-
-public class OpenHashMapList extends OpenHashMap<Requirement, CandidateSelector> {
-    private static final long serialVersionUID = 0L;
-
-    public OpenHashMapList() {
-        super();
-    }
-
-    public OpenHashMapList(int initialCapacity) {
-        super(initialCapacity);
-    }
-
-    public OpenHashMapList deepClone() {
-        OpenHashMapList copy = (OpenHashMapList) super.clone();
-        Object[] values = copy.value;
-        for (int i = values.length; i-- > 0;) {
-            if (values[i] != null) {
-                values[i] = ((CandidateSelector) values[i]).copy();
-            }
-        }
-        return copy;
-    }
+package org.apache.felix.framework.benchmark.target;
 
+/**
+ * Class packaged into the generated bundles of the class loading
+ * benchmark.
+ */
+public class Target
+{
 }
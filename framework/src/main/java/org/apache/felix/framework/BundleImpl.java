@@ -38,6 +38,7 @@ import java.util.Set;
 import java.util.StringTokenizer;
 
 import org.apache.felix.framework.cache.BundleArchive;
+import org.apache.felix.framework.cache.BundleCache;
 import org.apache.felix.framework.util.SecurityManagerEx;
 import org.apache.felix.framework.util.ShrinkableCollection;
 import org.apache.felix.framework.util.StringMap;
@@ -62,6 +63,8 @@ import org.osgi.framework.wiring.BundleWiring;
 
 class BundleImpl implements Bundle, BundleRevisions
 {
+    private static final String MANIFEST_CACHE_FILE = "manifest.parsed";
+
     // No one should use this field directly, use getFramework() instead.
     private final Felix __m_felix;
 
@@ -1273,13 +1276,25 @@ class BundleImpl implements Bundle, BundleRevisions
         // create an associated revision object for it.
         Map headerMap = m_archive.getCurrentRevision().getManifestHeader();
 
+        // Keep the parsed manifest in the revision directory, if configured.
+        File manifestCache = null;
+        if ("true".equalsIgnoreCase(
+            (String) getFramework().getConfig().get(BundleCache.CACHE_MANIFEST_PROP))
+            && (m_archive.getCurrentRevision().getRevisionRootDir() != null))
+        {
+            manifestCache = new File(
+                m_archive.getCurrentRevision().getRevisionRootDir(),
+                MANIFEST_CACHE_FILE);
+        }
+
         // Create the bundle revision instance.
         BundleRevisionImpl revision = new BundleRevisionImpl(
             this,
             Long.toString(getBundleId())
                 + "." + m_archive.getCurrentRevisionNumber().toString(),
             headerMap,
-            m_archive.getCurrentRevision().getContent());
+            m_archive.getCurrentRevision().getContent(),
+            manifestCache);
 
         // For R4 bundles, verify that the bundle symbolic name + version
         // is unique unless this check has been disabled.
@@ -48,6 +48,7 @@ import java.util.jar.JarFile;
 import java.util.jar.JarOutputStream;
 import org.apache.felix.framework.cache.Content;
 import org.apache.felix.framework.cache.JarContent;
+import org.apache.felix.framework.cache.MappedJarContent;
 import org.apache.felix.framework.util.FelixConstants;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.PackagePermission;
@@ -262,6 +263,10 @@ public class BundleProtectionDomain extends ProtectionDomain
                         {
                             return Felix.m_secureAction.openJarFile(((JarContent) content).getFile());
                         }
+                        else if (content instanceof MappedJarContent)
+                        {
+                            return Felix.m_secureAction.openJarFile(((MappedJarContent) content).getFile());
+                        }
                         else
                         {
                             File target = Felix.m_secureAction.createTempFile("jar", null, null);
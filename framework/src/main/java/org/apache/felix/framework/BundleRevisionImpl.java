@@ -18,6 +18,7 @@
  */
 package org.apache.felix.framework;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
@@ -33,6 +34,7 @@ import org.apache.felix.framework.cache.Content;
 import org.apache.felix.framework.util.FelixConstants;
 import org.apache.felix.framework.util.SecureAction;
 import org.apache.felix.framework.util.Util;
+import org.apache.felix.framework.util.manifestparser.ManifestCache;
 import org.apache.felix.framework.util.manifestparser.ManifestParser;
 import org.apache.felix.framework.util.manifestparser.NativeLibrary;
 import org.osgi.framework.BundleException;
@@ -62,7 +64,10 @@ public class BundleRevisionImpl implements BundleRevision, Resource
 
     private final List<BundleCapability> m_declaredCaps;
     private final List<BundleRequirement> m_declaredReqs;
-    private final List<NativeLibrary> m_declaredNativeLibs;
+    // Parser holding the native library clauses until a native library
+    // clause is selected on first use; null once selected.
+    private volatile ManifestParser m_nativeLibParser;
+    private volatile List<NativeLibrary> m_declaredNativeLibs;
     private final int m_declaredActivationPolicy;
     private final List<String> m_activationIncludes;
     private final List<String> m_activationExcludes;
@@ -106,17 +111,38 @@ public class BundleRevisionImpl implements BundleRevision, Resource
     BundleRevisionImpl(
         BundleImpl bundle, String id, Map<String, Object> headerMap, Content content)
         throws BundleException
+    {
+        this(bundle, id, headerMap, content, null);
+    }
+
+    /**
+     * Creates a revision for the given manifest headers. If a manifest cache
+     * file is given, the parsed manifest is read from it when it matches the
+     * headers, and written to it otherwise.
+    **/
+    BundleRevisionImpl(
+        BundleImpl bundle, String id, Map<String, Object> headerMap, Content content,
+        File manifestCache)
+        throws BundleException
     {
         m_bundle = bundle;
         m_id = id;
         m_headerMap = headerMap;
         m_content = content;
 
-        ManifestParser mp = new ManifestParser(
-            bundle.getFramework().getLogger(),
-            bundle.getFramework().getConfig(),
-            this,
-            m_headerMap);
+        Logger logger = bundle.getFramework().getLogger();
+        Map<String, Object> config = bundle.getFramework().getConfig();
+        ManifestParser mp = (manifestCache == null)
+            ? null
+            : ManifestCache.read(logger, config, this, m_headerMap, manifestCache);
+        if (mp == null)
+        {
+            mp = new ManifestParser(logger, config, this, m_headerMap);
+            if (manifestCache != null)
+            {
+                ManifestCache.write(logger, config, mp, m_headerMap, manifestCache);
+            }
+        }
 
         // Record some of the parsed metadata. Note, if this is an extension
         // bundle it's exports are removed, since they will be added to the
@@ -125,7 +151,8 @@ public class BundleRevisionImpl implements BundleRevision, Resource
         m_version = mp.getBundleVersion();
         m_declaredCaps = mp.getCapabilities();
         m_declaredReqs = mp.getRequirements();
-        m_declaredNativeLibs = mp.getLibraries();
+        // Native library clauses are only selected when first needed.
+        m_nativeLibParser = mp.getLibraryClauses().isEmpty() ? null : mp;
         m_declaredActivationPolicy = mp.getActivationPolicy();
         m_activationExcludes = (mp.getActivationExcludeDirective() == null)
             ? null
@@ -281,6 +308,17 @@ public class BundleRevisionImpl implements BundleRevision, Resource
 
     public List<NativeLibrary> getDeclaredNativeLibraries()
     {
+        if (m_nativeLibParser != null)
+        {
+            synchronized (this)
+            {
+                if (m_nativeLibParser != null)
+                {
+                    m_declaredNativeLibs = m_nativeLibParser.getLibraries();
+                    m_nativeLibParser = null;
+                }
+            }
+        }
         return m_declaredNativeLibs;
     }
 
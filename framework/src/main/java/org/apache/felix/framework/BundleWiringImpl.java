@@ -34,12 +34,14 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.felix.framework.cache.Content;
 import org.apache.felix.framework.cache.JarContent;
@@ -102,9 +104,20 @@ public class BundleWiringImpl implements BundleWiring
     private final List<NativeLibrary> m_resolvedNativeLibs;
     private final List<Content> m_fragmentContents;
 
+    // Routing table from package name to where classes and resources of
+    // that package are searched; filled lazily as packages are looked up.
+    private final Map<String, PackageRoute> m_routes =
+        new ConcurrentHashMap<String, PackageRoute>();
+    // Names of classes and resources which could be found neither in the
+    // revision's content nor through a dynamic import; null if disabled.
+    private final NegativeCache m_missedClasses;
+    private final NegativeCache m_missedResources;
+
     private volatile List<BundleRequirement> m_wovenReqs = null;
 
-    private BundleClassLoader m_classLoader;
+    // Class loader is created once under the wiring lock, but read without
+    // locking on every delegated class load.
+    private volatile BundleClassLoader m_classLoader;
 
     // Bundle-specific class loader for boot delegation.
     private final ClassLoader m_bootClassLoader;
@@ -449,6 +462,26 @@ public class BundleWiringImpl implements BundleWiring
         m_useLocalURLs =
             (m_configMap.get(FelixConstants.USE_LOCALURLS_PROP) == null)
                 ? false : true;
+
+        // The negative cache is opt-in, since its generation does not
+        // change when resolver hooks change which dynamic imports resolve.
+        int negativeCacheSize = 0;
+        Object size = m_configMap.get(FelixConstants.NEGATIVE_CACHE_SIZE_PROP);
+        if (size != null)
+        {
+            try
+            {
+                negativeCacheSize = Integer.parseInt(size.toString());
+            }
+            catch (NumberFormatException ex)
+            {
+                // Ignore and use the default size.
+            }
+        }
+        m_missedClasses = (negativeCacheSize > 0)
+            ? new NegativeCache(negativeCacheSize) : null;
+        m_missedResources = (negativeCacheSize > 0)
+            ? new NegativeCache(negativeCacheSize) : null;
     }
 
     private static List<List<String>> parsePkgFilters(BundleCapability cap, String filtername)
@@ -487,6 +520,8 @@ public class BundleWiringImpl implements BundleWiring
         }
         m_classLoader = null;
         m_isDisposed = true;
+        m_routes.clear();
+        clearNegativeCaches();
     }
 
 // TODO: OSGi R4.3 - This really shouldn't be public, but it is needed by the
@@ -521,7 +556,7 @@ public class BundleWiringImpl implements BundleWiring
     }
 
     @Override
-    public synchronized boolean isInUse()
+    public boolean isInUse()
     {
         return !m_isDisposed;
     }
@@ -664,6 +699,18 @@ public class BundleWiringImpl implements BundleWiring
         // to cause any issues.
         m_wires = ImmutableList.newInstance(wires);
         m_importedPkgs = importedPkgs;
+        // Routes computed from the previous imported package map are
+        // recomputed on their next use, but misses have to be forgotten.
+        clearNegativeCaches();
+    }
+
+    private void clearNegativeCaches()
+    {
+        if (m_missedClasses != null)
+        {
+            m_missedClasses.clear();
+            m_missedResources.clear();
+        }
     }
 
     @Override
@@ -688,7 +735,17 @@ public class BundleWiringImpl implements BundleWiring
         return getClassLoaderInternal();
     }
 
-    private synchronized ClassLoader getClassLoaderInternal()
+    private ClassLoader getClassLoaderInternal()
+    {
+        BundleClassLoader cl = m_classLoader;
+        if ((cl != null) || m_isDisposed)
+        {
+            return cl;
+        }
+        return createClassLoader();
+    }
+
+    private synchronized ClassLoader createClassLoader()
     {
         // Only try to create the class loader if the bundle
         // is not disposed.
@@ -762,9 +819,10 @@ public class BundleWiringImpl implements BundleWiring
     // Thread local to detect class loading cycles.
     private final ThreadLocal m_listResourcesCycleCheck = new ThreadLocal();
 
-// TODO: OSGi R4.3 - Should this be synchronized or should we take a snapshot?
+    // Not synchronized, since the wires are a copy-on-write snapshot and
+    // cycles are detected per thread.
     @Override
-    public synchronized Collection<String> listResources(
+    public Collection<String> listResources(
         String path, String filePattern, int options)
     {
         // Implementation note: If you enable the DEBUG option for
@@ -1139,10 +1197,11 @@ public class BundleWiringImpl implements BundleWiring
 
         // Get the package of the target class/resource.
         String pkgName = Util.getResourcePackage(name);
+        PackageRoute route = getRoute(pkgName);
 
         // Delegate any packages listed in the boot delegation
         // property to the parent class loader.
-        if (shouldBootDelegate(pkgName))
+        if (route.m_bootDelegate)
         {
             try
             {
@@ -1168,7 +1227,7 @@ public class BundleWiringImpl implements BundleWiring
         // Look in the revisions's imported packages. If the package is
         // imported, then we stop searching no matter the result since
         // imported packages cannot be split.
-        BundleRevision provider = m_importedPkgs.get(pkgName);
+        BundleRevision provider = route.m_provider;
         if (provider != null)
         {
             // Delegate to the provider revision.
@@ -1189,7 +1248,7 @@ public class BundleWiringImpl implements BundleWiring
         // See whether we can get the resource from the required bundles and
         // regardless of whether or not this is the case continue to the next
         // step potentially passing on the result of this search (if any).
-        List<BundleRevision> providers = m_requiredPkgs.get(pkgName);
+        List<BundleRevision> providers = route.m_requiredProviders;
         if (providers != null)
         {
             for (BundleRevision p : providers)
@@ -1331,12 +1390,31 @@ public class BundleWiringImpl implements BundleWiring
         return result;
     }
 
-    synchronized ClassLoader getBootDelegationClassLoader()
+    private PackageRoute getRoute(String pkgName)
+    {
+        // A route is only valid for the imported package map it was
+        // computed from, since dynamic imports replace the map.
+        Map<String, BundleRevision> importedPkgs = m_importedPkgs;
+        PackageRoute route = m_routes.get(pkgName);
+        if ((route == null) || (route.m_importedPkgs != importedPkgs))
+        {
+            route = new PackageRoute(
+                importedPkgs,
+                shouldBootDelegate(pkgName),
+                importedPkgs.get(pkgName),
+                m_requiredPkgs.get(pkgName));
+            m_routes.put(pkgName, route);
+        }
+        return route;
+    }
+
+    ClassLoader getBootDelegationClassLoader()
     {
         // Get the appropriate class loader for delegation.
-        ClassLoader parent = (m_classLoader == null)
+        BundleClassLoader cl = m_classLoader;
+        ClassLoader parent = (cl == null)
             ? determineParentClassLoader() :
-            BundleRevisionImpl.getSecureAction().getParentClassLoader(m_classLoader);
+            BundleRevisionImpl.getSecureAction().getParentClassLoader(cl);
         return (parent == null) ? m_bootClassLoader : parent;
     }
 
@@ -1489,10 +1567,11 @@ public class BundleWiringImpl implements BundleWiring
                 String pkgName = (isClass)
                     ? Util.getClassPackage(name)
                     : Util.getResourcePackage(name);
+                PackageRoute route = getRoute(pkgName);
 
                 // Delegate any packages listed in the boot delegation
                 // property to the parent class loader.
-                if (shouldBootDelegate(pkgName))
+                if (route.m_bootDelegate)
                 {
                     try
                     {
@@ -1522,10 +1601,19 @@ public class BundleWiringImpl implements BundleWiring
                 // Look in the revision's imports. Note that the search may
                 // be aborted if this method throws an exception, otherwise
                 // it continues if a null is returned.
-                result = searchImports(pkgName, name, isClass);
-
+                result = searchImports(route, name, isClass);
+
+                // If the class or resource is known to be neither in the
+                // revision's content nor dynamically importable, then only
+                // implicit boot delegation is left to try.
+                NegativeCache missed = (isClass) ? m_missedClasses : m_missedResources;
+                long generation = (m_resolver != null) ? m_resolver.getGeneration() : 0;
+                if ((result == null) && (missed != null) && missed.contains(name, generation))
+                {
+                    result = searchImplicitBootDelegation(name, isClass);
+                }
                 // If not found, try the revision's own class path.
-                if (result == null)
+                else if (result == null)
                 {
                     if (isClass)
                     {
@@ -1549,7 +1637,8 @@ public class BundleWiringImpl implements BundleWiring
                     // If still not found, then try the revision's dynamic imports.
                     if (result == null)
                     {
-                        result = searchDynamicImports(pkgName, name, isClass);
+                        result = searchDynamicImports(
+                            pkgName, name, isClass, missed, generation);
                     }
                 }
             }
@@ -1583,11 +1672,11 @@ public class BundleWiringImpl implements BundleWiring
         return result;
     }
 
-    private Object searchImports(String pkgName, String name, boolean isClass)
+    private Object searchImports(PackageRoute route, String name, boolean isClass)
         throws ClassNotFoundException, ResourceNotFoundException
     {
         // Check if the package is imported.
-        BundleRevision provider = m_importedPkgs.get(pkgName);
+        BundleRevision provider = route.m_provider;
         if (provider != null)
         {
             // If we find the class or resource, then return it.
@@ -1610,7 +1699,7 @@ public class BundleWiringImpl implements BundleWiring
         }
 
         // Check if the package is required.
-        List<BundleRevision> providers = m_requiredPkgs.get(pkgName);
+        List<BundleRevision> providers = route.m_requiredProviders;
         if (providers != null)
         {
             for (BundleRevision p : providers)
@@ -1640,7 +1729,8 @@ public class BundleWiringImpl implements BundleWiring
     }
 
     private Object searchDynamicImports(
-        final String pkgName, final String name, final boolean isClass)
+        String pkgName, String name, boolean isClass,
+        NegativeCache missed, long generation)
         throws ClassNotFoundException, ResourceNotFoundException
     {
         // At this point, the module's imports were searched and so was the
@@ -1673,6 +1763,19 @@ public class BundleWiringImpl implements BundleWiring
                 : (Object) ((BundleWiringImpl) provider.getWiring()).getResourceByDelegation(name);
         }
 
+        // Remember the miss until the resolver state changes, since only
+        // then could a dynamic import succeed.
+        if (missed != null)
+        {
+            missed.add(name, generation);
+        }
+
+        return searchImplicitBootDelegation(name, isClass);
+    }
+
+    private Object searchImplicitBootDelegation(final String name, final boolean isClass)
+        throws ClassNotFoundException, ResourceNotFoundException
+    {
         // If implicit boot delegation is enabled, then try to guess whether
         // we should boot delegate.
         if (m_implicitBootDelegation)
@@ -1892,7 +1995,7 @@ public class BundleWiringImpl implements BundleWiring
                 Method method = BundleRevisionImpl.getSecureAction()
                     .getDeclaredMethod(ClassLoader.class, "registerAsParallelCapable", null);
 
-                BundleRevisionImpl.getSecureAction().setAccesssible(method);
+                setAccessible(method);
 
                 registered = ((Boolean) method.invoke(null)).booleanValue();
             }
@@ -1945,7 +2048,7 @@ public class BundleWiringImpl implements BundleWiring
                  Method method = BundleRevisionImpl.getSecureAction()
                     .getDeclaredMethod(ClassLoader.class, "registerAsParallelCapable", null);
 
-                 BundleRevisionImpl.getSecureAction().setAccesssible(method);
+                 setAccessible(method);
 
                  method.invoke(null);
              }
@@ -1963,7 +2066,11 @@ public class BundleWiringImpl implements BundleWiring
         private Object[][] m_cachedLibs = new Object[0][];
         private static final int LIBNAME_IDX = 0;
         private static final int LIBPATH_IDX = 1;
-        private final Map<String, Thread> m_classLocks = new HashMap<String, Thread>();
+        // Maps the names of classes being defined to the lock of the
+        // defining thread, so that only definitions of the same class
+        // wait for each other.
+        private final ConcurrentHashMap<String, ClassLock> m_classLocks =
+            new ConcurrentHashMap<String, ClassLock>();
         private final BundleWiringImpl m_wiring;
         private final Logger m_logger;
 
@@ -1982,6 +2089,19 @@ public class BundleWiringImpl implements BundleWiring
             m_logger = logger;
         }
 
+        static void setAccessible(Method method)
+        {
+            try
+            {
+                BundleRevisionImpl.getSecureAction().setAccesssible(method);
+            }
+            catch (RuntimeException ex)
+            {
+                // Newer java versions do not open java.lang, but protected
+                // methods of ClassLoader can still be invoked by subclasses.
+            }
+        }
+
         protected boolean isParallel()
         {
             return false;
@@ -2004,12 +2124,19 @@ public class BundleWiringImpl implements BundleWiring
         {
             Class clazz;
 
-            // Make sure the class was not already loaded.
-            Object lock = (isParallel()) ? m_classLocks : this;
-            synchronized (lock)
+            // Make sure the class was not already loaded. Parallel capable
+            // class loaders do not need a lock for this.
+            if (isParallel())
             {
                 clazz = findLoadedClass(name);
             }
+            else
+            {
+                synchronized (this)
+                {
+                    clazz = findLoadedClass(name);
+                }
+            }
 
             if (clazz == null)
             {
@@ -2122,32 +2249,11 @@ public class BundleWiringImpl implements BundleWiring
                         }
                     }
                     // Before we actually attempt to define the class, grab
-                    // the lock for this class loader and make sure than no
+                    // the lock for this class name and make sure that no
                     // other thread has defined this class in the meantime.
-                    Object lock = (isParallel()) ? m_classLocks : this;
-                    synchronized (lock)
-                    {
-                        Thread me = Thread.currentThread();
-                        while (m_classLocks.containsKey(name) && (m_classLocks.get(name) != me))
-                        {
-                            try
-                            {
-                                lock.wait();
-                            }
-                            catch (InterruptedException e)
-                            {
-                                // TODO: WHAT TO DO HERE?
-                                throw new RuntimeException(e);
-                            }
-                        }
-                        // Lock released, try loading class.
-                        clazz = findLoadedClass(name);
-                        if (clazz == null)
-                        {
-                            // Not found, we should try load it.
-                            m_classLocks.put(name, me);
-                        }
-                    }
+                    ClassLock lock = lockClass(name);
+                    // Lock acquired, try loading class.
+                    clazz = findLoadedClass(name);
 
                     try
                     {
@@ -2201,7 +2307,7 @@ public class BundleWiringImpl implements BundleWiring
         Class defineClass(Felix felix,
                 Set<ServiceReference<WovenClassListener>> wovenClassListeners,
                 WovenClassImpl wci, String name, Class clazz, byte[] bytes,
-                Content content, String pkgName, Object lock)
+                Content content, String pkgName, ClassLock lock)
                         throws ClassFormatError
         {
 
@@ -2285,6 +2391,9 @@ public class BundleWiringImpl implements BundleWiring
                                     allWovenReqs.addAll(0, m_wiring.m_wovenReqs);
                                 }
                                 m_wiring.m_wovenReqs = allWovenReqs;
+                                // Misses cached before weaving did not try
+                                // the new dynamic imports.
+                                m_wiring.clearNegativeCaches();
                             }
                         }
                     }
@@ -2392,13 +2501,36 @@ public class BundleWiringImpl implements BundleWiring
             }
             finally
             {
-                synchronized (lock)
+                unlockClass(name, lock);
+            }
+            return clazz;
+        }
+
+        // Returns the acquired lock, or null if the current thread
+        // already holds the lock for the class name.
+        private ClassLock lockClass(String name)
+        {
+            Thread me = Thread.currentThread();
+            ClassLock lock = new ClassLock(me);
+            ClassLock existing;
+            while ((existing = m_classLocks.putIfAbsent(name, lock)) != null)
+            {
+                if (existing.m_owner == me)
                 {
-                    m_classLocks.remove(name);
-                    lock.notifyAll();
+                    return null;
                 }
+                existing.await();
+            }
+            return lock;
+        }
+
+        private void unlockClass(String name, ClassLock lock)
+        {
+            if (lock != null)
+            {
+                m_classLocks.remove(name, lock);
+                lock.release();
             }
-            return clazz;
         }
 
         void transformClass(Felix felix, WovenClassImpl wci,
@@ -2702,6 +2834,98 @@ public class BundleWiringImpl implements BundleWiring
         }
     }
 
+    private static class PackageRoute
+    {
+        public final Map<String, BundleRevision> m_importedPkgs;
+        public final boolean m_bootDelegate;
+        public final BundleRevision m_provider;
+        public final List<BundleRevision> m_requiredProviders;
+
+        public PackageRoute(
+            Map<String, BundleRevision> importedPkgs, boolean bootDelegate,
+            BundleRevision provider, List<BundleRevision> requiredProviders)
+        {
+            m_importedPkgs = importedPkgs;
+            m_bootDelegate = bootDelegate;
+            m_provider = provider;
+            m_requiredProviders = requiredProviders;
+        }
+    }
+
+    private static class ClassLock
+    {
+        public final Thread m_owner;
+        private boolean m_released = false;
+
+        public ClassLock(Thread owner)
+        {
+            m_owner = owner;
+        }
+
+        // Waits uninterruptibly, since the owner only holds the lock while
+        // defining a single class; an interrupt is preserved for the caller.
+        public synchronized void await()
+        {
+            boolean interrupted = false;
+            while (!m_released)
+            {
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException ex)
+                {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        public synchronized void release()
+        {
+            m_released = true;
+            notifyAll();
+        }
+    }
+
+    private static class NegativeCache
+    {
+        // Maps names to the resolver generation of the miss, in
+        // access order so that the least recently used name is evicted.
+        private final Map<String, Long> m_names;
+
+        public NegativeCache(final int size)
+        {
+            m_names = new LinkedHashMap<String, Long>(16, 0.75f, true)
+            {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Long> eldest)
+                {
+                    return size() > size;
+                }
+            };
+        }
+
+        public synchronized boolean contains(String name, long generation)
+        {
+            Long missed = m_names.get(name);
+            return (missed != null) && (missed.longValue() == generation);
+        }
+
+        public synchronized void add(String name, long generation)
+        {
+            m_names.put(name, Long.valueOf(generation));
+        }
+
+        public synchronized void clear()
+        {
+            m_names.clear();
+        }
+    }
+
     private static String diagnoseClassLoadError(
         StatefulResolver resolver, BundleRevision revision, String name)
     {
@@ -28,17 +28,27 @@ import java.util.EventListener;
 import java.util.EventObject;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.felix.framework.capabilityset.SimpleFilter;
 import org.apache.felix.framework.util.*;
 import org.osgi.framework.AllServiceListener;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleEvent;
 import org.osgi.framework.BundleListener;
+import org.osgi.framework.Constants;
 import org.osgi.framework.Filter;
 import org.osgi.framework.FrameworkEvent;
 import org.osgi.framework.FrameworkListener;
@@ -56,14 +66,22 @@ public class EventDispatcher
     private final Logger m_logger;
     private final ServiceRegistry m_registry;
 
-    private Map<BundleContext, List<ListenerInfo>>
+    // The listener maps are copied on write while holding the dispatcher
+    // lock, so events can be fired from a snapshot without locking.
+    private volatile Map<BundleContext, List<ListenerInfo>>
         m_fwkListeners = Collections.EMPTY_MAP;
-    private Map<BundleContext, List<ListenerInfo>>
+    private volatile Map<BundleContext, List<ListenerInfo>>
         m_bndlListeners = Collections.EMPTY_MAP;
-    private Map<BundleContext, List<ListenerInfo>>
+    private volatile Map<BundleContext, List<ListenerInfo>>
         m_syncBndlListeners = Collections.EMPTY_MAP;
-    private Map<BundleContext, List<ListenerInfo>>
+    private volatile Map<BundleContext, List<ListenerInfo>>
         m_svcListeners = Collections.EMPTY_MAP;
+    // Service listeners indexed by the object classes their filters require,
+    // so that a service event is only matched against the listeners that can
+    // be interested in it. Listeners whose filter does not require an object
+    // class are kept under the null key.
+    private volatile Map<String, Map<BundleContext, List<ListenerInfo>>>
+        m_svcListenerIndex = Collections.emptyMap();
 
     // A single thread is used to deliver events for all dispatchers.
     private static Thread m_thread = null;
@@ -78,14 +96,62 @@ public class EventDispatcher
 
     private static final SecureAction m_secureAction = new SecureAction();
 
+    // If the dispatcher has its own threads, asynchronous events are queued
+    // per listener and each queue is drained by one of these threads at a
+    // time, which keeps the events of a listener in order.
+    private final int m_parallelism;
+    private volatile ExecutorService m_executor = null;
+    private Map<ListenerInfo, ListenerQueue> m_queues = Collections.emptyMap();
+    private final AtomicInteger m_queueDepth = new AtomicInteger();
+
     public EventDispatcher(Logger logger, ServiceRegistry registry)
+    {
+        this(logger, registry, 0);
+    }
+
+    /**
+     * Creates a dispatcher delivering asynchronous events on its own pool
+     * of the given number of threads, or on the thread shared by all
+     * dispatchers if the number is not positive.
+    **/
+    public EventDispatcher(Logger logger, ServiceRegistry registry, int parallelism)
     {
         m_logger = logger;
         m_registry = registry;
+        m_parallelism = parallelism;
     }
 
     public void startDispatching()
     {
+        if (m_parallelism > 0)
+        {
+            synchronized (this)
+            {
+                if ((m_executor == null) || m_executor.isShutdown())
+                {
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                        m_parallelism, m_parallelism,
+                        60, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>(),
+                        new ThreadFactory()
+                        {
+                            final AtomicInteger counter = new AtomicInteger();
+                            @Override
+                            public Thread newThread(Runnable r)
+                            {
+                                Thread t = new Thread(
+                                    r, "FelixDispatchQueue-" + counter.incrementAndGet());
+                                t.setDaemon(true);
+                                return t;
+                            }
+                        });
+                    executor.allowCoreThreadTimeOut(true);
+                    m_executor = executor;
+                }
+            }
+            return;
+        }
+
         synchronized (m_threadLock)
         {
             // Start event dispatching thread if necessary.
@@ -125,6 +191,33 @@ public class EventDispatcher
 
     public void stopDispatching()
     {
+        if (m_parallelism > 0)
+        {
+            ExecutorService executor;
+            synchronized (this)
+            {
+                executor = m_executor;
+                if ((executor == null) || executor.isShutdown())
+                {
+                    return;
+                }
+                // Queued events are still delivered.
+                executor.shutdown();
+            }
+            while (!executor.isTerminated())
+            {
+                try
+                {
+                    executor.awaitTermination(1, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException ex)
+                {
+                }
+            }
+            logMetrics(Logger.LOG_DEBUG);
+            return;
+        }
+
         synchronized (m_threadLock)
         {
             // Return if already dead or stopping.
@@ -242,6 +335,18 @@ public class EventDispatcher
                 new ListenerInfo(bc.getBundle(), bc, clazz, l, filter, acc, false);
             listeners = addListenerInfo(listeners, info);
 
+            // Give listeners of asynchronous events their own queue.
+            if ((m_parallelism > 0)
+                && ((clazz == FrameworkListener.class)
+                    || ((clazz == BundleListener.class)
+                        && !SynchronousBundleListener.class.isInstance(l))))
+            {
+                Map<ListenerInfo, ListenerQueue> queues =
+                    new HashMap<ListenerInfo, ListenerQueue>(m_queues);
+                queues.put(info, new ListenerQueue(info));
+                m_queues = queues;
+            }
+
             if (clazz == FrameworkListener.class)
             {
                 m_fwkListeners = listeners;
@@ -260,6 +365,7 @@ public class EventDispatcher
             else if (clazz == ServiceListener.class)
             {
                 m_svcListeners = listeners;
+                indexServiceListener(info);
             }
         }
         return null;
@@ -337,6 +443,18 @@ public class EventDispatcher
             // If we have the instance, then remove it.
             if (idx >= 0)
             {
+                ListenerInfo info = listeners.get(bc).get(idx);
+                if (clazz == ServiceListener.class)
+                {
+                    unindexServiceListener(info);
+                }
+                if (m_queues.containsKey(info))
+                {
+                    Map<ListenerInfo, ListenerQueue> queues =
+                        new HashMap<ListenerInfo, ListenerQueue>(m_queues);
+                    queues.remove(info);
+                    m_queues = queues;
+                }
                 listeners = removeListenerInfo(listeners, bc, idx);
             }
 
@@ -386,7 +504,30 @@ public class EventDispatcher
             m_syncBndlListeners = removeListenerInfos(m_syncBndlListeners, bc);
 
             // Remove all service listeners associated with the specified bundle.
+            List<ListenerInfo> svcInfos = m_svcListeners.get(bc);
+            if (svcInfos != null)
+            {
+                for (ListenerInfo info : svcInfos)
+                {
+                    unindexServiceListener(info);
+                }
+            }
             m_svcListeners = removeListenerInfos(m_svcListeners, bc);
+
+            // Remove the event queues of the removed listeners.
+            if (!m_queues.isEmpty())
+            {
+                Map<ListenerInfo, ListenerQueue> queues =
+                    new HashMap<ListenerInfo, ListenerQueue>(m_queues);
+                for (Iterator<ListenerInfo> it = queues.keySet().iterator(); it.hasNext(); )
+                {
+                    if (it.next().getBundleContext() == bc)
+                    {
+                        it.remove();
+                    }
+                }
+                m_queues = queues;
+            }
         }
     }
 
@@ -427,6 +568,8 @@ public class EventDispatcher
                             info.getSecurityContext(),
                             info.isRemoved());
                         m_svcListeners = updateListenerInfo(m_svcListeners, i, newInfo);
+                        unindexServiceListener(info);
+                        indexServiceListener(newInfo);
                         return oldFilter;
                     }
                 }
@@ -459,11 +602,7 @@ public class EventDispatcher
     public void fireFrameworkEvent(FrameworkEvent event)
     {
         // Take a snapshot of the listener array.
-        Map<BundleContext, List<ListenerInfo>> listeners = null;
-        synchronized (this)
-        {
-            listeners = m_fwkListeners;
-        }
+        Map<BundleContext, List<ListenerInfo>> listeners = m_fwkListeners;
 
         // Fire all framework listeners on a separate thread.
         fireEventAsynchronously(this, Request.FRAMEWORK_EVENT, listeners, event);
@@ -472,18 +611,17 @@ public class EventDispatcher
     public void fireBundleEvent(BundleEvent event, Felix felix)
     {
         // Take a snapshot of the listener array.
-        Map<BundleContext, List<ListenerInfo>> listeners = null;
-        Map<BundleContext, List<ListenerInfo>> syncListeners = null;
-        synchronized (this)
-        {
-            listeners = m_bndlListeners;
-            syncListeners = m_syncBndlListeners;
-        }
+        Map<BundleContext, List<ListenerInfo>> listeners = m_bndlListeners;
+        Map<BundleContext, List<ListenerInfo>> syncListeners = m_syncBndlListeners;
 
         // Create a whitelist of bundle context for bundle listeners,
         // if we have hooks.
-        Set<BundleContext> whitelist = createWhitelistFromHooks(event, felix,
-            listeners, syncListeners, org.osgi.framework.hooks.bundle.EventHook.class);
+        Set<BundleContext> whitelist = null;
+        if (m_registry.getHookRegistry().hasHooks(org.osgi.framework.hooks.bundle.EventHook.class))
+        {
+            whitelist = createWhitelistFromHooks(event, felix,
+                listeners, syncListeners, org.osgi.framework.hooks.bundle.EventHook.class);
+        }
 
         // If we have a whitelist, then create copies of only the whitelisted
         // listeners.
@@ -531,21 +669,157 @@ public class EventDispatcher
     public void fireServiceEvent(
         final ServiceEvent event, final Dictionary oldProps, final Felix felix)
     {
-        // Take a snapshot of the listener array.
-        Map<BundleContext, List<ListenerInfo>> listeners = null;
-        synchronized (this)
+        // Take a snapshot of the listeners that can match the service.
+        Map<BundleContext, List<ListenerInfo>> listeners =
+            getServiceListeners(event.getServiceReference());
+
+        // Use service registry hooks to filter target listeners, unless
+        // there are none.
+        HookRegistry hooks = m_registry.getHookRegistry();
+        if (hooks.hasHooks(org.osgi.framework.hooks.service.EventHook.class)
+            || hooks.hasHooks(org.osgi.framework.hooks.service.EventListenerHook.class))
         {
-            listeners = m_svcListeners;
+            listeners = filterListenersUsingHooks(event, felix, listeners);
         }
 
-        // Use service registry hooks to filter target listeners.
-        listeners = filterListenersUsingHooks(event, felix, listeners);
-
         // Fire all service events immediately on the calling thread.
         fireEventImmediately(
             this, Request.SERVICE_EVENT, listeners, event, oldProps);
     }
 
+    /**
+     * Returns the service listeners that are not indexed together with the
+     * ones indexed under any of the object classes of the given service.
+    **/
+    private Map<BundleContext, List<ListenerInfo>> getServiceListeners(ServiceReference<?> ref)
+    {
+        Map<String, Map<BundleContext, List<ListenerInfo>>> index = m_svcListenerIndex;
+        Map<BundleContext, List<ListenerInfo>> listeners = index.get(null);
+        if (listeners == null)
+        {
+            listeners = Collections.emptyMap();
+        }
+        String[] classes = (String[]) ref.getProperty(Constants.OBJECTCLASS);
+        for (int i = 0; (classes != null) && (i < classes.length); i++)
+        {
+            Map<BundleContext, List<ListenerInfo>> indexed = index.get(classes[i]);
+            if (indexed != null)
+            {
+                listeners = (listeners.isEmpty())
+                    ? indexed : mergeListenerInfos(listeners, indexed);
+            }
+        }
+        return listeners;
+    }
+
+    private void indexServiceListener(ListenerInfo info)
+    {
+        Map<String, Map<BundleContext, List<ListenerInfo>>> index =
+            new HashMap<String, Map<BundleContext, List<ListenerInfo>>>(m_svcListenerIndex);
+        for (String className : getIndexKeys(info))
+        {
+            Map<BundleContext, List<ListenerInfo>> listeners = index.get(className);
+            if (listeners == null)
+            {
+                listeners = Collections.emptyMap();
+            }
+            index.put(className, addListenerInfo(listeners, info));
+        }
+        m_svcListenerIndex = index;
+    }
+
+    private void unindexServiceListener(ListenerInfo info)
+    {
+        Map<String, Map<BundleContext, List<ListenerInfo>>> index =
+            new HashMap<String, Map<BundleContext, List<ListenerInfo>>>(m_svcListenerIndex);
+        for (String className : getIndexKeys(info))
+        {
+            Map<BundleContext, List<ListenerInfo>> listeners = index.get(className);
+            if (listeners != null)
+            {
+                listeners = removeListenerInfo(listeners, info);
+                if (listeners.isEmpty())
+                {
+                    index.remove(className);
+                }
+                else
+                {
+                    index.put(className, listeners);
+                }
+            }
+        }
+        m_svcListenerIndex = index;
+    }
+
+    /**
+     * Returns the object classes under which the given service listener is
+     * indexed or a set holding only null if it must see all services.
+    **/
+    private static Set<String> getIndexKeys(ListenerInfo info)
+    {
+        Set<String> classes = null;
+        if ((info.getParsedFilter() instanceof FilterImpl)
+            && !(info.getListener() instanceof UnfilteredServiceListener))
+        {
+            classes = getObjectClasses(
+                ((FilterImpl) info.getParsedFilter()).getSimpleFilter());
+        }
+        return (classes == null) ? Collections.<String>singleton(null) : classes;
+    }
+
+    /**
+     * Returns the object classes of which a service must have at least one
+     * to match the given filter or null if the filter does not restrict them.
+     * Only the object classes are used, since they are the only service
+     * property that cannot change while the service is registered; a
+     * listener must still see a modified service that no longer matches.
+    **/
+    private static Set<String> getObjectClasses(SimpleFilter sf)
+    {
+        switch (sf.getOperation())
+        {
+            case SimpleFilter.EQ:
+                if (Constants.OBJECTCLASS.equalsIgnoreCase(sf.getName())
+                    && (sf.getValue() instanceof String))
+                {
+                    return Collections.singleton((String) sf.getValue());
+                }
+                return null;
+            case SimpleFilter.AND:
+            {
+                // Any operand will do, so take the most selective one.
+                Set<String> classes = null;
+                for (Object child : (List<?>) sf.getValue())
+                {
+                    Set<String> childClasses = getObjectClasses((SimpleFilter) child);
+                    if ((childClasses != null)
+                        && ((classes == null) || (childClasses.size() < classes.size())))
+                    {
+                        classes = childClasses;
+                    }
+                }
+                return classes;
+            }
+            case SimpleFilter.OR:
+            {
+                // Every operand must restrict the object classes.
+                Set<String> classes = new HashSet<String>();
+                for (Object child : (List<?>) sf.getValue())
+                {
+                    Set<String> childClasses = getObjectClasses((SimpleFilter) child);
+                    if (childClasses == null)
+                    {
+                        return null;
+                    }
+                    classes.addAll(childClasses);
+                }
+                return (classes.isEmpty()) ? null : classes;
+            }
+            default:
+                return null;
+        }
+    }
+
 // TODO: OSGi R4.3 - This is ugly and inefficient.
     private Map<BundleContext, List<ListenerInfo>> filterListenersUsingHooks(
         ServiceEvent event, Felix felix, Map<BundleContext, List<ListenerInfo>> listeners)
@@ -769,6 +1043,12 @@ public class EventDispatcher
         Map<BundleContext, List<ListenerInfo>> listeners,
         EventObject event)
     {
+        if (dispatcher.m_parallelism > 0)
+        {
+            dispatcher.enqueue(type, listeners, event);
+            return;
+        }
+
         //TODO: should possibly check this within thread lock, seems to be ok though without
         // If dispatch thread is stopped, then ignore dispatch request.
         if (m_stopping || m_thread == null)
@@ -818,44 +1098,140 @@ public class EventDispatcher
             {
                 for (ListenerInfo info : entry.getValue())
                 {
-                    Bundle bundle = info.getBundle();
-                    EventListener l = info.getListener();
-                    Filter filter = info.getParsedFilter();
-                    Object acc = info.getSecurityContext();
+                    fireEventImmediately(dispatcher, type, info, event, oldProps);
+                }
+            }
+        }
+    }
 
-                    try
-                    {
-                        if (type == Request.FRAMEWORK_EVENT)
-                        {
-                            invokeFrameworkListenerCallback(bundle, l, event);
-                        }
-                        else if (type == Request.BUNDLE_EVENT)
-                        {
-                            invokeBundleListenerCallback(bundle, l, event);
-                        }
-                        else if (type == Request.SERVICE_EVENT)
-                        {
-                            invokeServiceListenerCallback(
-                                bundle, l, filter, acc, event, oldProps);
-                        }
-                    }
-                    catch (Throwable th)
-                    {
-                        if ((type != Request.FRAMEWORK_EVENT)
-                            || (((FrameworkEvent) event).getType() != FrameworkEvent.ERROR))
-                        {
-                            dispatcher.m_logger.log(bundle,
-                                Logger.LOG_ERROR,
-                                "EventDispatcher: Error during dispatch.", th);
-                            dispatcher.fireFrameworkEvent(
-                                new FrameworkEvent(FrameworkEvent.ERROR, bundle, th));
-                        }
-                    }
+    private static void fireEventImmediately(
+        EventDispatcher dispatcher, int type, ListenerInfo info,
+        EventObject event, Dictionary<?, ?> oldProps)
+    {
+        Bundle bundle = info.getBundle();
+        EventListener l = info.getListener();
+        Filter filter = info.getParsedFilter();
+        Object acc = info.getSecurityContext();
+
+        try
+        {
+            if (type == Request.FRAMEWORK_EVENT)
+            {
+                invokeFrameworkListenerCallback(bundle, l, event);
+            }
+            else if (type == Request.BUNDLE_EVENT)
+            {
+                invokeBundleListenerCallback(bundle, l, event);
+            }
+            else if (type == Request.SERVICE_EVENT)
+            {
+                invokeServiceListenerCallback(
+                    bundle, l, filter, acc, event, oldProps);
+            }
+        }
+        catch (Throwable th)
+        {
+            if ((type != Request.FRAMEWORK_EVENT)
+                || (((FrameworkEvent) event).getType() != FrameworkEvent.ERROR))
+            {
+                dispatcher.m_logger.log(bundle,
+                    Logger.LOG_ERROR,
+                    "EventDispatcher: Error during dispatch.", th);
+                dispatcher.fireFrameworkEvent(
+                    new FrameworkEvent(FrameworkEvent.ERROR, bundle, th));
+            }
+        }
+    }
+
+    /**
+     * Adds an asynchronous event to the queues of the given listeners.
+    **/
+    private void enqueue(
+        int type, Map<BundleContext, List<ListenerInfo>> listeners, EventObject event)
+    {
+        ExecutorService executor = m_executor;
+        if ((executor == null) || executor.isShutdown() || listeners.isEmpty())
+        {
+            return;
+        }
+
+        Map<ListenerInfo, ListenerQueue> queues;
+        synchronized (this)
+        {
+            queues = m_queues;
+        }
+        long time = System.nanoTime();
+        for (List<ListenerInfo> infos : listeners.values())
+        {
+            for (ListenerInfo info : infos)
+            {
+                // Listeners removed in the meantime have no queue.
+                ListenerQueue queue = queues.get(info);
+                if (queue != null)
+                {
+                    queue.add(executor, type, event, time);
                 }
             }
         }
     }
 
+    /**
+     * Returns the number of asynchronous events waiting to be delivered.
+    **/
+    int getQueueDepth()
+    {
+        if (m_parallelism > 0)
+        {
+            return m_queueDepth.get();
+        }
+        synchronized (m_requestList)
+        {
+            return m_requestList.size();
+        }
+    }
+
+    /**
+     * Returns the delivery statistics of the listeners of asynchronous
+     * events; these are only kept if the dispatcher has its own threads.
+    **/
+    List<ListenerMetrics> getListenerMetrics()
+    {
+        Map<ListenerInfo, ListenerQueue> queues;
+        synchronized (this)
+        {
+            queues = m_queues;
+        }
+        List<ListenerMetrics> metrics = new ArrayList<ListenerMetrics>(queues.size());
+        for (ListenerQueue queue : queues.values())
+        {
+            metrics.add(queue.getMetrics());
+        }
+        return metrics;
+    }
+
+    /**
+     * Logs the number of asynchronous events waiting to be delivered and
+     * the delivery statistics of each listener at the given level.
+    **/
+    void logMetrics(int level)
+    {
+        m_logger.log((Bundle) null, level,
+            "Event dispatcher queue depth is " + getQueueDepth() + ".");
+        for (ListenerMetrics m : getListenerMetrics())
+        {
+            if ((m.getDeliveredCount() > 0) || (m.getQueueDepth() > 0))
+            {
+                m_logger.log(m.getBundle(), level,
+                    "Delivered " + m.getDeliveredCount() + " events to "
+                    + m.getListener() + " with an average latency of "
+                    + TimeUnit.NANOSECONDS.toMillis(m.getAverageLatencyNanos())
+                    + " ms and a maximum latency of "
+                    + TimeUnit.NANOSECONDS.toMillis(m.getMaxLatencyNanos())
+                    + " ms, " + m.getQueueDepth() + " events queued.");
+            }
+        }
+    }
+
     private static void invokeFrameworkListenerCallback(
         Bundle bundle, final EventListener l, final EventObject event)
     {
@@ -1088,6 +1464,55 @@ public class EventDispatcher
         return listeners;
     }
 
+    private static Map<BundleContext, List<ListenerInfo>> removeListenerInfo(
+        Map<BundleContext, List<ListenerInfo>> listeners, ListenerInfo info)
+    {
+        List<ListenerInfo> infos = listeners.get(info.getBundleContext());
+        for (int i = 0; (infos != null) && (i < infos.size()); i++)
+        {
+            if (infos.get(i) == info)
+            {
+                return removeListenerInfo(listeners, info.getBundleContext(), i);
+            }
+        }
+        return listeners;
+    }
+
+    private static Map<BundleContext, List<ListenerInfo>> mergeListenerInfos(
+        Map<BundleContext, List<ListenerInfo>> listeners,
+        Map<BundleContext, List<ListenerInfo>> more)
+    {
+        // Make a copy of the map, since we will be mutating it.
+        Map<BundleContext, List<ListenerInfo>> copy =
+            new HashMap<BundleContext, List<ListenerInfo>>(listeners);
+        for (Entry<BundleContext, List<ListenerInfo>> entry : more.entrySet())
+        {
+            List<ListenerInfo> infos = copy.get(entry.getKey());
+            if (infos == null)
+            {
+                copy.put(entry.getKey(), entry.getValue());
+                continue;
+            }
+            infos = new ArrayList<ListenerInfo>(infos);
+            for (ListenerInfo info : entry.getValue())
+            {
+                // A listener can be indexed under several object
+                // classes of the same service.
+                boolean found = false;
+                for (int i = 0; !found && (i < infos.size()); i++)
+                {
+                    found = (infos.get(i) == info);
+                }
+                if (!found)
+                {
+                    infos.add(info);
+                }
+            }
+            copy.put(entry.getKey(), infos);
+        }
+        return copy;
+    }
+
     private static Map<BundleContext, List<ListenerInfo>> removeListenerInfos(
         Map<BundleContext, List<ListenerInfo>> listeners, BundleContext bc)
     {
@@ -1160,6 +1585,161 @@ public class EventDispatcher
         }
     }
 
+    /**
+     * The asynchronous events of one listener, delivered in order by at
+     * most one thread at a time.
+    **/
+    private class ListenerQueue implements Runnable
+    {
+        private final ListenerInfo m_info;
+        private final List<QueuedEvent> m_events = new ArrayList<QueuedEvent>();
+        private boolean m_scheduled = false;
+        private long m_delivered = 0;
+        private long m_totalLatency = 0;
+        private long m_maxLatency = 0;
+
+        ListenerQueue(ListenerInfo info)
+        {
+            m_info = info;
+        }
+
+        void add(ExecutorService executor, int type, EventObject event, long time)
+        {
+            synchronized (this)
+            {
+                m_events.add(new QueuedEvent(type, event, time));
+                m_queueDepth.incrementAndGet();
+                if (m_scheduled)
+                {
+                    return;
+                }
+                m_scheduled = true;
+            }
+            try
+            {
+                executor.execute(this);
+            }
+            catch (RejectedExecutionException ex)
+            {
+                // The dispatcher was stopped, so drop the events.
+                synchronized (this)
+                {
+                    m_queueDepth.addAndGet(-m_events.size());
+                    m_events.clear();
+                    m_scheduled = false;
+                }
+            }
+        }
+
+        public void run()
+        {
+            while (true)
+            {
+                QueuedEvent request;
+                synchronized (this)
+                {
+                    if (m_events.isEmpty())
+                    {
+                        m_scheduled = false;
+                        return;
+                    }
+                    request = m_events.remove(0);
+                }
+                m_queueDepth.decrementAndGet();
+
+                // NOTE: We don't catch any exceptions here, because
+                // the invoked method shields us from exceptions by
+                // catching Throwables when it invokes callbacks.
+                fireEventImmediately(EventDispatcher.this,
+                    request.m_type, m_info, request.m_event, null);
+
+                long latency = System.nanoTime() - request.m_time;
+                synchronized (this)
+                {
+                    m_delivered++;
+                    m_totalLatency += latency;
+                    m_maxLatency = Math.max(m_maxLatency, latency);
+                }
+            }
+        }
+
+        synchronized ListenerMetrics getMetrics()
+        {
+            return new ListenerMetrics(m_info.getBundle(), m_info.getListener(),
+                m_events.size(), m_delivered, m_totalLatency, m_maxLatency);
+        }
+    }
+
+    private static class QueuedEvent
+    {
+        private final int m_type;
+        private final EventObject m_event;
+        private final long m_time;
+
+        QueuedEvent(int type, EventObject event, long time)
+        {
+            m_type = type;
+            m_event = event;
+            m_time = time;
+        }
+    }
+
+    /**
+     * Snapshot of the delivery statistics of a listener. Latencies are
+     * measured from the time an event is fired until the listener has
+     * returned from processing it.
+    **/
+    static class ListenerMetrics
+    {
+        private final Bundle m_bundle;
+        private final EventListener m_listener;
+        private final int m_queueDepth;
+        private final long m_delivered;
+        private final long m_totalLatency;
+        private final long m_maxLatency;
+
+        ListenerMetrics(Bundle bundle, EventListener listener, int queueDepth,
+            long delivered, long totalLatency, long maxLatency)
+        {
+            m_bundle = bundle;
+            m_listener = listener;
+            m_queueDepth = queueDepth;
+            m_delivered = delivered;
+            m_totalLatency = totalLatency;
+            m_maxLatency = maxLatency;
+        }
+
+        Bundle getBundle()
+        {
+            return m_bundle;
+        }
+
+        EventListener getListener()
+        {
+            return m_listener;
+        }
+
+        int getQueueDepth()
+        {
+            return m_queueDepth;
+        }
+
+        long getDeliveredCount()
+        {
+            return m_delivered;
+        }
+
+        long getAverageLatencyNanos()
+        {
+            return (m_delivered == 0) ? 0 : m_totalLatency / m_delivered;
+        }
+
+        long getMaxLatencyNanos()
+        {
+            return m_maxLatency;
+        }
+    }
+
     private static class Request
     {
         public static final int FRAMEWORK_EVENT = 0;
@@ -49,13 +49,23 @@ import java.util.StringTokenizer;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.felix.framework.BundleWiringImpl.BundleClassLoader;
 import org.apache.felix.framework.ServiceRegistry.ServiceRegistryCallbacks;
 import org.apache.felix.framework.cache.BundleArchive;
 import org.apache.felix.framework.cache.BundleCache;
 import org.apache.felix.framework.capabilityset.CapabilitySet;
-import org.apache.felix.framework.capabilityset.SimpleFilter;
 import org.apache.felix.framework.ext.SecurityProvider;
 import org.apache.felix.framework.util.FelixConstants;
 import org.apache.felix.framework.util.ListenerInfo;
@@ -79,7 +89,6 @@ import org.osgi.framework.Constants;
 import org.osgi.framework.Filter;
 import org.osgi.framework.FrameworkEvent;
 import org.osgi.framework.FrameworkListener;
-import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.PackagePermission;
 import org.osgi.framework.ServiceEvent;
@@ -171,6 +180,10 @@ public class Felix extends BundleImpl implements Framework
     // Keep track of bundles currently being processed by start level thread.
     private final SortedSet<StartLevelTuple> m_startLevelBundles =
         new TreeSet<StartLevelTuple>();
+    // Marks the start level thread and the threads it starts the bundles of
+    // a start level on, which start bundles synchronously instead of adding
+    // them to the start level bundle queue.
+    private final ThreadLocal<Boolean> m_isStartLevelThread = new ThreadLocal<Boolean>();
 
     // Local bundle cache.
     private BundleCache m_cache = null;
@@ -184,9 +197,13 @@ public class Felix extends BundleImpl implements Framework
 
     // Service registry.
     private final ServiceRegistry m_registry;
+    // Results of service lookups for an unchanged service registry.
+    private final ServiceReferenceCache m_lookupCache;
 
     // List of event listeners.
     private final EventDispatcher m_dispatcher;
+    // Periodically logs the framework metrics, if configured.
+    private volatile ScheduledExecutorService m_metricsExecutor = null;
 
     // Reusable bundle URL stream handler.
     private final URLStreamHandler m_bundleStreamHandler;
@@ -419,6 +436,7 @@ public class Felix extends BundleImpl implements Framework
                 fireServiceEvent(event, oldProps);
             }
         });
+        m_lookupCache = new ServiceReferenceCache(m_registry);
 
         // Create a resolver and its state.
         m_resolver = new StatefulResolver(this, m_registry);
@@ -438,7 +456,20 @@ public class Felix extends BundleImpl implements Framework
         }
 
         // Create event dispatcher.
-        m_dispatcher = new EventDispatcher(m_logger, m_registry);
+        int dispatcherParallelism = 0;
+        String str = (String) m_configMap.get(FelixConstants.DISPATCHER_PARALLELISM);
+        if (str != null)
+        {
+            try
+            {
+                dispatcherParallelism = Integer.parseInt(str);
+            }
+            catch (NumberFormatException e)
+            {
+                // Ignore
+            }
+        }
+        m_dispatcher = new EventDispatcher(m_logger, m_registry, dispatcherParallelism);
 
         // Create framework wiring object.
         m_fwkWiring = new FrameworkWiringImpl(this, m_registry);
@@ -679,6 +710,7 @@ public class Felix extends BundleImpl implements Framework
 
                 // Initialize event dispatcher.
                 m_dispatcher.startDispatching();
+                startMetricsLogging();
 
                 // Create the bundle cache, if necessary, so that we can reload any
                 // installed bundles.
@@ -716,6 +748,12 @@ public class Felix extends BundleImpl implements Framework
                     }
                 }
 
+                // Load the wires of the previous session, if enabled.
+                if (m_resolver.isResolutionCacheEnabled())
+                {
+                    m_resolver.loadResolutionCache(getResolutionCacheFile());
+                }
+
                 // Initialize installed bundle data structures.
                 Map[] maps = new Map[] {
                     new HashMap<String, BundleImpl>(1),
@@ -846,6 +884,7 @@ public class Felix extends BundleImpl implements Framework
                 }
                 catch (Throwable ex)
                 {
+                    stopMetricsLogging();
                     m_dispatcher.stopDispatching();
                     m_logger.log(Logger.LOG_ERROR, "Unable to start system bundle.", ex);
                     throw new RuntimeException("Unable to start system bundle.");
@@ -1191,6 +1230,28 @@ public class Felix extends BundleImpl implements Framework
         return getSymbolicName() + " [" + getBundleId() +"]";
     }
 
+    /**
+     * Writes the bundle state changed by the current operation to the
+     * bundle cache. Archive setters only buffer their changes, so that an
+     * operation is synced once however many changes it makes.
+    **/
+    void flushBundleCache()
+    {
+        BundleCache cache = m_cache;
+        if (cache != null)
+        {
+            try
+            {
+                cache.flush();
+            }
+            catch (Exception ex)
+            {
+                m_logger.log(Logger.LOG_ERROR,
+                    "Error writing bundle state to the bundle cache.", ex);
+            }
+        }
+    }
+
     /**
      * Returns the active start level of the framework; this method
      * implements functionality for the Start Level service.
@@ -1288,126 +1349,87 @@ public class Felix extends BundleImpl implements Framework
             int high = (isLowering) ? m_activeStartLevel : m_targetStartLevel;
             m_activeStartLevel = (isLowering) ? high : low;
 
-            // Process bundles and stop or start them accordingly.
-            while (bundlesRemaining)
-            {
-                StartLevelTuple tuple;
+            // Bundles are only started in parallel, stopping them
+            // always happens in order.
+            ExecutorService executor = (isLowering) ? null : createStartLevelExecutor();
 
-                // Remove our tuple to be processed while holding the queue lock
-                // and update the active start level accordingly, which allows
-                // us to determine in startBundle() if concurrent requests to
-                // start a bundle should be handled synchronously or just added
-                // to the queue and handled asynchronously.
-                synchronized (m_startLevelBundles)
+            try
+            {
+                // Process bundles and stop or start them accordingly.
+                while (bundlesRemaining)
                 {
-                    if (isLowering)
-                    {
-                        tuple = m_startLevelBundles.last();
-                    }
-                    else
-                    {
-                        tuple = m_startLevelBundles.first();
-                    }
+                    StartLevelTuple tuple;
 
-                    if ((tuple.m_level >= low) && (tuple.m_level <= high))
+                    // Remove our tuple to be processed while holding the queue lock
+                    // and update the active start level accordingly, which allows
+                    // us to determine in startBundle() if concurrent requests to
+                    // start a bundle should be handled synchronously or just added
+                    // to the queue and handled asynchronously.
+                    synchronized (m_startLevelBundles)
                     {
-                        m_activeStartLevel = tuple.m_level;
-                    }
-                }
-
-                // Ignore the system bundle, since its start() and
-                // stop() methods get called explicitly in Felix.start()
-                // and Felix.stop(), respectively.
-                if (tuple.m_bundle.getBundleId() != 0)
-                {
-                    // Lock the current bundle.
-                    try
-                    {
-                        acquireBundleLock(tuple.m_bundle,
-                            Bundle.INSTALLED | Bundle.RESOLVED | Bundle.ACTIVE
-                            | Bundle.STARTING | Bundle.STOPPING);
-                    }
-                    catch (IllegalStateException ex)
-                    {
-                        // Ignore if the bundle has been uninstalled.
-                        if (tuple.m_bundle.getState() != Bundle.UNINSTALLED)
+                        if (isLowering)
                         {
-                            fireFrameworkEvent(FrameworkEvent.ERROR, tuple.m_bundle, ex);
-                            m_logger.log(tuple.m_bundle,
-                                Logger.LOG_ERROR,
-                                "Error locking " + tuple.m_bundle._getLocation(), ex);
+                            tuple = m_startLevelBundles.last();
                         }
                         else
                         {
-                            synchronized (m_startLevelBundles)
-                            {
-                                m_startLevelBundles.remove(tuple);
-                                bundlesRemaining = !m_startLevelBundles.isEmpty();
-                            }
+                            tuple = m_startLevelBundles.first();
+                        }
+
+                        if ((tuple.m_level >= low) && (tuple.m_level <= high))
+                        {
+                            m_activeStartLevel = tuple.m_level;
                         }
-                        continue;
                     }
 
-                    try
+                    // When raising the start level in parallel, start all
+                    // bundles of the level at once and wait for all of them
+                    // before moving on to the next level.
+                    if ((executor != null) && (tuple.m_level >= low) && (tuple.m_level <= high))
                     {
-                        // Start the bundle if necessary.
-                        // Note that we only attempt to start the bundle if
-                        // its start level is equal to the active start level,
-                        // which means we assume lower bundles are in the state
-                        // they should be in (i.e., we won't attempt to restart
-                        // them if they previously failed to start).
-                        if (!isLowering
-                            && (((tuple.m_bundle.getPersistentState() == Bundle.ACTIVE)
-                                || (tuple.m_bundle.getPersistentState() == Bundle.STARTING))
-                                && (tuple.m_level == m_activeStartLevel)))
+                        List<StartLevelTuple> level = new ArrayList<StartLevelTuple>();
+                        synchronized (m_startLevelBundles)
                         {
-                            try
-                            {
-// TODO: LAZY - Not sure if this is the best way...
-                                int options = Bundle.START_TRANSIENT;
-                                options = (tuple.m_bundle.getPersistentState() == Bundle.STARTING)
-                                    ? options | Bundle.START_ACTIVATION_POLICY
-                                    : options;
-                                startBundle(tuple.m_bundle, options);
-                            }
-                            catch (Throwable th)
+                            for (StartLevelTuple t : m_startLevelBundles)
                             {
-                                fireFrameworkEvent(FrameworkEvent.ERROR, tuple.m_bundle, th);
-                                m_logger.log(tuple.m_bundle,
-                                    Logger.LOG_ERROR,
-                                    "Error starting " + tuple.m_bundle._getLocation(), th);
+                                if (t.m_level == tuple.m_level)
+                                {
+                                    level.add(t);
+                                }
+                                else if (t.m_level > tuple.m_level)
+                                {
+                                    break;
+                                }
                             }
                         }
-                        // Stop the bundle if necessary.
-                        else if (isLowering
-                            && (((tuple.m_bundle.getState() == Bundle.ACTIVE)
-                                || (tuple.m_bundle.getState() == Bundle.STARTING))
-                                && (tuple.m_level == m_activeStartLevel)))
+                        // Like in the sequential case, tuples whose bundle
+                        // could not be locked stay queued to be processed again.
+                        level.removeAll(processStartLevelTuples(level, executor));
+                        synchronized (m_startLevelBundles)
                         {
-                            try
-                            {
-                                stopBundle(tuple.m_bundle, false);
-                            }
-                            catch (Throwable th)
-                            {
-                                fireFrameworkEvent(FrameworkEvent.ERROR, tuple.m_bundle, th);
-                                m_logger.log(tuple.m_bundle,
-                                    Logger.LOG_ERROR,
-                                    "Error stopping " + tuple.m_bundle._getLocation(), th);
-                            }
+                            m_startLevelBundles.removeAll(level);
+                            bundlesRemaining = !m_startLevelBundles.isEmpty();
                         }
+                        continue;
                     }
-                    finally
+
+                    if (!processStartLevelTuple(tuple, isLowering))
                     {
-                        // Always release bundle lock.
-                        releaseBundleLock(tuple.m_bundle);
+                        continue;
                     }
-                }
 
-                synchronized (m_startLevelBundles)
+                    synchronized (m_startLevelBundles)
+                    {
+                        m_startLevelBundles.remove(tuple);
+                        bundlesRemaining = !m_startLevelBundles.isEmpty();
+                    }
+                }
+            }
+            finally
+            {
+                if (executor != null)
                 {
-                    m_startLevelBundles.remove(tuple);
-                    bundlesRemaining = !m_startLevelBundles.isEmpty();
+                    executor.shutdown();
                 }
             }
 
@@ -1438,6 +1460,299 @@ public class Felix extends BundleImpl implements Framework
         }
     }
 
+    /**
+     * Starts or stops the bundle of a tuple taken from the start level
+     * bundle queue, as needed for the active start level.
+     * @return <tt>false</tt> if the bundle could not be locked and the tuple
+     *         should be processed again, <tt>true</tt> otherwise.
+    **/
+    private boolean processStartLevelTuple(StartLevelTuple tuple, boolean isLowering)
+    {
+        // Ignore the system bundle, since its start() and
+        // stop() methods get called explicitly in Felix.start()
+        // and Felix.stop(), respectively.
+        if (tuple.m_bundle.getBundleId() != 0)
+        {
+            // Lock the current bundle.
+            try
+            {
+                acquireBundleLock(tuple.m_bundle,
+                    Bundle.INSTALLED | Bundle.RESOLVED | Bundle.ACTIVE
+                    | Bundle.STARTING | Bundle.STOPPING);
+            }
+            catch (IllegalStateException ex)
+            {
+                // Ignore if the bundle has been uninstalled.
+                if (tuple.m_bundle.getState() != Bundle.UNINSTALLED)
+                {
+                    fireFrameworkEvent(FrameworkEvent.ERROR, tuple.m_bundle, ex);
+                    m_logger.log(tuple.m_bundle,
+                        Logger.LOG_ERROR,
+                        "Error locking " + tuple.m_bundle._getLocation(), ex);
+                }
+                else
+                {
+                    return true;
+                }
+                return false;
+            }
+
+            try
+            {
+                // Start the bundle if necessary.
+                // Note that we only attempt to start the bundle if
+                // its start level is equal to the active start level,
+                // which means we assume lower bundles are in the state
+                // they should be in (i.e., we won't attempt to restart
+                // them if they previously failed to start).
+                if (!isLowering
+                    && (((tuple.m_bundle.getPersistentState() == Bundle.ACTIVE)
+                        || (tuple.m_bundle.getPersistentState() == Bundle.STARTING))
+                        && (tuple.m_level == m_activeStartLevel)))
+                {
+                    try
+                    {
+// TODO: LAZY - Not sure if this is the best way...
+                        int options = Bundle.START_TRANSIENT;
+                        options = (tuple.m_bundle.getPersistentState() == Bundle.STARTING)
+                            ? options | Bundle.START_ACTIVATION_POLICY
+                            : options;
+                        startBundle(tuple.m_bundle, options);
+                    }
+                    catch (Throwable th)
+                    {
+                        fireFrameworkEvent(FrameworkEvent.ERROR, tuple.m_bundle, th);
+                        m_logger.log(tuple.m_bundle,
+                            Logger.LOG_ERROR,
+                            "Error starting " + tuple.m_bundle._getLocation(), th);
+                    }
+                }
+                // Stop the bundle if necessary.
+                else if (isLowering
+                    && (((tuple.m_bundle.getState() == Bundle.ACTIVE)
+                        || (tuple.m_bundle.getState() == Bundle.STARTING))
+                        && (tuple.m_level == m_activeStartLevel)))
+                {
+                    try
+                    {
+                        stopBundle(tuple.m_bundle, false);
+                    }
+                    catch (Throwable th)
+                    {
+                        fireFrameworkEvent(FrameworkEvent.ERROR, tuple.m_bundle, th);
+                        m_logger.log(tuple.m_bundle,
+                            Logger.LOG_ERROR,
+                            "Error stopping " + tuple.m_bundle._getLocation(), th);
+                    }
+                }
+            }
+            finally
+            {
+                // Always release bundle lock.
+                releaseBundleLock(tuple.m_bundle);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Processes the tuples of one start level on the given executor and
+     * waits until all of them are done, even if the calling thread is
+     * interrupted, since the level must not be left while its bundles are
+     * still starting. An interrupt is preserved for the caller.
+     * @return the tuples whose bundle could not be locked and which should
+     *         be processed again.
+    **/
+    private List<StartLevelTuple> processStartLevelTuples(
+        List<StartLevelTuple> tuples, ExecutorService executor)
+    {
+        List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(tuples.size());
+        for (final StartLevelTuple tuple : tuples)
+        {
+            futures.add(executor.submit(new Callable<Boolean>()
+            {
+                public Boolean call()
+                {
+                    return processStartLevelTuple(tuple, false);
+                }
+            }));
+        }
+        List<StartLevelTuple> retry = new ArrayList<StartLevelTuple>();
+        boolean interrupted = false;
+        for (int i = 0; i < futures.size(); i++)
+        {
+            boolean done = false;
+            while (!done)
+            {
+                try
+                {
+                    if (!futures.get(i).get().booleanValue())
+                    {
+                        retry.add(tuples.get(i));
+                    }
+                    done = true;
+                }
+                catch (InterruptedException ex)
+                {
+                    interrupted = true;
+                }
+                catch (ExecutionException ex)
+                {
+                    m_logger.log(Logger.LOG_ERROR,
+                        "Unexpected problem processing start level bundle.", ex.getCause());
+                    done = true;
+                }
+            }
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+        return retry;
+    }
+
+    /**
+     * Returns the executor starting the bundles of a start level in parallel,
+     * or <tt>null</tt> if they are started one after the other, which is the
+     * default.
+    **/
+    private ExecutorService createStartLevelExecutor()
+    {
+        String str = (String) m_configMap.get(FelixConstants.STARTLEVEL_PARALLELISM);
+        int parallelism = 1;
+        if (str != null)
+        {
+            try
+            {
+                parallelism = Integer.parseInt(str);
+            }
+            catch (NumberFormatException e)
+            {
+                // Ignore
+            }
+        }
+        if (parallelism <= 1)
+        {
+            return null;
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                parallelism, parallelism,
+                60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory()
+                {
+                    private final AtomicInteger m_count = new AtomicInteger();
+
+                    public Thread newThread(final Runnable r)
+                    {
+                        Thread t = new Thread(new Runnable()
+                        {
+                            public void run()
+                            {
+                                markStartLevelThread();
+                                r.run();
+                            }
+                        }, FrameworkStartLevelImpl.THREAD_NAME + "-" + m_count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Starts logging the framework metrics every
+     * <tt>felix.metrics.log.interval</tt> milliseconds at the level given by
+     * <tt>felix.metrics.log.level</tt>, which defaults to debug. Nothing is
+     * logged if no interval is configured, which is the default.
+    **/
+    private void startMetricsLogging()
+    {
+        long interval = 0;
+        String str = (String) m_configMap.get(FelixConstants.METRICS_LOG_INTERVAL);
+        if (str != null)
+        {
+            try
+            {
+                interval = Long.parseLong(str);
+            }
+            catch (NumberFormatException e)
+            {
+                // Ignore
+            }
+        }
+        if ((interval <= 0) || (m_metricsExecutor != null))
+        {
+            return;
+        }
+        int level = Logger.LOG_DEBUG;
+        str = (String) m_configMap.get(FelixConstants.METRICS_LOG_LEVEL);
+        if (str != null)
+        {
+            try
+            {
+                level = Integer.parseInt(str);
+            }
+            catch (NumberFormatException e)
+            {
+                // Ignore
+            }
+        }
+        final int metricsLevel = level;
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactory()
+                {
+                    public Thread newThread(Runnable r)
+                    {
+                        Thread t = new Thread(r, "FelixMetrics");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        executor.scheduleWithFixedDelay(new Runnable()
+        {
+            public void run()
+            {
+                logMetrics(metricsLevel);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+        m_metricsExecutor = executor;
+    }
+
+    private void stopMetricsLogging()
+    {
+        ScheduledExecutorService executor = m_metricsExecutor;
+        m_metricsExecutor = null;
+        if (executor != null)
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Logs the queue depth and listener latencies of the event dispatcher,
+     * and the hits and misses of the service lookup cache, at the given
+     * level.
+    **/
+    void logMetrics(int level)
+    {
+        m_dispatcher.logMetrics(level);
+        m_logger.log(level, "Service lookup cache had "
+            + m_lookupCache.getHitCount() + " hits and "
+            + m_lookupCache.getMissCount() + " misses.");
+    }
+
+    /**
+     * Marks the current thread as one that processes the start level
+     * bundle queue, so that startBundle() starts bundles synchronously
+     * on it instead of queuing them.
+    **/
+    void markStartLevelThread()
+    {
+        m_isStartLevelThread.set(Boolean.TRUE);
+    }
+
     /**
      * Returns the start level into which newly installed bundles will
      * be placed by default; this method implements functionality for
@@ -1996,6 +2311,7 @@ public class Felix extends BundleImpl implements Framework
                 {
                     bundle.setPersistentStateActive();
                 }
+                flushBundleCache();
             }
 
             // Check to see if the bundle's start level is greater than the
@@ -2026,7 +2342,7 @@ public class Felix extends BundleImpl implements Framework
             // queued but processed synchronously.
             // Note: Don't queue starts from the start level thread, otherwise
             // we'd never get anything started.
-            if (!Thread.currentThread().getName().equals(FrameworkStartLevelImpl.THREAD_NAME))
+            if (m_isStartLevelThread.get() == null)
             {
                 synchronized (m_startLevelBundles)
                 {
@@ -2420,6 +2736,7 @@ public class Felix extends BundleImpl implements Framework
             if (rethrow == null)
             {
                 bundle.setLastModified(System.currentTimeMillis());
+                flushBundleCache();
 
                 if (!bundle.isExtension())
                 {
@@ -2473,6 +2790,7 @@ public class Felix extends BundleImpl implements Framework
                 && Util.isFragment(bundle.adapt(BundleRevision.class)))
             {
                 bundle.setPersistentStateInactive();
+                flushBundleCache();
                 m_logger.log(bundle, Logger.LOG_WARNING,
                     "Previously active bundle was updated to a fragment, resetting state to inactive: "
                     + bundle);
@@ -2550,6 +2868,7 @@ public class Felix extends BundleImpl implements Framework
             if (record)
             {
                 bundle.setPersistentStateInactive();
+                flushBundleCache();
             }
 
             // If the bundle is not persistently started, then we
@@ -2769,6 +3088,7 @@ public class Felix extends BundleImpl implements Framework
             // Set state to uninstalled.
             setBundleStateAndNotify(bundle, Bundle.UNINSTALLED);
             bundle.setLastModified(System.currentTimeMillis());
+            flushBundleCache();
         }
         finally
         {
@@ -3355,11 +3675,17 @@ public class Felix extends BundleImpl implements Framework
         throws InvalidSyntaxException
     {
         Filter oldFilter;
-        Filter newFilter = (f == null) ? null : FrameworkUtil.createFilter(f);
+        Filter newFilter = (f == null) ? null : new FilterImpl(f);
 
         oldFilter = m_dispatcher.addListener(
             bundle._getBundleContext(), ServiceListener.class, l, newFilter);
 
+        // Nothing more to do if there are no listener hooks to tell.
+        if (!getHookRegistry().hasHooks(org.osgi.framework.hooks.service.ListenerHook.class))
+        {
+            return;
+        }
+
         // Invoke ListenerHook.removed() if filter updated.
         Set<ServiceReference<org.osgi.framework.hooks.service.ListenerHook>> listenerHooks =
                 getHookRegistry().getHooks(org.osgi.framework.hooks.service.ListenerHook.class);
@@ -3429,7 +3755,8 @@ public class Felix extends BundleImpl implements Framework
             m_dispatcher.removeListener(
                 bundle._getBundleContext(), ServiceListener.class, l);
 
-        if (listener != null)
+        if ((listener != null)
+            && getHookRegistry().hasHooks(org.osgi.framework.hooks.service.ListenerHook.class))
         {
             // Invoke the ListenerHook.removed() on all hooks.
             Set<ServiceReference<org.osgi.framework.hooks.service.ListenerHook>> listenerHooks =
@@ -3566,22 +3893,9 @@ public class Felix extends BundleImpl implements Framework
         final String expr, final boolean checkAssignable)
         throws InvalidSyntaxException
     {
-        // Define filter if expression is not null.
-        SimpleFilter filter = null;
-        if (expr != null)
-        {
-            try
-            {
-                filter = SimpleFilter.parse(expr);
-            }
-            catch (Exception ex)
-            {
-                throw new InvalidSyntaxException(ex.getMessage(), expr);
-            }
-        }
-
-        // Ask the service registry for all matching service references.
-        final Collection refList = m_registry.getServiceReferences(className, filter);
+        // Ask the service registry for all matching service references;
+        // the lookup is cached as long as the registry is unchanged.
+        final Collection refList = m_lookupCache.getServiceReferences(className, expr);
 
         // Filter on assignable references
         if (checkAssignable)
@@ -3599,8 +3913,11 @@ public class Felix extends BundleImpl implements Framework
             }
         }
 
-        // If the requesting bundle is the system bundle, ignore the effects of the findhooks
-        Collection resRefList = (bundle == this ? new ArrayList(refList) : refList);
+        // If the requesting bundle is the system bundle, ignore the effects of the findhooks;
+        // without find hooks there are no effects to ignore.
+        Collection resRefList = ((bundle == this)
+            && getHookRegistry().hasHooks(org.osgi.framework.hooks.service.FindHook.class))
+            ? new ArrayList(refList) : refList;
 
         // activate findhooks
         Set<ServiceReference<org.osgi.framework.hooks.service.FindHook>> findHooks =
@@ -3746,6 +4063,11 @@ public class Felix extends BundleImpl implements Framework
         return m_registry.getHookRegistry();
     }
 
+    ServiceReferenceCache getServiceReferenceCache()
+    {
+        return m_lookupCache;
+    }
+
     //
     // PackageAdmin related methods.
     //
@@ -4721,6 +5043,23 @@ public class Felix extends BundleImpl implements Framework
     // Private utility methods.
     //
 
+    /**
+     * Returns the file storing the resolution cache or <tt>null</tt> if it
+     * cannot be accessed.
+    **/
+    private File getResolutionCacheFile()
+    {
+        try
+        {
+            return m_cache.getSystemBundleDataFile(ResolutionCache.CACHE_FILE_NAME);
+        }
+        catch (Exception ex)
+        {
+            m_logger.log(Logger.LOG_WARNING, "Unable to access resolution cache.", ex);
+            return null;
+        }
+    }
+
     /**
      * Generated the next valid bundle identifier.
     **/
@@ -4872,7 +5211,8 @@ public class Felix extends BundleImpl implements Framework
             // Stop framework start level thread.
             m_fwkStartLevel.stop();
 
-            // Shutdown event dispatching queue.
+            // Stop logging metrics and shutdown event dispatching queue.
+            stopMetricsLogging();
             m_dispatcher.stopDispatching();
 
             // Since there may be updated and uninstalled bundles that
@@ -4917,6 +5257,13 @@ public class Felix extends BundleImpl implements Framework
                 }
             }
 
+            // Persist the wires of the remaining revisions, if enabled.
+            // The system bundle data area is only created if it is needed.
+            if (m_resolver.isResolutionCacheEnabled())
+            {
+                m_resolver.saveResolutionCache(getResolutionCacheFile());
+            }
+
             // Dispose of the bundles to close their associated contents.
             bundles = getBundles();
             for (int i = 0; i < bundles.length; i++)
@@ -240,6 +240,7 @@ class FrameworkStartLevelImpl implements FrameworkStartLevel, Runnable
                 startThread();
                 // Synchronously persists the start level.
                 m_bundle.setStartLevel(startlevel);
+                m_felix.flushBundleCache();
                 // Queue request.
                 m_requestListeners.add(null);
                 m_requests.add(new Object[] { m_bundle, new Integer(startlevel) });
@@ -260,6 +261,8 @@ class FrameworkStartLevelImpl implements FrameworkStartLevel, Runnable
 
     public void run()
     {
+        m_felix.markStartLevelThread();
+
         // This thread loops forever, thus it should
         // be a daemon thread.
         Object previousRequest = null;
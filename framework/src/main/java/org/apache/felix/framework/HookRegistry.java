@@ -20,6 +20,7 @@ package org.apache.felix.framework;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
@@ -65,6 +66,13 @@ public class HookRegistry
     private final WeakHashMap<ServiceReference<?>, ServiceReference<?>> m_blackList =
             new WeakHashMap<ServiceReference<?>, ServiceReference<?>>();
 
+    /**
+     * Snapshot of the names of the hook classes that have at least one hook,
+     * replaced whenever hooks are added or removed. While it is empty, callers
+     * can skip all hook processing without allocating anything.
+     */
+    private volatile Set<String> m_registered = Collections.emptySet();
+
 
     static boolean isHook(final String[] classNames, final Class<?> hookClass, final Object svcObj)
     {
@@ -133,6 +141,7 @@ public class HookRegistry
                     }
                     hooks.add(ref);
                     m_allHooks.put(serviceName, hooks);
+                    updateRegistered();
                 }
             }
         }
@@ -144,6 +153,11 @@ public class HookRegistry
      */
     public void updateHooks(final ServiceReference<?> ref)
     {
+        if (m_registered.isEmpty())
+        {
+            return;
+        }
+
         // We maintain the hooks sorted, so if ranking has changed for example,
         // we need to ensure the order remains correct by resorting the hooks.
         final Object svcObj = ((ServiceRegistrationImpl.ServiceReferenceImpl) ref)
@@ -177,6 +191,12 @@ public class HookRegistry
      */
     public void removeHooks(final ServiceReference<?> ref)
     {
+        // Only hooks can be black listed, so there is nothing to clean up.
+        if (m_registered.isEmpty())
+        {
+            return;
+        }
+
         final Object svcObj = ((ServiceRegistrationImpl.ServiceReferenceImpl) ref)
             .getRegistration().getService();
         final String [] classNames = (String[]) ref.getProperty(Constants.OBJECTCLASS);
@@ -192,7 +212,15 @@ public class HookRegistry
                     {
                         hooks = new TreeSet<ServiceReference<?>>(hooks);
                         hooks.remove(ref);
-                        m_allHooks.put(serviceName, hooks);
+                        if (hooks.isEmpty())
+                        {
+                            m_allHooks.remove(serviceName);
+                        }
+                        else
+                        {
+                            m_allHooks.put(serviceName, hooks);
+                        }
+                        updateRegistered();
                     }
                 }
             }
@@ -203,6 +231,32 @@ public class HookRegistry
         }
     }
 
+    // Must be called while holding the m_allHooks lock.
+    private void updateRegistered()
+    {
+        final Set<String> registered = new HashSet<String>();
+        for (final Map.Entry<String, SortedSet<ServiceReference<?>>> entry : m_allHooks.entrySet())
+        {
+            if (!entry.getValue().isEmpty())
+            {
+                registered.add(entry.getKey());
+            }
+        }
+        m_registered = registered.isEmpty()
+            ? Collections.<String>emptySet() : Collections.unmodifiableSet(registered);
+    }
+
+    /**
+     * Check whether there is at least one hook of the given type
+     * @param hookClass The hook class
+     * @return {@code true} if there are hooks of this type
+     */
+    public boolean hasHooks(final Class<?> hookClass)
+    {
+        final Set<String> registered = m_registered;
+        return !registered.isEmpty() && registered.contains(hookClass.getName());
+    }
+
     /**
      * Return the sorted set of hooks
      * @param hookClass The hook class
@@ -211,6 +265,10 @@ public class HookRegistry
     @SuppressWarnings({ "unchecked", "rawtypes" })
     public <S> Set<ServiceReference<S>> getHooks(final Class<S> hookClass)
     {
+        if (!hasHooks(hookClass))
+        {
+            return Collections.emptySet();
+        }
         final Set<ServiceReference<?>> hooks = m_allHooks.get(hookClass.getName());
         if (hooks != null)
         {
@@ -0,0 +1,737 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.felix.framework.util.Util;
+import org.apache.felix.framework.wiring.BundleRequirementImpl;
+import org.apache.felix.framework.wiring.BundleWireImpl;
+import org.osgi.framework.Constants;
+import org.osgi.framework.namespace.AbstractWiringNamespace;
+import org.osgi.framework.wiring.BundleCapability;
+import org.osgi.framework.wiring.BundleRequirement;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.resource.Namespace;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+
+/**
+ * Persistent snapshot of the wires computed by the resolver. Each resolved
+ * revision is recorded together with a hash of its manifest and of the
+ * system bundle capabilities. On a later start, revisions whose inputs are
+ * unchanged, and whose providers are either resolved or can themselves be
+ * restored, get their wires straight from the snapshot instead of going
+ * through the resolver. Everything else falls back to a normal resolve.
+ * <p>
+ * A restored wiring was consistent when it was computed, so it stays
+ * consistent as long as its inputs and the inputs of its providers are
+ * unchanged. The candidates of every wired requirement are recorded as well,
+ * so that installing or removing a matching capability, for example a
+ * higher version of an exported package, makes the requirer and everything
+ * depending on it resolve normally again. Requirements that could pick up
+ * new providers (optional or multiple cardinality ones) are rechecked, as
+ * are fragments that might now attach to a host.
+ * <p>
+ * This class is not thread safe; it is only used while the global lock
+ * is held or during framework shutdown.
+**/
+class ResolutionCache
+{
+    static final String CACHE_FILE_NAME = "resolver.cache";
+    private static final int FORMAT_VERSION = 2;
+
+    private final Logger m_logger;
+    private final Map<String, CachedRevision> m_entries =
+        new HashMap<String, CachedRevision>();
+    private String m_configHash;
+    private boolean m_modified;
+
+    ResolutionCache(Logger logger)
+    {
+        m_logger = logger;
+    }
+
+    void load(File file)
+    {
+        m_entries.clear();
+        m_configHash = null;
+        m_modified = false;
+        if ((file == null) || !Felix.m_secureAction.fileExists(file))
+        {
+            return;
+        }
+
+        InputStream is = null;
+        try
+        {
+            is = new BufferedInputStream(Felix.m_secureAction.getFileInputStream(file));
+            DataInputStream in = new DataInputStream(is);
+            if (in.readInt() != FORMAT_VERSION)
+            {
+                return;
+            }
+            m_configHash = in.readUTF();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++)
+            {
+                CachedRevision entry = CachedRevision.read(in);
+                m_entries.put(entry.m_id, entry);
+            }
+        }
+        catch (Exception ex)
+        {
+            // A broken snapshot only costs a full resolve.
+            m_entries.clear();
+            m_logger.log(Logger.LOG_WARNING, "Unable to read resolution cache.", ex);
+        }
+        finally
+        {
+            try
+            {
+                if (is != null) is.close();
+            }
+            catch (Exception ex)
+            {
+                // Ignore.
+            }
+        }
+    }
+
+    /**
+     * Writes the snapshot, dropping entries of revisions that are no
+     * longer installed.
+    **/
+    void save(File file, Collection<BundleRevision> installed)
+    {
+        Set<String> ids = new HashSet<String>();
+        for (BundleRevision br : installed)
+        {
+            ids.add(((BundleRevisionImpl) br).getId());
+        }
+        if (m_entries.keySet().retainAll(ids))
+        {
+            m_modified = true;
+        }
+        if ((file == null) || !m_modified || (m_configHash == null))
+        {
+            return;
+        }
+
+        OutputStream os = null;
+        try
+        {
+            os = new BufferedOutputStream(Felix.m_secureAction.getFileOutputStream(file));
+            DataOutputStream out = new DataOutputStream(os);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(m_configHash);
+            out.writeInt(m_entries.size());
+            for (CachedRevision entry : m_entries.values())
+            {
+                entry.write(out);
+            }
+            out.flush();
+            m_modified = false;
+        }
+        catch (Exception ex)
+        {
+            m_logger.log(Logger.LOG_WARNING, "Unable to write resolution cache.", ex);
+        }
+        finally
+        {
+            try
+            {
+                if (os != null) os.close();
+            }
+            catch (Exception ex)
+            {
+                // Ignore.
+            }
+        }
+    }
+
+    /**
+     * Records the wires of a completed resolve. Revisions whose wires
+     * cannot be expressed in terms of declared requirements and
+     * capabilities are not recorded.
+    **/
+    void record(
+        StatefulResolver state, BundleRevision systemRevision,
+        Map<Resource, List<Wire>> wireMap)
+    {
+        List<BundleRevisionImpl> hosts = new ArrayList<BundleRevisionImpl>();
+        for (Resource resource : wireMap.keySet())
+        {
+            if ((resource instanceof BundleRevisionImpl)
+                && !Util.isFragment(resource)
+                && (((BundleRevision) resource).getBundle().getBundleId() != 0))
+            {
+                hosts.add((BundleRevisionImpl) resource);
+            }
+        }
+        // The system bundle is resolved before extensions are added to it,
+        // so only look at its capabilities when there is something to record.
+        if (hosts.isEmpty())
+        {
+            return;
+        }
+        checkConfiguration(systemRevision);
+
+        Map<BundleRevision, List<String>> fragments = new HashMap<BundleRevision, List<String>>();
+        for (Entry<Resource, List<Wire>> entry : wireMap.entrySet())
+        {
+            if (Util.isFragment(entry.getKey()))
+            {
+                for (Wire wire : entry.getValue())
+                {
+                    List<String> list = fragments.get(wire.getProvider());
+                    if (list == null)
+                    {
+                        list = new ArrayList<String>();
+                        fragments.put((BundleRevision) wire.getProvider(), list);
+                    }
+                    list.add(((BundleRevisionImpl) wire.getRequirer()).getId());
+                }
+            }
+        }
+
+        for (BundleRevisionImpl revision : hosts)
+        {
+            CachedRevision cached = CachedRevision.create(
+                state, revision, fragments.get(revision), wireMap.get(revision));
+            if (cached != null)
+            {
+                m_entries.put(cached.m_id, cached);
+            }
+            else
+            {
+                m_entries.remove(revision.getId());
+            }
+            m_modified = true;
+        }
+    }
+
+    /**
+     * Restores the wiring of as many of the given revisions as possible.
+     * A revision is only restored together with every unresolved revision
+     * it depends on, so the returned map is always complete.
+     * @return the restored wires keyed by revision, possibly empty.
+    **/
+    Map<Resource, List<Wire>> replay(
+        StatefulResolver state, BundleRevision systemRevision,
+        Collection<BundleRevision> revisions)
+    {
+        Map<Resource, List<Wire>> result = new HashMap<Resource, List<Wire>>();
+        if (m_entries.isEmpty() || !checkConfiguration(systemRevision))
+        {
+            return result;
+        }
+
+        Replay replay = new Replay(state);
+        for (BundleRevision revision : revisions)
+        {
+            Map<Resource, List<Wire>> partial = new HashMap<Resource, List<Wire>>();
+            replay.m_done = result;
+            if (!Util.isFragment(revision) && replay.restore(revision, partial))
+            {
+                for (Entry<Resource, List<Wire>> entry : partial.entrySet())
+                {
+                    List<Wire> wires = result.get(entry.getKey());
+                    if (wires == null)
+                    {
+                        result.put(entry.getKey(), entry.getValue());
+                    }
+                    else
+                    {
+                        // Fragments attaching to several hosts.
+                        wires.addAll(entry.getValue());
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drops the snapshot if the system bundle capabilities, which reflect
+     * the framework configuration, no longer match it.
+     * @return <tt>true</tt> if the snapshot can be used.
+    **/
+    private boolean checkConfiguration(BundleRevision systemRevision)
+    {
+        List<String> caps = new ArrayList<String>();
+        for (BundleCapability cap : systemRevision.getDeclaredCapabilities(null))
+        {
+            caps.add(cap.getNamespace() + describe(cap.getAttributes())
+                + describe(cap.getDirectives()));
+        }
+        String hash = hash(caps);
+        if (!hash.equals(m_configHash))
+        {
+            if (!m_entries.isEmpty())
+            {
+                m_entries.clear();
+                m_modified = true;
+            }
+            m_configHash = hash;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Hashes the capabilities that can currently satisfy the given
+     * requirement, independent of the order they are found in.
+    **/
+    static String hashCandidates(StatefulResolver state, BundleRequirement req)
+    {
+        List<String> candidates = new ArrayList<String>();
+        for (BundleCapability cap : state.findProviders(req, true))
+        {
+            BundleRevision owner = cap.getRevision();
+            candidates.add((owner instanceof BundleRevisionImpl)
+                ? ((BundleRevisionImpl) owner).getId() + ':'
+                    + CachedRevision.indexOf(owner.getDeclaredCapabilities(null), cap)
+                : String.valueOf(cap));
+        }
+        Collections.sort(candidates);
+        return hash(candidates);
+    }
+
+    static String hashHeaders(BundleRevisionImpl revision)
+    {
+        Map<String, String> sorted = new TreeMap<String, String>();
+        for (Entry<String, Object> entry : revision.getHeaders().entrySet())
+        {
+            sorted.put(entry.getKey().toLowerCase(), String.valueOf(entry.getValue()));
+        }
+        return hash(Collections.singletonList(sorted.toString()));
+    }
+
+    /**
+     * Describes the given attributes or directives by value, in key order,
+     * so that the description is the same in every framework session.
+    **/
+    private static String describe(Map<String, ?> map)
+    {
+        Map<String, Object> sorted = new TreeMap<String, Object>();
+        for (Entry<String, ?> entry : map.entrySet())
+        {
+            Object value = entry.getValue();
+            sorted.put(entry.getKey(), (value instanceof Object[])
+                ? Arrays.asList((Object[]) value) : value);
+        }
+        return sorted.toString();
+    }
+
+    private static String hash(List<String> values)
+    {
+        try
+        {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            for (String value : values)
+            {
+                md.update(value.getBytes("UTF-8"));
+                md.update((byte) 0);
+            }
+            byte[] digest = md.digest();
+            StringBuffer sb = new StringBuffer(digest.length * 2);
+            for (int i = 0; i < digest.length; i++)
+            {
+                sb.append(Integer.toHexString((digest[i] >> 4) & 0xF));
+                sb.append(Integer.toHexString(digest[i] & 0xF));
+            }
+            return sb.toString();
+        }
+        catch (Exception ex)
+        {
+            // SHA-1 and UTF-8 are always available.
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * State of a single replay, so that revision lookups by identifier are
+     * only computed once.
+    **/
+    private class Replay
+    {
+        private final StatefulResolver m_state;
+        private final Map<String, BundleRevision> m_revisions =
+            new HashMap<String, BundleRevision>();
+        private final Set<BundleRevision> m_fragments;
+        private Map<Resource, List<Wire>> m_done;
+
+        Replay(StatefulResolver state)
+        {
+            m_state = state;
+            for (BundleRevision br : state.getRevisions())
+            {
+                m_revisions.put(((BundleRevisionImpl) br).getId(), br);
+            }
+            m_fragments = state.getFragments();
+        }
+
+        boolean restore(BundleRevision revision, Map<Resource, List<Wire>> partial)
+        {
+            if ((revision.getWiring() != null)
+                || partial.containsKey(revision)
+                || m_done.containsKey(revision))
+            {
+                return true;
+            }
+
+            CachedRevision cached = m_entries.get(((BundleRevisionImpl) revision).getId());
+            if ((cached == null)
+                || !cached.m_inputs.equals(hashHeaders((BundleRevisionImpl) revision))
+                || (Util.isSingleton(revision) && !m_state.isSelectedSingleton(revision)))
+            {
+                return false;
+            }
+
+            List<Wire> wires = new ArrayList<Wire>(cached.m_wires.size());
+            partial.put(revision, wires);
+
+            // Attach the same fragments as before and no others.
+            Map<String, BundleRevision> fragments = new HashMap<String, BundleRevision>();
+            for (int i = 0; i < cached.m_fragments.length; i++)
+            {
+                BundleRevision fragment = m_revisions.get(cached.m_fragments[i]);
+                if ((fragment == null) || !m_fragments.contains(fragment)
+                    || !cached.m_fragmentInputs[i].equals(hashHeaders((BundleRevisionImpl) fragment)))
+                {
+                    return false;
+                }
+                fragments.put(cached.m_fragments[i], fragment);
+            }
+            if (!attachFragments(revision, fragments, partial))
+            {
+                return false;
+            }
+
+            Set<BundleRequirement> wired = new HashSet<BundleRequirement>();
+            for (CachedWire cw : cached.m_wires)
+            {
+                BundleRevision reqOwner = cw.m_requirementOwner.equals(cached.m_id)
+                    ? revision : fragments.get(cw.m_requirementOwner);
+                BundleRevision provider = m_revisions.get(cw.m_provider);
+                BundleRevision capOwner = m_revisions.get(cw.m_capabilityOwner);
+                if ((reqOwner == null) || (provider == null) || (capOwner == null))
+                {
+                    return false;
+                }
+                BundleRequirement req = get(reqOwner.getDeclaredRequirements(null), cw.m_requirement);
+                BundleCapability cap = get(capOwner.getDeclaredCapabilities(null), cw.m_capability);
+                if ((req == null) || (cap == null)
+                    || !req.getNamespace().equals(cap.getNamespace())
+                    || !((BundleRequirementImpl) req).matches(cap)
+                    || !cw.m_candidates.equals(hashCandidates(m_state, req))
+                    || !restore(provider, partial))
+                {
+                    return false;
+                }
+                wires.add(new BundleWireImpl(revision, req, provider, cap));
+                wired.add(req);
+            }
+
+            // A fresh resolve could wire requirements that were left
+            // unsatisfied or add providers to multiple ones.
+            List<BundleRequirement> reqs = new ArrayList<BundleRequirement>(
+                revision.getDeclaredRequirements(null));
+            for (BundleRevision fragment : fragments.values())
+            {
+                for (BundleRequirement req : fragment.getDeclaredRequirements(null))
+                {
+                    if (!req.getNamespace().equals(BundleRevision.HOST_NAMESPACE))
+                    {
+                        reqs.add(req);
+                    }
+                }
+            }
+            for (BundleRequirement req : reqs)
+            {
+                if (!m_state.isEffective(req)
+                    || req.getNamespace().equals(BundleRevision.HOST_NAMESPACE))
+                {
+                    continue;
+                }
+                boolean multiple = Namespace.CARDINALITY_MULTIPLE.equals(
+                    req.getDirectives().get(Namespace.REQUIREMENT_CARDINALITY_DIRECTIVE));
+                if (wired.contains(req) && !multiple)
+                {
+                    continue;
+                }
+                if (!Constants.RESOLUTION_OPTIONAL.equals(
+                        req.getDirectives().get(Constants.RESOLUTION_DIRECTIVE))
+                    && !multiple)
+                {
+                    // Mandatory and unwired can only be a dynamic import.
+                    continue;
+                }
+                int count = 0;
+                for (Wire wire : wires)
+                {
+                    if (wire.getRequirement() == req)
+                    {
+                        count++;
+                    }
+                }
+                if (m_state.findProviders(req, true).size() != count)
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean attachFragments(
+            BundleRevision host, Map<String, BundleRevision> fragments,
+            Map<Resource, List<Wire>> partial)
+        {
+            BundleCapability hostCap = null;
+            for (BundleCapability cap : host.getDeclaredCapabilities(null))
+            {
+                if (cap.getNamespace().equals(BundleRevision.HOST_NAMESPACE))
+                {
+                    hostCap = cap;
+                    break;
+                }
+            }
+
+            for (BundleRevision fragment : m_fragments)
+            {
+                BundleRequirement hostReq = null;
+                for (BundleRequirement req : fragment.getDeclaredRequirements(null))
+                {
+                    if (req.getNamespace().equals(BundleRevision.HOST_NAMESPACE))
+                    {
+                        hostReq = req;
+                        break;
+                    }
+                }
+                boolean recorded = fragments.containsValue(fragment);
+                boolean matches = (hostCap != null) && (hostReq != null)
+                    && ((BundleRequirementImpl) hostReq).matches(hostCap);
+                if (recorded != matches)
+                {
+                    return false;
+                }
+                if (recorded)
+                {
+                    List<Wire> wires = partial.get(fragment);
+                    if (wires == null)
+                    {
+                        wires = new ArrayList<Wire>(1);
+                        partial.put(fragment, wires);
+                    }
+                    wires.add(new BundleWireImpl(fragment, hostReq, host, hostCap));
+                }
+            }
+            return true;
+        }
+    }
+
+    private static <T> T get(List<T> list, int idx)
+    {
+        return ((list != null) && (idx >= 0) && (idx < list.size())) ? list.get(idx) : null;
+    }
+
+    private static class CachedRevision
+    {
+        final String m_id;
+        final String m_inputs;
+        final String[] m_fragments;
+        final String[] m_fragmentInputs;
+        final List<CachedWire> m_wires;
+
+        CachedRevision(
+            String id, String inputs, String[] fragments, String[] fragmentInputs,
+            List<CachedWire> wires)
+        {
+            m_id = id;
+            m_inputs = inputs;
+            m_fragments = fragments;
+            m_fragmentInputs = fragmentInputs;
+            m_wires = wires;
+        }
+
+        static CachedRevision create(
+            StatefulResolver state, BundleRevisionImpl revision,
+            List<String> fragmentIds, List<Wire> wires)
+        {
+            Map<String, BundleRevision> owners = new HashMap<String, BundleRevision>();
+            owners.put(revision.getId(), revision);
+            String[] fragments = new String[(fragmentIds == null) ? 0 : fragmentIds.size()];
+            String[] fragmentInputs = new String[fragments.length];
+            if (revision.getWiring() != null)
+            {
+                int i = 0;
+                for (BundleRevision fragment : Util.getFragments(revision.getWiring()))
+                {
+                    if ((i >= fragments.length) || !fragmentIds.contains(((BundleRevisionImpl) fragment).getId()))
+                    {
+                        // Fragments attached by an earlier resolve.
+                        return null;
+                    }
+                    fragments[i] = ((BundleRevisionImpl) fragment).getId();
+                    fragmentInputs[i] = hashHeaders((BundleRevisionImpl) fragment);
+                    owners.put(fragments[i], fragment);
+                    i++;
+                }
+                if (i != fragments.length)
+                {
+                    return null;
+                }
+            }
+
+            List<CachedWire> cachedWires = new ArrayList<CachedWire>(wires.size());
+            for (Wire wire : wires)
+            {
+                if (!(wire.getRequirement() instanceof BundleRequirement)
+                    || !(wire.getCapability() instanceof BundleCapability)
+                    || !(wire.getProvider() instanceof BundleRevisionImpl))
+                {
+                    return null;
+                }
+                BundleRequirement req = (BundleRequirement) wire.getRequirement();
+                BundleCapability cap = (BundleCapability) wire.getCapability();
+                if (!(req.getRevision() instanceof BundleRevisionImpl)
+                    || !(cap.getRevision() instanceof BundleRevisionImpl)
+                    || (owners.get(((BundleRevisionImpl) req.getRevision()).getId()) != req.getRevision()))
+                {
+                    return null;
+                }
+                int reqIdx = indexOf(req.getRevision().getDeclaredRequirements(null), req);
+                int capIdx = indexOf(cap.getRevision().getDeclaredCapabilities(null), cap);
+                if ((reqIdx < 0) || (capIdx < 0))
+                {
+                    return null;
+                }
+                cachedWires.add(new CachedWire(
+                    ((BundleRevisionImpl) req.getRevision()).getId(), reqIdx,
+                    ((BundleRevisionImpl) wire.getProvider()).getId(),
+                    ((BundleRevisionImpl) cap.getRevision()).getId(), capIdx,
+                    hashCandidates(state, req)));
+            }
+            return new CachedRevision(
+                revision.getId(), hashHeaders(revision), fragments, fragmentInputs, cachedWires);
+        }
+
+        static int indexOf(List<?> list, Object o)
+        {
+            for (int i = 0; (list != null) && (i < list.size()); i++)
+            {
+                if (list.get(i) == o)
+                {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        static CachedRevision read(DataInputStream in) throws Exception
+        {
+            String id = in.readUTF();
+            String inputs = in.readUTF();
+            String[] fragments = new String[in.readInt()];
+            String[] fragmentInputs = new String[fragments.length];
+            for (int i = 0; i < fragments.length; i++)
+            {
+                fragments[i] = in.readUTF();
+                fragmentInputs[i] = in.readUTF();
+            }
+            int count = in.readInt();
+            List<CachedWire> wires = new ArrayList<CachedWire>(count);
+            for (int i = 0; i < count; i++)
+            {
+                wires.add(new CachedWire(
+                    in.readUTF(), in.readInt(), in.readUTF(), in.readUTF(), in.readInt(),
+                    in.readUTF()));
+            }
+            return new CachedRevision(id, inputs, fragments, fragmentInputs, wires);
+        }
+
+        void write(DataOutputStream out) throws Exception
+        {
+            out.writeUTF(m_id);
+            out.writeUTF(m_inputs);
+            out.writeInt(m_fragments.length);
+            for (int i = 0; i < m_fragments.length; i++)
+            {
+                out.writeUTF(m_fragments[i]);
+                out.writeUTF(m_fragmentInputs[i]);
+            }
+            out.writeInt(m_wires.size());
+            for (CachedWire wire : m_wires)
+            {
+                out.writeUTF(wire.m_requirementOwner);
+                out.writeInt(wire.m_requirement);
+                out.writeUTF(wire.m_provider);
+                out.writeUTF(wire.m_capabilityOwner);
+                out.writeInt(wire.m_capability);
+                out.writeUTF(wire.m_candidates);
+            }
+        }
+    }
+
+    /**
+     * A wire expressed as revision identifiers and indices into the
+     * declared requirements and capabilities of those revisions, together
+     * with a hash of the candidates the requirement had when it was wired.
+    **/
+    private static class CachedWire
+    {
+        final String m_requirementOwner;
+        final int m_requirement;
+        final String m_provider;
+        final String m_capabilityOwner;
+        final int m_capability;
+        final String m_candidates;
+
+        CachedWire(
+            String requirementOwner, int requirement, String provider,
+            String capabilityOwner, int capability, String candidates)
+        {
+            m_requirementOwner = requirementOwner;
+            m_requirement = requirement;
+            m_provider = provider;
+            m_capabilityOwner = capabilityOwner;
+            m_capability = capability;
+            m_candidates = candidates;
+        }
+    }
+}
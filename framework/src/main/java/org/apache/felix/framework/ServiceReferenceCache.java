@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.felix.framework.capabilityset.CompiledFilter;
+import org.apache.felix.framework.capabilityset.SimpleFilter;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+import org.osgi.resource.Capability;
+
+/**
+ * Caches the results of service lookups by class name and filter. A result
+ * is reused as long as the generation of the service registry has not
+ * changed, that is, as long as no service was registered, modified or
+ * unregistered since it was looked up. Filters are parsed once and results
+ * are shared by all filter strings that parse to the same filter.
+ * <p>
+ * Only the registry lookup is cached; assignability, find hooks and
+ * permissions depend on the calling bundle and are still checked by the
+ * caller on every lookup.
+**/
+public class ServiceReferenceCache
+{
+    private static final int MAX_ENTRIES = 1024;
+
+    private final ServiceRegistry m_registry;
+    // Maps filter string to the parsed filter.
+    private final ConcurrentMap<String, ParsedFilter> m_filters =
+        new ConcurrentHashMap<String, ParsedFilter>();
+    // Maps class name and normalized filter to the matching references.
+    private final ConcurrentMap<Key, Entry> m_entries =
+        new ConcurrentHashMap<Key, Entry>();
+    private final AtomicLong m_hits = new AtomicLong();
+    private final AtomicLong m_misses = new AtomicLong();
+
+    ServiceReferenceCache(ServiceRegistry registry)
+    {
+        m_registry = registry;
+    }
+
+    /**
+     * Returns a modifiable list of the references of the services registered
+     * under the given class name that match the given filter, ordered from
+     * the highest to the lowest ranking. Either argument may be <tt>null</tt>.
+    **/
+    List<ServiceReference<?>> getServiceReferences(String className, String expr)
+        throws InvalidSyntaxException
+    {
+        ParsedFilter filter = (expr == null) ? null : parse(expr);
+        Key key = new Key(className, (filter == null) ? null : filter.m_normalized);
+
+        long generation = m_registry.getGeneration();
+        Entry entry = m_entries.get(key);
+        if ((entry != null) && (entry.m_generation == generation))
+        {
+            m_hits.incrementAndGet();
+        }
+        else
+        {
+            m_misses.incrementAndGet();
+            Collection<Capability> caps = (filter == null)
+                ? m_registry.getServiceReferences(className, null)
+                : m_registry.getServiceReferences(
+                    className, filter.m_compiled.getFilter(), filter.m_compiled);
+            ServiceReference<?>[] refs = caps.toArray(new ServiceReference<?>[caps.size()]);
+            Arrays.sort(refs, Collections.reverseOrder());
+            entry = new Entry(generation, refs);
+            if (m_entries.size() >= MAX_ENTRIES)
+            {
+                m_entries.clear();
+            }
+            m_entries.put(key, entry);
+        }
+        return new ArrayList<ServiceReference<?>>(Arrays.asList(entry.m_refs));
+    }
+
+    private ParsedFilter parse(String expr) throws InvalidSyntaxException
+    {
+        ParsedFilter filter = m_filters.get(expr);
+        if (filter == null)
+        {
+            try
+            {
+                filter = new ParsedFilter(SimpleFilter.parse(expr));
+            }
+            catch (Exception ex)
+            {
+                throw new InvalidSyntaxException(ex.getMessage(), expr);
+            }
+            if (m_filters.size() >= MAX_ENTRIES)
+            {
+                m_filters.clear();
+            }
+            m_filters.put(expr, filter);
+        }
+        return filter;
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+    **/
+    public long getHitCount()
+    {
+        return m_hits.get();
+    }
+
+    /**
+     * Returns the number of lookups that had to query the service registry.
+    **/
+    public long getMissCount()
+    {
+        return m_misses.get();
+    }
+
+    private static class ParsedFilter
+    {
+        final CompiledFilter m_compiled;
+        final String m_normalized;
+
+        ParsedFilter(SimpleFilter filter)
+        {
+            m_compiled = CompiledFilter.compile(filter);
+            m_normalized = filter.toString();
+        }
+    }
+
+    private static class Key
+    {
+        private final String m_className;
+        private final String m_filter;
+
+        Key(String className, String filter)
+        {
+            m_className = className;
+            m_filter = filter;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof Key))
+            {
+                return false;
+            }
+            Key other = (Key) obj;
+            return ((m_className == null)
+                    ? (other.m_className == null) : m_className.equals(other.m_className))
+                && ((m_filter == null)
+                    ? (other.m_filter == null) : m_filter.equals(other.m_filter));
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return ((m_className == null) ? 0 : m_className.hashCode()) * 31
+                + ((m_filter == null) ? 0 : m_filter.hashCode());
+        }
+    }
+
+    private static class Entry
+    {
+        final long m_generation;
+        final ServiceReference<?>[] m_refs;
+
+        Entry(long generation, ServiceReference<?>[] refs)
+        {
+            m_generation = generation;
+            m_refs = refs;
+        }
+    }
+}
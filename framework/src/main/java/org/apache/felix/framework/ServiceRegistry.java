@@ -19,6 +19,7 @@
 package org.apache.felix.framework;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Dictionary;
@@ -27,11 +28,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.felix.framework.capabilityset.CapabilitySet;
+import org.apache.felix.framework.capabilityset.CompiledFilter;
 import org.apache.felix.framework.capabilityset.SimpleFilter;
 import org.apache.felix.framework.wiring.BundleCapabilityImpl;
 import org.osgi.framework.Bundle;
@@ -55,6 +58,14 @@ public class ServiceRegistry
     // Capability set for all service registrations.
     private final CapabilitySet m_regCapSet = new CapabilitySet(Collections.singletonList(Constants.OBJECTCLASS), false);
 
+    // Incremented after every change to the capability set, so that
+    // snapshots taken from it can tell whether they are still current.
+    private final AtomicLong m_generation = new AtomicLong();
+
+    // Maps class name to the last snapshot of the services registered under it.
+    private final ConcurrentMap<String, Snapshot> m_snapshots = new ConcurrentHashMap<String, Snapshot>();
+    private static final int MAX_SNAPSHOTS = 1024;
+
     // Maps bundle to an array of usage counts.
     private final ConcurrentMap<Bundle, UsageCount[]> m_inUseMap = new ConcurrentHashMap<Bundle, UsageCount[]>();
 
@@ -79,19 +90,15 @@ public class ServiceRegistry
         if (regs != null)
         {
             final List<ServiceReference<?>> refs = new ArrayList<ServiceReference<?>>(regs.size());
-            // this is a per bundle list, therefore synchronizing this should be fine
-            synchronized ( regs )
+            for (final ServiceRegistration<?> reg : regs)
             {
-                for (final ServiceRegistration<?> reg : regs)
+                try
                 {
-                    try
-                    {
-                        refs.add(reg.getReference());
-                    }
-                    catch (final IllegalStateException ex)
-                    {
-                        // Don't include the reference as it is not valid anymore
-                    }
+                    refs.add(reg.getReference());
+                }
+                catch (final IllegalStateException ex)
+                {
+                    // Don't include the reference as it is not valid anymore
                 }
             }
             return refs.toArray(new ServiceReference[refs.size()]);
@@ -124,18 +131,20 @@ public class ServiceRegistry
         this.hookRegistry.addHooks(classNames, svcObj, reg.getReference());
 
         // Get the bundles current registered services.
-        final List<ServiceRegistration<?>> newRegs = new ArrayList<ServiceRegistration<?>>();
-        List<ServiceRegistration<?>> regs = m_regsMap.putIfAbsent(bundle, newRegs);
+        List<ServiceRegistration<?>> regs = m_regsMap.get(bundle);
         if (regs == null)
         {
-            regs = newRegs;
-        }
-        // this is a per bundle list, therefore synchronizing this should be fine
-        synchronized ( regs )
-        {
-            regs.add(reg);
+            final List<ServiceRegistration<?>> newRegs =
+                new CopyOnWriteArrayList<ServiceRegistration<?>>();
+            regs = m_regsMap.putIfAbsent(bundle, newRegs);
+            if (regs == null)
+            {
+                regs = newRegs;
+            }
         }
+        regs.add(reg);
         m_regCapSet.addCapability((BundleCapabilityImpl) reg.getReference());
+        m_generation.incrementAndGet();
 
         return reg;
     }
@@ -156,13 +165,10 @@ public class ServiceRegistry
         final List<ServiceRegistration<?>> regs = m_regsMap.get(bundle);
         if (regs != null)
         {
-            // this is a per bundle list, therefore synchronizing this should be fine
-            synchronized ( regs )
-            {
-                regs.remove(reg);
-            }
+            regs.remove(reg);
         }
         m_regCapSet.removeCapability((BundleCapabilityImpl) reg.getReference());
+        m_generation.incrementAndGet();
 
         // Notify callback objects about unregistering service.
         if (m_callbacks != null)
@@ -219,14 +225,9 @@ public class ServiceRegistry
         // Unregister each service.
         if (regs != null)
         {
-            final List<ServiceRegistration<?>> copyRefs;
-            // there shouldn't be a need to sync, but just to be safe
-            // we create a copy array and use that for iterating
-            synchronized ( regs )
-            {
-                copyRefs = new ArrayList<ServiceRegistration<?>>(regs);
-            }
-            for (final ServiceRegistration<?> reg : copyRefs)
+            // The list is copied on write, so iterating it is safe while
+            // the registrations remove themselves from it.
+            for (final ServiceRegistration<?> reg : regs)
             {
                 if (((ServiceRegistrationImpl) reg).isValid())
                 {
@@ -244,6 +245,19 @@ public class ServiceRegistry
     }
 
     public Collection<Capability> getServiceReferences(final String className, SimpleFilter filter)
+    {
+        return getServiceReferences(className, filter, null);
+    }
+
+    /**
+     * Returns the services registered under the given class name that match
+     * the given filter, evaluating the given compiled form of the filter if
+     * it is not <tt>null</tt>. Callers that look up the same filter
+     * repeatedly keep its compiled form, and with it the operands already
+     * converted to the types of the service properties.
+    **/
+    public Collection<Capability> getServiceReferences(
+        final String className, SimpleFilter filter, CompiledFilter compiled)
     {
         if ((className == null) && (filter == null))
         {
@@ -253,21 +267,65 @@ public class ServiceRegistry
         else if ((className != null) && (filter == null))
         {
             // Return services matching the class name.
-            filter = new SimpleFilter(Constants.OBJECTCLASS, className, SimpleFilter.EQ);
+            return getServiceReferences(className);
         }
         else if ((className != null) && (filter != null))
         {
-            // Return services matching the class name and filter.
-            final List<SimpleFilter> filters = new ArrayList<SimpleFilter>(2);
-            filters.add(new SimpleFilter(Constants.OBJECTCLASS, className, SimpleFilter.EQ));
-            filters.add(filter);
-            filter = new SimpleFilter(null, filters, SimpleFilter.AND);
+            // Return services matching the class name and filter. The class
+            // name is answered from the index, the compiled filter is then
+            // only evaluated against the services registered under it.
+            final Collection<Capability> refs = getServiceReferences(className);
+            if (!refs.isEmpty())
+            {
+                final CompiledFilter matcher = (compiled != null)
+                    ? compiled : CompiledFilter.compile(filter);
+                for (final Iterator<Capability> it = refs.iterator(); it.hasNext();)
+                {
+                    if (!matcher.matches(it.next().getAttributes()))
+                    {
+                        it.remove();
+                    }
+                }
+            }
+            return refs;
         }
         // else just use the specified filter.
 
         return m_regCapSet.match(filter, false);
     }
 
+    /**
+     * Returns a modifiable copy of the services registered under the given
+     * class name. The services are taken from a snapshot if no service was
+     * registered, modified or unregistered since it was made.
+    **/
+    private Collection<Capability> getServiceReferences(final String className)
+    {
+        final long generation = m_generation.get();
+        Snapshot snapshot = m_snapshots.get(className);
+        if ((snapshot == null) || (snapshot.m_generation != generation))
+        {
+            final Collection<Capability> refs = m_regCapSet.match(
+                new SimpleFilter(Constants.OBJECTCLASS, className, SimpleFilter.EQ), false);
+            snapshot = new Snapshot(generation, refs.toArray(new Capability[refs.size()]));
+            if (m_snapshots.size() >= MAX_SNAPSHOTS)
+            {
+                m_snapshots.clear();
+            }
+            m_snapshots.put(className, snapshot);
+        }
+        return new ArrayList<Capability>(Arrays.asList(snapshot.m_refs));
+    }
+
+    /**
+     * Returns the generation of the registry, which changes whenever a service
+     * is registered, modified or unregistered.
+    **/
+    public long getGeneration()
+    {
+        return m_generation.get();
+    }
+
     public ServiceReference<?>[] getServicesInUse(final Bundle bundle)
     {
         final UsageCount[] usages = m_inUseMap.get(bundle);
@@ -336,8 +394,12 @@ public class ServiceRegistry
                     // why the below section is in a loop.
                     while (holder == null)
                     {
-                        ServiceHolder h = new ServiceHolder();
-                        if (usage.m_svcHolderRef.compareAndSet(null, h))
+                        // Only create a holder if the service object has not
+                        // been obtained yet, which spares the common path of a
+                        // cached singleton any allocation.
+                        ServiceHolder h = (usage.m_svcHolderRef.get() == null)
+                            ? new ServiceHolder() : null;
+                        if ((h != null) && usage.m_svcHolderRef.compareAndSet(null, h))
                         {
                             holder = h;
                             try {
@@ -566,6 +628,8 @@ public class ServiceRegistry
     void servicePropertiesModified(ServiceRegistration<?> reg, Dictionary<?,?> oldProps)
     {
         this.hookRegistry.updateHooks(reg.getReference());
+        m_regCapSet.updateCapability((BundleCapabilityImpl) reg.getReference());
+        m_generation.incrementAndGet();
         if (m_callbacks != null)
         {
             m_callbacks.serviceChanged(
@@ -729,6 +793,18 @@ public class ServiceRegistry
         }
     }
 
+    private static class Snapshot
+    {
+        final long m_generation;
+        final Capability[] m_refs;
+
+        Snapshot(final long generation, final Capability[] refs)
+        {
+            m_generation = generation;
+            m_refs = refs;
+        }
+    }
+
     static class ServiceHolder
     {
         final CountDownLatch m_latch = new CountDownLatch(1);
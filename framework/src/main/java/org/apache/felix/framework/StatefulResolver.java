@@ -18,6 +18,7 @@
  */
 package org.apache.felix.framework;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -37,6 +38,7 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.felix.framework.capabilityset.CapabilitySet;
 import org.apache.felix.framework.capabilityset.SimpleFilter;
@@ -91,6 +93,11 @@ class StatefulResolver
     private final Map<String, List<BundleRevision>> m_singletons;
     // Selected singleton bundle revisions.
     private final Set<BundleRevision> m_selectedSingletons;
+    // Wires of earlier resolves, if enabled.
+    private final ResolutionCache m_resolutionCache;
+    // Incremented whenever revisions are added or removed, which is
+    // when the outcome of a dynamic import may change.
+    private final AtomicLong m_generation = new AtomicLong();
 
     StatefulResolver(Felix felix, ServiceRegistry registry)
     {
@@ -98,13 +105,20 @@ class StatefulResolver
         m_registry = registry;
         m_logger = m_felix.getLogger();
         m_executor = getExecutor();
-        m_resolver = new ResolverImpl(m_logger, m_executor);
+        m_resolver = new ResolverImpl(m_logger, m_executor,
+            "true".equalsIgnoreCase(m_felix.getProperty(FelixConstants.RESOLVER_INCREMENTAL)),
+            "true".equalsIgnoreCase(m_felix.getProperty(FelixConstants.RESOLVER_PARALLEL_CHECKS)),
+            getLongProperty(FelixConstants.RESOLVER_TIMEOUT),
+            getLongProperty(FelixConstants.RESOLVER_MAX_PERMUTATIONS));
 
         m_revisions = new HashSet<BundleRevision>();
         m_fragments = new HashSet<BundleRevision>();
         m_capSets = new HashMap<String, CapabilitySet>();
         m_singletons = new HashMap<String, List<BundleRevision>>();
         m_selectedSingletons = new HashSet<BundleRevision>();
+        m_resolutionCache = "true".equalsIgnoreCase(
+            m_felix.getProperty(FelixConstants.RESOLVER_CACHE))
+                ? new ResolutionCache(m_logger) : null;
 
         List<String> indices = new ArrayList<String>();
         indices.add(BundleRevision.BUNDLE_NAMESPACE);
@@ -119,6 +133,23 @@ class StatefulResolver
         m_capSets.put(BundleRevision.HOST_NAMESPACE,  new CapabilitySet(indices, true));
     }
 
+    private long getLongProperty(String name)
+    {
+        String str = m_felix.getProperty(name);
+        if (str != null)
+        {
+            try
+            {
+                return Long.parseLong(str);
+            }
+            catch (NumberFormatException e)
+            {
+                // Ignore
+            }
+        }
+        return 0;
+    }
+
     private Executor getExecutor()
     {
         String str = m_felix.getProperty(FelixConstants.RESOLVER_PARALLELISM);
@@ -164,6 +195,27 @@ class StatefulResolver
         }
     }
 
+    boolean isResolutionCacheEnabled()
+    {
+        return (m_resolutionCache != null);
+    }
+
+    void loadResolutionCache(File file)
+    {
+        if (m_resolutionCache != null)
+        {
+            m_resolutionCache.load(file);
+        }
+    }
+
+    void saveResolutionCache(File file)
+    {
+        if (m_resolutionCache != null)
+        {
+            m_resolutionCache.save(file, getRevisions());
+        }
+    }
+
     void start()
     {
         m_registry.registerService(m_felix,
@@ -201,6 +253,7 @@ class StatefulResolver
             }
             indexCapabilities(br);
         }
+        m_generation.incrementAndGet();
     }
 
     synchronized void removeRevision(BundleRevision br)
@@ -221,9 +274,20 @@ class StatefulResolver
                     m_singletons.remove(br.getSymbolicName());
                 }
             }
+            m_generation.incrementAndGet();
         }
     }
 
+    /**
+     * Returns the current generation of the resolver state. A class or
+     * resource that could not be dynamically imported in one generation
+     * may only become available in a later one.
+     */
+    long getGeneration()
+    {
+        return m_generation.get();
+    }
+
     boolean isEffective(Requirement req)
     {
         String effective = req.getDirectives().get(Constants.EFFECTIVE_DIRECTIVE);
@@ -425,6 +489,8 @@ class StatefulResolver
         m_isResolving = true;
 
         Map<Resource, List<Wire>> wireMap = null;
+        Map<Resource, List<Wire>> cachedWireMap = null;
+        boolean resolved = false;
         try
         {
             // Make our own copy of revisions.
@@ -467,20 +533,35 @@ class StatefulResolver
                 }
             }
 
+            // Restore whatever the resolution cache can vouch for, which
+            // is only possible if no hooks could influence the result.
+            if ((m_resolutionCache != null) && record.m_resolveHookMap.isEmpty()
+                && (System.getSecurityManager() == null))
+            {
+                cachedWireMap = replayResolutionCache(mandatory, optional);
+            }
+
             // Catch any resolve exception to rethrow later because
             // we may need to call end() on resolver hooks.
             ResolutionException rethrow = null;
             try
             {
                 // Resolve the revision.
-                wireMap = m_resolver.resolve(
-                    new ResolveContextImpl(
-                        this,
-                        getWirings(),
-                        record,
-                        mandatory,
-                        optional,
-                        getFragments()));
+                if ((cachedWireMap == null) || !mandatory.isEmpty() || !optional.isEmpty())
+                {
+                    wireMap = m_resolver.resolve(
+                        new ResolveContextImpl(
+                            this,
+                            getWirings(),
+                            record,
+                            mandatory,
+                            optional,
+                            getFragments()));
+                }
+                else
+                {
+                    wireMap = Collections.<Resource, List<Wire>>emptyMap();
+                }
             }
             catch (ResolutionException ex)
             {
@@ -498,6 +579,19 @@ class StatefulResolver
 
             // Otherwise, mark all revisions as resolved.
             markResolvedRevisions(wireMap);
+
+            if (m_resolutionCache != null)
+            {
+                m_resolutionCache.record(this, m_felix.adapt(BundleRevision.class), wireMap);
+            }
+            if (cachedWireMap != null)
+            {
+                Map<Resource, List<Wire>> combined =
+                    new HashMap<Resource, List<Wire>>(cachedWireMap);
+                combined.putAll(wireMap);
+                wireMap = combined;
+            }
+            resolved = true;
         }
         finally
         {
@@ -505,11 +599,49 @@ class StatefulResolver
             m_isResolving = false;
             // Always release the global lock.
             m_felix.releaseGlobalLock();
+
+            // Revisions restored from the resolution cache stay resolved
+            // even if resolving the remaining revisions failed.
+            if (!resolved)
+            {
+                fireResolvedEvents(cachedWireMap);
+            }
         }
 
         fireResolvedEvents(wireMap);
     }
 
+    /**
+     * Marks the revisions the resolution cache can restore as resolved and
+     * removes them from the given sets.
+     * @return the restored wires or <tt>null</tt> if nothing was restored.
+    **/
+    private Map<Resource, List<Wire>> replayResolutionCache(
+        Set<BundleRevision> mandatory, Set<BundleRevision> optional)
+    {
+        Set<BundleRevision> roots = new HashSet<BundleRevision>(mandatory);
+        roots.addAll(optional);
+        Map<Resource, List<Wire>> cachedWireMap = m_resolutionCache.replay(
+            this, m_felix.adapt(BundleRevision.class), roots);
+        if (cachedWireMap.isEmpty())
+        {
+            return null;
+        }
+        try
+        {
+            markResolvedRevisions(cachedWireMap);
+        }
+        catch (ResolveException ex)
+        {
+            m_logger.log(Logger.LOG_DEBUG,
+                "Unable to restore cached wiring, resolving normally.", ex);
+            return null;
+        }
+        mandatory.removeAll(cachedWireMap.keySet());
+        optional.removeAll(cachedWireMap.keySet());
+        return cachedWireMap;
+    }
+
     BundleRevision resolve(BundleRevision revision, String pkgName)
         throws ResolutionException, BundleException
     {
@@ -1405,7 +1537,7 @@ class StatefulResolver
         }
     }
 
-    private synchronized boolean isSelectedSingleton(BundleRevision br)
+    synchronized boolean isSelectedSingleton(BundleRevision br)
     {
         return m_selectedSingletons.contains(br);
     }
@@ -1616,7 +1748,7 @@ class StatefulResolver
         }
     }
 
-    private synchronized Set<BundleRevision> getFragments()
+    synchronized Set<BundleRevision> getFragments()
     {
         Set<BundleRevision> fragments = new HashSet(m_fragments);
         // Filter out any fragments that are not the current revision.
@@ -1668,6 +1800,11 @@ class StatefulResolver
         }
     }
 
+    synchronized Set<BundleRevision> getRevisions()
+    {
+        return new HashSet<BundleRevision>(m_revisions);
+    }
+
     private synchronized Set<BundleRevision> getUnresolvedRevisions()
     {
         Set<BundleRevision> unresolved = new HashSet<BundleRevision>();
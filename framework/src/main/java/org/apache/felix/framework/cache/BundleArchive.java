@@ -81,6 +81,7 @@ public class BundleArchive
     private final WeakZipFileFactory m_zipFactory;
     private final File m_archiveRootDir;
     private final boolean m_isSingleBundleFile;
+    private final BundleStateStore m_store;
 
     private long m_id = -1;
     private String m_originalLocation = null;
@@ -126,6 +127,22 @@ public class BundleArchive
     public BundleArchive(Logger logger, Map configMap, WeakZipFileFactory zipFactory,
         File archiveRootDir, long id, int startLevel, String location, InputStream is)
         throws Exception
+    {
+        this(logger, configMap, zipFactory, null, archiveRootDir, id, startLevel, location, is);
+    }
+
+    /**
+     * <p>
+     * Creates a new archive whose state is kept in the given state store
+     * instead of files in the archive root directory, if the store is not
+     * <tt>null</tt>.
+     * </p>
+     * @see #BundleArchive(Logger, Map, WeakZipFileFactory, File, long, int, String, InputStream)
+    **/
+    BundleArchive(Logger logger, Map<?, ?> configMap, WeakZipFileFactory zipFactory,
+        BundleStateStore store, File archiveRootDir, long id, int startLevel,
+        String location, InputStream is)
+        throws Exception
     {
         m_logger = logger;
         m_configMap = configMap;
@@ -142,15 +159,17 @@ public class BundleArchive
         m_startLevel = startLevel;
         m_lastModified = System.currentTimeMillis();
         m_refreshCount = 0;
+        m_store = store;
 
         String s = (String) m_configMap.get(BundleCache.CACHE_SINGLEBUNDLEFILE_PROP);
-        m_isSingleBundleFile = ((s == null) || s.equalsIgnoreCase("true")) ? true : false;
+        m_isSingleBundleFile = ((m_store != null) || (s == null) || s.equalsIgnoreCase("true")) ? true : false;
 
         // Save state.
         initialize();
 
         // Add a revision for the content.
         reviseInternal(false, new Long(0), m_originalLocation, is);
+        flushState();
     }
 
     /**
@@ -168,14 +187,30 @@ public class BundleArchive
     public BundleArchive(Logger logger, Map configMap, WeakZipFileFactory zipFactory,
         File archiveRootDir)
         throws Exception
+    {
+        this(logger, configMap, zipFactory, null, archiveRootDir);
+    }
+
+    /**
+     * <p>
+     * Reconstructs an archive whose state is kept in the given state store,
+     * if it is not <tt>null</tt>. State found only in files of the archive
+     * root directory is moved into the store.
+     * </p>
+     * @see #BundleArchive(Logger, Map, WeakZipFileFactory, File)
+    **/
+    BundleArchive(Logger logger, Map<?, ?> configMap, WeakZipFileFactory zipFactory,
+        BundleStateStore store, File archiveRootDir)
+        throws Exception
     {
         m_logger = logger;
         m_configMap = configMap;
         m_zipFactory = zipFactory;
         m_archiveRootDir = archiveRootDir;
+        m_store = store;
 
         String s = (String) m_configMap.get(BundleCache.CACHE_SINGLEBUNDLEFILE_PROP);
-        m_isSingleBundleFile = ((s == null) || s.equalsIgnoreCase("true")) ? true : false;
+        m_isSingleBundleFile = ((m_store != null) || (s == null) || s.equalsIgnoreCase("true")) ? true : false;
 
         if (m_isSingleBundleFile)
         {
@@ -224,6 +259,7 @@ public class BundleArchive
 
         // Add the revision object for the most recent revision.
         reviseInternal(true, currentRevNum, getRevisionLocation(currentRevNum), null);
+        flushState();
     }
 
     /**
@@ -520,6 +556,7 @@ public class BundleArchive
             : new Long(m_revisions.lastKey().longValue() + 1);
 
         reviseInternal(false, revNum, location, is);
+        flushState();
     }
 
     /**
@@ -603,10 +640,34 @@ public class BundleArchive
             BundleCache.deleteDirectoryTree(revisionDir);
         }
 
+        if (m_store != null)
+        {
+            m_store.removeRevisionLocation(m_archiveRootDir.getName(), revNum);
+            m_store.flush();
+        }
+
         return true;
     }
 
     private synchronized String getRevisionLocation(Long revNum) throws Exception
+    {
+        if (m_store != null)
+        {
+            BundleStateStore.Entry entry = m_store.get(m_archiveRootDir.getName());
+            String location = (entry == null) ? null : entry.getRevisionLocation(revNum);
+            if (location == null)
+            {
+                // Move the location of a revision created without
+                // the store into it.
+                location = readRevisionLocation(revNum);
+                m_store.putRevisionLocation(m_archiveRootDir.getName(), revNum, location);
+            }
+            return location;
+        }
+        return readRevisionLocation(revNum);
+    }
+
+    private String readRevisionLocation(Long revNum) throws Exception
     {
         InputStream is = null;
         BufferedReader br = null;
@@ -629,6 +690,12 @@ public class BundleArchive
     private synchronized void setRevisionLocation(String location, Long revNum)
         throws Exception
     {
+        if (m_store != null)
+        {
+            m_store.putRevisionLocation(m_archiveRootDir.getName(), revNum, location);
+            return;
+        }
+
         // Save current revision location.
         OutputStream os = null;
         BufferedWriter bw = null;
@@ -684,6 +751,20 @@ public class BundleArchive
     {
         // Close the revisions and delete the archive directory.
         close();
+        if (m_store != null)
+        {
+            try
+            {
+                m_store.remove(m_archiveRootDir.getName());
+                m_store.flush();
+            }
+            catch (Exception ex)
+            {
+                m_logger.log(
+                    Logger.LOG_ERROR,
+                    "Unable to remove archive state - " + m_archiveRootDir, ex);
+            }
+        }
         if (!BundleCache.deleteDirectoryTree(m_archiveRootDir))
         {
             m_logger.log(
@@ -727,6 +808,10 @@ public class BundleArchive
                 {
                     BundleCache.deleteDirectoryTree(revisionDir);
                 }
+                if (m_store != null)
+                {
+                    m_store.removeRevisionLocation(m_archiveRootDir.getName(), revNum);
+                }
             }
         }
 
@@ -754,6 +839,19 @@ public class BundleArchive
             getRevisionLocation(currentRevNum), null, currentRevNum);
         // Add new revision to the revision map.
         m_revisions.put(currentRevNum, revision);
+        flushState();
+    }
+
+    /**
+     * Writes the state changed by the current operation to the state
+     * store, if there is one.
+    **/
+    private void flushState() throws Exception
+    {
+        if (m_store != null)
+        {
+            m_store.flush();
+        }
     }
 
     /**
@@ -940,6 +1038,21 @@ public class BundleArchive
 
     private void readBundleInfo() throws Exception
     {
+        if (m_store != null)
+        {
+            BundleStateStore.Entry entry = m_store.get(m_archiveRootDir.getName());
+            if (entry != null)
+            {
+                m_id = entry.m_id;
+                m_originalLocation = entry.m_location;
+                m_persistentState = entry.m_state;
+                m_startLevel = entry.m_startLevel;
+                m_lastModified = entry.m_lastModified;
+                m_refreshCount = entry.m_refreshCount;
+                return;
+            }
+        }
+
         File infoFile = new File(m_archiveRootDir, BUNDLE_INFO_FILE);
 
         // Read the bundle start level.
@@ -981,10 +1094,23 @@ public class BundleArchive
             if (br != null) br.close();
             if (is != null) is.close();
         }
+
+        if (m_store != null)
+        {
+            // Move the state of an archive created without the store into it.
+            writeBundleInfo();
+        }
     }
 
     private void writeBundleInfo() throws Exception
     {
+        if (m_store != null)
+        {
+            m_store.put(m_archiveRootDir.getName(), m_id, m_originalLocation,
+                m_persistentState, m_startLevel, m_lastModified, m_refreshCount);
+            return;
+        }
+
         // Write the bundle start level.
         OutputStream os = null;
         BufferedWriter bw = null;
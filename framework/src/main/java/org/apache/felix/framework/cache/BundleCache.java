@@ -68,6 +68,30 @@ import org.osgi.framework.Constants;
  *       string provides control over the size of the internal buffer of the
  *       disk cache for performance reasons.
  *   </li>
+ *   <li><tt>felix.cache.mmap</tt> - Set to <tt>true</tt> to memory-map bundle
+ *       JAR files and read their entries without keeping files open, which
+ *       is not subject to <tt>felix.cache.filelimit</tt>. The default value is
+ *       <tt>false</tt>. Note that some platforms do not allow deleting a file
+ *       while it is mapped.
+ *   </li>
+ *   <li><tt>felix.cache.journal</tt> - Set to <tt>true</tt> to keep the
+ *       state of all bundle archives, such as their locations, persistent
+ *       states and start levels, in a single journal file in the bundle
+ *       cache directory instead of files in each archive directory. The
+ *       default value is <tt>false</tt>. Existing archives are moved into
+ *       the journal when it is enabled. Once a bundle cache has a journal,
+ *       it keeps using it even if this property is no longer set, since
+ *       the state files of the archives are not updated anymore; only a
+ *       clean bundle cache stops using it. A journal always keeps the
+ *       state of an archive in a single record, so the
+ *       <tt>felix.cache.singlebundlefile</tt> property is ignored.
+ *   </li>
+ *   <li><tt>felix.cache.manifest</tt> - Set to <tt>true</tt> to store the
+ *       parsed manifest of each bundle revision in its revision directory,
+ *       so it does not have to be parsed again when the framework restarts.
+ *       The stored result is only used if the manifest headers and the
+ *       framework version are unchanged. The default value is <tt>false</tt>.
+ *   </li>
  * <p>
  * For specific information on how to configure the Felix framework, refer
  * to the Felix framework usage documentation.
@@ -80,6 +104,9 @@ public class BundleCache
     public static final String CACHE_ROOTDIR_PROP = "felix.cache.rootdir";
     public static final String CACHE_LOCKING_PROP = "felix.cache.locking";
     public static final String CACHE_FILELIMIT_PROP = "felix.cache.filelimit";
+    public static final String CACHE_MMAP_PROP = "felix.cache.mmap";
+    public static final String CACHE_JOURNAL_PROP = "felix.cache.journal";
+    public static final String CACHE_MANIFEST_PROP = "felix.cache.manifest";
     // TODO: CACHE - This should eventually be removed along with the code
     //       supporting the old multi-file bundle cache format.
     public static final String CACHE_SINGLEBUNDLEFILE_PROP = "felix.cache.singlebundlefile";
@@ -97,6 +124,7 @@ public class BundleCache
     private final Map m_configMap;
     private final WeakZipFileFactory m_zipFactory;
     private final Object m_lock;
+    private final BundleStateStore m_store;
 
     public BundleCache(Logger logger, Map configMap)
         throws Exception
@@ -132,6 +160,27 @@ public class BundleCache
             }
         }
 
+        File journalFile = new File(cacheDir, BundleStateStore.JOURNAL_FILE_NAME);
+        boolean journal = "true".equalsIgnoreCase((String) m_configMap.get(CACHE_JOURNAL_PROP));
+        if (!journal && getSecureAction().fileExists(journalFile))
+        {
+            // The state files of archives moved into the journal are no
+            // longer updated, so they must not be used again.
+            m_logger.log(
+                Logger.LOG_WARNING,
+                "Bundle cache has a state journal, so it remains in use although "
+                + CACHE_JOURNAL_PROP + " is not enabled: " + journalFile);
+            journal = true;
+        }
+        if (journal && "false".equalsIgnoreCase(
+            (String) m_configMap.get(CACHE_SINGLEBUNDLEFILE_PROP)))
+        {
+            m_logger.log(
+                Logger.LOG_WARNING,
+                CACHE_SINGLEBUNDLEFILE_PROP + " is ignored since the bundle cache uses a state journal.");
+        }
+        m_store = journal ? new BundleStateStore(m_logger, journalFile) : null;
+
         Object locking = m_configMap.get(CACHE_LOCKING_PROP);
         locking = (locking == null)
             ? Boolean.TRUE.toString()
@@ -182,8 +231,36 @@ public class BundleCache
         }
     }
 
+    /**
+     * Writes the bundle state changed since the previous flush, such as
+     * persistent states, start levels and modification times set on the
+     * archives, to the state journal, if there is one. Callers flush once
+     * at the end of each operation, so that an operation touching many
+     * archives syncs the journal only once.
+    **/
+    public void flush() throws Exception
+    {
+        if (m_store != null)
+        {
+            m_store.flush();
+        }
+    }
+
     public synchronized void release()
     {
+        if (m_store != null)
+        {
+            try
+            {
+                m_store.flush();
+            }
+            catch (Exception ex)
+            {
+                m_logger.log(
+                    Logger.LOG_WARNING,
+                    "Exception writing bundle state journal.", ex);
+            }
+        }
         if (m_lock != null)
         {
             try
@@ -211,6 +288,10 @@ public class BundleCache
         // Delete the cache directory.
         File cacheDir = determineCacheDir(m_configMap);
         deleteDirectoryTree(cacheDir);
+        if (m_store != null)
+        {
+            m_store.clear();
+        }
     }
 
     public BundleArchive[] getArchives()
@@ -233,6 +314,7 @@ public class BundleCache
         // Create the existing bundle archives in the directory, if any exist.
         File cacheDir = determineCacheDir(m_configMap);
         List archiveList = new ArrayList();
+        Set<String> archiveNames = new HashSet<String>();
         File[] children = getSecureAction().listDirectory(cacheDir);
         for (int i = 0; (children != null) && (i < children.length); i++)
         {
@@ -246,7 +328,8 @@ public class BundleCache
                 {
                     archiveList.add(
                         new BundleArchive(
-                            m_logger, m_configMap, m_zipFactory, children[i]));
+                            m_logger, m_configMap, m_zipFactory, m_store, children[i]));
+                    archiveNames.add(children[i].getName());
                 }
                 catch (Exception ex)
                 {
@@ -258,6 +341,13 @@ public class BundleCache
             }
         }
 
+        // Drop the state of archives that are gone.
+        if (m_store != null)
+        {
+            m_store.retain(archiveNames);
+            m_store.flush();
+        }
+
         return (BundleArchive[])
             archiveList.toArray(new BundleArchive[archiveList.size()]);
     }
@@ -276,12 +366,24 @@ public class BundleCache
             // Create the archive and add it to the list of archives.
             BundleArchive ba =
                 new BundleArchive(
-                    m_logger, m_configMap, m_zipFactory, archiveRootDir,
+                    m_logger, m_configMap, m_zipFactory, m_store, archiveRootDir,
                     id, startLevel, location, is);
             return ba;
         }
         catch (Exception ex)
         {
+            if (m_store != null)
+            {
+                try
+                {
+                    m_store.remove(archiveRootDir.getName());
+                    m_store.flush();
+                }
+                catch (Exception ex2)
+                {
+                    // Ignore, the archive is dropped on the next start.
+                }
+            }
             if (m_secureAction.fileExists(archiveRootDir))
             {
                 if (!BundleCache.deleteDirectoryTree(archiveRootDir))
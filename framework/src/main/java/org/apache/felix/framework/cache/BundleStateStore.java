@@ -0,0 +1,488 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.apache.felix.framework.Logger;
+
+/**
+ * Journal holding the persistent state of all bundle archives of a bundle
+ * cache in a single file. The journal is read once, sequentially, the first
+ * time it is used. Changes are buffered in memory and appended by
+ * <tt>flush()</tt>, which syncs the file once for all changes made since
+ * the previous flush. When the journal holds too many superseded records,
+ * it is rewritten with only the current state of each archive.
+ * <p>
+ * Each record is written as its payload length, the payload and the CRC32
+ * of the payload. A record that is cut short or does not match its
+ * checksum, as left behind by a crash in the middle of a flush, ends the
+ * replay; the journal is then rewritten from the records read before it.
+**/
+class BundleStateStore
+{
+    static final String JOURNAL_FILE_NAME = "cache.journal";
+
+    private static final int MAGIC = 0x46454c4a;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    // Number of superseded records tolerated on top of the live ones.
+    private static final int COMPACT_SLACK = 64;
+
+    private final Logger m_logger;
+    private final File m_file;
+    private final Map<String, Entry> m_entries = new HashMap<String, Entry>();
+    private final ByteArrayOutputStream m_pending = new ByteArrayOutputStream();
+    private int m_pendingCount = 0;
+    private int m_recordCount = 0;
+    private boolean m_loaded = false;
+
+    BundleStateStore(Logger logger, File file)
+    {
+        m_logger = logger;
+        m_file = file;
+    }
+
+    /**
+     * Returns the state recorded for the archive with the given directory
+     * name or <tt>null</tt> if there is none.
+    **/
+    synchronized Entry get(String key) throws IOException
+    {
+        load();
+        Entry entry = m_entries.get(key);
+        return (entry == null) ? null : new Entry(entry);
+    }
+
+    /**
+     * Records the bundle state of an archive, keeping any revision
+     * locations recorded for it.
+    **/
+    synchronized void put(String key, long id, String location, int state,
+        int startLevel, long lastModified, long refreshCount) throws IOException
+    {
+        load();
+        Entry entry = m_entries.get(key);
+        if (entry == null)
+        {
+            entry = new Entry();
+            m_entries.put(key, entry);
+        }
+        entry.m_id = id;
+        entry.m_location = location;
+        entry.m_state = state;
+        entry.m_startLevel = startLevel;
+        entry.m_lastModified = lastModified;
+        entry.m_refreshCount = refreshCount;
+        append(PUT, key, entry);
+    }
+
+    synchronized void putRevisionLocation(String key, Long revNum, String location)
+        throws IOException
+    {
+        load();
+        Entry entry = m_entries.get(key);
+        if (entry == null)
+        {
+            entry = new Entry();
+            m_entries.put(key, entry);
+        }
+        entry.m_revisionLocations.put(revNum, location);
+        append(PUT, key, entry);
+    }
+
+    synchronized void removeRevisionLocation(String key, Long revNum)
+        throws IOException
+    {
+        load();
+        Entry entry = m_entries.get(key);
+        if ((entry != null) && (entry.m_revisionLocations.remove(revNum) != null))
+        {
+            append(PUT, key, entry);
+        }
+    }
+
+    synchronized void remove(String key) throws IOException
+    {
+        load();
+        if (m_entries.remove(key) != null)
+        {
+            append(REMOVE, key, null);
+        }
+    }
+
+    /**
+     * Removes the state of all archives except the given ones.
+    **/
+    synchronized void retain(Set<String> keys) throws IOException
+    {
+        load();
+        for (Iterator<String> it = m_entries.keySet().iterator(); it.hasNext(); )
+        {
+            String key = it.next();
+            if (!keys.contains(key))
+            {
+                it.remove();
+                append(REMOVE, key, null);
+            }
+        }
+    }
+
+    /**
+     * Appends all changes made since the previous flush to the journal and
+     * syncs it, compacting the journal if it has grown too large.
+    **/
+    synchronized void flush() throws IOException
+    {
+        if (m_pendingCount == 0)
+        {
+            return;
+        }
+        if ((m_recordCount + m_pendingCount) > ((2 * m_entries.size()) + COMPACT_SLACK))
+        {
+            compact();
+            return;
+        }
+
+        FileOutputStream os = null;
+        try
+        {
+            os = BundleCache.getSecureAction().getFileOutputStream(m_file, true);
+            m_pending.writeTo(os);
+            os.getFD().sync();
+        }
+        finally
+        {
+            if (os != null) os.close();
+        }
+        m_recordCount += m_pendingCount;
+        m_pending.reset();
+        m_pendingCount = 0;
+    }
+
+    /**
+     * Forgets all recorded state; used when the bundle cache directory,
+     * including the journal, has been deleted.
+    **/
+    synchronized void clear()
+    {
+        m_entries.clear();
+        m_pending.reset();
+        m_pendingCount = 0;
+        m_recordCount = 0;
+        m_loaded = false;
+    }
+
+    private void load() throws IOException
+    {
+        if (m_loaded)
+        {
+            return;
+        }
+        m_entries.clear();
+        m_recordCount = 0;
+
+        byte[] bytes = null;
+        if (BundleCache.getSecureAction().fileExists(m_file))
+        {
+            InputStream is = null;
+            try
+            {
+                is = BundleCache.getSecureAction().getFileInputStream(m_file);
+                ByteArrayOutputStream baos = new ByteArrayOutputStream(BundleCache.BUFSIZE);
+                byte[] buf = new byte[BundleCache.BUFSIZE];
+                for (int n = is.read(buf); n != -1; n = is.read(buf))
+                {
+                    baos.write(buf, 0, n);
+                }
+                bytes = baos.toByteArray();
+            }
+            finally
+            {
+                if (is != null) is.close();
+            }
+        }
+
+        if ((bytes == null) || !replay(bytes))
+        {
+            // Start over with a journal holding everything that
+            // could be read.
+            compact();
+        }
+        m_loaded = true;
+    }
+
+    /**
+     * Replays the records of the journal, returning <tt>false</tt> if the
+     * journal is not intact.
+    **/
+    private boolean replay(byte[] bytes) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if ((bytes.length < HEADER_SIZE)
+            || (in.readInt() != MAGIC) || (in.readInt() != FORMAT_VERSION))
+        {
+            m_logger.log(Logger.LOG_WARNING,
+                "Ignoring bundle state journal with unknown format: " + m_file);
+            return false;
+        }
+
+        CRC32 crc = new CRC32();
+        int pos = HEADER_SIZE;
+        while ((bytes.length - pos) >= 8)
+        {
+            int length = readInt(bytes, pos);
+            if ((length <= 0) || (length > (bytes.length - pos - 8)))
+            {
+                break;
+            }
+            crc.reset();
+            crc.update(bytes, pos + 4, length);
+            if (readInt(bytes, pos + 4 + length) != (int) crc.getValue())
+            {
+                break;
+            }
+
+            DataInputStream record = new DataInputStream(
+                new ByteArrayInputStream(bytes, pos + 4, length));
+            try
+            {
+                byte type = record.readByte();
+                String key = record.readUTF();
+                if (type == PUT)
+                {
+                    m_entries.put(key, Entry.read(record));
+                }
+                else
+                {
+                    m_entries.remove(key);
+                }
+            }
+            catch (IOException ex)
+            {
+                break;
+            }
+            m_recordCount++;
+            pos += length + 8;
+        }
+
+        if (pos < bytes.length)
+        {
+            m_logger.log(Logger.LOG_WARNING,
+                "Discarding incomplete tail of bundle state journal: " + m_file);
+            return false;
+        }
+        return true;
+    }
+
+    private static int readInt(byte[] bytes, int pos)
+    {
+        return ((bytes[pos] & 0xff) << 24) | ((bytes[pos + 1] & 0xff) << 16)
+            | ((bytes[pos + 2] & 0xff) << 8) | (bytes[pos + 3] & 0xff);
+    }
+
+    private void append(byte type, String key, Entry entry) throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(baos);
+        out.writeByte(type);
+        out.writeUTF(key);
+        if (entry != null)
+        {
+            entry.write(out);
+        }
+        out.flush();
+        writeRecord(new DataOutputStream(m_pending), baos.toByteArray());
+        m_pendingCount++;
+    }
+
+    private static void writeRecord(DataOutputStream out, byte[] payload)
+        throws IOException
+    {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeInt((int) crc.getValue());
+        out.flush();
+    }
+
+    /**
+     * Rewrites the journal with one record per archive. The new journal is
+     * written and synced next to the old one before it replaces it.
+    **/
+    private void compact() throws IOException
+    {
+        File dir = m_file.getParentFile();
+        if (!BundleCache.getSecureAction().fileExists(dir))
+        {
+            BundleCache.getSecureAction().mkdirs(dir);
+        }
+        File tmp = new File(dir, m_file.getName() + ".tmp");
+        FileOutputStream os = null;
+        try
+        {
+            os = BundleCache.getSecureAction().getFileOutputStream(tmp);
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(baos);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            for (Map.Entry<String, Entry> e : m_entries.entrySet())
+            {
+                ByteArrayOutputStream payload = new ByteArrayOutputStream();
+                DataOutputStream pout = new DataOutputStream(payload);
+                pout.writeByte(PUT);
+                pout.writeUTF(e.getKey());
+                e.getValue().write(pout);
+                pout.flush();
+                writeRecord(out, payload.toByteArray());
+            }
+            out.flush();
+            baos.writeTo(os);
+            os.getFD().sync();
+        }
+        finally
+        {
+            if (os != null) os.close();
+        }
+
+        if (!BundleCache.getSecureAction().renameFile(tmp, m_file))
+        {
+            // Some platforms cannot rename onto an existing file.
+            BundleCache.getSecureAction().deleteFile(m_file);
+            if (!BundleCache.getSecureAction().renameFile(tmp, m_file))
+            {
+                throw new IOException("Unable to replace bundle state journal: " + m_file);
+            }
+        }
+        m_recordCount = m_entries.size();
+        m_pending.reset();
+        m_pendingCount = 0;
+    }
+
+    /**
+     * The recorded state of one bundle archive.
+    **/
+    static class Entry
+    {
+        long m_id;
+        String m_location;
+        int m_state;
+        int m_startLevel;
+        long m_lastModified;
+        long m_refreshCount;
+        final Map<Long, String> m_revisionLocations = new TreeMap<Long, String>();
+
+        Entry()
+        {
+        }
+
+        Entry(Entry entry)
+        {
+            m_id = entry.m_id;
+            m_location = entry.m_location;
+            m_state = entry.m_state;
+            m_startLevel = entry.m_startLevel;
+            m_lastModified = entry.m_lastModified;
+            m_refreshCount = entry.m_refreshCount;
+            m_revisionLocations.putAll(entry.m_revisionLocations);
+        }
+
+        String getRevisionLocation(Long revNum)
+        {
+            return m_revisionLocations.get(revNum);
+        }
+
+        void write(DataOutputStream out) throws IOException
+        {
+            out.writeLong(m_id);
+            writeString(out, m_location);
+            out.writeInt(m_state);
+            out.writeInt(m_startLevel);
+            out.writeLong(m_lastModified);
+            out.writeLong(m_refreshCount);
+            out.writeInt(m_revisionLocations.size());
+            for (Map.Entry<Long, String> e : m_revisionLocations.entrySet())
+            {
+                out.writeLong(e.getKey().longValue());
+                writeString(out, e.getValue());
+            }
+        }
+
+        static Entry read(DataInputStream in) throws IOException
+        {
+            Entry entry = new Entry();
+            entry.m_id = in.readLong();
+            entry.m_location = readString(in);
+            entry.m_state = in.readInt();
+            entry.m_startLevel = in.readInt();
+            entry.m_lastModified = in.readLong();
+            entry.m_refreshCount = in.readLong();
+            for (int i = in.readInt(); i > 0; i--)
+            {
+                Long revNum = Long.valueOf(in.readLong());
+                entry.m_revisionLocations.put(revNum, readString(in));
+            }
+            return entry;
+        }
+
+        // Locations are not limited to the 64K of modified UTF-8.
+        private static void writeString(DataOutputStream out, String s)
+            throws IOException
+        {
+            if (s == null)
+            {
+                out.writeInt(-1);
+            }
+            else
+            {
+                byte[] bytes = s.getBytes("UTF-8");
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+
+        private static String readString(DataInputStream in) throws IOException
+        {
+            int length = in.readInt();
+            if (length < 0)
+            {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, "UTF-8");
+        }
+    }
+}
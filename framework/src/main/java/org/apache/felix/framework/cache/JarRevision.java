@@ -29,6 +29,7 @@ import java.util.Map;
 import java.util.zip.ZipEntry;
 
 import org.apache.felix.framework.Logger;
+import org.apache.felix.framework.util.MappedZipFile;
 import org.apache.felix.framework.util.StringMap;
 import org.apache.felix.framework.util.Util;
 import org.apache.felix.framework.util.WeakZipFileFactory;
@@ -52,6 +53,7 @@ class JarRevision extends BundleArchiveRevision
     private final WeakZipFileFactory m_zipFactory;
     private final File m_bundleFile;
     private final WeakZipFile m_zipFile;
+    private final MappedZipFile m_mappedZipFile;
 
     public JarRevision(
         Logger logger, Map configMap, WeakZipFileFactory zipFactory,
@@ -94,6 +96,24 @@ class JarRevision extends BundleArchiveRevision
             if (zipFile != null) zipFile.close();
             throw ex;
         }
+
+        // Map the bundle JAR file for its content, if configured.
+        MappedZipFile mappedZipFile = null;
+        if ("true".equalsIgnoreCase(
+            (String) getConfig().get(BundleCache.CACHE_MMAP_PROP)))
+        {
+            try
+            {
+                mappedZipFile = MappedZipFile.open(m_bundleFile);
+            }
+            catch (IOException ex)
+            {
+                getLogger().log(
+                    Logger.LOG_DEBUG,
+                    "Unable to map JAR file, using regular access: " + m_bundleFile, ex);
+            }
+        }
+        m_mappedZipFile = mappedZipFile;
     }
 
     public Map<String, Object> getManifestHeader() throws Exception
@@ -107,6 +127,11 @@ class JarRevision extends BundleArchiveRevision
 
     public synchronized Content getContent() throws Exception
     {
+        if (m_mappedZipFile != null)
+        {
+            return new MappedJarContent(getLogger(), getConfig(), m_zipFactory,
+                this, getRevisionRootDir(), m_bundleFile, m_mappedZipFile);
+        }
         return new JarContent(getLogger(), getConfig(), m_zipFactory,
             this, getRevisionRootDir(), m_bundleFile, m_zipFile);
     }
@@ -114,6 +139,10 @@ class JarRevision extends BundleArchiveRevision
     protected void close() throws Exception
     {
         m_zipFile.close();
+        if (m_mappedZipFile != null)
+        {
+            m_mappedZipFile.close();
+        }
     }
 
     //
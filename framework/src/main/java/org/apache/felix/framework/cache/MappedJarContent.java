@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.Map;
+import org.apache.felix.framework.Logger;
+import org.apache.felix.framework.util.FelixConstants;
+import org.apache.felix.framework.util.MappedZipFile;
+import org.apache.felix.framework.util.WeakZipFileFactory;
+
+/**
+ * <p>
+ * This class implements the content of a bundle JAR file on top of a
+ * memory-mapped zip file, whose central directory index is shared by all
+ * contents of the same revision. Entries are read without holding or
+ * reopening any file handle. Embedded directories, embedded JAR files and
+ * native libraries are rare and are handled by a regular
+ * <tt>JarContent</tt>, which is only created when needed.
+ * </p>
+**/
+public class MappedJarContent implements Content
+{
+    private final Logger m_logger;
+    private final Map<?, ?> m_configMap;
+    private final WeakZipFileFactory m_zipFactory;
+    private final Object m_revisionLock;
+    private final File m_rootDir;
+    private final File m_file;
+    private final MappedZipFile m_zipFile;
+    private JarContent m_jarContent;
+
+    public MappedJarContent(Logger logger, Map<?, ?> configMap, WeakZipFileFactory zipFactory,
+        Object revisionLock, File rootDir, File file, MappedZipFile zipFile)
+    {
+        m_logger = logger;
+        m_configMap = configMap;
+        m_zipFactory = zipFactory;
+        m_revisionLock = revisionLock;
+        m_rootDir = rootDir;
+        m_file = file;
+        m_zipFile = zipFile;
+    }
+
+    public synchronized void close()
+    {
+        // The mapped zip file is owned by the revision.
+        if (m_jarContent != null)
+        {
+            m_jarContent.close();
+            m_jarContent = null;
+        }
+    }
+
+    public boolean hasEntry(String name) throws IllegalStateException
+    {
+        return m_zipFile.getEntry(name) >= 0;
+    }
+
+    public Enumeration<String> getEntries()
+    {
+        // Spec says to return null if there are no entries.
+        return (m_zipFile.size() > 0) ? m_zipFile.names() : null;
+    }
+
+    public byte[] getEntryAsBytes(String name) throws IllegalStateException
+    {
+        int idx = m_zipFile.getEntry(name);
+        if (idx < 0)
+        {
+            return null;
+        }
+        try
+        {
+            return m_zipFile.getBytes(idx);
+        }
+        catch (Exception ex)
+        {
+            m_logger.log(
+                Logger.LOG_ERROR,
+                "MappedJarContent: Unable to read bytes for file " + name + " in ZIP file " + m_file.getAbsolutePath(), ex);
+            return null;
+        }
+    }
+
+    public InputStream getEntryAsStream(String name)
+        throws IllegalStateException, IOException
+    {
+        int idx = m_zipFile.getEntry(name);
+        if (idx < 0)
+        {
+            return null;
+        }
+        try
+        {
+            return m_zipFile.getInputStream(idx);
+        }
+        catch (Exception ex)
+        {
+            return null;
+        }
+    }
+
+    public URL getEntryAsURL(String name)
+    {
+        try
+        {
+            return new URL("jar:" + m_file.toURI().toURL().toExternalForm() + "!/" + name);
+        }
+        catch (MalformedURLException e)
+        {
+            return null;
+        }
+    }
+
+    public Content getEntryAsContent(String entryName)
+    {
+        // If the entry name refers to the content itself, then
+        // just return it immediately.
+        if (entryName.equals(FelixConstants.CLASS_PATH_DOT))
+        {
+            return new MappedJarContent(m_logger, m_configMap, m_zipFactory,
+                m_revisionLock, m_rootDir, m_file, m_zipFile);
+        }
+        return getJarContent().getEntryAsContent(entryName);
+    }
+
+    public String getEntryAsNativeLibrary(String entryName)
+    {
+        return getJarContent().getEntryAsNativeLibrary(entryName);
+    }
+
+    public String toString()
+    {
+        return "JAR " + m_file.getPath();
+    }
+
+    public File getFile()
+    {
+        return m_file;
+    }
+
+    private synchronized JarContent getJarContent()
+    {
+        if (m_jarContent == null)
+        {
+            m_jarContent = new JarContent(m_logger, m_configMap, m_zipFactory,
+                m_revisionLock, m_rootDir, m_file, null);
+        }
+        return m_jarContent;
+    }
+}
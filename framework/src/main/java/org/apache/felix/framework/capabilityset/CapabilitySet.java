@@ -23,17 +23,22 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.SortedMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.felix.framework.util.SecureAction;
 import org.apache.felix.framework.util.StringComparator;
@@ -45,8 +50,26 @@ import org.osgi.resource.Capability;
 
 public class CapabilitySet
 {
-    private final SortedMap<String, Map<Object, Set<BundleCapability>>> m_indices; // Should also be concurrent!
+    // Number of scanning EQ/GTE/LTE queries on an attribute after which a
+    // sorted secondary index is built for it.
+    private static final int SORTED_INDEX_THRESHOLD = 16;
+    // Upper bounds for the adaptive indexes, so that filters on ever new
+    // attribute names cannot make them grow without bound.
+    static final int MAX_SORTED_INDICES = 16;
+    static final int MAX_SCAN_COUNTS = 64;
+    // Value types that can be kept in a sorted secondary index; all of them
+    // are final and their natural ordering is the one used by compare().
+    private static final Set<Class<?>> SORTABLE_TYPES = new HashSet<Class<?>>(
+        Arrays.<Class<?>>asList(String.class, Version.class, Long.class,
+            Integer.class, Short.class, Byte.class, Double.class, Float.class,
+            Character.class));
+
+    private final ConcurrentNavigableMap<String, Map<Object, Set<BundleCapability>>> m_indices;
+    private final ConcurrentNavigableMap<String, SortedIndex> m_sortedIndices;
+    private final ConcurrentNavigableMap<String, AtomicInteger> m_scanCounts;
     private final Set<Capability> m_capSet = Collections.newSetFromMap(new ConcurrentHashMap<Capability, Boolean>());
+    // Guards modifications only, matching never takes this lock.
+    private final Object m_writeLock = new Object();
     private final static SecureAction m_secureAction = new SecureAction();
 
     public void dump()
@@ -84,6 +107,12 @@ public class CapabilitySet
             ? new ConcurrentSkipListMap<String, Map<Object, Set<BundleCapability>>>()
             : new ConcurrentSkipListMap<String, Map<Object, Set<BundleCapability>>>(
                 StringComparator.COMPARATOR);
+        m_sortedIndices = (caseSensitive)
+            ? new ConcurrentSkipListMap<String, SortedIndex>()
+            : new ConcurrentSkipListMap<String, SortedIndex>(StringComparator.COMPARATOR);
+        m_scanCounts = (caseSensitive)
+            ? new ConcurrentSkipListMap<String, AtomicInteger>()
+            : new ConcurrentSkipListMap<String, AtomicInteger>(StringComparator.COMPARATOR);
         for (int i = 0; (indexProps != null) && (i < indexProps.size()); i++)
         {
             m_indices.put(
@@ -93,8 +122,19 @@ public class CapabilitySet
 
     public void addCapability(final BundleCapability cap)
     {
-        m_capSet.add(cap);
+        synchronized (m_writeLock)
+        {
+            m_capSet.add(cap);
+            indexCapability(cap);
+            for (SortedIndex sortedIndex : m_sortedIndices.values())
+            {
+                sortedIndex.add(cap);
+            }
+        }
+    }
 
+    private void indexCapability(final BundleCapability cap)
+    {
         // Index capability.
         for (Entry<String, Map<Object, Set<BundleCapability>>> entry : m_indices.entrySet())
         {
@@ -137,33 +177,72 @@ public class CapabilitySet
 
     public void removeCapability(final BundleCapability cap)
     {
-        if (m_capSet.remove(cap))
+        synchronized (m_writeLock)
         {
-            for (Entry<String, Map<Object, Set<BundleCapability>>> entry : m_indices.entrySet())
+            if (m_capSet.remove(cap))
             {
-                Object value = cap.getAttributes().get(entry.getKey());
-                if (value != null)
+                deindexCapability(cap);
+                for (Iterator<SortedIndex> it = m_sortedIndices.values().iterator(); it.hasNext(); )
                 {
-                    if (value.getClass().isArray())
+                    SortedIndex sortedIndex = it.next();
+                    sortedIndex.remove(cap);
+                    // Drop indexes of attributes no capability has any more.
+                    if (sortedIndex.isEmpty())
                     {
-                        value = convertArrayToList(value);
+                        it.remove();
                     }
+                }
+            }
+        }
+    }
 
-                    Map<Object, Set<BundleCapability>> index = entry.getValue();
+    /**
+     * Refreshes the sorted secondary indexes of a capability whose attributes
+     * have changed. Attributes listed as index properties at construction
+     * time are expected to be immutable and are not refreshed.
+     * @param cap the capability whose attributes changed.
+    **/
+    public void updateCapability(final BundleCapability cap)
+    {
+        synchronized (m_writeLock)
+        {
+            if (m_capSet.contains(cap))
+            {
+                for (SortedIndex sortedIndex : m_sortedIndices.values())
+                {
+                    sortedIndex.remove(cap);
+                    sortedIndex.add(cap);
+                }
+            }
+        }
+    }
 
-                    if (value instanceof Collection)
-                    {
-                        Collection c = (Collection) value;
-                        for (Object o : c)
-                        {
-                            deindexCapability(index, cap, o);
-                        }
-                    }
-                    else
+    private void deindexCapability(final BundleCapability cap)
+    {
+        for (Entry<String, Map<Object, Set<BundleCapability>>> entry : m_indices.entrySet())
+        {
+            Object value = cap.getAttributes().get(entry.getKey());
+            if (value != null)
+            {
+                if (value.getClass().isArray())
+                {
+                    value = convertArrayToList(value);
+                }
+
+                Map<Object, Set<BundleCapability>> index = entry.getValue();
+
+                if (value instanceof Collection)
+                {
+                    Collection c = (Collection) value;
+                    for (Object o : c)
                     {
-                        deindexCapability(index, cap, value);
+                        deindexCapability(index, cap, o);
                     }
                 }
+                else
+                {
+                    deindexCapability(index, cap, value);
+                }
             }
         }
     }
@@ -204,7 +283,7 @@ public class CapabilitySet
             // For AND we calculate the intersection of each subfilter.
             // We can short-circuit the AND operation if there are no
             // remaining capabilities.
-            final List<SimpleFilter> sfs = (List<SimpleFilter>) sf.getValue();
+            final List<SimpleFilter> sfs = indexedFirst((List<SimpleFilter>) sf.getValue());
             for (int i = 0; (caps.size() > 0) && (i < sfs.size()); i++)
             {
                 matches = match(caps, sfs.get(i));
@@ -249,15 +328,25 @@ public class CapabilitySet
             }
             else
             {
-                for (Iterator<Capability> it = caps.iterator(); it.hasNext(); )
+                // Only the full set is worth an index lookup, subsets left
+                // over by an AND are already small enough to scan.
+                SortedIndex sortedIndex = (caps == m_capSet) ? getSortedIndex(sf) : null;
+                if (sortedIndex != null)
+                {
+                    sortedIndex.match(sf, matches);
+                }
+                else
                 {
-                    Capability cap = it.next();
-                    Object lhs = cap.getAttributes().get(sf.getName());
-                    if (lhs != null)
+                    for (Iterator<Capability> it = caps.iterator(); it.hasNext(); )
                     {
-                        if (compare(lhs, sf.getValue(), sf.getOperation()))
+                        Capability cap = it.next();
+                        Object lhs = cap.getAttributes().get(sf.getName());
+                        if (lhs != null)
                         {
-                            matches.add(cap);
+                            if (compare(lhs, sf.getValue(), sf.getOperation()))
+                            {
+                                matches.add(cap);
+                            }
                         }
                     }
                 }
@@ -267,6 +356,118 @@ public class CapabilitySet
         return matches;
     }
 
+    /**
+     * Returns the subfilters of an AND with one that can be answered from an
+     * index moved to the front, so that the remaining subfilters only have
+     * to scan the already narrowed set. Only the first subfilter is matched
+     * against the full set, so the subfilters are left in their order if it
+     * can use an index already or if none of them can.
+    **/
+    List<SimpleFilter> indexedFirst(List<SimpleFilter> sfs)
+    {
+        if (sfs.isEmpty() || isIndexed(sfs.get(0)))
+        {
+            return sfs;
+        }
+        for (int i = 1; i < sfs.size(); i++)
+        {
+            if (isIndexed(sfs.get(i)))
+            {
+                List<SimpleFilter> ordered = new ArrayList<SimpleFilter>(sfs);
+                ordered.add(0, ordered.remove(i));
+                return ordered;
+            }
+        }
+        return sfs;
+    }
+
+    private boolean isIndexed(SimpleFilter sf)
+    {
+        if (sf.getName() == null)
+        {
+            return false;
+        }
+        int op = sf.getOperation();
+        if ((op == SimpleFilter.EQ) && m_indices.containsKey(sf.getName()))
+        {
+            return true;
+        }
+        return ((op == SimpleFilter.EQ) || (op == SimpleFilter.GTE) || (op == SimpleFilter.LTE))
+            && m_sortedIndices.containsKey(sf.getName());
+    }
+
+    /**
+     * Returns the sorted secondary index for the attribute of the given
+     * filter, building it once the attribute has been scanned often enough.
+     * Returns <tt>null</tt> if the filter has to be evaluated by scanning.
+    **/
+    private SortedIndex getSortedIndex(SimpleFilter sf)
+    {
+        int op = sf.getOperation();
+        if ((op != SimpleFilter.EQ) && (op != SimpleFilter.GTE) && (op != SimpleFilter.LTE))
+        {
+            return null;
+        }
+        SortedIndex sortedIndex = m_sortedIndices.get(sf.getName());
+        if (sortedIndex == null)
+        {
+            AtomicInteger count = m_scanCounts.get(sf.getName());
+            if (count == null)
+            {
+                // Forget the counts of attributes that did not make it to an
+                // index so far rather than tracking any number of names.
+                if (m_scanCounts.size() >= MAX_SCAN_COUNTS)
+                {
+                    m_scanCounts.clear();
+                }
+                count = new AtomicInteger();
+                AtomicInteger prev = m_scanCounts.putIfAbsent(sf.getName(), count);
+                count = (prev != null) ? prev : count;
+            }
+            if (count.incrementAndGet() == SORTED_INDEX_THRESHOLD)
+            {
+                sortedIndex = buildSortedIndex(sf.getName());
+            }
+        }
+        return sortedIndex;
+    }
+
+    private SortedIndex buildSortedIndex(String name)
+    {
+        synchronized (m_writeLock)
+        {
+            SortedIndex sortedIndex = m_sortedIndices.get(name);
+            if ((sortedIndex == null) && (m_sortedIndices.size() < MAX_SORTED_INDICES))
+            {
+                sortedIndex = new SortedIndex(name);
+                for (Capability cap : m_capSet)
+                {
+                    sortedIndex.add((BundleCapability) cap);
+                }
+                m_scanCounts.remove(name);
+                if (sortedIndex.isEmpty())
+                {
+                    // No capability has the attribute, scanning is cheap.
+                    return null;
+                }
+                // Publish only once fully populated, later modifications
+                // happen under the write lock and will see it.
+                m_sortedIndices.put(name, sortedIndex);
+            }
+            return sortedIndex;
+        }
+    }
+
+    int getSortedIndexCount()
+    {
+        return m_sortedIndices.size();
+    }
+
+    int getTrackedAttributeCount()
+    {
+        return m_scanCounts.size();
+    }
+
     public static boolean matches(Capability cap, SimpleFilter sf)
     {
         return matchesInternal(cap, sf) && matchMandatory(cap, sf);
@@ -340,7 +541,7 @@ public class CapabilitySet
         return caps;
     }
 
-    private static boolean matchMandatory(Capability cap, SimpleFilter sf)
+    static boolean matchMandatory(Capability cap, SimpleFilter sf)
     {
         Map<String, Object> attrs = cap.getAttributes();
         for (Entry<String, Object> entry : attrs.entrySet())
@@ -380,6 +581,17 @@ public class CapabilitySet
     private static final String VALUE_OF_METHOD_NAME = "valueOf";
 
     private static boolean compare(Object lhs, Object rhsUnknown, int op)
+    {
+        return compare(lhs, rhsUnknown, op, null);
+    }
+
+    /**
+     * Compares an attribute value against a filter operand. If a compiled
+     * comparison is given, it supplies the operand already converted to the
+     * type of the attribute value instead of converting it on every call.
+    **/
+    static boolean compare(
+        Object lhs, Object rhsUnknown, int op, CompiledFilter.Comparison comparison)
     {
         if (lhs == null)
         {
@@ -397,16 +609,7 @@ public class CapabilitySet
         //Version is comparable so we need to check this first
         if(lhs instanceof Version && op == SimpleFilter.EQ)
         {
-            Object rhs = null;
-            try
-            {
-                rhs = coerceType(lhs, (String) rhsUnknown);
-            }
-            catch (Exception ex)
-            {
-                //Do nothing will check later if rhs is null
-            }
-
+            Object rhs = coerce(lhs, rhsUnknown, comparison);
             if(rhs != null && rhs instanceof VersionRange)
             {
                 return ((VersionRange)rhs).isInRange((Version)lhs);
@@ -430,11 +633,8 @@ public class CapabilitySet
             }
             else
             {
-                try
-                {
-                    rhs = coerceType(lhs, (String) rhsUnknown);
-                }
-                catch (Exception ex)
+                rhs = coerce(lhs, rhsUnknown, comparison);
+                if (rhs == null)
                 {
                     return false;
                 }
@@ -481,12 +681,8 @@ public class CapabilitySet
         // Booleans do not implement comparable, so special case them.
         else if (lhs instanceof Boolean)
         {
-            Object rhs;
-            try
-            {
-                rhs = coerceType(lhs, (String) rhsUnknown);
-            }
-            catch (Exception ex)
+            Object rhs = coerce(lhs, rhsUnknown, comparison);
+            if (rhs == null)
             {
                 return false;
             }
@@ -518,7 +714,7 @@ public class CapabilitySet
         {
             for (Iterator iter = ((Collection) lhs).iterator(); iter.hasNext(); )
             {
-                if (compare(iter.next(), rhsUnknown, op))
+                if (compare(iter.next(), rhsUnknown, op, comparison))
                 {
                     return true;
                 }
@@ -537,7 +733,8 @@ public class CapabilitySet
         // equality comparison.
         try
         {
-            return lhs.equals(coerceType(lhs, (String) rhsUnknown));
+            Object rhs = coerce(lhs, rhsUnknown, comparison);
+            return (rhs != null) && lhs.equals(rhs);
         }
         catch (Exception ex)
         {
@@ -573,6 +770,30 @@ public class CapabilitySet
         return sb.toString();
     }
 
+    private static Object coerce(
+        Object lhs, Object rhsUnknown, CompiledFilter.Comparison comparison)
+    {
+        return (comparison != null)
+            ? comparison.coerce(lhs)
+            : coerce(lhs, rhsUnknown);
+    }
+
+    /**
+     * Converts a filter operand to the type of the given attribute value.
+     * @return the converted operand or <tt>null</tt> if it cannot be converted.
+    **/
+    static Object coerce(Object lhs, Object rhsUnknown)
+    {
+        try
+        {
+            return coerceType(lhs, (String) rhsUnknown);
+        }
+        catch (Exception ex)
+        {
+            return null;
+        }
+    }
+
     private static Object coerceType(Object lhs, String rhsString) throws Exception
     {
         // If the LHS expects a string, then we can just return
@@ -642,6 +863,177 @@ public class CapabilitySet
         return rhs;
     }
 
+    /**
+     * Secondary index for a single attribute that keeps the capabilities
+     * ordered by attribute value, one sorted map per value type. It answers
+     * EQ, GTE and LTE lookups with a range view instead of a full scan.
+     * Values which cannot be ordered are kept in a separate set and are
+     * always evaluated. Since attributes may change between an update and
+     * the corresponding call to {@link CapabilitySet#updateCapability},
+     * every candidate is verified against its current attributes.
+    **/
+    private static class SortedIndex
+    {
+        private final String m_name;
+        private final ConcurrentMap<Class<?>, ConcurrentSkipListMap<Object, Set<BundleCapability>>> m_typed =
+            new ConcurrentHashMap<Class<?>, ConcurrentSkipListMap<Object, Set<BundleCapability>>>();
+        private final Set<BundleCapability> m_unsortable =
+            Collections.newSetFromMap(new ConcurrentHashMap<BundleCapability, Boolean>());
+        // Remembers the keys each capability was indexed under, since its
+        // attributes may have changed by the time it is removed.
+        private final Map<BundleCapability, List<Object>> m_keys =
+            new ConcurrentHashMap<BundleCapability, List<Object>>();
+
+        SortedIndex(String name)
+        {
+            m_name = name;
+        }
+
+        void add(BundleCapability cap)
+        {
+            Object value = cap.getAttributes().get(m_name);
+            if (value == null)
+            {
+                return;
+            }
+            if (value.getClass().isArray())
+            {
+                value = convertArrayToList(value);
+            }
+            Collection<?> values = (value instanceof Collection)
+                ? (Collection<?>) value : Collections.singletonList(value);
+
+            List<Object> keys = new ArrayList<Object>(values.size());
+            for (Object o : values)
+            {
+                if ((o != null) && SORTABLE_TYPES.contains(o.getClass()))
+                {
+                    ConcurrentSkipListMap<Object, Set<BundleCapability>> map = m_typed.get(o.getClass());
+                    if (map == null)
+                    {
+                        map = new ConcurrentSkipListMap<Object, Set<BundleCapability>>();
+                        m_typed.put(o.getClass(), map);
+                    }
+                    Set<BundleCapability> caps = map.get(o);
+                    if (caps == null)
+                    {
+                        caps = Collections.newSetFromMap(new ConcurrentHashMap<BundleCapability, Boolean>());
+                        map.put(o, caps);
+                    }
+                    caps.add(cap);
+                    keys.add(o);
+                }
+                else if (o != null)
+                {
+                    m_unsortable.add(cap);
+                }
+            }
+            m_keys.put(cap, keys);
+        }
+
+        boolean isEmpty()
+        {
+            return m_keys.isEmpty();
+        }
+
+        void remove(BundleCapability cap)
+        {
+            m_unsortable.remove(cap);
+            List<Object> keys = m_keys.remove(cap);
+            for (int i = 0; (keys != null) && (i < keys.size()); i++)
+            {
+                Object key = keys.get(i);
+                Map<Object, Set<BundleCapability>> map = m_typed.get(key.getClass());
+                if (map != null)
+                {
+                    Set<BundleCapability> caps = map.get(key);
+                    if (caps != null)
+                    {
+                        caps.remove(cap);
+                        if (caps.isEmpty())
+                        {
+                            map.remove(key);
+                        }
+                    }
+                }
+            }
+        }
+
+        void match(SimpleFilter sf, Set<Capability> matches)
+        {
+            Set<BundleCapability> candidates = new HashSet<BundleCapability>();
+            for (ConcurrentSkipListMap<Object, Set<BundleCapability>> map : m_typed.values())
+            {
+                Map<Object, Set<BundleCapability>> range = select(map, sf);
+                if (range != null)
+                {
+                    for (Set<BundleCapability> caps : range.values())
+                    {
+                        candidates.addAll(caps);
+                    }
+                }
+            }
+            candidates.addAll(m_unsortable);
+
+            for (BundleCapability cap : candidates)
+            {
+                if (compare(cap.getAttributes().get(m_name), sf.getValue(), sf.getOperation()))
+                {
+                    matches.add(cap);
+                }
+            }
+        }
+
+        private static Map<Object, Set<BundleCapability>> select(
+            NavigableMap<Object, Set<BundleCapability>> map, SimpleFilter sf)
+        {
+            Object sample;
+            try
+            {
+                sample = map.firstKey();
+            }
+            catch (NoSuchElementException ex)
+            {
+                return null;
+            }
+
+            try
+            {
+                String rhsString = (String) sf.getValue();
+                if ((sample instanceof Version) && (sf.getOperation() == SimpleFilter.EQ)
+                    && (rhsString.indexOf(',') >= 0))
+                {
+                    VersionRange range = VersionRange.parse(rhsString);
+                    return (range.getCeiling() == null)
+                        ? map.tailMap(range.getFloor(), range.isFloorInclusive())
+                        : map.subMap(range.getFloor(), range.isFloorInclusive(),
+                            range.getCeiling(), range.isCeilingInclusive());
+                }
+
+                Object rhs = coerceType(sample, rhsString);
+                switch (sf.getOperation())
+                {
+                    case SimpleFilter.EQ :
+                        Set<BundleCapability> caps = map.get(rhs);
+                        return (caps == null)
+                            ? null : Collections.singletonMap(rhs, caps);
+                    case SimpleFilter.GTE :
+                        return map.tailMap(rhs, true);
+                    case SimpleFilter.LTE :
+                        return map.headMap(rhs, true);
+                    default :
+                        return null;
+                }
+            }
+            catch (Exception ex)
+            {
+                // The filter value cannot be converted to this type, so
+                // compare() would not match any of these values either.
+                return null;
+            }
+        }
+    }
+
     /**
      * This is an ugly utility method to convert an array of primitives
      * to an array of primitive wrapper objects. This method simplifies
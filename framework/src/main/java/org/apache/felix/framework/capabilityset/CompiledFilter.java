@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.capabilityset;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.osgi.framework.Version;
+import org.osgi.resource.Capability;
+
+/**
+ * A {@link SimpleFilter} turned into a reusable predicate tree. Evaluating
+ * a compiled filter gives the same results as
+ * {@link CapabilitySet#matches(Capability, SimpleFilter)}, but the tree
+ * is walked without re-inspecting the filter operations and the operand of
+ * every comparison is converted only once per attribute value type, rather
+ * than through reflection on each evaluation.
+ * <p>
+ * Compiled filters are immutable apart from their conversion caches and
+ * can be shared between threads.
+**/
+public abstract class CompiledFilter
+{
+    private final SimpleFilter m_filter;
+
+    CompiledFilter(SimpleFilter filter)
+    {
+        m_filter = filter;
+    }
+
+    public static CompiledFilter compile(SimpleFilter sf)
+    {
+        switch (sf.getOperation())
+        {
+            case SimpleFilter.MATCH_ALL:
+                return new MatchAll(sf);
+            case SimpleFilter.AND:
+                return new And(sf, compile((List<?>) sf.getValue()));
+            case SimpleFilter.OR:
+                return new Or(sf, compile((List<?>) sf.getValue()));
+            case SimpleFilter.NOT:
+                return new Not(sf, compile((List<?>) sf.getValue()));
+            case SimpleFilter.PRESENT:
+                return new Present(sf);
+            default:
+                return new Comparison(sf);
+        }
+    }
+
+    private static CompiledFilter[] compile(List<?> sfs)
+    {
+        CompiledFilter[] filters = new CompiledFilter[sfs.size()];
+        for (int i = 0; i < filters.length; i++)
+        {
+            filters[i] = compile((SimpleFilter) sfs.get(i));
+        }
+        return filters;
+    }
+
+    /**
+     * Returns the filter this predicate was compiled from.
+    **/
+    public SimpleFilter getFilter()
+    {
+        return m_filter;
+    }
+
+    /**
+     * Matches the attributes of the given capability and also checks that
+     * all of its mandatory attributes are referenced by the filter.
+    **/
+    public boolean matches(Capability cap)
+    {
+        return matches(cap.getAttributes()) && CapabilitySet.matchMandatory(cap, m_filter);
+    }
+
+    /**
+     * Matches the given attributes, ignoring mandatory attributes.
+    **/
+    public abstract boolean matches(Map<String, ?> attrs);
+
+    @Override
+    public String toString()
+    {
+        return m_filter.toString();
+    }
+
+    private static class MatchAll extends CompiledFilter
+    {
+        MatchAll(SimpleFilter sf)
+        {
+            super(sf);
+        }
+
+        @Override
+        public boolean matches(Map<String, ?> attrs)
+        {
+            return true;
+        }
+    }
+
+    private static class And extends CompiledFilter
+    {
+        private final CompiledFilter[] m_filters;
+
+        And(SimpleFilter sf, CompiledFilter[] filters)
+        {
+            super(sf);
+            m_filters = filters;
+        }
+
+        @Override
+        public boolean matches(Map<String, ?> attrs)
+        {
+            for (int i = 0; i < m_filters.length; i++)
+            {
+                if (!m_filters[i].matches(attrs))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class Or extends CompiledFilter
+    {
+        private final CompiledFilter[] m_filters;
+
+        Or(SimpleFilter sf, CompiledFilter[] filters)
+        {
+            super(sf);
+            m_filters = filters;
+        }
+
+        @Override
+        public boolean matches(Map<String, ?> attrs)
+        {
+            for (int i = 0; i < m_filters.length; i++)
+            {
+                if (m_filters[i].matches(attrs))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class Not extends CompiledFilter
+    {
+        private final CompiledFilter m_operand;
+
+        Not(SimpleFilter sf, CompiledFilter[] filters)
+        {
+            super(sf);
+            // Like the interpreted evaluation, only the last operand counts.
+            m_operand = (filters.length > 0) ? filters[filters.length - 1] : null;
+        }
+
+        @Override
+        public boolean matches(Map<String, ?> attrs)
+        {
+            return (m_operand == null) || !m_operand.matches(attrs);
+        }
+    }
+
+    private static class Present extends CompiledFilter
+    {
+        private final String m_name;
+
+        Present(SimpleFilter sf)
+        {
+            super(sf);
+            m_name = sf.getName();
+        }
+
+        @Override
+        public boolean matches(Map<String, ?> attrs)
+        {
+            return attrs.get(m_name) != null;
+        }
+    }
+
+    /**
+     * A single attribute comparison. It caches the operand converted to
+     * each attribute value type it has been compared against. Only types
+     * that cannot be unloaded with a bundle are cached.
+    **/
+    static class Comparison extends CompiledFilter
+    {
+        private static final Object NOT_CONVERTIBLE = new Object();
+
+        private final String m_name;
+        private final Object m_value;
+        private final int m_op;
+        private final ConcurrentMap<Class<?>, Object> m_converted =
+            new ConcurrentHashMap<Class<?>, Object>(4);
+
+        Comparison(SimpleFilter sf)
+        {
+            super(sf);
+            m_name = sf.getName();
+            m_value = sf.getValue();
+            m_op = sf.getOperation();
+        }
+
+        @Override
+        public boolean matches(Map<String, ?> attrs)
+        {
+            Object lhs = attrs.get(m_name);
+            return (lhs != null) && CapabilitySet.compare(lhs, m_value, m_op, this);
+        }
+
+        /**
+         * Returns the operand converted to the type of the given value or
+         * <tt>null</tt> if it cannot be converted.
+        **/
+        Object coerce(Object lhs)
+        {
+            Class<?> type = lhs.getClass();
+            Object rhs = m_converted.get(type);
+            if (rhs == null)
+            {
+                rhs = CapabilitySet.coerce(lhs, m_value);
+                if (!isCacheable(type))
+                {
+                    return rhs;
+                }
+                m_converted.putIfAbsent(type, (rhs == null) ? NOT_CONVERTIBLE : rhs);
+            }
+            return (rhs == NOT_CONVERTIBLE) ? null : rhs;
+        }
+
+        private static boolean isCacheable(Class<?> type)
+        {
+            // Only classes named java.* can come from the boot class loader,
+            // everything else might belong to a bundle.
+            return (type == Version.class) || type.getName().startsWith("java.");
+        }
+    }
+}
@@ -51,10 +51,20 @@ public interface FelixConstants extends org.osgi.framework.Constants
     String IMPLICIT_BOOT_DELEGATION_PROP = "felix.bootdelegation.implicit";
     String BOOT_CLASSLOADERS_PROP = "felix.bootdelegation.classloaders";
     String USE_LOCALURLS_PROP = "felix.jarurls";
+    String NEGATIVE_CACHE_SIZE_PROP = "felix.classloader.negativecache.size";
     String NATIVE_OS_NAME_ALIAS_PREFIX = "felix.native.osname.alias";
     String NATIVE_PROC_NAME_ALIAS_PREFIX = "felix.native.processor.alias";
     String USE_CACHEDURLS_PROPS = "felix.bundlecodesource.usecachedurls";
     String RESOLVER_PARALLELISM = "felix.resolver.parallelism";
+    String RESOLVER_CACHE = "felix.resolver.cache";
+    String RESOLVER_INCREMENTAL = "felix.resolver.incremental";
+    String RESOLVER_PARALLEL_CHECKS = "felix.resolver.parallel.checks";
+    String RESOLVER_TIMEOUT = "felix.resolver.timeout";
+    String RESOLVER_MAX_PERMUTATIONS = "felix.resolver.max.permutations";
+    String STARTLEVEL_PARALLELISM = "felix.startlevel.parallelism";
+    String DISPATCHER_PARALLELISM = "felix.dispatcher.parallelism";
+    String METRICS_LOG_INTERVAL = "felix.metrics.log.interval";
+    String METRICS_LOG_LEVEL = "felix.metrics.log.level";
 
     // Missing OSGi constant for resolution directive.
     String RESOLUTION_DYNAMIC = "dynamic";
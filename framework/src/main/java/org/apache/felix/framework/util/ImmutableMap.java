@@ -20,6 +20,7 @@ package org.apache.felix.framework.util;
 
 import java.util.AbstractMap;
 import java.util.AbstractSet;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
@@ -45,6 +46,56 @@ public class ImmutableMap<K, V> extends AbstractMap<K, V>
         }
     }
 
+    /**
+     * Returns an immutable map with the entries of the given map, in the same
+     * order, whose keys and values are taken from the framework-wide
+     * <tt>Interner</tt>. Maps with equal entries in the same order are shared
+     * between all capabilities and requirements that declare them.
+    **/
+    // Interned keys and values are of the same type as the given ones, except
+    // for lists which become immutable lists, so they are still a K and a V
+    // for the key and value types capabilities and requirements use.
+    @SuppressWarnings("unchecked")
+    public static <K, V> ImmutableMap<K, V> newSharedInstance(Map<K, V> map)
+    {
+        if (map.isEmpty())
+        {
+            return (ImmutableMap<K, V>) EMPTY;
+        }
+        Entry<K, V>[] entries = (Entry<K, V>[]) new Entry<?, ?>[map.size()];
+        int i = 0;
+        for (Entry<K, V> entry : map.entrySet())
+        {
+            entries[i++] = new SimpleImmutableEntry<K, V>(
+                (K) Interner.internValue(entry.getKey()),
+                (V) Interner.internValue(entry.getValue()));
+        }
+        ImmutableMap<K, V> result = new ImmutableMap<K, V>(entries);
+        ImmutableMap<K, V> shared = Interner.intern(result);
+        // Equal maps may list their entries in a different order, which
+        // callers can observe; only share a map with the same order.
+        return result.hasSameOrder(shared) ? shared : result;
+    }
+
+    private static final ImmutableMap<Object, Object> EMPTY =
+        new ImmutableMap<Object, Object>(Collections.emptyMap());
+
+    private boolean hasSameOrder(ImmutableMap<K, V> map)
+    {
+        if (map == this)
+        {
+            return true;
+        }
+        for (int i = 0; i < entries.length; i++)
+        {
+            if (!entries[i].equals(map.entries[i]))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
     protected ImmutableMap(Entry<K, V>[] entries)
     {
         this.entries = entries.clone();
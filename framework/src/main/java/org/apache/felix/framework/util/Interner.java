@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.osgi.framework.Version;
+
+/**
+ * Framework-wide pool of immutable values that are repeated across
+ * capabilities and requirements of many revisions, such as namespaces,
+ * package names, versions, uses lists and whole attribute maps. Equal
+ * values are replaced by one shared instance. The pool only holds values
+ * weakly, so values no longer used by any revision can be collected.
+ * <p>
+ * The pool is a concurrent map, so looking up and adding values does not
+ * take a lock shared by all threads building capabilities and requirements.
+ * </p>
+**/
+public class Interner
+{
+    private static final ConcurrentMap<WeakKey, WeakKey> m_pool =
+        new ConcurrentHashMap<WeakKey, WeakKey>();
+    private static final ReferenceQueue<Object> m_queue = new ReferenceQueue<Object>();
+
+    /**
+     * Returns the pooled instance equal to the given value, adding the
+     * value to the pool if there is none. The value must not be modified
+     * afterwards.
+    **/
+    @SuppressWarnings("unchecked")
+    public static <T> T intern(T value)
+    {
+        if (value == null)
+        {
+            return null;
+        }
+        expunge();
+        WeakKey key = new WeakKey(value, m_queue);
+        while (true)
+        {
+            WeakKey prev = m_pool.putIfAbsent(key, key);
+            if (prev == null)
+            {
+                return value;
+            }
+            Object pooled = prev.get();
+            if (pooled != null)
+            {
+                // Only share instances of the same class, so the cast holds
+                // even for equal values of different types.
+                return (pooled.getClass() == value.getClass()) ? (T) pooled : value;
+            }
+            // Collected since it was found, replace it.
+            m_pool.remove(prev, prev);
+        }
+    }
+
+    /**
+     * Returns a pooled instance of an attribute or directive value. Strings,
+     * versions and version ranges are pooled as they are; lists are turned
+     * into immutable lists of pooled elements. Other values are returned
+     * unchanged.
+    **/
+    public static Object internValue(Object value)
+    {
+        if ((value instanceof String) || (value instanceof Version)
+            || (value instanceof VersionRange))
+        {
+            return intern(value);
+        }
+        else if ((value instanceof List) && !(value instanceof ImmutableList))
+        {
+            List<?> list = (List<?>) value;
+            Object[] elements = new Object[list.size()];
+            for (int i = 0; i < elements.length; i++)
+            {
+                elements[i] = internValue(list.get(i));
+            }
+            return intern(ImmutableList.newInstance(elements));
+        }
+        return value;
+    }
+
+    /**
+     * Returns the number of values currently in the pool.
+    **/
+    public static int size()
+    {
+        expunge();
+        return m_pool.size();
+    }
+
+    private static void expunge()
+    {
+        Reference<?> ref;
+        while ((ref = m_queue.poll()) != null)
+        {
+            m_pool.remove(ref);
+        }
+    }
+
+    /**
+     * Weak reference to a pooled value that compares equal to the reference
+     * of any equal value. A collected value is only equal to its own
+     * reference, so it can still be removed from the pool.
+    **/
+    private static final class WeakKey extends WeakReference<Object>
+    {
+        private final int m_hash;
+
+        WeakKey(Object value, ReferenceQueue<Object> queue)
+        {
+            super(value, queue);
+            m_hash = value.hashCode();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return m_hash;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (o == this)
+            {
+                return true;
+            }
+            if (!(o instanceof WeakKey) || (((WeakKey) o).m_hash != m_hash))
+            {
+                return false;
+            }
+            Object value = get();
+            return (value != null) && value.equals(((WeakKey) o).get());
+        }
+    }
+}
@@ -0,0 +1,480 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * This class implements a read-only zip file which is memory-mapped as a
+ * whole. The central directory is parsed once into a compact index, so
+ * looking up entries neither needs an open file handle nor allocates
+ * <tt>ZipEntry</tt> objects. Entries are identified by their index, which
+ * is negative if an entry does not exist. Zip64 archives and archives larger
+ * than 2GB are not supported and cause an <tt>IOException</tt> on opening,
+ * in which case a regular zip file should be used instead. Corrupt headers
+ * are reported as a <tt>ZipException</tt>, too, never as a runtime
+ * exception from reading past the mapping.
+ */
+public class MappedZipFile
+{
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int EOCD_LENGTH = 22;
+    private static final int CEN_SIGNATURE = 0x02014b50;
+    private static final int CEN_LENGTH = 46;
+    private static final int LOC_SIGNATURE = 0x04034b50;
+    private static final int LOC_LENGTH = 30;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private static final SecureAction m_secureAction = new SecureAction();
+
+    private final File m_file;
+    private volatile ByteBuffer m_buffer;
+    // Entry names and the offsets of their central directory records, in
+    // the order of the central directory.
+    private final String[] m_names;
+    private final int[] m_offsets;
+    // Open addressing hash table of entry indices plus one.
+    private final int[] m_table;
+
+    private MappedZipFile(File file, ByteBuffer buffer, String[] names, int[] offsets)
+    {
+        m_file = file;
+        m_buffer = buffer;
+        m_names = names;
+        m_offsets = offsets;
+        m_table = new int[tableSize(names.length)];
+        for (int i = 0; i < names.length; i++)
+        {
+            int slot = names[i].hashCode() & (m_table.length - 1);
+            while (m_table[slot] != 0)
+            {
+                slot = (slot + 1) & (m_table.length - 1);
+            }
+            m_table[slot] = i + 1;
+        }
+    }
+
+    /**
+     * Maps the specified zip file and indexes its central directory.
+     * @param file the target zip file.
+     * @return the mapped zip file.
+     * @throws IOException if the file cannot be mapped or is not a supported
+     *         zip file.
+     */
+    public static MappedZipFile open(File file) throws IOException
+    {
+        ByteBuffer buffer;
+        FileInputStream fis = m_secureAction.getFileInputStream(file);
+        try
+        {
+            FileChannel channel = fis.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+            {
+                throw new ZipException("Zip file too large to map: " + file);
+            }
+            // The mapping stays valid after the channel is closed.
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        finally
+        {
+            fis.close();
+        }
+
+        // Find the end of central directory record, which is followed
+        // by a comment of at most 65535 bytes.
+        int eocd = -1;
+        int limit = Math.max(0, buffer.limit() - EOCD_LENGTH - 0xFFFF);
+        for (int i = buffer.limit() - EOCD_LENGTH; (eocd < 0) && (i >= limit); i--)
+        {
+            if (getInt(buffer, i) == EOCD_SIGNATURE)
+            {
+                eocd = i;
+            }
+        }
+        if (eocd < 0)
+        {
+            throw new ZipException("Not a zip file: " + file);
+        }
+        int count = getShort(buffer, eocd + 10);
+        long cenSize = getInt(buffer, eocd + 12) & 0xFFFFFFFFL;
+        long cenOffset = getInt(buffer, eocd + 16) & 0xFFFFFFFFL;
+        if ((count == 0xFFFF) || (cenSize == 0xFFFFFFFFL) || (cenOffset == 0xFFFFFFFFL))
+        {
+            throw new ZipException("Zip64 files are not supported: " + file);
+        }
+        if (cenOffset + cenSize > eocd)
+        {
+            throw new ZipException("Invalid central directory: " + file);
+        }
+
+        String[] names = new String[count];
+        int[] offsets = new int[count];
+        int pos = (int) cenOffset;
+        for (int i = 0; i < count; i++)
+        {
+            if ((pos + CEN_LENGTH > eocd) || (getInt(buffer, pos) != CEN_SIGNATURE))
+            {
+                throw new ZipException("Invalid central directory: " + file);
+            }
+            int nameLength = getShort(buffer, pos + 28);
+            if (pos + CEN_LENGTH + nameLength > eocd)
+            {
+                throw new ZipException("Invalid central directory: " + file);
+            }
+            byte[] name = new byte[nameLength];
+            ByteBuffer dup = buffer.duplicate();
+            dup.position(pos + CEN_LENGTH);
+            dup.get(name);
+            // Names are decoded as UTF-8 like java.util.zip does by
+            // default, whether or not the language encoding flag is set.
+            names[i] = new String(name, "UTF-8");
+            offsets[i] = pos;
+            pos += CEN_LENGTH + nameLength
+                + getShort(buffer, pos + 30) + getShort(buffer, pos + 32);
+        }
+
+        return new MappedZipFile(file, buffer, names, offsets);
+    }
+
+    /**
+     * Returns the index of the named entry. Like <tt>ZipFile</tt>, a
+     * directory entry is also found by its name without a trailing slash.
+     * @param name the entry name.
+     * @return the entry index, or a negative value if there is no such entry.
+     */
+    public int getEntry(String name)
+    {
+        int idx = find(name);
+        if ((idx < 0) && !name.endsWith("/"))
+        {
+            idx = find(name + "/");
+        }
+        return idx;
+    }
+
+    private int find(String name)
+    {
+        int slot = name.hashCode() & (m_table.length - 1);
+        for (int entry = m_table[slot]; entry != 0; entry = m_table[slot])
+        {
+            if (m_names[entry - 1].equals(name))
+            {
+                return entry - 1;
+            }
+            slot = (slot + 1) & (m_table.length - 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of entries.
+     * @return the number of entries.
+     */
+    public int size()
+    {
+        return m_names.length;
+    }
+
+    /**
+     * Returns the name of an entry.
+     * @param idx the entry index.
+     * @return the entry name.
+     */
+    public String getName(int idx)
+    {
+        return m_names[idx];
+    }
+
+    /**
+     * Returns whether an entry is a directory.
+     * @param idx the entry index.
+     * @return <tt>true</tt> if the entry is a directory.
+     */
+    public boolean isDirectory(int idx)
+    {
+        return m_names[idx].endsWith("/");
+    }
+
+    /**
+     * Returns the names of all entries in central directory order.
+     * @return an enumeration of entry names.
+     */
+    public Enumeration<String> names()
+    {
+        return new Enumeration<String>()
+        {
+            private int m_idx = 0;
+
+            public boolean hasMoreElements()
+            {
+                return m_idx < m_names.length;
+            }
+
+            public String nextElement()
+            {
+                if (m_idx >= m_names.length)
+                {
+                    throw new NoSuchElementException();
+                }
+                return m_names[m_idx++];
+            }
+        };
+    }
+
+    /**
+     * Returns the uncompressed content of an entry. Stored entries are
+     * copied straight out of the mapping, deflated entries are inflated
+     * without any intermediate stream.
+     * @param idx the entry index.
+     * @return the content of the entry.
+     * @throws IOException if the entry cannot be read.
+     */
+    public byte[] getBytes(int idx) throws IOException
+    {
+        ByteBuffer data = getData(idx);
+        int cen = m_offsets[idx];
+        ByteBuffer buffer = getBuffer();
+        int method = getShort(buffer, cen + 10);
+        long size = getInt(buffer, cen + 24) & 0xFFFFFFFFL;
+        if (size > Integer.MAX_VALUE)
+        {
+            throw new ZipException("Entry too large: " + m_names[idx]);
+        }
+        // Deflate cannot compress by more than 1032:1, so a larger size
+        // is only a corrupt header.
+        if (((method == STORED) && (size != data.remaining()))
+            || ((method == DEFLATED) && (size > 1032L * data.remaining())))
+        {
+            throw new ZipException("Invalid entry size: " + m_names[idx]);
+        }
+        byte[] bytes = new byte[(int) size];
+        if (method == STORED)
+        {
+            data.get(bytes);
+        }
+        else if (method == DEFLATED)
+        {
+            // The inflater needs an extra dummy byte with nowrap.
+            byte[] compressed = new byte[data.remaining() + 1];
+            data.get(compressed, 0, compressed.length - 1);
+            Inflater inflater = new Inflater(true);
+            try
+            {
+                inflater.setInput(compressed);
+                int n = 0;
+                while ((n < bytes.length) && !inflater.finished())
+                {
+                    int read = inflater.inflate(bytes, n, bytes.length - n);
+                    if ((read == 0) && (inflater.needsInput() || inflater.needsDictionary()))
+                    {
+                        break;
+                    }
+                    n += read;
+                }
+                if (n != bytes.length)
+                {
+                    throw new ZipException("Invalid entry size: " + m_names[idx]);
+                }
+            }
+            catch (DataFormatException ex)
+            {
+                throw new ZipException("Invalid entry data: " + m_names[idx]);
+            }
+            finally
+            {
+                inflater.end();
+            }
+        }
+        else
+        {
+            throw new ZipException("Unsupported compression method: " + m_names[idx]);
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns an input stream for the uncompressed content of an entry.
+     * @param idx the entry index.
+     * @return an input stream for the content of the entry.
+     * @throws IOException if the entry cannot be read.
+     */
+    public InputStream getInputStream(int idx) throws IOException
+    {
+        InputStream is = new ByteBufferInputStream(getData(idx));
+        int method = getShort(getBuffer(), m_offsets[idx] + 10);
+        if (method == STORED)
+        {
+            return is;
+        }
+        else if (method == DEFLATED)
+        {
+            final Inflater inflater = new Inflater(true);
+            // The inflater needs an extra dummy byte with nowrap.
+            return new InflaterInputStream(
+                new SequenceInputStream(is, new ByteArrayInputStream(new byte[1])),
+                inflater)
+            {
+                private boolean m_closed = false;
+
+                @Override
+                public void close() throws IOException
+                {
+                    if (!m_closed)
+                    {
+                        m_closed = true;
+                        inflater.end();
+                        super.close();
+                    }
+                }
+            };
+        }
+        throw new ZipException("Unsupported compression method: " + m_names[idx]);
+    }
+
+    /**
+     * Releases the mapping. The mapped memory itself is released once it
+     * is garbage collected, but entries can no longer be read.
+     */
+    public void close()
+    {
+        m_buffer = null;
+    }
+
+    @Override
+    public String toString()
+    {
+        return m_file.getPath();
+    }
+
+    private ByteBuffer getBuffer() throws IOException
+    {
+        ByteBuffer buffer = m_buffer;
+        if (buffer == null)
+        {
+            throw new IOException("Zip file closed: " + m_file);
+        }
+        return buffer;
+    }
+
+    // Returns a buffer positioned at the (compressed) data of an entry and
+    // limited to its end.
+    private ByteBuffer getData(int idx) throws IOException
+    {
+        ByteBuffer buffer = getBuffer();
+        int cen = m_offsets[idx];
+        long compressedSize = getInt(buffer, cen + 20) & 0xFFFFFFFFL;
+        int loc = getInt(buffer, cen + 42);
+        if ((loc < 0) || ((long) loc + LOC_LENGTH > buffer.limit())
+            || (getInt(buffer, loc) != LOC_SIGNATURE))
+        {
+            throw new ZipException("Invalid local header: " + m_names[idx]);
+        }
+        long start = (long) loc + LOC_LENGTH
+            + getShort(buffer, loc + 26) + getShort(buffer, loc + 28);
+        if (start + compressedSize > buffer.limit())
+        {
+            throw new ZipException("Invalid entry size: " + m_names[idx]);
+        }
+        ByteBuffer data = buffer.duplicate();
+        data.limit((int) (start + compressedSize));
+        data.position((int) start);
+        return data;
+    }
+
+    private static int tableSize(int count)
+    {
+        int size = 2;
+        while (size < count * 2)
+        {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    private static int getShort(ByteBuffer buffer, int pos)
+    {
+        return (buffer.get(pos) & 0xFF) | ((buffer.get(pos + 1) & 0xFF) << 8);
+    }
+
+    private static int getInt(ByteBuffer buffer, int pos)
+    {
+        return getShort(buffer, pos) | (getShort(buffer, pos + 2) << 16);
+    }
+
+    private static class ByteBufferInputStream extends InputStream
+    {
+        private final ByteBuffer m_data;
+
+        public ByteBufferInputStream(ByteBuffer data)
+        {
+            m_data = data;
+        }
+
+        @Override
+        public int read()
+        {
+            return m_data.hasRemaining() ? (m_data.get() & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len)
+        {
+            if (len == 0)
+            {
+                return 0;
+            }
+            if (!m_data.hasRemaining())
+            {
+                return -1;
+            }
+            len = Math.min(len, m_data.remaining());
+            m_data.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public long skip(long n)
+        {
+            int skipped = (int) Math.max(0, Math.min(n, m_data.remaining()));
+            m_data.position(m_data.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available()
+        {
+            return m_data.remaining();
+        }
+    }
+}
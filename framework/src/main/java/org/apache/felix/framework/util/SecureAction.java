@@ -479,6 +479,32 @@ public class SecureAction
         }
     }
 
+    public FileOutputStream getFileOutputStream(File file, boolean append) throws IOException
+    {
+        if (System.getSecurityManager() != null)
+        {
+            try
+            {
+                Actions actions = (Actions) m_actions.get();
+                actions.set(Actions.GET_FILE_APPEND_OUTPUT_ACTION, file, Boolean.valueOf(append));
+                return (FileOutputStream) AccessController.doPrivileged(
+                    (PrivilegedExceptionAction<?>) actions, m_acc);
+            }
+            catch (PrivilegedActionException ex)
+            {
+                if (ex.getException() instanceof IOException)
+                {
+                    throw (IOException) ex.getException();
+                }
+                throw (RuntimeException) ex.getException();
+            }
+        }
+        else
+        {
+            return new FileOutputStream(file, append);
+        }
+    }
+
     public URI toURI(File file)
     {
         if (System.getSecurityManager() != null)
@@ -1532,6 +1558,7 @@ public class SecureAction
         public static final int OPEN_JARFILE_ACTION = 54;
         public static final int DELETE_FILEONEXIT_ACTION = 55;
         public static final int INVOKE_WOVEN_CLASS_LISTENER = 56;
+        public static final int GET_FILE_APPEND_OUTPUT_ACTION = 57;
 
         private int m_action = -1;
         private Object m_arg1 = null;
@@ -1669,6 +1696,8 @@ public class SecureAction
                     return new FileInputStream((File) arg1);
                 case GET_FILE_OUTPUT_ACTION:
                     return new FileOutputStream((File) arg1);
+                case GET_FILE_APPEND_OUTPUT_ACTION:
+                    return new FileOutputStream((File) arg1, ((Boolean) arg2).booleanValue());
                 case TO_URI_ACTION:
                     return ((File) arg1).toURI();
                 case GET_METHOD_ACTION:
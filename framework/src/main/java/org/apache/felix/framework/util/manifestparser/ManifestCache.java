@@ -0,0 +1,451 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.util.manifestparser;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.felix.framework.Logger;
+import org.apache.felix.framework.capabilityset.SimpleFilter;
+import org.apache.felix.framework.util.FelixConstants;
+import org.apache.felix.framework.util.SecureAction;
+import org.apache.felix.framework.util.VersionRange;
+import org.apache.felix.framework.wiring.BundleCapabilityImpl;
+import org.apache.felix.framework.wiring.BundleRequirementImpl;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Version;
+import org.osgi.framework.wiring.BundleCapability;
+import org.osgi.framework.wiring.BundleRequirement;
+import org.osgi.framework.wiring.BundleRevision;
+
+/**
+ * Stores the result of parsing a bundle manifest in a binary file, so the
+ * manifest of a revision does not have to be parsed again each time the
+ * framework starts. The file records the manifest headers it was created
+ * from and the framework version that created it; it is ignored if either
+ * no longer matches.
+ * <p>
+ * Bundles declaring native code are not cached, since selecting their
+ * native library clauses depends on the framework configuration.
+**/
+public class ManifestCache
+{
+    private static final int MAGIC = 0x46454c4d;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte VERSION = 2;
+    private static final byte VERSION_RANGE = 3;
+    private static final byte LONG = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte LIST = 6;
+    private static final byte FILTER = 7;
+
+    private static final SecureAction m_secureAction = new SecureAction();
+
+    /**
+     * Returns a manifest parser restored from the given file for the given
+     * revision, or <tt>null</tt> if the file does not exist or was not
+     * created from the given headers.
+    **/
+    public static ManifestParser read(
+        Logger logger, Map<String, Object> configMap, BundleRevision owner,
+        Map<String, Object> headerMap, File file)
+    {
+        if (!m_secureAction.fileExists(file))
+        {
+            return null;
+        }
+
+        InputStream is = null;
+        try
+        {
+            is = new BufferedInputStream(m_secureAction.getFileInputStream(file));
+            DataInputStream in = new DataInputStream(is);
+            if ((in.readInt() != MAGIC) || (in.readInt() != FORMAT_VERSION)
+                || !equals(readString(in), getFrameworkVersion(configMap)))
+            {
+                return null;
+            }
+
+            int count = in.readInt();
+            if (count != headerMap.size())
+            {
+                return null;
+            }
+            for (int i = 0; i < count; i++)
+            {
+                String key = readString(in);
+                if (!equals(readString(in), headerMap.get(key)))
+                {
+                    return null;
+                }
+            }
+
+            String symbolicName = readString(in);
+            Version version = Version.parseVersion(readString(in));
+            int activationPolicy = in.readInt();
+            String activationIncludeDir = readString(in);
+            String activationExcludeDir = readString(in);
+            boolean isExtension = in.readBoolean();
+
+            count = in.readInt();
+            List<BundleCapability> caps = new ArrayList<BundleCapability>(count);
+            for (int i = 0; i < count; i++)
+            {
+                String namespace = readString(in);
+                Map<String, String> dirs = readDirectives(in);
+                Map<String, Object> attrs = readAttributes(in);
+                caps.add(new BundleCapabilityImpl(owner, namespace, dirs, attrs));
+            }
+
+            count = in.readInt();
+            List<BundleRequirement> reqs = new ArrayList<BundleRequirement>(count);
+            for (int i = 0; i < count; i++)
+            {
+                String namespace = readString(in);
+                Map<String, String> dirs = readDirectives(in);
+                Map<String, Object> attrs = readAttributes(in);
+                SimpleFilter filter = (SimpleFilter) readValue(in);
+                reqs.add(new BundleRequirementImpl(owner, namespace, dirs, attrs, filter));
+            }
+
+            return new ManifestParser(
+                logger, configMap, headerMap, symbolicName, version,
+                activationPolicy, activationIncludeDir, activationExcludeDir,
+                isExtension, caps, reqs);
+        }
+        catch (Exception ex)
+        {
+            logger.log(Logger.LOG_DEBUG,
+                "Unable to read parsed manifest, parsing it again: " + file, ex);
+            return null;
+        }
+        finally
+        {
+            try
+            {
+                if (is != null) is.close();
+            }
+            catch (IOException ex)
+            {
+                // Ignore.
+            }
+        }
+    }
+
+    /**
+     * Writes the result of the given manifest parser to the given file. The
+     * file is not written if the manifest declares native code or contains
+     * values that cannot be stored.
+    **/
+    public static void write(
+        Logger logger, Map<String, Object> configMap, ManifestParser mp,
+        Map<String, Object> headerMap, File file)
+    {
+        if (headerMap.get(Constants.BUNDLE_NATIVECODE) != null)
+        {
+            return;
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try
+        {
+            DataOutputStream out = new DataOutputStream(baos);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            writeString(out, getFrameworkVersion(configMap));
+
+            out.writeInt(headerMap.size());
+            for (Entry<String, Object> entry : headerMap.entrySet())
+            {
+                if (!(entry.getValue() instanceof String))
+                {
+                    return;
+                }
+                writeString(out, entry.getKey());
+                writeString(out, (String) entry.getValue());
+            }
+
+            writeString(out, mp.getSymbolicName());
+            writeString(out, mp.getBundleVersion().toString());
+            out.writeInt(mp.getActivationPolicy());
+            writeString(out, mp.getActivationIncludeDirective());
+            writeString(out, mp.getActivationExcludeDirective());
+            out.writeBoolean(mp.isExtension());
+
+            out.writeInt(mp.getCapabilities().size());
+            for (BundleCapability cap : mp.getCapabilities())
+            {
+                writeString(out, cap.getNamespace());
+                writeDirectives(out, cap.getDirectives());
+                writeAttributes(out, cap.getAttributes());
+            }
+
+            out.writeInt(mp.getRequirements().size());
+            for (BundleRequirement req : mp.getRequirements())
+            {
+                writeString(out, req.getNamespace());
+                writeDirectives(out, req.getDirectives());
+                writeAttributes(out, req.getAttributes());
+                writeValue(out, ((BundleRequirementImpl) req).getFilter());
+            }
+            out.flush();
+        }
+        catch (IOException ex)
+        {
+            // The parsed manifest contains values we do not know how to
+            // store, so it is parsed again next time.
+            return;
+        }
+
+        // Write to a temporary file first so a partially written cache
+        // file is never read.
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        OutputStream os = null;
+        try
+        {
+            os = m_secureAction.getFileOutputStream(tmp);
+            baos.writeTo(os);
+            os.close();
+            os = null;
+            m_secureAction.deleteFile(file);
+            if (!m_secureAction.renameFile(tmp, file))
+            {
+                m_secureAction.deleteFile(tmp);
+            }
+        }
+        catch (Exception ex)
+        {
+            logger.log(Logger.LOG_DEBUG, "Unable to write parsed manifest: " + file, ex);
+            m_secureAction.deleteFile(tmp);
+        }
+        finally
+        {
+            try
+            {
+                if (os != null) os.close();
+            }
+            catch (IOException ex)
+            {
+                // Ignore.
+            }
+        }
+    }
+
+    private static String getFrameworkVersion(Map<String, Object> configMap)
+    {
+        Object version = (configMap == null)
+            ? null : configMap.get(FelixConstants.FELIX_VERSION_PROPERTY);
+        return (version == null) ? null : version.toString();
+    }
+
+    private static boolean equals(Object o1, Object o2)
+    {
+        return (o1 == null) ? (o2 == null) : o1.equals(o2);
+    }
+
+    private static void writeDirectives(DataOutputStream out, Map<String, String> dirs)
+        throws IOException
+    {
+        out.writeInt(dirs.size());
+        for (Entry<String, String> entry : dirs.entrySet())
+        {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    private static Map<String, String> readDirectives(DataInputStream in)
+        throws IOException
+    {
+        int count = in.readInt();
+        Map<String, String> dirs = new LinkedHashMap<String, String>(count);
+        for (int i = 0; i < count; i++)
+        {
+            dirs.put(readString(in), readString(in));
+        }
+        return dirs;
+    }
+
+    private static void writeAttributes(DataOutputStream out, Map<String, Object> attrs)
+        throws IOException
+    {
+        out.writeInt(attrs.size());
+        for (Entry<String, Object> entry : attrs.entrySet())
+        {
+            writeString(out, entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    private static Map<String, Object> readAttributes(DataInputStream in)
+        throws IOException
+    {
+        int count = in.readInt();
+        Map<String, Object> attrs = new LinkedHashMap<String, Object>(count);
+        for (int i = 0; i < count; i++)
+        {
+            String key = readString(in);
+            attrs.put(key, readValue(in));
+        }
+        return attrs;
+    }
+
+    private static void writeValue(DataOutputStream out, Object value)
+        throws IOException
+    {
+        if (value == null)
+        {
+            out.writeByte(NULL);
+        }
+        else if (value instanceof String)
+        {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        }
+        else if (value instanceof Version)
+        {
+            out.writeByte(VERSION);
+            writeString(out, value.toString());
+        }
+        else if (value instanceof VersionRange)
+        {
+            VersionRange range = (VersionRange) value;
+            out.writeByte(VERSION_RANGE);
+            writeString(out, range.getFloor().toString());
+            out.writeBoolean(range.isFloorInclusive());
+            writeString(out,
+                (range.getCeiling() == null) ? null : range.getCeiling().toString());
+            out.writeBoolean(range.isCeilingInclusive());
+        }
+        else if (value instanceof Long)
+        {
+            out.writeByte(LONG);
+            out.writeLong(((Long) value).longValue());
+        }
+        else if (value instanceof Double)
+        {
+            out.writeByte(DOUBLE);
+            out.writeDouble(((Double) value).doubleValue());
+        }
+        else if (value instanceof List)
+        {
+            List<?> list = (List<?>) value;
+            out.writeByte(LIST);
+            out.writeInt(list.size());
+            for (Object o : list)
+            {
+                writeValue(out, o);
+            }
+        }
+        else if (value instanceof SimpleFilter)
+        {
+            SimpleFilter filter = (SimpleFilter) value;
+            out.writeByte(FILTER);
+            writeString(out, filter.getName());
+            out.writeInt(filter.getOperation());
+            writeValue(out, filter.getValue());
+        }
+        else
+        {
+            throw new IOException("Unsupported value type: " + value.getClass().getName());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException
+    {
+        byte type = in.readByte();
+        switch (type)
+        {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case VERSION:
+                return Version.parseVersion(readString(in));
+            case VERSION_RANGE:
+                Version floor = Version.parseVersion(readString(in));
+                boolean isFloorInclusive = in.readBoolean();
+                String ceiling = readString(in);
+                boolean isCeilingInclusive = in.readBoolean();
+                return new VersionRange(floor, isFloorInclusive,
+                    (ceiling == null) ? null : Version.parseVersion(ceiling),
+                    isCeilingInclusive);
+            case LONG:
+                return Long.valueOf(in.readLong());
+            case DOUBLE:
+                return Double.valueOf(in.readDouble());
+            case LIST:
+                int size = in.readInt();
+                List<Object> list = new ArrayList<Object>(size);
+                for (int i = 0; i < size; i++)
+                {
+                    list.add(readValue(in));
+                }
+                return list;
+            case FILTER:
+                String name = readString(in);
+                int op = in.readInt();
+                return new SimpleFilter(name, readValue(in), op);
+            default:
+                throw new IOException("Unknown value type: " + type);
+        }
+    }
+
+    // Header values are not limited to the 64K of modified UTF-8.
+    private static void writeString(DataOutputStream out, String s)
+        throws IOException
+    {
+        if (s == null)
+        {
+            out.writeInt(-1);
+        }
+        else
+        {
+            byte[] bytes = s.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException
+    {
+        int length = in.readInt();
+        if (length < 0)
+        {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
@@ -295,6 +295,29 @@ public class ManifestParser
         m_isExtension = checkExtensionBundle(headerMap);
     }
 
+    /**
+     * Creates a manifest parser from previously parsed metadata; used by
+     * <tt>ManifestCache</tt>. Native library clauses are never cached.
+    **/
+    ManifestParser(Logger logger, Map<String, Object> configMap,
+        Map<String, Object> headerMap, String symbolicName, Version version,
+        int activationPolicy, String activationIncludeDir, String activationExcludeDir,
+        boolean isExtension, List<BundleCapability> caps, List<BundleRequirement> reqs)
+    {
+        m_logger = logger;
+        m_configMap = configMap;
+        m_headerMap = headerMap;
+        m_bundleSymbolicName = symbolicName;
+        m_bundleVersion = version;
+        m_activationPolicy = activationPolicy;
+        m_activationIncludeDir = activationIncludeDir;
+        m_activationExcludeDir = activationExcludeDir;
+        m_isExtension = isExtension;
+        m_capabilities = caps;
+        m_requirements = reqs;
+        m_libraryClauses = new ArrayList<NativeLibraryClause>(0);
+    }
+
     private static List<ParsedHeaderClause> normalizeImportClauses(
         Logger logger, List<ParsedHeaderClause> clauses, String mv)
         throws BundleException
@@ -26,7 +26,9 @@ import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
 import org.apache.felix.framework.capabilityset.SimpleFilter;
+import org.apache.felix.framework.util.ImmutableList;
 import org.apache.felix.framework.util.ImmutableMap;
+import org.apache.felix.framework.util.Interner;
 import org.apache.felix.framework.util.Util;
 import org.apache.felix.framework.util.manifestparser.ManifestParser;
 import org.osgi.framework.Constants;
@@ -42,69 +44,25 @@ public class BundleCapabilityImpl implements BundleCapability
     private final String m_namespace;
     private final Map<String, String> m_dirs;
     private final Map<String, Object> m_attrs;
-    private final List<String> m_uses;
-    private final List<List<String>> m_includeFilter;
-    private final List<List<String>> m_excludeFilter;
+    // The uses, include and exclude directives are parsed on first use.
+    private volatile List<String> m_uses;
+    private volatile List<List<String>> m_includeFilter;
+    private volatile List<List<String>> m_excludeFilter;
+    private volatile boolean m_filtersParsed = false;
     private final Set<String> m_mandatory;
 
     public BundleCapabilityImpl(BundleRevision revision, String namespace,
         Map<String, String> dirs, Map<String, Object> attrs)
     {
-        m_namespace = namespace;
+        m_namespace = Interner.intern(namespace);
         m_revision = revision;
-        m_dirs = ImmutableMap.newInstance(dirs);
-        m_attrs = ImmutableMap.newInstance(attrs);
-
-        // Find all export directives: uses, mandatory, include, and exclude.
-
-        List<String> uses = Collections.EMPTY_LIST;
-        String value = m_dirs.get(Constants.USES_DIRECTIVE);
-        if (value != null)
-        {
-            // Parse these uses directive.
-            StringTokenizer tok = new StringTokenizer(value, ",");
-            uses = new ArrayList(tok.countTokens());
-            while (tok.hasMoreTokens())
-            {
-                uses.add(tok.nextToken().trim());
-            }
-        }
-        m_uses = uses;
-
-        value = m_dirs.get(Constants.INCLUDE_DIRECTIVE);
-        if (value != null)
-        {
-            List<String> filters = ManifestParser.parseDelimitedString(value, ",");
-            m_includeFilter = new ArrayList<List<String>>(filters.size());
-            for (int filterIdx = 0; filterIdx < filters.size(); filterIdx++)
-            {
-                List<String> substrings = SimpleFilter.parseSubstring(filters.get(filterIdx));
-                m_includeFilter.add(substrings);
-            }
-        }
-        else
-        {
-            m_includeFilter = null;
-        }
-
-        value = m_dirs.get(Constants.EXCLUDE_DIRECTIVE);
-        if (value != null)
-        {
-            List<String> filters = ManifestParser.parseDelimitedString(value, ",");
-            m_excludeFilter = new ArrayList<List<String>>(filters.size());
-            for (int filterIdx = 0; filterIdx < filters.size(); filterIdx++)
-            {
-                List<String> substrings = SimpleFilter.parseSubstring(filters.get(filterIdx));
-                m_excludeFilter.add(substrings);
-            }
-        }
-        else
-        {
-            m_excludeFilter = null;
-        }
+        m_dirs = ImmutableMap.newSharedInstance(dirs);
+        m_attrs = ImmutableMap.newSharedInstance(attrs);
 
+        // The mandatory directive is verified eagerly, since it must
+        // refer to existing attributes.
         Set<String> mandatory = Collections.EMPTY_SET;
-        value = m_dirs.get(Constants.MANDATORY_DIRECTIVE);
+        String value = m_dirs.get(Constants.MANDATORY_DIRECTIVE);
         if (value != null)
         {
             List<String> names = ManifestParser.parseDelimitedString(value, ",");
@@ -159,11 +117,51 @@ public class BundleCapabilityImpl implements BundleCapability
 
     public List<String> getUses()
     {
-        return m_uses;
+        List<String> uses = m_uses;
+        if (uses == null)
+        {
+            uses = Collections.emptyList();
+            String value = m_dirs.get(Constants.USES_DIRECTIVE);
+            if (value != null)
+            {
+                // Parse these uses directive.
+                StringTokenizer tok = new StringTokenizer(value, ",");
+                uses = new ArrayList<String>(tok.countTokens());
+                while (tok.hasMoreTokens())
+                {
+                    uses.add(Interner.intern(tok.nextToken().trim()));
+                }
+                uses = Interner.intern(ImmutableList.newInstance(uses));
+            }
+            m_uses = uses;
+        }
+        return uses;
+    }
+
+    private static List<List<String>> parseFilters(String value)
+    {
+        if (value == null)
+        {
+            return null;
+        }
+        List<String> filters = ManifestParser.parseDelimitedString(value, ",");
+        List<List<String>> result = new ArrayList<List<String>>(filters.size());
+        for (int filterIdx = 0; filterIdx < filters.size(); filterIdx++)
+        {
+            List<String> substrings = SimpleFilter.parseSubstring(filters.get(filterIdx));
+            result.add(substrings);
+        }
+        return result;
     }
 
     public boolean isIncluded(String name)
     {
+        if (!m_filtersParsed)
+        {
+            m_includeFilter = parseFilters(m_dirs.get(Constants.INCLUDE_DIRECTIVE));
+            m_excludeFilter = parseFilters(m_dirs.get(Constants.EXCLUDE_DIRECTIVE));
+            m_filtersParsed = true;
+        }
         if ((m_includeFilter == null) && (m_excludeFilter == null))
         {
             return true;
@@ -20,9 +20,10 @@ package org.apache.felix.framework.wiring;
 
 import java.util.Collections;
 import java.util.Map;
-import org.apache.felix.framework.capabilityset.CapabilitySet;
+import org.apache.felix.framework.capabilityset.CompiledFilter;
 import org.apache.felix.framework.capabilityset.SimpleFilter;
 import org.apache.felix.framework.util.ImmutableMap;
+import org.apache.felix.framework.util.Interner;
 import org.osgi.framework.Constants;
 import org.osgi.framework.wiring.BundleCapability;
 import org.osgi.framework.wiring.BundleRequirement;
@@ -34,6 +35,7 @@ public class BundleRequirementImpl implements BundleRequirement
     private final BundleRevision m_revision;
     private final String m_namespace;
     private final SimpleFilter m_filter;
+    private volatile CompiledFilter m_compiledFilter;
     private final boolean m_optional;
     private final Map<String, String> m_dirs;
     private final Map<String, Object> m_attrs;
@@ -43,9 +45,9 @@ public class BundleRequirementImpl implements BundleRequirement
         Map<String, String> dirs, Map<String, Object> attrs, SimpleFilter filter)
     {
         m_revision = revision;
-        m_namespace = namespace;
-        m_dirs = ImmutableMap.newInstance(dirs);
-        m_attrs = ImmutableMap.newInstance(attrs);
+        m_namespace = Interner.intern(namespace);
+        m_dirs = ImmutableMap.newSharedInstance(dirs);
+        m_attrs = ImmutableMap.newSharedInstance(attrs);
         m_filter = filter;
 
         // Find resolution import directives.
@@ -92,7 +94,14 @@ public class BundleRequirementImpl implements BundleRequirement
 
     public boolean matches(BundleCapability cap)
     {
-        return CapabilitySet.matches((BundleCapabilityImpl) cap, getFilter());
+        // Compiled on first use, racing threads at worst compile it twice.
+        CompiledFilter compiled = m_compiledFilter;
+        if (compiled == null)
+        {
+            compiled = CompiledFilter.compile(getFilter());
+            m_compiledFilter = compiled;
+        }
+        return compiled.matches((BundleCapabilityImpl) cap);
     }
 
     public boolean isOptional()
@@ -21,8 +21,11 @@ package org.apache.felix.framework;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayOutputStream;
@@ -35,10 +38,17 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.felix.framework.BundleWiringImpl.BundleClassLoader;
 import org.apache.felix.framework.BundleWiringImpl.BundleClassLoaderJava5;
 import org.apache.felix.framework.cache.Content;
+import org.apache.felix.framework.util.FelixConstants;
 import org.junit.Test;
 import org.mockito.Mockito;
 import org.objectweb.asm.ClassReader;
@@ -67,6 +77,12 @@ public class BundleWiringImplTest
 
     @SuppressWarnings("rawtypes")
     public void initializeSimpleBundleWiring() throws Exception
+    {
+        initializeSimpleBundleWiring(new HashMap());
+    }
+
+    @SuppressWarnings("rawtypes")
+    public void initializeSimpleBundleWiring(Map configMap) throws Exception
     {
 
         mockResolver = mock(StatefulResolver.class);
@@ -74,7 +90,6 @@ public class BundleWiringImplTest
         mockBundle = mock(BundleImpl.class);
 
         Logger logger = new Logger();
-        Map configMap = new HashMap();
         List<BundleRevision> fragments = new ArrayList<BundleRevision>();
         List<BundleWire> wires = new ArrayList<BundleWire>();
         Map<String, BundleRevision> importedPkgs = new HashMap<String, BundleRevision>();
@@ -378,6 +393,114 @@ public class BundleWiringImplTest
                 dummyWovenClassListener.stateList.get(1));
     }
 
+    @Test
+    public void testResourceMissIsNotCachedByDefault() throws Exception
+    {
+        Felix mockFramework = mock(Felix.class);
+        initializeSimpleBundleWiring();
+
+        when(mockBundle.getFramework()).thenReturn(mockFramework);
+        when(mockFramework.getBootPackages()).thenReturn(new String[0]);
+        when(mockFramework.getBootPackageWildcards()).thenReturn(new boolean[0]);
+
+        String name = "org/apache/felix/test/NonExistant.txt";
+        assertNull(bundleWiring.getResourceByDelegation(name));
+        assertNull(bundleWiring.getResourceByDelegation(name));
+        verify(mockRevisionImpl, times(2)).getResourceLocal(name);
+        verify(mockResolver, times(2)).resolve(mockRevisionImpl, "org.apache.felix.test");
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    @Test
+    public void testResourceMissIsCachedPerResolverGeneration() throws Exception
+    {
+        Felix mockFramework = mock(Felix.class);
+        Map configMap = new HashMap();
+        configMap.put(FelixConstants.NEGATIVE_CACHE_SIZE_PROP, "256");
+        initializeSimpleBundleWiring(configMap);
+
+        when(mockBundle.getFramework()).thenReturn(mockFramework);
+        when(mockFramework.getBootPackages()).thenReturn(new String[0]);
+        when(mockFramework.getBootPackageWildcards()).thenReturn(new boolean[0]);
+
+        String name = "org/apache/felix/test/NonExistant.txt";
+        assertNull(bundleWiring.getResourceByDelegation(name));
+        assertNull(bundleWiring.getResourceByDelegation(name));
+        verify(mockRevisionImpl, times(1)).getResourceLocal(name);
+        verify(mockResolver, times(1)).resolve(mockRevisionImpl, "org.apache.felix.test");
+
+        // A change of the resolver state may make a dynamic import succeed.
+        when(mockResolver.getGeneration()).thenReturn(Long.valueOf(1));
+        assertNull(bundleWiring.getResourceByDelegation(name));
+        verify(mockRevisionImpl, times(2)).getResourceLocal(name);
+        verify(mockResolver, times(2)).resolve(mockRevisionImpl, "org.apache.felix.test");
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Test
+    public void testFindClassConcurrently() throws Exception
+    {
+        Felix mockFramework = mock(Felix.class);
+        HookRegistry hReg = mock(HookRegistry.class);
+        Mockito.when(mockFramework.getHookRegistry()).thenReturn(hReg);
+        Content mockContent = mock(Content.class);
+        final Class[] testClasses = { TestClass.class, OtherTestClass.class };
+        for (Class testClass : testClasses)
+        {
+            String testClassAsPath = testClass.getName().replace('.', '/') + ".class";
+            when(mockContent.getEntryAsBytes(testClassAsPath)).thenReturn(
+                    createTestClassBytes(testClass, testClassAsPath));
+        }
+
+        List<Content> contentPath = new ArrayList<Content>();
+        contentPath.add(mockContent);
+        initializeSimpleBundleWiring();
+
+        when(mockBundle.getFramework()).thenReturn(mockFramework);
+        when(mockFramework.getBootPackages()).thenReturn(new String[0]);
+        when(mockRevisionImpl.getContentPath()).thenReturn(contentPath);
+
+        final BundleClassLoader bundleClassLoader = createBundleClassLoader(
+                BundleClassLoaderJava5.class, bundleWiring);
+
+        // Two threads per class name, all released at once, so that
+        // definitions of the same class and of different classes overlap.
+        final int threads = 2 * testClasses.length;
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            List<Future<Class>> futures = new ArrayList<Future<Class>>();
+            for (int i = 0; i < threads; i++)
+            {
+                final String name = testClasses[i % testClasses.length].getName();
+                futures.add(executor.submit(new Callable<Class>()
+                {
+                    public Class call() throws Exception
+                    {
+                        barrier.await(10, TimeUnit.SECONDS);
+                        return bundleClassLoader.findClass(name);
+                    }
+                }));
+            }
+
+            for (int i = 0; i < threads; i++)
+            {
+                Class foundClass = futures.get(i).get(10, TimeUnit.SECONDS);
+                assertNotNull(foundClass);
+                assertEquals(testClasses[i % testClasses.length].getName(),
+                        foundClass.getName());
+                assertSame("Class should only be defined once",
+                        futures.get(i % testClasses.length).get(), foundClass);
+                assertSame(bundleClassLoader, foundClass.getClassLoader());
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
     @SuppressWarnings("rawtypes")
     private byte[] createTestClassBytes(Class testClass, String testClassAsPath)
             throws IOException
@@ -418,6 +541,11 @@ public class BundleWiringImplTest
         // An empty test class to weave.
     }
 
+    class OtherTestClass
+    {
+        // A second class to define next to TestClass.
+    }
+
     class GoodDummyWovenHook implements WeavingHook
     {
         // Adds the awesomePublicField to a class
@@ -19,13 +19,18 @@
 package org.apache.felix.framework;
 
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.TestCase;
 
 import org.easymock.EasyMock;
+import org.osgi.framework.AllServiceListener;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
 import org.osgi.framework.ServiceEvent;
 import org.osgi.framework.ServiceListener;
 import org.osgi.framework.ServiceReference;
@@ -137,6 +142,140 @@ public class EventDispatcherTest extends TestCase
         assertTrue(calledHooks.contains(eh2));
     }
 
+    public void testServiceListenersIndexedByObjectClass() throws Exception
+    {
+        final Bundle b1 = getMockBundle();
+        final Bundle b2 = getMockBundle();
+
+        Logger logger = new Logger();
+        ServiceRegistry registry = new ServiceRegistry(logger, null);
+        EventDispatcher ed = new EventDispatcher(logger, registry);
+
+        final List fired = Collections.synchronizedList(new ArrayList());
+        ServiceListener slString = new RecordingListener(fired);
+        ServiceListener slInteger = new RecordingListener(fired);
+        ServiceListener slEither = new RecordingListener(fired);
+        ServiceListener slAll = new RecordingListener(fired);
+        ed.addListener(b1.getBundleContext(), ServiceListener.class, slString,
+            new FilterImpl("(objectClass=java.lang.String)"));
+        ed.addListener(b1.getBundleContext(), ServiceListener.class, slInteger,
+            new FilterImpl("(&(objectClass=java.lang.Integer)(foo=bar))"));
+        ed.addListener(b2.getBundleContext(), ServiceListener.class, slEither,
+            new FilterImpl("(|(objectClass=java.lang.String)(objectClass=java.lang.CharSequence))"));
+        ed.addListener(b2.getBundleContext(), ServiceListener.class, slAll, null);
+
+        ServiceReference sr = registry.registerService(b1,
+            new String[] { String.class.getName(), CharSequence.class.getName() },
+            "service", new Hashtable()).getReference();
+        Felix framework = new Felix(new HashMap());
+
+        ed.fireServiceEvent(new ServiceEvent(ServiceEvent.REGISTERED, sr), null, framework);
+        assertEquals(3, fired.size());
+        assertTrue(fired.containsAll(Arrays.asList(slString, slEither, slAll)));
+
+        // Changing the filter moves the listener to another class.
+        fired.clear();
+        ed.addListener(b1.getBundleContext(), ServiceListener.class, slString,
+            new FilterImpl("(objectClass=java.lang.Integer)"));
+        ed.fireServiceEvent(new ServiceEvent(ServiceEvent.MODIFIED, sr), null, framework);
+        assertEquals(2, fired.size());
+        assertTrue(fired.containsAll(Arrays.asList(slEither, slAll)));
+
+        fired.clear();
+        ed.removeListener(b2.getBundleContext(), ServiceListener.class, slEither);
+        ed.removeListeners(b1.getBundleContext());
+        ed.fireServiceEvent(new ServiceEvent(ServiceEvent.UNREGISTERING, sr), null, framework);
+        assertEquals(Collections.singletonList(slAll), fired);
+    }
+
+    public void testAsynchronousEventsArePerListenerOrdered() throws Exception
+    {
+        final Bundle b1 = getMockBundle();
+        final Bundle b2 = getMockBundle();
+
+        final List<String> debugMessages = Collections.synchronizedList(new ArrayList<String>());
+        Logger logger = new Logger()
+        {
+            @Override
+            protected void doLog(Bundle bundle, ServiceReference sr, int level,
+                String msg, Throwable throwable)
+            {
+                if (level == LOG_DEBUG)
+                {
+                    debugMessages.add(msg);
+                }
+            }
+        };
+        logger.setLogLevel(Logger.LOG_DEBUG);
+        ServiceRegistry registry = new ServiceRegistry(logger, null);
+        EventDispatcher ed = new EventDispatcher(logger, registry, 2);
+        ed.startDispatching();
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Integer> slowEvents = Collections.synchronizedList(new ArrayList<Integer>());
+        FrameworkListener slow = new FrameworkListener()
+        {
+            public void frameworkEvent(FrameworkEvent event)
+            {
+                try
+                {
+                    release.await();
+                }
+                catch (InterruptedException ex)
+                {
+                    // Ignore.
+                }
+                slowEvents.add(event.getType());
+            }
+        };
+        final CountDownLatch fastDone = new CountDownLatch(3);
+        final List<Integer> fastEvents = Collections.synchronizedList(new ArrayList<Integer>());
+        FrameworkListener fast = new FrameworkListener()
+        {
+            public void frameworkEvent(FrameworkEvent event)
+            {
+                fastEvents.add(event.getType());
+                fastDone.countDown();
+            }
+        };
+        ed.addListener(b1.getBundleContext(), FrameworkListener.class, slow, null);
+        ed.addListener(b2.getBundleContext(), FrameworkListener.class, fast, null);
+
+        ed.fireFrameworkEvent(new FrameworkEvent(FrameworkEvent.STARTED, b1, null));
+        ed.fireFrameworkEvent(new FrameworkEvent(FrameworkEvent.PACKAGES_REFRESHED, b1, null));
+        ed.fireFrameworkEvent(new FrameworkEvent(FrameworkEvent.STARTLEVEL_CHANGED, b1, null));
+
+        // A blocked listener does not hold up the others.
+        assertTrue(fastDone.await(10, TimeUnit.SECONDS));
+        assertTrue(ed.getQueueDepth() >= 2);
+
+        release.countDown();
+        ed.stopDispatching();
+
+        List<Integer> expected = Arrays.asList(FrameworkEvent.STARTED,
+            FrameworkEvent.PACKAGES_REFRESHED, FrameworkEvent.STARTLEVEL_CHANGED);
+        assertEquals(expected, fastEvents);
+        assertEquals(expected, slowEvents);
+        assertEquals(0, ed.getQueueDepth());
+
+        List<EventDispatcher.ListenerMetrics> metrics = ed.getListenerMetrics();
+        assertEquals(2, metrics.size());
+        for (EventDispatcher.ListenerMetrics m : metrics)
+        {
+            assertEquals(3, m.getDeliveredCount());
+            assertTrue(m.getMaxLatencyNanos() >= m.getAverageLatencyNanos());
+        }
+
+        // The metrics are logged when dispatching stops.
+        assertEquals(3, debugMessages.size());
+        assertEquals("Event dispatcher queue depth is 0.", debugMessages.get(0));
+        for (String msg : debugMessages.subList(1, 3))
+        {
+            assertTrue(msg, msg.startsWith("Delivered 3 events to "));
+            assertTrue(msg, msg.endsWith(", 0 events queued."));
+        }
+    }
+
     private Bundle getMockBundle()
     {
         BundleContext bc = EasyMock.createNiceMock(BundleContext.class);
@@ -154,4 +293,19 @@ public class EventDispatcherTest extends TestCase
 
         return b;
     }
+
+    private static class RecordingListener implements AllServiceListener
+    {
+        private final List m_fired;
+
+        RecordingListener(List fired)
+        {
+            m_fired = fired;
+        }
+
+        public void serviceChanged(ServiceEvent event)
+        {
+            m_fired.add(this);
+        }
+    }
 }
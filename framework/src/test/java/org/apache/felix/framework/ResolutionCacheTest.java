@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.framework.util.FelixConstants;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.Constants;
+import org.osgi.framework.SynchronousBundleListener;
+import org.osgi.framework.launch.Framework;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+import org.osgi.framework.wiring.FrameworkWiring;
+import org.osgi.service.resolver.ResolutionException;
+
+public class ResolutionCacheTest extends TestCase
+{
+    private File tempDir;
+    private File cacheDir;
+    private Framework felix;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        tempDir = File.createTempFile("felix-temp", ".dir");
+        assertTrue("precondition", tempDir.delete());
+        assertTrue("precondition", tempDir.mkdirs());
+
+        cacheDir = new File(tempDir, "felix-cache");
+        assertTrue("precondition", cacheDir.mkdir());
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        super.tearDown();
+
+        stopFramework();
+
+        deleteDir(tempDir);
+        tempDir = null;
+        cacheDir = null;
+    }
+
+    public void testWiringRestoredAfterRestart() throws Exception
+    {
+        startFramework();
+        Bundle exporter = install("Bundle-SymbolicName: exporter\n"
+            + "Bundle-ManifestVersion: 2\n"
+            + "Export-Package: org.foo;version=1.0\n");
+        Bundle importer = install("Bundle-SymbolicName: importer\n"
+            + "Bundle-ManifestVersion: 2\n"
+            + "Import-Package: org.foo\n");
+        assertTrue(resolve(exporter, importer));
+        assertEquals(exporter, getPackageProvider(importer, "org.foo"));
+        stopFramework();
+
+        File file = new File(new File(cacheDir, "bundle0"),
+            ResolutionCache.CACHE_FILE_NAME);
+        assertTrue(file.exists());
+
+        startFramework();
+        exporter = felix.getBundleContext().getBundle(exporter.getBundleId());
+        importer = felix.getBundleContext().getBundle(importer.getBundleId());
+        assertTrue(resolve(importer));
+        assertEquals(Bundle.RESOLVED, exporter.getState());
+        assertEquals(exporter, getPackageProvider(importer, "org.foo"));
+    }
+
+    public void testNewOptionalProviderIsPickedUp() throws Exception
+    {
+        startFramework();
+        Bundle importer = install("Bundle-SymbolicName: importer\n"
+            + "Bundle-ManifestVersion: 2\n"
+            + "Import-Package: org.foo;resolution:=optional\n");
+        assertTrue(resolve(importer));
+        assertNull(getPackageProvider(importer, "org.foo"));
+        stopFramework();
+
+        startFramework();
+        importer = felix.getBundleContext().getBundle(importer.getBundleId());
+        Bundle exporter = install("Bundle-SymbolicName: exporter\n"
+            + "Bundle-ManifestVersion: 2\n"
+            + "Export-Package: org.foo\n");
+        assertTrue(resolve(importer, exporter));
+        assertEquals(exporter, getPackageProvider(importer, "org.foo"));
+    }
+
+    public void testNewHigherVersionProviderIsPickedUp() throws Exception
+    {
+        startFramework();
+        Bundle exporter = install("Bundle-SymbolicName: exporter\n"
+            + "Bundle-ManifestVersion: 2\n"
+            + "Export-Package: org.foo;version=1.0\n");
+        Bundle importer = install("Bundle-SymbolicName: importer\n"
+            + "Bundle-ManifestVersion: 2\n"
+            + "Import-Package: org.foo\n");
+        assertTrue(resolve(exporter, importer));
+        assertEquals(exporter, getPackageProvider(importer, "org.foo"));
+        stopFramework();
+
+        startFramework();
+        importer = felix.getBundleContext().getBundle(importer.getBundleId());
+        Bundle newer = install("Bundle-SymbolicName: newer\n"
+            + "Bundle-ManifestVersion: 2\n"
+            + "Export-Package: org.foo;version=2.0\n");
+        assertTrue(resolve(importer, newer));
+        assertEquals(newer, getPackageProvider(importer, "org.foo"));
+    }
+
+    public void testFragmentsAttachAfterRestart() throws Exception
+    {
+        startFramework();
+        Bundle host = install("Bundle-SymbolicName: host\n"
+            + "Bundle-ManifestVersion: 2\n");
+        Bundle fragment = install("Bundle-SymbolicName: fragment\n"
+            + "Bundle-ManifestVersion: 2\n"
+            + "Fragment-Host: host\n"
+            + "Export-Package: org.foo\n");
+        assertTrue(resolve(host));
+        assertEquals(Bundle.RESOLVED, fragment.getState());
+        stopFramework();
+
+        startFramework();
+        host = felix.getBundleContext().getBundle(host.getBundleId());
+        fragment = felix.getBundleContext().getBundle(fragment.getBundleId());
+        assertTrue(resolve(host));
+        assertEquals(Bundle.RESOLVED, fragment.getState());
+        List<BundleWire> wires = host.adapt(BundleWiring.class)
+            .getProvidedWires(BundleRevision.HOST_NAMESPACE);
+        assertEquals(1, wires.size());
+        assertEquals(fragment, wires.get(0).getRequirer().getBundle());
+    }
+
+    public void testRestoredBundleIsReportedWhenResolveFails() throws Exception
+    {
+        startFramework();
+        Bundle exporter = install("Bundle-SymbolicName: exporter\n"
+            + "Bundle-ManifestVersion: 2\n"
+            + "Export-Package: org.foo\n");
+        assertTrue(resolve(exporter));
+        stopFramework();
+
+        startFramework();
+        exporter = felix.getBundleContext().getBundle(exporter.getBundleId());
+        Bundle broken = install("Bundle-SymbolicName: broken\n"
+            + "Bundle-ManifestVersion: 2\n"
+            + "Import-Package: org.missing\n");
+        final List<Bundle> resolved = new ArrayList<Bundle>();
+        felix.getBundleContext().addBundleListener(new SynchronousBundleListener()
+        {
+            public void bundleChanged(BundleEvent event)
+            {
+                if (event.getType() == BundleEvent.RESOLVED)
+                {
+                    resolved.add(event.getBundle());
+                }
+            }
+        });
+
+        try
+        {
+            ((Felix) felix).getResolver().resolve(
+                Collections.singleton(broken.adapt(BundleRevision.class)),
+                Collections.singleton(exporter.adapt(BundleRevision.class)));
+            fail("The broken bundle should not resolve");
+        }
+        catch (ResolutionException ex)
+        {
+            // Expected.
+        }
+        assertEquals(Bundle.RESOLVED, exporter.getState());
+        assertEquals(Bundle.INSTALLED, broken.getState());
+        assertEquals(Arrays.asList(exporter), resolved);
+    }
+
+    private void startFramework() throws Exception
+    {
+        String cache = cacheDir.getPath();
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("felix.cache.profiledir", cache);
+        params.put("felix.cache.dir", cache);
+        params.put(Constants.FRAMEWORK_STORAGE, cache);
+        params.put(FelixConstants.RESOLVER_CACHE, "true");
+
+        felix = new Felix(params);
+        felix.init();
+        felix.start();
+    }
+
+    private void stopFramework() throws Exception
+    {
+        if (felix != null)
+        {
+            felix.stop();
+            felix.waitForStop(10000);
+            felix = null;
+        }
+    }
+
+    private Bundle install(String manifest) throws Exception
+    {
+        File f = File.createTempFile("felix-bundle", ".jar", tempDir);
+        Manifest mf = new Manifest(new ByteArrayInputStream(manifest.getBytes("utf-8")));
+        mf.getMainAttributes().putValue("Manifest-Version", "1.0");
+        JarOutputStream os = new JarOutputStream(new FileOutputStream(f), mf);
+        os.close();
+        return felix.getBundleContext().installBundle(f.toURI().toASCIIString());
+    }
+
+    private boolean resolve(Bundle... bundles)
+    {
+        return felix.adapt(FrameworkWiring.class)
+            .resolveBundles(Arrays.asList(bundles));
+    }
+
+    private static Bundle getPackageProvider(Bundle bundle, String pkg)
+    {
+        for (BundleWire wire : bundle.adapt(BundleWiring.class)
+            .getRequiredWires(BundleRevision.PACKAGE_NAMESPACE))
+        {
+            if (pkg.equals(wire.getCapability().getAttributes()
+                .get(BundleRevision.PACKAGE_NAMESPACE)))
+            {
+                return wire.getProvider().getBundle();
+            }
+        }
+        return null;
+    }
+
+    private static void deleteDir(File root) throws IOException
+    {
+        if (root.isDirectory())
+        {
+            for (File file : root.listFiles())
+            {
+                deleteDir(file);
+            }
+        }
+        assertTrue(root.delete());
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.mockito.Mockito;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+
+public class ServiceReferenceCacheTest extends TestCase
+{
+    public void testLookupsAreCachedUntilRegistryChanges() throws Exception
+    {
+        ServiceRegistry sr = new ServiceRegistry(new Logger(), null);
+        ServiceReferenceCache cache = new ServiceReferenceCache(sr);
+        Bundle b = Mockito.mock(Bundle.class);
+
+        Hashtable props = new Hashtable();
+        props.put("foo", "bar");
+        ServiceRegistration reg1 = sr.registerService(b, new String [] {String.class.getName()}, "a", props);
+        props.put(Constants.SERVICE_RANKING, Integer.valueOf(10));
+        ServiceRegistration reg2 = sr.registerService(b, new String [] {String.class.getName()}, "b", props);
+
+        // The highest ranked service comes first.
+        List<ServiceReference<?>> refs = cache.getServiceReferences(String.class.getName(), "(foo=bar)");
+        assertEquals(Arrays.asList(reg2.getReference(), reg1.getReference()), refs);
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        // Callers may modify the result, and equivalent filters share it.
+        refs.clear();
+        refs = cache.getServiceReferences(String.class.getName(), "( foo=bar)");
+        assertEquals(Arrays.asList(reg2.getReference(), reg1.getReference()), refs);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        reg2.setProperties(new Hashtable());
+        refs = cache.getServiceReferences(String.class.getName(), "(foo=bar)");
+        assertEquals(Arrays.asList(reg1.getReference()), refs);
+        assertEquals(2, cache.getMissCount());
+
+        sr.unregisterService(b, reg1);
+        assertTrue(cache.getServiceReferences(String.class.getName(), "(foo=bar)").isEmpty());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    public void testInvalidFilter() throws Exception
+    {
+        ServiceReferenceCache cache = new ServiceReferenceCache(new ServiceRegistry(new Logger(), null));
+        try
+        {
+            cache.getServiceReferences(null, "(foo=bar");
+            fail("Expected InvalidSyntaxException");
+        }
+        catch (InvalidSyntaxException ex)
+        {
+            assertEquals("(foo=bar", ex.getFilter());
+        }
+    }
+}
@@ -37,6 +37,8 @@ import junit.framework.TestCase;
 import org.apache.felix.framework.ServiceRegistrationImpl.ServiceReferenceImpl;
 import org.apache.felix.framework.ServiceRegistry.ServiceHolder;
 import org.apache.felix.framework.ServiceRegistry.UsageCount;
+import org.apache.felix.framework.capabilityset.CompiledFilter;
+import org.apache.felix.framework.capabilityset.SimpleFilter;
 import org.easymock.MockControl;
 import org.mockito.AdditionalAnswers;
 import org.mockito.InOrder;
@@ -53,6 +55,7 @@ import org.osgi.framework.ServiceRegistration;
 import org.osgi.framework.hooks.service.EventHook;
 import org.osgi.framework.hooks.service.FindHook;
 import org.osgi.framework.hooks.service.ListenerHook;
+import org.osgi.resource.Capability;
 
 public class ServiceRegistryTest extends TestCase
 {
@@ -79,7 +82,10 @@ public class ServiceRegistryTest extends TestCase
         assertEquals("Precondition failed", 0, sr.getHookRegistry().getHooks(EventHook.class).size());
         assertEquals("Precondition failed", 0, sr.getHookRegistry().getHooks(FindHook.class).size());
         assertEquals("Precondition failed", 0, sr.getHookRegistry().getHooks(ListenerHook.class).size());
+        assertFalse(sr.getHookRegistry().hasHooks(EventHook.class));
         ServiceRegistration reg = sr.registerService(c.getBundle(), new String [] {EventHook.class.getName()}, hook, new Hashtable());
+        assertTrue(sr.getHookRegistry().hasHooks(EventHook.class));
+        assertFalse(sr.getHookRegistry().hasHooks(FindHook.class));
         assertEquals(1, sr.getHookRegistry().getHooks(EventHook.class).size());
         assertTrue(sr.getHookRegistry().getHooks(EventHook.class).iterator().next() instanceof ServiceReference);
         assertSame(reg.getReference(), sr.getHookRegistry().getHooks(EventHook.class).iterator().next());
@@ -88,6 +94,7 @@ public class ServiceRegistryTest extends TestCase
         assertEquals("Postcondition failed", 0, sr.getHookRegistry().getHooks(ListenerHook.class).size());
 
         sr.unregisterService(b, reg);
+        assertFalse(sr.getHookRegistry().hasHooks(EventHook.class));
         assertEquals("Should be no hooks left after unregistration", 0, sr.getHookRegistry().getHooks(EventHook.class).size());
         assertEquals("Should be no hooks left after unregistration", 0, sr.getHookRegistry().getHooks(FindHook.class).size());
         assertEquals("Should be no hooks left after unregistration", 0, sr.getHookRegistry().getHooks(ListenerHook.class).size());
@@ -361,6 +368,62 @@ public class ServiceRegistryTest extends TestCase
         assertEquals("Unregistration should have no effect", 0, sr.getHookRegistry().getHooks(ListenerHook.class).size());
     }
 
+    public void testServiceReferencesSnapshot() throws Exception
+    {
+        ServiceRegistry sr = new ServiceRegistry(new Logger(), null);
+        Bundle b = Mockito.mock(Bundle.class);
+
+        long generation = sr.getGeneration();
+        ServiceRegistration reg1 = sr.registerService(b, new String [] {String.class.getName()}, "a", new Hashtable());
+        assertTrue(sr.getGeneration() > generation);
+
+        Collection<Capability> refs = sr.getServiceReferences(String.class.getName(), null);
+        assertEquals(1, refs.size());
+        // Callers may modify the result without affecting the snapshot.
+        refs.clear();
+        assertEquals(1, sr.getServiceReferences(String.class.getName(), null).size());
+
+        ServiceRegistration reg2 = sr.registerService(b, new String [] {String.class.getName()}, "b", new Hashtable());
+        assertEquals(2, sr.getServiceReferences(String.class.getName(), null).size());
+
+        Hashtable props = new Hashtable();
+        props.put("foo", "bar");
+        generation = sr.getGeneration();
+        reg1.setProperties(props);
+        assertTrue(sr.getGeneration() > generation);
+        assertEquals(Collections.singletonList(reg1.getReference()), new ArrayList<Capability>(
+            sr.getServiceReferences(String.class.getName(), SimpleFilter.parse("(foo=bar)"))));
+
+        sr.unregisterService(b, reg1);
+        assertEquals(Collections.singletonList(reg2.getReference()), new ArrayList<Capability>(
+            sr.getServiceReferences(String.class.getName(), null)));
+    }
+
+    public void testServiceReferencesWithCompiledFilter() throws Exception
+    {
+        ServiceRegistry sr = new ServiceRegistry(new Logger(), null);
+        Bundle b = Mockito.mock(Bundle.class);
+
+        Hashtable props = new Hashtable();
+        props.put("ranking", Integer.valueOf(5));
+        ServiceRegistration reg1 = sr.registerService(b, new String [] {String.class.getName()}, "a", props);
+        props.put("ranking", Long.valueOf(5));
+        ServiceRegistration reg2 = sr.registerService(b, new String [] {String.class.getName()}, "b", props);
+        sr.registerService(b, new String [] {String.class.getName()}, "c", new Hashtable());
+
+        // The same compiled filter is evaluated against properties of
+        // different types and across lookups.
+        CompiledFilter filter = CompiledFilter.compile(SimpleFilter.parse("(ranking>=5)"));
+        for (int i = 0; i < 2; i++)
+        {
+            Collection<Capability> refs = sr.getServiceReferences(
+                String.class.getName(), filter.getFilter(), filter);
+            assertEquals(2, refs.size());
+            assertTrue(refs.contains(reg1.getReference()));
+            assertTrue(refs.contains(reg2.getReference()));
+        }
+    }
+
     @SuppressWarnings("unchecked")
     public void testGetService()
     {
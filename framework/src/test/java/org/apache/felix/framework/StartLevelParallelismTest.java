@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.framework.util.FelixConstants;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleActivator;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.startlevel.FrameworkStartLevel;
+
+public class StartLevelParallelismTest extends TestCase
+{
+    private File m_cacheDir;
+    private Felix m_felix;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        m_cacheDir = File.createTempFile("felix-cache", ".dir");
+        m_cacheDir.delete();
+        m_cacheDir.mkdirs();
+
+        Map<String, String> params = new HashMap<String, String>();
+        params.put(Constants.FRAMEWORK_SYSTEMPACKAGES,
+            "org.osgi.framework; version=1.4.0,"
+            + "org.osgi.service.packageadmin; version=1.2.0,"
+            + "org.osgi.service.startlevel; version=1.1.0,"
+            + "org.osgi.util.tracker; version=1.3.3,"
+            + "org.osgi.service.url; version=1.0.0");
+        params.put(Constants.FRAMEWORK_STORAGE, m_cacheDir.getPath());
+        params.put(Constants.FRAMEWORK_BEGINNING_STARTLEVEL, "1");
+        params.put(FelixConstants.BUNDLE_STARTLEVEL_PROP, "2");
+        params.put(FelixConstants.STARTLEVEL_PARALLELISM, "2");
+        m_felix = new Felix(params);
+        m_felix.init();
+        m_felix.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        m_felix.stop();
+        m_felix.waitForStop(10000);
+        deleteDir(m_cacheDir);
+        super.tearDown();
+    }
+
+    public void testBundlesOfALevelStartInParallel() throws Exception
+    {
+        // Both activators wait for each other, so they only start if
+        // they run at the same time.
+        m_felix.getBundleContext().registerService(
+            CyclicBarrier.class.getName(), new CyclicBarrier(2), null);
+        Bundle b1 = install("b1", true);
+        Bundle b2 = install("b2", true);
+
+        setStartLevel(2);
+
+        assertEquals(Bundle.ACTIVE, b1.getState());
+        assertEquals(Bundle.ACTIVE, b2.getState());
+    }
+
+    public void testBundleIsRetriedIfItCannotBeLocked() throws Exception
+    {
+        Bundle b1 = install("b1", false);
+        Bundle b2 = install("b2", false);
+
+        // Hold the lock of one bundle and interrupt the thread waiting for it
+        // to start the bundle, which makes it give up on locking the bundle.
+        m_felix.acquireBundleLock((BundleImpl) b2,
+            Bundle.INSTALLED | Bundle.RESOLVED | Bundle.ACTIVE);
+        final CountDownLatch changed = new CountDownLatch(1);
+        try
+        {
+            m_felix.adapt(FrameworkStartLevel.class).setStartLevel(2, new FrameworkListener()
+            {
+                public void frameworkEvent(FrameworkEvent event)
+                {
+                    changed.countDown();
+                }
+            });
+            findThreadWaitingForBundleLock().interrupt();
+            assertFalse(changed.await(200, TimeUnit.MILLISECONDS));
+        }
+        finally
+        {
+            m_felix.releaseBundleLock((BundleImpl) b2);
+        }
+
+        assertTrue(changed.await(10, TimeUnit.SECONDS));
+        assertEquals(Bundle.ACTIVE, b1.getState());
+        assertEquals(Bundle.ACTIVE, b2.getState());
+    }
+
+    private void setStartLevel(int level) throws InterruptedException
+    {
+        final CountDownLatch changed = new CountDownLatch(1);
+        m_felix.adapt(FrameworkStartLevel.class).setStartLevel(level, new FrameworkListener()
+        {
+            public void frameworkEvent(FrameworkEvent event)
+            {
+                changed.countDown();
+            }
+        });
+        assertTrue(changed.await(10, TimeUnit.SECONDS));
+    }
+
+    private static Thread findThreadWaitingForBundleLock() throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (System.currentTimeMillis() < deadline)
+        {
+            for (Map.Entry<Thread, StackTraceElement[]> entry : Thread.getAllStackTraces().entrySet())
+            {
+                StackTraceElement[] stack = entry.getValue();
+                for (int i = 0; i + 1 < stack.length; i++)
+                {
+                    if (stack[i].getMethodName().equals("acquireBundleLock")
+                        && stack[i + 1].getMethodName().equals("processStartLevelTuple")
+                        && (entry.getKey().getState() == Thread.State.WAITING))
+                    {
+                        return entry.getKey();
+                    }
+                }
+            }
+            Thread.sleep(10);
+        }
+        fail("No thread is waiting for a bundle lock");
+        return null;
+    }
+
+    private Bundle install(String name, boolean barrier) throws Exception
+    {
+        File f = File.createTempFile("felix-bundle", ".jar", m_cacheDir);
+        Manifest mf = new Manifest(new ByteArrayInputStream((
+            "Manifest-Version: 1.0\n"
+            + "Bundle-SymbolicName: " + name + "\n"
+            + "Bundle-ManifestVersion: 2\n"
+            + "Bundle-Activator: " + TestBundleActivator.class.getName() + "\n"
+            + "Import-Package: org.osgi.framework\n"
+            + "Test-Barrier: " + barrier + "\n").getBytes("utf-8")));
+        JarOutputStream os = new JarOutputStream(new FileOutputStream(f), mf);
+        String path = TestBundleActivator.class.getName().replace('.', '/') + ".class";
+        os.putNextEntry(new ZipEntry(path));
+        InputStream is = TestBundleActivator.class.getClassLoader().getResourceAsStream(path);
+        byte[] b = new byte[4096];
+        for (int n = is.read(b); n != -1; n = is.read(b))
+        {
+            os.write(b, 0, n);
+        }
+        is.close();
+        os.close();
+
+        Bundle bundle = m_felix.getBundleContext().installBundle(f.toURI().toString());
+        bundle.start();
+        assertEquals(Bundle.INSTALLED, bundle.getState());
+        return bundle;
+    }
+
+    private static void deleteDir(File root) throws IOException
+    {
+        if (root.isDirectory())
+        {
+            for (File file : root.listFiles())
+            {
+                deleteDir(file);
+            }
+        }
+        assertTrue(root.delete());
+    }
+
+    public static class TestBundleActivator implements BundleActivator
+    {
+        public void start(BundleContext context) throws Exception
+        {
+            if (Boolean.parseBoolean(context.getBundle().getHeaders().get("Test-Barrier")))
+            {
+                ServiceReference<?> ref =
+                    context.getServiceReference(CyclicBarrier.class.getName());
+                ((CyclicBarrier) context.getService(ref)).await(10, TimeUnit.SECONDS);
+            }
+        }
+
+        public void stop(BundleContext context)
+        {
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.framework.Logger;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+
+public class BundleStateStoreTest extends TestCase
+{
+    private File m_dir;
+    private File m_file;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        m_dir = File.createTempFile("felix.test", ".dir");
+        m_dir.delete();
+        m_dir.mkdirs();
+        m_file = new File(m_dir, BundleStateStore.JOURNAL_FILE_NAME);
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        BundleCache.deleteDirectoryTree(m_dir);
+    }
+
+    public void testStateSurvivesReload() throws Exception
+    {
+        BundleStateStore store = new BundleStateStore(new Logger(), m_file);
+        store.put("bundle1", 1, "file:a.jar", Bundle.INSTALLED, 1, 10, 0);
+        store.put("bundle2", 2, "file:b.jar", Bundle.INSTALLED, 1, 20, 0);
+        store.putRevisionLocation("bundle1", Long.valueOf(0), "inputstream:");
+        store.flush();
+        store.put("bundle1", 1, "file:a.jar", Bundle.ACTIVE, 3, 30, 1);
+        store.remove("bundle2");
+        store.flush();
+
+        store = new BundleStateStore(new Logger(), m_file);
+        BundleStateStore.Entry entry = store.get("bundle1");
+        assertEquals(1, entry.m_id);
+        assertEquals("file:a.jar", entry.m_location);
+        assertEquals(Bundle.ACTIVE, entry.m_state);
+        assertEquals(3, entry.m_startLevel);
+        assertEquals(30, entry.m_lastModified);
+        assertEquals(1, entry.m_refreshCount);
+        assertEquals("inputstream:", entry.getRevisionLocation(Long.valueOf(0)));
+        assertNull(store.get("bundle2"));
+    }
+
+    public void testUnflushedChangesAreNotWritten() throws Exception
+    {
+        BundleStateStore store = new BundleStateStore(new Logger(), m_file);
+        store.put("bundle1", 1, "file:a.jar", Bundle.INSTALLED, 1, 10, 0);
+        store.flush();
+        store.put("bundle1", 1, "file:a.jar", Bundle.ACTIVE, 1, 10, 0);
+
+        store = new BundleStateStore(new Logger(), m_file);
+        assertEquals(Bundle.INSTALLED, store.get("bundle1").m_state);
+    }
+
+    public void testTornTailIsDiscarded() throws Exception
+    {
+        BundleStateStore store = new BundleStateStore(new Logger(), m_file);
+        store.put("bundle1", 1, "file:a.jar", Bundle.INSTALLED, 1, 10, 0);
+        store.flush();
+        long length = m_file.length();
+        store.put("bundle1", 1, "file:a.jar", Bundle.ACTIVE, 1, 10, 0);
+        store.flush();
+
+        // Cut the last record short.
+        RandomAccessFile raf = new RandomAccessFile(m_file, "rw");
+        raf.setLength(m_file.length() - 3);
+        raf.close();
+
+        store = new BundleStateStore(new Logger(), m_file);
+        assertEquals(Bundle.INSTALLED, store.get("bundle1").m_state);
+        assertEquals(length, m_file.length());
+
+        // Garbage with a bad checksum is dropped too.
+        FileOutputStream os = new FileOutputStream(m_file, true);
+        os.write(new byte[] { 0, 0, 0, 1, 2, 0, 0, 0, 0 });
+        os.close();
+
+        store = new BundleStateStore(new Logger(), m_file);
+        assertEquals(Bundle.INSTALLED, store.get("bundle1").m_state);
+        assertEquals(length, m_file.length());
+    }
+
+    public void testJournalIsCompacted() throws Exception
+    {
+        BundleStateStore store = new BundleStateStore(new Logger(), m_file);
+        store.put("bundle1", 1, "file:a.jar", Bundle.INSTALLED, 1, 10, 0);
+        store.flush();
+        long length = m_file.length();
+        for (int i = 0; i < 1000; i++)
+        {
+            store.put("bundle1", 1, "file:a.jar", Bundle.INSTALLED, 1, i, 0);
+            store.flush();
+        }
+        assertTrue(m_file.length() < 100 * length);
+
+        store = new BundleStateStore(new Logger(), m_file);
+        assertEquals(999, store.get("bundle1").m_lastModified);
+    }
+
+    public void testRetain() throws Exception
+    {
+        BundleStateStore store = new BundleStateStore(new Logger(), m_file);
+        store.put("bundle1", 1, "file:a.jar", Bundle.INSTALLED, 1, 10, 0);
+        store.put("bundle2", 2, "file:b.jar", Bundle.INSTALLED, 1, 20, 0);
+        store.retain(Collections.singleton("bundle2"));
+        store.flush();
+
+        store = new BundleStateStore(new Logger(), m_file);
+        assertNull(store.get("bundle1"));
+        assertEquals(2, store.get("bundle2").m_id);
+    }
+
+    public void testJournalStaysInUseWhenDisabled() throws Exception
+    {
+        Map<String, String> config = new HashMap<String, String>();
+        config.put(Constants.FRAMEWORK_STORAGE, m_dir.getPath());
+
+        // Install without the journal, so the archive has state files.
+        BundleCache cache = new BundleCache(new Logger(), config);
+        cache.create(1, 1, "file:a.jar", new ByteArrayInputStream(createJar()));
+        cache.release();
+
+        // Move the state into the journal and change it there.
+        config.put(BundleCache.CACHE_JOURNAL_PROP, "true");
+        cache = new BundleCache(new Logger(), config);
+        BundleArchive[] archives = cache.getArchives();
+        assertEquals(1, archives.length);
+        archives[0].setPersistentState(Bundle.ACTIVE);
+        archives[0].setStartLevel(3);
+        archives[0].close();
+        cache.release();
+        assertTrue(m_file.exists());
+
+        // The outdated state files must not be used again.
+        config.remove(BundleCache.CACHE_JOURNAL_PROP);
+        cache = new BundleCache(new Logger(), config);
+        archives = cache.getArchives();
+        assertEquals(1, archives.length);
+        assertEquals(Bundle.ACTIVE, archives[0].getPersistentState());
+        assertEquals(3, archives[0].getStartLevel());
+        archives[0].close();
+        cache.release();
+    }
+
+    public void testArchiveChangesAreWrittenOnCacheFlush() throws Exception
+    {
+        Map<String, String> config = new HashMap<String, String>();
+        config.put(Constants.FRAMEWORK_STORAGE, m_dir.getPath());
+        config.put(BundleCache.CACHE_JOURNAL_PROP, "true");
+
+        BundleCache cache = new BundleCache(new Logger(), config);
+        BundleArchive a1 = cache.create(1, 1, "file:a.jar", new ByteArrayInputStream(createJar()));
+        BundleArchive a2 = cache.create(2, 1, "file:b.jar", new ByteArrayInputStream(createJar()));
+        long length = m_file.length();
+
+        // Setters only buffer their changes.
+        a1.setStartLevel(3);
+        a2.setStartLevel(3);
+        a2.setPersistentState(Bundle.ACTIVE);
+        assertEquals(length, m_file.length());
+
+        // One flush writes the changes of all archives.
+        cache.flush();
+        assertTrue(m_file.length() > length);
+        BundleStateStore store = new BundleStateStore(new Logger(), m_file);
+        assertEquals(3, store.get("bundle1").m_startLevel);
+        assertEquals(3, store.get("bundle2").m_startLevel);
+        assertEquals(Bundle.ACTIVE, store.get("bundle2").m_state);
+
+        a1.close();
+        a2.close();
+        cache.release();
+    }
+
+    private static byte[] createJar() throws Exception
+    {
+        Manifest mf = new Manifest();
+        mf.getMainAttributes().putValue("Manifest-Version", "1.0");
+        mf.getMainAttributes().putValue(Constants.BUNDLE_SYMBOLICNAME, "a");
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new JarOutputStream(baos, mf).close();
+        return baos.toByteArray();
+    }
+}
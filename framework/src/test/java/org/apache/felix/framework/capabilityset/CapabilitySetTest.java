@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.capabilityset;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.framework.wiring.BundleCapabilityImpl;
+import org.osgi.framework.Version;
+
+public class CapabilitySetTest extends TestCase
+{
+    private static final String NS = "test";
+
+    public void testRangeLookupsUseSortedIndex()
+    {
+        CapabilitySet capSet = new CapabilitySet(Collections.singletonList(NS), true);
+        for (int i = 0; i < 100; i++)
+        {
+            capSet.addCapability(createCapability("cap" + i, new Version(1, i, 0), Long.valueOf(i)));
+        }
+
+        // Run often enough for the sorted index to be built part way through
+        // and check the results never change.
+        for (int i = 0; i < 40; i++)
+        {
+            assertEquals(50, capSet.match(SimpleFilter.parse("(version>=1.50.0)"), false).size());
+            assertEquals(11, capSet.match(SimpleFilter.parse("(rank<=10)"), false).size());
+            assertEquals(1, capSet.match(SimpleFilter.parse("(rank=42)"), false).size());
+            assertEquals(10, capSet.match(new SimpleFilter("version", "[1.10.0,1.20.0)", SimpleFilter.EQ), false).size());
+            assertEquals(5, capSet.match(SimpleFilter.parse("(&(test=cap1*)(rank>=15))"), false).size());
+            assertEquals(0, capSet.match(SimpleFilter.parse("(rank>=notanumber)"), false).size());
+        }
+    }
+
+    public void testSortedIndexFollowsModifications()
+    {
+        CapabilitySet capSet = new CapabilitySet(Collections.singletonList(NS), true);
+        for (int i = 0; i < 10; i++)
+        {
+            capSet.addCapability(createCapability("cap" + i, new Version(1, i, 0), Long.valueOf(i)));
+        }
+        for (int i = 0; i < 20; i++)
+        {
+            assertEquals(5, capSet.match(SimpleFilter.parse("(rank>=5)"), false).size());
+        }
+
+        BundleCapabilityImpl added = createCapability("added", Version.emptyVersion, Long.valueOf(100));
+        capSet.addCapability(added);
+        assertEquals(6, capSet.match(SimpleFilter.parse("(rank>=5)"), false).size());
+
+        added.getAttributes().put("rank", Long.valueOf(1));
+        capSet.updateCapability(added);
+        assertEquals(5, capSet.match(SimpleFilter.parse("(rank>=5)"), false).size());
+        assertEquals(3, capSet.match(SimpleFilter.parse("(rank<=1)"), false).size());
+
+        capSet.removeCapability(added);
+        assertEquals(2, capSet.match(SimpleFilter.parse("(rank<=1)"), false).size());
+    }
+
+    public void testOnlyIndexedSubfilterIsMovedToFront()
+    {
+        CapabilitySet capSet = new CapabilitySet(Collections.singletonList(NS), true);
+        capSet.addCapability(createCapability("cap", Version.emptyVersion, Long.valueOf(1)));
+
+        List<SimpleFilter> unindexed = subfilters("(&(rank>=1)(version>=1.0.0))");
+        assertSame(unindexed, capSet.indexedFirst(unindexed));
+
+        List<SimpleFilter> first = subfilters("(&(test=cap)(rank>=1))");
+        assertSame(first, capSet.indexedFirst(first));
+
+        List<SimpleFilter> last = subfilters("(&(rank>=1)(version>=1.0.0)(test=cap))");
+        List<SimpleFilter> ordered = capSet.indexedFirst(last);
+        assertEquals(Arrays.asList(last.get(2), last.get(0), last.get(1)), ordered);
+    }
+
+    public void testAdaptiveIndexesAreBounded()
+    {
+        CapabilitySet capSet = new CapabilitySet(Collections.singletonList(NS), true);
+        for (int i = 0; i < 10; i++)
+        {
+            BundleCapabilityImpl cap = createCapability("cap" + i, Version.emptyVersion, Long.valueOf(i));
+            for (int j = 0; j < 2 * CapabilitySet.MAX_SORTED_INDICES; j++)
+            {
+                cap.getAttributes().put("attr" + j, Long.valueOf(i));
+            }
+            capSet.addCapability(cap);
+        }
+
+        // Attributes without any capability never get an index.
+        for (int i = 0; i < 4 * CapabilitySet.MAX_SCAN_COUNTS; i++)
+        {
+            assertEquals(0, capSet.match(SimpleFilter.parse("(missing" + i + ">=1)"), false).size());
+            assertTrue(capSet.getTrackedAttributeCount() <= CapabilitySet.MAX_SCAN_COUNTS);
+        }
+        for (int k = 0; k < 20; k++)
+        {
+            assertEquals(0, capSet.match(SimpleFilter.parse("(missing>=1)"), false).size());
+        }
+        assertEquals(0, capSet.getSortedIndexCount());
+
+        for (int k = 0; k < 20; k++)
+        {
+            for (int j = 0; j < 2 * CapabilitySet.MAX_SORTED_INDICES; j++)
+            {
+                assertEquals(5, capSet.match(SimpleFilter.parse("(attr" + j + ">=5)"), false).size());
+            }
+        }
+        assertEquals(CapabilitySet.MAX_SORTED_INDICES, capSet.getSortedIndexCount());
+    }
+
+    public void testSortedIndexIsDroppedWithLastCapability()
+    {
+        CapabilitySet capSet = new CapabilitySet(Collections.singletonList(NS), true);
+        BundleCapabilityImpl cap = createCapability("cap", Version.emptyVersion, Long.valueOf(1));
+        capSet.addCapability(cap);
+        for (int i = 0; i < 20; i++)
+        {
+            assertEquals(1, capSet.match(SimpleFilter.parse("(rank>=1)"), false).size());
+        }
+        assertEquals(1, capSet.getSortedIndexCount());
+
+        capSet.removeCapability(cap);
+        assertEquals(0, capSet.getSortedIndexCount());
+        assertEquals(0, capSet.match(SimpleFilter.parse("(rank>=1)"), false).size());
+    }
+
+    private static List<SimpleFilter> subfilters(String filter)
+    {
+        return (List<SimpleFilter>) SimpleFilter.parse(filter).getValue();
+    }
+
+    private static BundleCapabilityImpl createCapability(String name, Version version, Long rank)
+    {
+        final Map<String, Object> attrs = new HashMap<String, Object>();
+        attrs.put(NS, name);
+        attrs.put("version", version);
+        attrs.put("rank", rank);
+        return new BundleCapabilityImpl(null, NS, Collections.<String, String>emptyMap(), attrs)
+        {
+            @Override
+            public Map<String, Object> getAttributes()
+            {
+                return attrs;
+            }
+        };
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.capabilityset;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.framework.wiring.BundleCapabilityImpl;
+import org.osgi.framework.Version;
+
+public class CompiledFilterTest extends TestCase
+{
+    private static final String[] FILTERS = new String[] {
+        "(name=*o)",
+        "(name=foo)",
+        "(name=f*o)",
+        "(name~=F O O)",
+        "(name=*)",
+        "(missing=*)",
+        "(version>=1.2.0)",
+        "(version<=1.2.0)",
+        "(rank>=10)",
+        "(rank<=10 )",
+        "(rank=notanumber)",
+        "(flag=true)",
+        "(letter=a)",
+        "(list=b)",
+        "(array=2)",
+        "(&(name=foo)(rank>=5))",
+        "(|(name=bar)(flag=true))",
+        "(!(name=foo))",
+        "(&(version>=1.0.0)(!(version>=2.0.0)))"
+    };
+
+    public void testCompiledMatchesInterpreted()
+    {
+        Map<String, Object> attrs = new HashMap<String, Object>();
+        attrs.put("name", "foo");
+        attrs.put("version", new Version(1, 2, 0));
+        attrs.put("rank", Long.valueOf(10));
+        attrs.put("flag", Boolean.TRUE);
+        attrs.put("letter", Character.valueOf('a'));
+        attrs.put("list", Arrays.asList("a", "b"));
+        attrs.put("array", new int[] { 1, 2, 3 });
+        BundleCapabilityImpl cap = new BundleCapabilityImpl(
+            null, "test", Collections.<String, String>emptyMap(), attrs);
+
+        for (String filter : FILTERS)
+        {
+            SimpleFilter sf = SimpleFilter.parse(filter);
+            CompiledFilter compiled = CompiledFilter.compile(sf);
+            // Evaluate twice so the cached operand conversion is used as well.
+            for (int i = 0; i < 2; i++)
+            {
+                assertEquals(filter, CapabilitySet.matches(cap, sf), compiled.matches(cap));
+            }
+        }
+    }
+
+    public void testVersionRange()
+    {
+        CompiledFilter compiled = CompiledFilter.compile(
+            new SimpleFilter("version", "[1.0.0,2.0.0)", SimpleFilter.EQ));
+        assertTrue(compiled.matches(Collections.singletonMap("version", new Version(1, 5, 0))));
+        assertFalse(compiled.matches(Collections.singletonMap("version", new Version(2, 0, 0))));
+        assertFalse(compiled.matches(Collections.singletonMap("version", "1.5.0")));
+    }
+
+    public void testMandatoryAttributes()
+    {
+        Map<String, Object> attrs = new HashMap<String, Object>();
+        attrs.put("name", "foo");
+        attrs.put("secret", "bar");
+        BundleCapabilityImpl cap = new BundleCapabilityImpl(
+            null, "test", Collections.singletonMap("mandatory", "secret"), attrs);
+
+        assertFalse(CompiledFilter.compile(SimpleFilter.parse("(name=foo)")).matches(cap));
+        assertTrue(CompiledFilter.compile(
+            SimpleFilter.parse("(&(name=foo)(secret=bar))")).matches(cap));
+    }
+}
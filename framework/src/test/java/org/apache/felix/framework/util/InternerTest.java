@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.framework.wiring.BundleCapabilityImpl;
+import org.osgi.framework.Version;
+
+public class InternerTest extends TestCase
+{
+    public void testInternValue()
+    {
+        String s1 = new String("org.foo");
+        String s2 = new String("org.foo");
+        assertSame(Interner.intern(s1), Interner.intern(s2));
+        assertSame(Interner.internValue(new Version(1, 2, 3)),
+            Interner.internValue(new Version(1, 2, 3)));
+
+        List<String> list = new ArrayList<String>(Arrays.asList(s1, "bar"));
+        Object interned = Interner.internValue(list);
+        assertTrue(interned instanceof ImmutableList);
+        assertEquals(list, interned);
+        assertSame(interned,
+            Interner.internValue(new ArrayList<String>(Arrays.asList(s2, "bar"))));
+    }
+
+    public void testConcurrentIntern() throws Exception
+    {
+        final int threads = 8;
+        final int values = 200;
+        final Object[][] results = new Object[threads][values];
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++)
+        {
+            final Object[] result = results[t];
+            Thread worker = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        return;
+                    }
+                    for (int i = 0; i < values; i++)
+                    {
+                        result[i] = Interner.intern(new String("org.concurrent." + i));
+                    }
+                }
+            };
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers)
+        {
+            worker.join();
+        }
+
+        for (int i = 0; i < values; i++)
+        {
+            assertEquals("org.concurrent." + i, results[0][i]);
+            for (int t = 1; t < threads; t++)
+            {
+                assertSame(results[0][i], results[t][i]);
+            }
+        }
+    }
+
+    public void testEqualValuesOfDifferentClassesAreNotShared()
+    {
+        List<String> list = Arrays.asList("a", "b");
+        List<String> other = new ArrayList<String>(list);
+        assertSame(list, Interner.intern(list));
+        assertSame(other, Interner.intern(other));
+    }
+
+    public void testSharedMaps()
+    {
+        Map<String, Object> attrs1 = new LinkedHashMap<String, Object>();
+        attrs1.put("osgi.wiring.package", new String("org.foo"));
+        attrs1.put("version", new Version(1, 0, 0));
+        Map<String, Object> attrs2 = new LinkedHashMap<String, Object>();
+        attrs2.put("osgi.wiring.package", new String("org.foo"));
+        attrs2.put("version", new Version(1, 0, 0));
+
+        BundleCapabilityImpl cap1 = new BundleCapabilityImpl(
+            null, "osgi.wiring.package", new LinkedHashMap<String, String>(), attrs1);
+        BundleCapabilityImpl cap2 = new BundleCapabilityImpl(
+            null, "osgi.wiring.package", new LinkedHashMap<String, String>(), attrs2);
+        assertSame(cap1.getAttributes(), cap2.getAttributes());
+        assertSame(cap1.getDirectives(), cap2.getDirectives());
+
+        // Maps listing the same entries in another order are not shared.
+        Map<String, Object> attrs3 = new LinkedHashMap<String, Object>();
+        attrs3.put("version", new Version(1, 0, 0));
+        attrs3.put("osgi.wiring.package", "org.foo");
+        Map<String, Object> shared = ImmutableMap.newSharedInstance(attrs3);
+        assertEquals(attrs1, shared);
+        assertNotSame(cap1.getAttributes(), shared);
+        assertEquals("version", shared.keySet().iterator().next());
+        assertSame(cap1.getAttributes().get("version"), shared.get("version"));
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import junit.framework.TestCase;
+
+public class MappedZipFileTest extends TestCase
+{
+    private File m_zip;
+    private byte[] m_content;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        m_content = new byte[16384];
+        for (int i = 0; i < m_content.length; i++)
+        {
+            m_content[i] = (byte) ((i % 65) + 65);
+        }
+
+        m_zip = File.createTempFile("felix.test", ".zip");
+        m_zip.deleteOnExit();
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(m_zip));
+        zos.setComment("A comment to skip when looking for the central directory.");
+        zos.putNextEntry(new ZipEntry("dir/"));
+        zos.closeEntry();
+        zos.putNextEntry(new ZipEntry("dir/deflated.txt"));
+        zos.write(m_content);
+        zos.closeEntry();
+        ZipEntry stored = new ZipEntry("dir/stored.txt");
+        stored.setMethod(ZipEntry.STORED);
+        stored.setSize(m_content.length);
+        CRC32 crc = new CRC32();
+        crc.update(m_content);
+        stored.setCrc(crc.getValue());
+        zos.putNextEntry(stored);
+        zos.write(m_content);
+        zos.closeEntry();
+        zos.close();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        m_zip.delete();
+    }
+
+    public void testEntries() throws IOException
+    {
+        MappedZipFile zipFile = MappedZipFile.open(m_zip);
+        assertEquals(3, zipFile.size());
+
+        List<String> names = Collections.list(zipFile.names());
+        List<String> expected = new ArrayList<String>();
+        expected.add("dir/");
+        expected.add("dir/deflated.txt");
+        expected.add("dir/stored.txt");
+        assertEquals(expected, names);
+
+        int dir = zipFile.getEntry("dir/");
+        assertTrue(dir >= 0);
+        assertTrue(zipFile.isDirectory(dir));
+        assertEquals("Directory should be found without trailing slash",
+            dir, zipFile.getEntry("dir"));
+        assertFalse(zipFile.isDirectory(zipFile.getEntry("dir/stored.txt")));
+        assertTrue(zipFile.getEntry("dir/missing.txt") < 0);
+        zipFile.close();
+    }
+
+    public void testGetBytes() throws IOException
+    {
+        MappedZipFile zipFile = MappedZipFile.open(m_zip);
+        assertEquals(new String(m_content),
+            new String(zipFile.getBytes(zipFile.getEntry("dir/stored.txt"))));
+        assertEquals(new String(m_content),
+            new String(zipFile.getBytes(zipFile.getEntry("dir/deflated.txt"))));
+        assertEquals(0, zipFile.getBytes(zipFile.getEntry("dir/")).length);
+        zipFile.close();
+    }
+
+    public void testGetInputStream() throws IOException
+    {
+        MappedZipFile zipFile = MappedZipFile.open(m_zip);
+        assertEquals(new String(m_content),
+            new String(read(zipFile.getInputStream(zipFile.getEntry("dir/stored.txt")))));
+        assertEquals(new String(m_content),
+            new String(read(zipFile.getInputStream(zipFile.getEntry("dir/deflated.txt")))));
+        zipFile.close();
+    }
+
+    public void testClosed() throws IOException
+    {
+        MappedZipFile zipFile = MappedZipFile.open(m_zip);
+        int idx = zipFile.getEntry("dir/stored.txt");
+        zipFile.close();
+        try
+        {
+            zipFile.getBytes(idx);
+            fail("Closed zip file should not be readable");
+        }
+        catch (IOException ex)
+        {
+            // Expected.
+        }
+    }
+
+    public void testNotAZipFile() throws IOException
+    {
+        File file = File.createTempFile("felix.test", ".txt");
+        file.deleteOnExit();
+        FileOutputStream fos = new FileOutputStream(file);
+        fos.write(m_content);
+        fos.close();
+        try
+        {
+            MappedZipFile.open(file);
+            fail("Should not be able to open a file that is not a zip file");
+        }
+        catch (IOException ex)
+        {
+            // Expected.
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    public void testTruncated() throws IOException
+    {
+        byte[] zip = readFile(m_zip);
+        for (int length = 0; length < zip.length; length += 97)
+        {
+            byte[] truncated = new byte[length];
+            System.arraycopy(zip, 0, truncated, 0, length);
+            assertOnlyZipExceptions(truncated);
+        }
+    }
+
+    public void testCorruptHeaders() throws IOException
+    {
+        // Corrupt every byte of the headers and of the deflated entry,
+        // which all come before the stored content or after it.
+        byte[] zip = readFile(m_zip);
+        for (int i = 0; i < zip.length; i++)
+        {
+            if ((i > 300) && (i < zip.length - 300))
+            {
+                continue;
+            }
+            for (int value : new int[] { 0x00, 0x7F, 0xFF })
+            {
+                byte[] corrupt = zip.clone();
+                corrupt[i] = (byte) value;
+                assertOnlyZipExceptions(corrupt);
+            }
+        }
+    }
+
+    private void assertOnlyZipExceptions(byte[] zip) throws IOException
+    {
+        File file = File.createTempFile("felix.test", ".zip");
+        try
+        {
+            FileOutputStream fos = new FileOutputStream(file);
+            fos.write(zip);
+            fos.close();
+
+            MappedZipFile zipFile;
+            try
+            {
+                zipFile = MappedZipFile.open(file);
+            }
+            catch (IOException ex)
+            {
+                return;
+            }
+            for (int idx = 0; idx < zipFile.size(); idx++)
+            {
+                try
+                {
+                    zipFile.getBytes(idx);
+                }
+                catch (IOException ex)
+                {
+                    // Expected for corrupt entries.
+                }
+                try
+                {
+                    read(zipFile.getInputStream(idx));
+                }
+                catch (IOException ex)
+                {
+                    // Expected for corrupt entries.
+                }
+            }
+            zipFile.close();
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException
+    {
+        return read(new FileInputStream(file));
+    }
+
+    private static byte[] read(InputStream is) throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buf = new byte[1000];
+        for (int n = is.read(buf); n != -1; n = is.read(buf))
+        {
+            baos.write(buf, 0, n);
+        }
+        is.close();
+        return baos.toByteArray();
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.util.manifestparser;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.framework.Logger;
+import org.apache.felix.framework.util.FelixConstants;
+import org.apache.felix.framework.wiring.BundleCapabilityImpl;
+import org.apache.felix.framework.wiring.BundleRequirementImpl;
+import org.osgi.framework.Constants;
+import org.osgi.framework.wiring.BundleCapability;
+import org.osgi.framework.wiring.BundleRequirement;
+
+public class ManifestCacheTest extends TestCase
+{
+    private File m_file;
+
+    protected void setUp() throws Exception
+    {
+        m_file = File.createTempFile("manifest", ".parsed");
+        m_file.delete();
+    }
+
+    protected void tearDown() throws Exception
+    {
+        m_file.delete();
+    }
+
+    public void testRoundTrip() throws Exception
+    {
+        Map<String, Object> config = new HashMap<String, Object>();
+        config.put(FelixConstants.FELIX_VERSION_PROPERTY, "1.0.0");
+        Map<String, Object> headers = new HashMap<String, Object>();
+        headers.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+        headers.put(Constants.BUNDLE_SYMBOLICNAME, "foo.bar;singleton:=true");
+        headers.put(Constants.BUNDLE_VERSION, "1.2.3");
+        headers.put(Constants.BUNDLE_ACTIVATIONPOLICY, "lazy;include:=\"foo\"");
+        headers.put(Constants.EXPORT_PACKAGE,
+            "foo;version=1.0;uses:=\"bar,baz\";exclude:=\"*Impl\"");
+        headers.put(Constants.IMPORT_PACKAGE,
+            "bar;version=\"[1,2)\",baz;resolution:=optional");
+        headers.put(Constants.PROVIDE_CAPABILITY,
+            "cap;cap=x;size:Long=3;ratio:Double=0.5;tags:List<String>=\"a,b\"");
+        headers.put(Constants.REQUIRE_CAPABILITY, "cap;filter:=\"(&(cap=x)(size>=2))\"");
+
+        Logger logger = new Logger();
+        ManifestParser mp = new ManifestParser(logger, config, null, headers);
+        ManifestCache.write(logger, config, mp, headers, m_file);
+        assertTrue(m_file.exists());
+
+        ManifestParser cached = ManifestCache.read(logger, config, null, headers, m_file);
+        assertNotNull(cached);
+        assertEquals(mp.getSymbolicName(), cached.getSymbolicName());
+        assertEquals(mp.getBundleVersion(), cached.getBundleVersion());
+        assertEquals(mp.getActivationPolicy(), cached.getActivationPolicy());
+        assertEquals(mp.getActivationIncludeDirective(), cached.getActivationIncludeDirective());
+        assertEquals(mp.isExtension(), cached.isExtension());
+
+        assertEquals(mp.getCapabilities().size(), cached.getCapabilities().size());
+        for (int i = 0; i < mp.getCapabilities().size(); i++)
+        {
+            BundleCapability expected = mp.getCapabilities().get(i);
+            BundleCapability actual = cached.getCapabilities().get(i);
+            assertEquals(expected.getNamespace(), actual.getNamespace());
+            assertEquals(expected.getDirectives(), actual.getDirectives());
+            assertEquals(expected.getAttributes(), actual.getAttributes());
+            assertEquals(((BundleCapabilityImpl) expected).getUses(),
+                ((BundleCapabilityImpl) actual).getUses());
+        }
+
+        assertEquals(mp.getRequirements().size(), cached.getRequirements().size());
+        for (int i = 0; i < mp.getRequirements().size(); i++)
+        {
+            BundleRequirement expected = mp.getRequirements().get(i);
+            BundleRequirement actual = cached.getRequirements().get(i);
+            assertEquals(expected.getNamespace(), actual.getNamespace());
+            assertEquals(expected.getDirectives(), actual.getDirectives());
+            assertEquals(expected.getAttributes(), actual.getAttributes());
+            assertEquals(((BundleRequirementImpl) expected).getFilter().toString(),
+                ((BundleRequirementImpl) actual).getFilter().toString());
+        }
+
+        BundleCapabilityImpl export = (BundleCapabilityImpl) findCapability(
+            cached.getCapabilities(), "osgi.wiring.package");
+        assertTrue(export.isIncluded("foo.Foo"));
+        assertFalse(export.isIncluded("foo.FooImpl"));
+    }
+
+    public void testChangedHeadersAreNotRead() throws Exception
+    {
+        Map<String, Object> config = new HashMap<String, Object>();
+        config.put(FelixConstants.FELIX_VERSION_PROPERTY, "1.0.0");
+        Map<String, Object> headers = new HashMap<String, Object>();
+        headers.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+        headers.put(Constants.BUNDLE_SYMBOLICNAME, "foo.bar");
+
+        Logger logger = new Logger();
+        ManifestParser mp = new ManifestParser(logger, config, null, headers);
+        ManifestCache.write(logger, config, mp, headers, m_file);
+        assertNotNull(ManifestCache.read(logger, config, null, headers, m_file));
+
+        headers.put(Constants.BUNDLE_VERSION, "2.0.0");
+        assertNull(ManifestCache.read(logger, config, null, headers, m_file));
+        headers.remove(Constants.BUNDLE_VERSION);
+
+        config.put(FelixConstants.FELIX_VERSION_PROPERTY, "2.0.0");
+        assertNull(ManifestCache.read(logger, config, null, headers, m_file));
+    }
+
+    public void testNativeCodeIsNotCached() throws Exception
+    {
+        Map<String, Object> headers = new HashMap<String, Object>();
+        headers.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+        headers.put(Constants.BUNDLE_SYMBOLICNAME, "foo.bar");
+        headers.put(Constants.BUNDLE_NATIVECODE, "lib/foo.so;osname=Linux");
+
+        Logger logger = new Logger();
+        ManifestParser mp = new ManifestParser(logger, null, null, headers);
+        ManifestCache.write(logger, null, mp, headers, m_file);
+        assertFalse(m_file.exists());
+    }
+
+    private static BundleCapability findCapability(List<BundleCapability> caps, String namespace)
+    {
+        for (BundleCapability cap : caps)
+        {
+            if (namespace.equals(cap.getNamespace()))
+            {
+                return cap;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.resolver.benchmark;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.felix.resolver.Logger;
+import org.apache.felix.resolver.ResolverImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+import org.osgi.service.resolver.ResolutionException;
+
+/**
+ * Scalability of the parallel uses constraint checks with the number of
+ * executor threads. Unlike {@link ResolverBenchmark} this needs a resolver
+ * release that has the <tt>parallelChecks</tt> constructor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(2)
+public class ParallelChecksBenchmark
+{
+    @Param({ "1000" })
+    public int bundles;
+
+    @Param({ "2000" })
+    public int packages;
+
+    @Param({ "1", "2", "4", "8" })
+    public int threads;
+
+    @Param({ "false", "true" })
+    public boolean parallelChecks;
+
+    private Repository m_repository;
+    private ExecutorService m_executor;
+    private ResolverImpl m_resolver;
+
+    @Setup
+    public void setUp() throws ResolutionException
+    {
+        m_repository = new Repository(Repository.Shape.LAYERED, bundles, packages);
+        m_executor = Executors.newFixedThreadPool(threads);
+        m_resolver = new ResolverImpl(
+            new Logger(Logger.LOG_ERROR), m_executor, false, parallelChecks);
+
+        // The parallel checks must not change the outcome.
+        Map<Resource, List<Wire>> expected = new ResolverImpl(new Logger(Logger.LOG_ERROR), 1)
+            .resolve(m_repository.newResolveContext());
+        if (expected.isEmpty()
+            || !expected.equals(m_resolver.resolve(m_repository.newResolveContext())))
+        {
+            throw new IllegalStateException("Unexpected wiring with " + threads + " threads");
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        m_executor.shutdown();
+    }
+
+    @Benchmark
+    public Map<Resource, List<Wire>> resolve() throws ResolutionException
+    {
+        return m_resolver.resolve(m_repository.newResolveContext());
+    }
+}
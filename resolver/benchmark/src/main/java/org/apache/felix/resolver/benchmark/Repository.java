@@ -0,0 +1,503 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.resolver.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.osgi.framework.Version;
+import org.osgi.framework.namespace.IdentityNamespace;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Namespace;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wiring;
+import org.osgi.service.resolver.HostedCapability;
+import org.osgi.service.resolver.ResolveContext;
+
+/**
+ * A synthetic repository of bundles importing and exporting packages. The
+ * repository is generated from a fixed seed, so the same parameters always
+ * give the same repository, whatever the resolver release being measured.
+ */
+public class Repository
+{
+    public enum Shape
+    {
+        /**
+         * Every bundle imports a few random packages of any other bundle,
+         * each package has a single exporter and there are no uses
+         * constraints.
+         */
+        FLAT,
+        /**
+         * Bundles are stacked in layers importing from the layers below,
+         * favoring a few popular packages, like applications built on
+         * libraries. Exports use the imports of their bundle, some packages
+         * have exporters of two versions and some imports are optional.
+         */
+        LAYERED
+    }
+
+    private static final long SEED = 42;
+    private static final int LAYERS = 5;
+    private static final int IMPORTS = 10;
+
+    private static final Version V1_0 = new Version(1, 0, 0);
+    private static final Version V1_1 = new Version(1, 1, 0);
+    private static final Version V2_0 = new Version(2, 0, 0);
+
+    private final List<Resource> m_resources;
+    private final Map<String, List<Capability>> m_exporters =
+        new HashMap<String, List<Capability>>();
+
+    public Repository(Shape shape, int bundles, int packages)
+    {
+        Random random = new Random(SEED);
+        BenchmarkResource[] resources = new BenchmarkResource[bundles];
+        for (int i = 0; i < bundles; i++)
+        {
+            resources[i] = new BenchmarkResource("bundle" + i);
+        }
+        switch (shape)
+        {
+            case FLAT:
+                generateFlat(random, resources, packages);
+                break;
+            case LAYERED:
+                generateLayered(random, resources, packages);
+                break;
+        }
+        for (List<Capability> caps : m_exporters.values())
+        {
+            // Highest version first, like the framework does.
+            Collections.sort(caps, new Comparator<Capability>()
+            {
+                public int compare(Capability c1, Capability c2)
+                {
+                    return getVersion(c2).compareTo(getVersion(c1));
+                }
+            });
+        }
+        m_resources = Collections.unmodifiableList(
+            new ArrayList<Resource>(Arrays.asList(resources)));
+    }
+
+    private void generateFlat(Random random, BenchmarkResource[] resources, int packages)
+    {
+        for (int p = 0; p < packages; p++)
+        {
+            export(resources[p % resources.length], "pkg" + p, V1_0, null);
+        }
+        for (int b = 0; b < resources.length; b++)
+        {
+            Set<Integer> imports = new LinkedHashSet<Integer>();
+            int max = Math.min(IMPORTS, packages - exportCount(b, resources.length, packages));
+            while (imports.size() < max)
+            {
+                int p = random.nextInt(packages);
+                if (p % resources.length != b)
+                {
+                    imports.add(p);
+                }
+            }
+            for (int p : imports)
+            {
+                resources[b].addRequirement(
+                    new PackageRequirement(resources[b], "pkg" + p, V1_0, false));
+            }
+        }
+    }
+
+    private static int exportCount(int bundle, int bundles, int packages)
+    {
+        return (packages / bundles) + ((bundle < packages % bundles) ? 1 : 0);
+    }
+
+    private void generateLayered(Random random, BenchmarkResource[] resources, int packages)
+    {
+        int bundles = resources.length;
+        // Packages are exported by bundle (package % bundles), so the
+        // packages below a layer are those exported by the bundles below
+        // its first bundle.
+        List<List<Integer>> imports = new ArrayList<List<Integer>>(bundles);
+        for (int b = 0; b < bundles; b++)
+        {
+            int first = layerStart(layer(b, bundles), bundles);
+            List<Integer> below = new ArrayList<Integer>();
+            for (int p = 0; p < packages; p++)
+            {
+                if (p % bundles < first)
+                {
+                    below.add(p);
+                }
+            }
+            Set<Integer> chosen = new LinkedHashSet<Integer>();
+            int max = Math.min(IMPORTS, below.size());
+            while (chosen.size() < max)
+            {
+                // Squaring favors the first packages, which are the
+                // popular ones of the lowest layers.
+                double r = random.nextDouble();
+                chosen.add(below.get((int) (r * r * below.size())));
+            }
+            imports.add(new ArrayList<Integer>(chosen));
+        }
+
+        for (int p = 0; p < packages; p++)
+        {
+            int b = p % bundles;
+            export(resources[b], "pkg" + p, V1_0, uses(imports.get(b)));
+            if (p % 10 == 0)
+            {
+                // A newer version of the package from another bundle of
+                // the same layer.
+                int layer = layer(b, bundles);
+                int start = layerStart(layer, bundles);
+                int size = layerStart(layer + 1, bundles) - start;
+                if (size > 1)
+                {
+                    int other = start + ((b - start + 1) % size);
+                    export(resources[other], "pkg" + p, V1_1, uses(imports.get(other)));
+                }
+            }
+        }
+
+        for (int b = 0; b < bundles; b++)
+        {
+            int i = 0;
+            for (int p : imports.get(b))
+            {
+                boolean optional = (i++ % 7) == 6;
+                Version floor = ((p % 10 == 0) && (b % 3 == 0)) ? V1_1 : V1_0;
+                resources[b].addRequirement(
+                    new PackageRequirement(resources[b], "pkg" + p, floor, optional));
+            }
+        }
+    }
+
+    private static int layer(int bundle, int bundles)
+    {
+        return (int) ((long) bundle * LAYERS / bundles);
+    }
+
+    private static int layerStart(int layer, int bundles)
+    {
+        return (int) (((long) layer * bundles + LAYERS - 1) / LAYERS);
+    }
+
+    private static String uses(List<Integer> packages)
+    {
+        if (packages.isEmpty())
+        {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int p : packages)
+        {
+            if (sb.length() > 0)
+            {
+                sb.append(',');
+            }
+            sb.append("pkg").append(p);
+        }
+        return sb.toString();
+    }
+
+    private void export(BenchmarkResource resource, String pkg, Version version, String uses)
+    {
+        Capability cap = new PackageCapability(resource, pkg, version, uses);
+        resource.addCapability(cap);
+        List<Capability> caps = m_exporters.get(pkg);
+        if (caps == null)
+        {
+            caps = new ArrayList<Capability>(1);
+            m_exporters.put(pkg, caps);
+        }
+        caps.add(cap);
+    }
+
+    private static Version getVersion(Capability cap)
+    {
+        return (Version) cap.getAttributes().get(PackageNamespace.CAPABILITY_VERSION_ATTRIBUTE);
+    }
+
+    public List<Resource> getResources()
+    {
+        return m_resources;
+    }
+
+    /**
+     * Returns a context resolving all bundles of the repository, as far as
+     * possible.
+     */
+    public ResolveContext newResolveContext()
+    {
+        return new ResolveContext()
+        {
+            @Override
+            public Collection<Resource> getOptionalResources()
+            {
+                return m_resources;
+            }
+
+            @Override
+            public List<Capability> findProviders(Requirement requirement)
+            {
+                List<Capability> result = new ArrayList<Capability>();
+                if (requirement instanceof PackageRequirement)
+                {
+                    PackageRequirement req = (PackageRequirement) requirement;
+                    List<Capability> caps = m_exporters.get(req.m_pkg);
+                    if (caps != null)
+                    {
+                        for (Capability cap : caps)
+                        {
+                            if (req.matches(getVersion(cap)))
+                            {
+                                result.add(cap);
+                            }
+                        }
+                    }
+                }
+                return result;
+            }
+
+            @Override
+            public int insertHostedCapability(List<Capability> capabilities, HostedCapability hostedCapability)
+            {
+                capabilities.add(hostedCapability);
+                return capabilities.size() - 1;
+            }
+
+            @Override
+            public boolean isEffective(Requirement requirement)
+            {
+                return true;
+            }
+
+            @Override
+            public Map<Resource, Wiring> getWirings()
+            {
+                return Collections.emptyMap();
+            }
+        };
+    }
+
+    static class BenchmarkResource implements Resource
+    {
+        private final List<Capability> m_caps = new ArrayList<Capability>();
+        private final List<Requirement> m_reqs = new ArrayList<Requirement>();
+        private final String m_name;
+
+        BenchmarkResource(String name)
+        {
+            m_name = name;
+            Map<String, Object> attrs = new HashMap<String, Object>();
+            attrs.put(IdentityNamespace.IDENTITY_NAMESPACE, name);
+            attrs.put(IdentityNamespace.CAPABILITY_TYPE_ATTRIBUTE, IdentityNamespace.TYPE_BUNDLE);
+            attrs.put(IdentityNamespace.CAPABILITY_VERSION_ATTRIBUTE, Version.emptyVersion);
+            m_caps.add(new BenchmarkCapability(this, IdentityNamespace.IDENTITY_NAMESPACE,
+                attrs, Collections.<String, String>emptyMap()));
+        }
+
+        void addCapability(Capability cap)
+        {
+            m_caps.add(cap);
+        }
+
+        void addRequirement(Requirement req)
+        {
+            m_reqs.add(req);
+        }
+
+        public List<Capability> getCapabilities(String namespace)
+        {
+            if (namespace == null)
+            {
+                return m_caps;
+            }
+            List<Capability> result = new ArrayList<Capability>();
+            for (Capability cap : m_caps)
+            {
+                if (cap.getNamespace().equals(namespace))
+                {
+                    result.add(cap);
+                }
+            }
+            return result;
+        }
+
+        public List<Requirement> getRequirements(String namespace)
+        {
+            if (namespace == null)
+            {
+                return m_reqs;
+            }
+            List<Requirement> result = new ArrayList<Requirement>();
+            for (Requirement req : m_reqs)
+            {
+                if (req.getNamespace().equals(namespace))
+                {
+                    result.add(req);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public String toString()
+        {
+            return m_name;
+        }
+    }
+
+    static class BenchmarkCapability implements Capability
+    {
+        private final Resource m_resource;
+        private final String m_namespace;
+        private final Map<String, Object> m_attrs;
+        private final Map<String, String> m_dirs;
+
+        BenchmarkCapability(Resource resource, String namespace,
+            Map<String, Object> attrs, Map<String, String> dirs)
+        {
+            m_resource = resource;
+            m_namespace = namespace;
+            m_attrs = Collections.unmodifiableMap(attrs);
+            m_dirs = Collections.unmodifiableMap(dirs);
+        }
+
+        public String getNamespace()
+        {
+            return m_namespace;
+        }
+
+        public Map<String, String> getDirectives()
+        {
+            return m_dirs;
+        }
+
+        public Map<String, Object> getAttributes()
+        {
+            return m_attrs;
+        }
+
+        public Resource getResource()
+        {
+            return m_resource;
+        }
+
+        @Override
+        public String toString()
+        {
+            return m_namespace + "; " + m_attrs;
+        }
+    }
+
+    static class PackageCapability extends BenchmarkCapability
+    {
+        PackageCapability(Resource resource, String pkg, Version version, String uses)
+        {
+            super(resource, PackageNamespace.PACKAGE_NAMESPACE,
+                attributes(pkg, version), directives(uses));
+        }
+
+        private static Map<String, Object> attributes(String pkg, Version version)
+        {
+            Map<String, Object> attrs = new HashMap<String, Object>();
+            attrs.put(PackageNamespace.PACKAGE_NAMESPACE, pkg);
+            attrs.put(PackageNamespace.CAPABILITY_VERSION_ATTRIBUTE, version);
+            return attrs;
+        }
+
+        private static Map<String, String> directives(String uses)
+        {
+            return (uses == null)
+                ? Collections.<String, String>emptyMap()
+                : Collections.singletonMap(Namespace.CAPABILITY_USES_DIRECTIVE, uses);
+        }
+    }
+
+    static class PackageRequirement implements Requirement
+    {
+        private final Resource m_resource;
+        private final String m_pkg;
+        private final Version m_floor;
+        private final Map<String, String> m_dirs;
+
+        PackageRequirement(Resource resource, String pkg, Version floor, boolean optional)
+        {
+            m_resource = resource;
+            m_pkg = pkg;
+            m_floor = floor;
+            Map<String, String> dirs = new HashMap<String, String>();
+            dirs.put(Namespace.REQUIREMENT_FILTER_DIRECTIVE,
+                "(&(" + PackageNamespace.PACKAGE_NAMESPACE + "=" + pkg + ")"
+                + "(" + PackageNamespace.CAPABILITY_VERSION_ATTRIBUTE + ">=" + floor + ")"
+                + "(!(" + PackageNamespace.CAPABILITY_VERSION_ATTRIBUTE + ">=" + V2_0 + ")))");
+            if (optional)
+            {
+                dirs.put(Namespace.REQUIREMENT_RESOLUTION_DIRECTIVE, Namespace.RESOLUTION_OPTIONAL);
+            }
+            m_dirs = Collections.unmodifiableMap(dirs);
+        }
+
+        boolean matches(Version version)
+        {
+            return (version.compareTo(m_floor) >= 0) && (version.compareTo(V2_0) < 0);
+        }
+
+        public String getNamespace()
+        {
+            return PackageNamespace.PACKAGE_NAMESPACE;
+        }
+
+        public Map<String, String> getDirectives()
+        {
+            return m_dirs;
+        }
+
+        public Map<String, Object> getAttributes()
+        {
+            return Collections.emptyMap();
+        }
+
+        public Resource getResource()
+        {
+            return m_resource;
+        }
+
+        @Override
+        public String toString()
+        {
+            return getNamespace() + "; " + m_dirs.get(Namespace.REQUIREMENT_FILTER_DIRECTIVE);
+        }
+    }
+}
@@ -131,4 +131,22 @@ public class Logger
     {
         // do nothing by default
     }
+
+    /**
+     * Called periodically while a resolve operation checks candidate
+     * permutations and once when it ends. By default the statistics are
+     * logged as a debug message, or as a warning when the resolve operation
+     * exceeded its budget.
+     */
+    public void logResolveStatistics(ResolveStatistics statistics)
+    {
+        if (statistics.isBudgetExceeded())
+        {
+            log(LOG_WARNING, statistics.toString());
+        }
+        else if (isDebugEnabled())
+        {
+            debug(statistics.toString());
+        }
+    }
 }
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.resolver;
+
+/**
+ * Statistics of a resolve operation, passed to
+ * {@link Logger#logResolveStatistics(ResolveStatistics)} periodically while
+ * candidate permutations are being checked and once when the resolve
+ * operation ends. Times are in milliseconds and cover all attempts of the
+ * operation, including those retried after removing optional resources.
+ */
+public class ResolveStatistics
+{
+    private final long m_triedPermutations;
+    private final long m_createdPermutations;
+    private final long m_maxPendingPermutations;
+    private final int m_populatedResources;
+    private final long m_candidateWrites;
+    private final long m_populateTime;
+    private final long m_checkTime;
+    private final long m_wireTime;
+    private final long m_totalTime;
+    private final boolean m_complete;
+    private final boolean m_budgetExceeded;
+
+    ResolveStatistics(
+        long triedPermutations, long createdPermutations, long maxPendingPermutations,
+        int populatedResources, long candidateWrites,
+        long populateTime, long checkTime, long wireTime, long totalTime,
+        boolean complete, boolean budgetExceeded)
+    {
+        m_triedPermutations = triedPermutations;
+        m_createdPermutations = createdPermutations;
+        m_maxPendingPermutations = maxPendingPermutations;
+        m_populatedResources = populatedResources;
+        m_candidateWrites = candidateWrites;
+        m_populateTime = populateTime;
+        m_checkTime = checkTime;
+        m_wireTime = wireTime;
+        m_totalTime = totalTime;
+        m_complete = complete;
+        m_budgetExceeded = budgetExceeded;
+    }
+
+    /**
+     * Returns the number of candidate permutations checked for consistency.
+     */
+    public long getTriedPermutationCount()
+    {
+        return m_triedPermutations;
+    }
+
+    /**
+     * Returns the number of candidate permutations created by the current
+     * attempt, including the initial one.
+     */
+    public long getCreatedPermutationCount()
+    {
+        return m_createdPermutations;
+    }
+
+    /**
+     * Returns the largest number of permutations waiting to be checked at
+     * the same time during the current attempt.
+     */
+    public long getMaxPendingPermutationCount()
+    {
+        return m_maxPendingPermutations;
+    }
+
+    /**
+     * Returns the number of resources whose candidates were populated by
+     * the current attempt.
+     */
+    public int getPopulatedResourceCount()
+    {
+        return m_populatedResources;
+    }
+
+    /**
+     * Returns the number of candidate map entries written by all
+     * permutations of the current attempt.
+     */
+    public long getCandidateWriteCount()
+    {
+        return m_candidateWrites;
+    }
+
+    /**
+     * Returns the time spent populating the candidates of the resources.
+     */
+    public long getPopulateTime()
+    {
+        return m_populateTime;
+    }
+
+    /**
+     * Returns the time spent checking candidate permutations for
+     * consistency.
+     */
+    public long getCheckTime()
+    {
+        return m_checkTime;
+    }
+
+    /**
+     * Returns the time spent creating the wires of a consistent permutation.
+     */
+    public long getWireTime()
+    {
+        return m_wireTime;
+    }
+
+    /**
+     * Returns the time since the resolve operation started.
+     */
+    public long getTotalTime()
+    {
+        return m_totalTime;
+    }
+
+    /**
+     * Returns whether the resolve operation has ended, as opposed to these
+     * being intermediate statistics.
+     */
+    public boolean isComplete()
+    {
+        return m_complete;
+    }
+
+    /**
+     * Returns whether the resolve operation was aborted because it exceeded
+     * the time or permutation budget of the resolver.
+     */
+    public boolean isBudgetExceeded()
+    {
+        return m_budgetExceeded;
+    }
+
+    @Override
+    public String toString()
+    {
+        return (m_complete ? "Resolve " : "Resolving ")
+            + (m_budgetExceeded ? "aborted after " : "took ") + m_totalTime + " ms"
+            + " (populate " + m_populateTime + " ms, check " + m_checkTime
+            + " ms, wire " + m_wireTime + " ms), tried " + m_triedPermutations
+            + " of " + m_createdPermutations + " candidate permutations, at most "
+            + m_maxPendingPermutations + " pending, populated " + m_populatedResources
+            + " resources, writing " + m_candidateWrites + " candidate map entries";
+    }
+}
@@ -43,6 +43,21 @@ public class ResolverImpl implements Resolver
 
     private final Executor m_executor;
 
+    // Package spaces of resolved resources kept across resolves, only
+    // used in incremental mode.
+    private final ConcurrentMap<Resource, WiredPackages> m_wiredPackages;
+
+    // Whether uses constraints are checked concurrently.
+    private final boolean m_parallelChecks;
+
+    // Budget of a resolve operation in milliseconds and in candidate
+    // permutations checked; zero means unlimited.
+    private final long m_timeout;
+    private final long m_maxPermutations;
+
+    // Number of permutations checked between progress statistics.
+    private static final int PROGRESS_INTERVAL = 1000;
+
     enum PermutationType {
         USES,
         IMPORT,
@@ -79,18 +94,40 @@ public class ResolverImpl implements Resolver
         // This permutation represents a permutation that is consistent because we have
         // removed the offending capabilities
         private Candidates m_multipleCardCandidates = null;
+        // Candidates all permutations are copied from, and the number of
+        // permutations created from them; used to report resolve metrics.
+        private Candidates m_initialCandidates = null;
+        private long m_createdPermutations = 0;
+        private long m_maxPendingPermutations = 0;
+        // Statistics of the whole resolve operation, kept across retries.
+        private final long m_startTime = System.nanoTime();
+        private long m_triedPermutations = 0;
+        private int m_populatedResources = 0;
+        private long m_populateTime = 0;
+        private long m_checkTime = 0;
+        private long m_wireTime = 0;
+        private boolean m_budgetExceeded = false;
         // The delta is used to detect that we have already processed this particular permutation
         private final Set<Object> m_processedDeltas = new HashSet<Object>();
         private final Executor m_executor;
         private final Set<Requirement> m_mutated = new HashSet<Requirement>();
         private final Set<Requirement> m_sub_mutated = new HashSet<Requirement>();
         private final ConcurrentMap<String, List<String>> m_usesCache = new ConcurrentHashMap<String, List<String>>();
+        // Package spaces of resolved resources, which do not change between permutations
+        private final ConcurrentMap<Resource, WiredPackages> m_wiredPackages;
         private ResolutionError m_currentError;
 
         ResolveSession(ResolveContext resolveContext, Executor executor, Resource dynamicHost, Requirement dynamicReq, List<Capability> dynamicCandidates)
+        {
+            this(resolveContext, executor, dynamicHost, dynamicReq, dynamicCandidates, null);
+        }
+
+        ResolveSession(ResolveContext resolveContext, Executor executor, Resource dynamicHost, Requirement dynamicReq, List<Capability> dynamicCandidates, ConcurrentMap<Resource, WiredPackages> wiredPackages)
         {
             m_resolveContext = resolveContext;
             m_executor = executor;
+            m_wiredPackages = (wiredPackages != null)
+                ? wiredPackages : new ConcurrentHashMap<Resource, WiredPackages>();
             m_dynamicHost = dynamicHost;
             m_dynamicReq = dynamicReq;
             m_dynamicCandidates = dynamicCandidates;
@@ -118,6 +155,35 @@ public class ResolverImpl implements Resolver
             return m_usesCache;
         }
 
+        /**
+         * Returns the previously computed package space of a resolved resource,
+         * provided its wiring has not changed since. Wirings only change in
+         * place by gaining dynamic imports, so comparing the number of wires
+         * is enough. The host of a dynamic import is never cached since its
+         * package space is being extended.
+         */
+        WiredPackages getWiredPackages(Resource resource) {
+            WiredPackages wired = m_wiredPackages.get(resource);
+            if (wired != null)
+            {
+                Wiring wiring = m_resolveContext.getWirings().get(resource);
+                if (wired.m_wiring != wiring
+                    || resource.equals(m_dynamicHost)
+                    || wired.m_wireCandidates.size() != wiring.getRequiredResourceWires(null).size())
+                {
+                    return null;
+                }
+            }
+            return wired;
+        }
+
+        void putWiredPackages(Resource resource, WiredPackages wired) {
+            if (!resource.equals(m_dynamicHost))
+            {
+                m_wiredPackages.put(resource, wired);
+            }
+        }
+
         void permutateIfNeeded(PermutationType type, Requirement req, Candidates permutation) {
             List<Capability> candidates = permutation.getCandidates(req);
             if ((candidates != null) && (candidates.size() > 1))
@@ -171,6 +237,12 @@ public class ResolverImpl implements Resolver
                     // just a safeguard, this really should never happen
                     typeToAddTo.add(permutation);
                 }
+                if (m_initialCandidates == null)
+                {
+                    m_initialCandidates = permutation;
+                }
+                m_createdPermutations++;
+                m_maxPendingPermutations = Math.max(m_maxPendingPermutations, getPermutationCount());
             }
         }
 
@@ -194,6 +266,7 @@ public class ResolverImpl implements Resolver
                 }
             }
             while(!m_processedDeltas.add(next.getDelta()));
+            m_triedPermutations++;
             // Null out each time a new permutation is attempted.
             // We only use this to store a valid permutation which is a
             // delta of the current permutation.
@@ -205,6 +278,9 @@ public class ResolverImpl implements Resolver
         }
 
         void clearPermutations() {
+            m_initialCandidates = null;
+            m_createdPermutations = 0;
+            m_maxPendingPermutations = 0;
             m_usesPermutations.clear();
             m_importPermutations.clear();
             m_substPermutations.clear();
@@ -229,6 +305,7 @@ public class ResolverImpl implements Resolver
                 if (m_multipleCardCandidates == null)
                 {
                     m_multipleCardCandidates = permutation.copy();
+                    m_createdPermutations++;
                 }
                 // Get the current candidate list and remove all the offending root
                 // cause candidates from a copy of the current permutation.
@@ -243,6 +320,70 @@ public class ResolverImpl implements Resolver
             return m_usesPermutations.size() + m_importPermutations.size() + m_substPermutations.size(); 
         }
 
+        /**
+         * Returns the number of candidate permutations created since the
+         * permutations were last cleared, including the initial one.
+         */
+        long getCreatedPermutationCount() {
+            return m_createdPermutations;
+        }
+
+        /**
+         * Returns the largest number of permutations waiting to be checked
+         * at the same time since the permutations were last cleared.
+         */
+        long getMaxPendingPermutationCount() {
+            return m_maxPendingPermutations;
+        }
+
+        /**
+         * Returns the number of candidate map entries written by all
+         * permutations, which grows with the memory they use since unchanged
+         * entries are shared between permutations.
+         */
+        long getCandidateWriteCount() {
+            return (m_initialCandidates == null) ? 0 : m_initialCandidates.getCandidateWriteCount();
+        }
+
+        long getTriedPermutationCount() {
+            return m_triedPermutations;
+        }
+
+        /**
+         * Returns the time since this session was created in milliseconds.
+         */
+        long getElapsedTime() {
+            return (System.nanoTime() - m_startTime) / 1000000;
+        }
+
+        void addPopulateTime(long nanos) {
+            m_populateTime += nanos;
+        }
+
+        void addCheckTime(long nanos) {
+            m_checkTime += nanos;
+        }
+
+        void addWireTime(long nanos) {
+            m_wireTime += nanos;
+        }
+
+        boolean isBudgetExceeded() {
+            return m_budgetExceeded;
+        }
+
+        void setBudgetExceeded() {
+            m_budgetExceeded = true;
+        }
+
+        ResolveStatistics getStatistics(boolean complete) {
+            return new ResolveStatistics(
+                m_triedPermutations, m_createdPermutations, m_maxPendingPermutations,
+                (m_initialCandidates == null) ? 0 : m_initialCandidates.getNbResources(),
+                getCandidateWriteCount(), m_populateTime / 1000000, m_checkTime / 1000000,
+                m_wireTime / 1000000, getElapsedTime(), complete, m_budgetExceeded);
+        }
+
         Executor getExecutor() {
             return m_executor;
         }
@@ -313,13 +454,62 @@ public class ResolverImpl implements Resolver
         this.m_logger = logger;
         this.m_parallelism = parallelism;
         this.m_executor = null;
+        this.m_wiredPackages = null;
+        this.m_parallelChecks = false;
+        this.m_timeout = 0;
+        this.m_maxPermutations = 0;
     }
 
     public ResolverImpl(Logger logger, Executor executor)
+    {
+        this(logger, executor, false);
+    }
+
+    /**
+     * Creates a resolver which, if <tt>incremental</tt> is set, keeps the
+     * package spaces of resolved resources between resolve operations. Later
+     * resolves then only compute the package spaces of resources whose
+     * wirings changed, which is only valid if the resolve contexts used with
+     * this resolver always return the same wiring objects for unchanged
+     * resources.
+     */
+    public ResolverImpl(Logger logger, Executor executor, boolean incremental)
+    {
+        this(logger, executor, incremental, false);
+    }
+
+    /**
+     * Creates a resolver which, if <tt>parallelChecks</tt> is set, also
+     * uses the executor to check the uses constraints of each candidate
+     * permutation. The package spaces of all resources are checked for
+     * conflicts concurrently, so that the sequential check which creates
+     * the next permutations only has to look at the conflicting ones.
+     */
+    public ResolverImpl(Logger logger, Executor executor, boolean incremental, boolean parallelChecks)
+    {
+        this(logger, executor, incremental, parallelChecks, 0, 0);
+    }
+
+    /**
+     * Creates a resolver which aborts a resolve operation once it has taken
+     * longer than <tt>timeout</tt> milliseconds or checked more than
+     * <tt>maxPermutations</tt> candidate permutations, where zero means
+     * unlimited. The resulting resolution exception reports the last
+     * conflict found, so that pathological resolves fail fast with a
+     * diagnostic instead of searching the permutations for a long time.
+     */
+    public ResolverImpl(
+        Logger logger, Executor executor, boolean incremental, boolean parallelChecks,
+        long timeout, long maxPermutations)
     {
         this.m_logger = logger;
         this.m_parallelism = -1;
         this.m_executor = executor;
+        this.m_wiredPackages = incremental
+            ? new ConcurrentHashMap<Resource, WiredPackages>() : null;
+        this.m_parallelChecks = parallelChecks;
+        this.m_timeout = timeout;
+        this.m_maxPermutations = maxPermutations;
     }
 
     public Map<Resource, List<Wire>> resolve(ResolveContext rc) throws ResolutionException
@@ -371,7 +561,7 @@ public class ResolverImpl implements Resolver
 
     public Map<Resource, List<Wire>> resolve(ResolveContext rc, Executor executor) throws ResolutionException
     {
-        ResolveSession session = new ResolveSession(rc, executor, null, null, null);
+        ResolveSession session = new ResolveSession(rc, executor, null, null, null, getWiredPackages(rc));
         return doResolve(session);
     }
 
@@ -384,13 +574,21 @@ public class ResolverImpl implements Resolver
             retry = false;
             try
             {
+                long start = System.nanoTime();
                 getInitialCandidates(session);
+                session.addPopulateTime(System.nanoTime() - start);
                 if (session.getCurrentError() != null) {
                     throw session.getCurrentError().toException();
                 }
 
                 Map<Resource, ResolutionError> faultyResources = new HashMap<Resource, ResolutionError>();
                 Candidates allCandidates = findValidCandidates(session, faultyResources);
+                if (session.isBudgetExceeded())
+                {
+                    // Retrying without optional resources would exceed the
+                    // budget as well.
+                    throw session.getCurrentError().toException();
+                }
 
                 // If there is a resolve exception, then determine if an
                 // optionally resolved resource is to blame (typically a fragment).
@@ -421,6 +619,7 @@ public class ResolverImpl implements Resolver
                 // resolve, so populate the wire map.
                 else
                 {
+                    start = System.nanoTime();
                     if (session.getMultipleCardCandidates() != null)
                     {
                         // Candidates for multiple cardinality requirements were
@@ -447,10 +646,15 @@ public class ResolverImpl implements Resolver
                             }
                         }
                     }
+                    session.addWireTime(System.nanoTime() - start);
                 }
             }
             finally
             {
+                if (!retry)
+                {
+                    m_logger.logResolveStatistics(session.getStatistics(true));
+                }
                 // Always clear the state.
                 session.clearPermutations();
             }
@@ -514,14 +718,33 @@ public class ResolverImpl implements Resolver
     private Candidates findValidCandidates(ResolveSession session, Map<Resource, ResolutionError> faultyResources) {
         Candidates allCandidates = null;
         boolean foundFaultyResources = false;
+        long start = System.nanoTime();
         do
         {
+            if (((m_maxPermutations > 0) && (session.getTriedPermutationCount() >= m_maxPermutations))
+                || ((m_timeout > 0) && (session.getElapsedTime() > m_timeout)))
+            {
+                session.setBudgetExceeded();
+                session.setCurrentError(new BudgetExceededError(
+                    session.getTriedPermutationCount(), session.getElapsedTime(),
+                    session.getCurrentError()));
+                break;
+            }
+
             allCandidates = session.getNextPermutation();
             if (allCandidates == null)
             {
                 break;
             }
 
+            if ((session.getTriedPermutationCount() % PROGRESS_INTERVAL) == 0)
+            {
+                long now = System.nanoTime();
+                session.addCheckTime(now - start);
+                start = now;
+                m_logger.logResolveStatistics(session.getStatistics(false));
+            }
+
 //allCandidates.dump();
 
             Map<Resource, ResolutionError> currentFaultyResources = new HashMap<Resource, ResolutionError>();
@@ -551,6 +774,7 @@ public class ResolverImpl implements Resolver
         }
         while (session.getCurrentError() != null);
 
+        session.addCheckTime(System.nanoTime() - start);
         return allCandidates;
     }
 
@@ -572,11 +796,14 @@ public class ResolverImpl implements Resolver
         // Check package consistency
         Map<Resource, Object> resultCache =
                 new OpenHashMap<Resource, Object>(resourcePkgMap.size());
+        Set<Resource> compatible = m_parallelChecks
+            ? findCompatibleResources(session, resourcePkgMap)
+            : Collections.<Resource>emptySet();
         for (Entry<Resource, Resource> entry : allhosts.entrySet())
         {
             rethrow = checkPackageSpaceConsistency(
                     session, entry.getValue(),
-                    allCandidates, session.isDynamic(), resourcePkgMap, resultCache);
+                    allCandidates, session.isDynamic(), resourcePkgMap, resultCache, compatible);
             if (rethrow != null)
             {
                 Resource faultyResource = entry.getKey();
@@ -645,13 +872,34 @@ public class ResolverImpl implements Resolver
                         "Matching candidate does not provide a package name.");
                 }
             }
-            ResolveSession session = new ResolveSession(rc,  new DumbExecutor(), host, dynamicReq, matches);
+            ResolveSession session = new ResolveSession(rc,  new DumbExecutor(), host, dynamicReq, matches, getWiredPackages(rc));
             return doResolve(session);
         }
 
         return Collections.emptyMap();
     }
 
+    /**
+     * Returns the package spaces kept from previous resolves, after dropping
+     * those of resources that are no longer resolved or whose wiring changed.
+     */
+    private ConcurrentMap<Resource, WiredPackages> getWiredPackages(ResolveContext rc)
+    {
+        if (m_wiredPackages != null)
+        {
+            Map<Resource, Wiring> wirings = rc.getWirings();
+            for (Iterator<Entry<Resource, WiredPackages>> it = m_wiredPackages.entrySet().iterator(); it.hasNext();)
+            {
+                Entry<Resource, WiredPackages> entry = it.next();
+                if (wirings.get(entry.getKey()) != entry.getValue().m_wiring)
+                {
+                    it.remove();
+                }
+            }
+        }
+        return m_wiredPackages;
+    }
+
     private static List<WireCandidate> getWireCandidates(ResolveSession session, Candidates allCandidates, Resource resource)
     {
         // Create a list for requirement and proposed candidate
@@ -1097,8 +1345,10 @@ public class ResolverImpl implements Resolver
     {
         final EnhancedExecutor executor = new EnhancedExecutor(session.getExecutor());
 
-        // Parallel compute wire candidates
+        // Parallel compute wire candidates, reusing those of resolved
+        // resources whose package spaces are already known
         final Map<Resource, List<WireCandidate>> allWireCandidates = new ConcurrentHashMap<Resource, List<WireCandidate>>();
+        final Map<Resource, Packages> wiredPackages = new ConcurrentHashMap<Resource, Packages>();
         {
             final ConcurrentMap<Resource, Runnable> tasks = new ConcurrentHashMap<Resource, Runnable>(allCandidates.getNbResources());
             class Computer implements Runnable
@@ -1110,7 +1360,17 @@ public class ResolverImpl implements Resolver
                 }
                 public void run()
                 {
-                    List<WireCandidate> wireCandidates = getWireCandidates(session, allCandidates, resource);
+                    List<WireCandidate> wireCandidates;
+                    WiredPackages wired = session.getWiredPackages(resource);
+                    if (wired != null)
+                    {
+                        wireCandidates = wired.m_wireCandidates;
+                        wiredPackages.put(resource, wired.m_packages);
+                    }
+                    else
+                    {
+                        wireCandidates = getWireCandidates(session, allCandidates, resource);
+                    }
                     allWireCandidates.put(resource, wireCandidates);
                     for (WireCandidate w : wireCandidates)
                     {
@@ -1137,6 +1397,12 @@ public class ResolverImpl implements Resolver
         final OpenHashMap<Resource, Packages> allPackages = new OpenHashMap<Resource, Packages>(allCandidates.getNbResources());
         for (final Resource resource : allWireCandidates.keySet())
         {
+            Packages wired = wiredPackages.get(resource);
+            if (wired != null)
+            {
+                allPackages.put(resource, wired);
+                continue;
+            }
             final Packages packages = new Packages(resource);
             allPackages.put(resource, packages);
             executor.execute(new Runnable()
@@ -1152,6 +1418,10 @@ public class ResolverImpl implements Resolver
         // Parallel compute package lists
         for (final Resource resource : allWireCandidates.keySet())
         {
+            if (wiredPackages.containsKey(resource))
+            {
+                continue;
+            }
             executor.execute(new Runnable()
             {
                 public void run()
@@ -1170,7 +1440,7 @@ public class ResolverImpl implements Resolver
         {
             final Resource resource = entry.getKey();
             final Packages packages = entry.getValue();
-            if (!packages.m_requiredPkgs.isEmpty())
+            if (!packages.m_requiredPkgs.isEmpty() && !wiredPackages.containsKey(resource))
             {
                 getPackageSourcesInternal(session, allPackages, resource, packages);
             }
@@ -1181,7 +1451,7 @@ public class ResolverImpl implements Resolver
         {
             final Resource resource = entry.getKey();
             final Packages packages = entry.getValue();
-            if (packages.m_sources.isEmpty())
+            if (packages.m_sources.isEmpty() && !wiredPackages.containsKey(resource))
             {
                 executor.execute(new Runnable()
                 {
@@ -1197,6 +1467,10 @@ public class ResolverImpl implements Resolver
         // Parallel compute uses
         for (final Resource resource : allWireCandidates.keySet())
         {
+            if (wiredPackages.containsKey(resource))
+            {
+                continue;
+            }
             executor.execute(new Runnable()
             {
                 public void run()
@@ -1207,6 +1481,20 @@ public class ResolverImpl implements Resolver
         }
         executor.await();
 
+        // Remember the package spaces of resolved resources, which only
+        // depend on their wirings
+        Map<Resource, Wiring> wirings = session.getContext().getWirings();
+        for (Map.Entry<Resource, List<WireCandidate>> entry : allWireCandidates.entrySet())
+        {
+            Resource resource = entry.getKey();
+            Wiring wiring = wirings.get(resource);
+            if (wiring != null && !wiredPackages.containsKey(resource))
+            {
+                session.putWiredPackages(resource,
+                    new WiredPackages(wiring, entry.getValue(), allPackages.get(resource)));
+            }
+        }
+
         return allPackages;
     }
 
@@ -1260,13 +1548,106 @@ public class ResolverImpl implements Resolver
         addToBlame.addBlame(newBlame, matchingCap);
     }
 
+    /**
+     * Concurrently finds the unresolved resources whose package spaces do
+     * not have any conflicts by themselves.
+     */
+    private static Set<Resource> findCompatibleResources(
+        ResolveSession session,
+        final Map<Resource, Packages> resourcePkgMap)
+    {
+        final EnhancedExecutor executor = new EnhancedExecutor(session.getExecutor());
+        final ConcurrentMap<Resource, Boolean> compatible =
+            new ConcurrentHashMap<Resource, Boolean>(resourcePkgMap.size());
+        Map<Resource, Wiring> wirings = session.getContext().getWirings();
+        for (final Entry<Resource, Packages> entry : resourcePkgMap.entrySet())
+        {
+            if (wirings.containsKey(entry.getKey()))
+            {
+                continue;
+            }
+            executor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    if (isCompatible(entry.getValue(), resourcePkgMap))
+                    {
+                        compatible.put(entry.getKey(), Boolean.TRUE);
+                    }
+                }
+            });
+        }
+        executor.await();
+        return compatible.keySet();
+    }
+
+    /**
+     * Returns whether none of the conflicts detected by
+     * {@link #checkPackageSpaceConsistency} exist in the given package
+     * space, in which case that check does not have any side effects.
+     */
+    private static boolean isCompatible(
+        Packages pkgs, Map<Resource, Packages> resourcePkgMap)
+    {
+        for (Entry<String, List<Blame>> entry : pkgs.m_importedPkgs.fast())
+        {
+            List<Blame> blames = entry.getValue();
+            for (int i = 1; i < blames.size(); i++)
+            {
+                if (!blames.get(0).m_cap.getResource().equals(blames.get(i).m_cap.getResource()))
+                {
+                    return false;
+                }
+            }
+        }
+        for (Entry<String, Blame> entry : pkgs.m_exportedPkgs.fast())
+        {
+            ArrayMap<Capability, UsedBlames> pkgBlames = pkgs.m_usedPkgs.get(entry.getKey());
+            if (pkgBlames != null)
+            {
+                for (UsedBlames usedBlames : pkgBlames.values())
+                {
+                    if (!isCompatible(entry.getValue(), usedBlames.m_cap, resourcePkgMap))
+                    {
+                        return false;
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < 2; i++)
+        {
+            // Imported packages shadow required ones.
+            OpenHashMap<String, List<Blame>> pkgMap = (i == 0) ? pkgs.m_requiredPkgs : pkgs.m_importedPkgs;
+            for (Entry<String, List<Blame>> entry : pkgMap.fast())
+            {
+                if ((i == 0) && pkgs.m_importedPkgs.containsKey(entry.getKey()))
+                {
+                    continue;
+                }
+                ArrayMap<Capability, UsedBlames> pkgBlames = pkgs.m_usedPkgs.get(entry.getKey());
+                if (pkgBlames != null)
+                {
+                    for (UsedBlames usedBlames : pkgBlames.values())
+                    {
+                        if (!isCompatible(entry.getValue(), usedBlames.m_cap, resourcePkgMap))
+                        {
+                            return false;
+                        }
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
     private ResolutionError checkPackageSpaceConsistency(
         ResolveSession session,
         Resource resource,
         Candidates allCandidates,
         boolean dynamic,
         Map<Resource, Packages> resourcePkgMap,
-        Map<Resource, Object> resultCache)
+        Map<Resource, Object> resultCache,
+        Set<Resource> compatible)
     {
         if (!dynamic && session.getContext().getWirings().containsKey(resource))
         {
@@ -1277,6 +1658,13 @@ public class ResolverImpl implements Resolver
         {
             return cache instanceof ResolutionError ? (ResolutionError) cache : null;
         }
+        if (compatible.contains(resource))
+        {
+            // The checks below would not find any conflict.
+            resultCache.put(resource, Boolean.TRUE);
+            return checkDependencyConsistency(
+                session, resource, allCandidates, resourcePkgMap, resultCache, compatible);
+        }
 
         Packages pkgs = resourcePkgMap.get(resource);
 
@@ -1535,7 +1923,18 @@ public class ResolverImpl implements Resolver
         }
 
         resultCache.put(resource, Boolean.TRUE);
+        return checkDependencyConsistency(
+            session, resource, allCandidates, resourcePkgMap, resultCache, compatible);
+    }
 
+    private ResolutionError checkDependencyConsistency(
+        ResolveSession session,
+        Resource resource,
+        Candidates allCandidates,
+        Map<Resource, Packages> resourcePkgMap,
+        Map<Resource, Object> resultCache,
+        Set<Resource> compatible)
+    {
         // Now check the consistency of all resources on which the
         // current resource depends. Keep track of the current number
         // of permutations so we know if the lower level check was
@@ -1548,9 +1947,9 @@ public class ResolverImpl implements Resolver
             {
                 if (!resource.equals(cap.getResource()))
                 {
-                    rethrow = checkPackageSpaceConsistency(
+                    ResolutionError rethrow = checkPackageSpaceConsistency(
                             session, cap.getResource(),
-                            allCandidates, false, resourcePkgMap, resultCache);
+                            allCandidates, false, resourcePkgMap, resultCache, compatible);
                     if (rethrow != null)
                     {
                         // If the lower level check didn't create any permutations,
@@ -2019,6 +2418,24 @@ public class ResolverImpl implements Resolver
         }
     }
 
+    /**
+     * The package space of a resolved resource together with the wiring it
+     * was computed from.
+     */
+    private static final class WiredPackages
+    {
+        public final Wiring m_wiring;
+        public final List<WireCandidate> m_wireCandidates;
+        public final Packages m_packages;
+
+        public WiredPackages(Wiring wiring, List<WireCandidate> wireCandidates, Packages packages)
+        {
+            this.m_wiring = wiring;
+            this.m_wireCandidates = wireCandidates;
+            this.m_packages = packages;
+        }
+    }
+
     public static class Packages
     {
         public final OpenHashMap<String, Blame> m_exportedPkgs;
@@ -2366,6 +2783,35 @@ public class ResolverImpl implements Resolver
         }
     }
 
+    private static final class BudgetExceededError extends ResolutionError {
+
+        private final long m_permutations;
+        private final long m_elapsed;
+        private final ResolutionError m_lastError;
+
+        public BudgetExceededError(long permutations, long elapsed, ResolutionError lastError) {
+            this.m_permutations = permutations;
+            this.m_elapsed = elapsed;
+            this.m_lastError = lastError;
+        }
+
+        public String getMessage() {
+            String msg = "Resolution aborted after checking " + m_permutations
+                + " candidate permutations in " + m_elapsed + " ms.";
+            if (m_lastError != null)
+            {
+                msg = msg + " Last conflict: " + m_lastError.getMessage();
+            }
+            return msg;
+        }
+
+        public Collection<Requirement> getUnresolvedRequirements() {
+            return (m_lastError != null)
+                ? m_lastError.getUnresolvedRequirements()
+                : Collections.<Requirement>emptyList();
+        }
+    }
+
     private static class EnhancedExecutor
     {
         private final Executor executor;
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.resolver.util;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.osgi.resource.Requirement;
+
+/**
+ * Maps requirements to their candidates, sharing unchanged entries between
+ * copies. A copy freezes the entries written so far into a layer shared by
+ * the original and the copy; each of them then only records the entries it
+ * changes on top of that layer. Selectors held by a shared layer are never
+ * modified, {@link #getForUpdate(Requirement)} copies a selector into the
+ * own entries first. When layers become too deep, a copy flattens them
+ * into one so lookups stay cheap.
+ * <p>
+ * This class is not thread safe, but reading a map that is not being
+ * modified from several threads is.
+ */
+public class CandidateMap {
+    // Marks an entry removed in a layer that may still exist in a parent.
+    private static final Object REMOVED = new Object();
+    private static final int MAX_DEPTH = 8;
+
+    private Layer m_parent;
+    private OpenHashMap<Requirement, Object> m_entries;
+    // Number of entries written by this map and all copies of it.
+    private final AtomicLong m_writes;
+
+    public CandidateMap() {
+        this(null, new AtomicLong());
+    }
+
+    private CandidateMap(Layer parent, AtomicLong writes) {
+        m_parent = parent;
+        m_entries = new OpenHashMap<Requirement, Object>((parent == null) ? 16 : 4);
+        m_writes = writes;
+    }
+
+    public CandidateSelector get(Requirement req) {
+        Object value = m_entries.get(req);
+        if (value == null) {
+            for (Layer layer = m_parent; (value == null) && (layer != null); layer = layer.m_parent) {
+                value = layer.m_entries.get(req);
+            }
+        }
+        return (value == REMOVED) ? null : (CandidateSelector) value;
+    }
+
+    /**
+     * Returns the candidates of the given requirement such that they can be
+     * modified without affecting other copies of this map.
+     */
+    public CandidateSelector getForUpdate(Requirement req) {
+        Object value = m_entries.get(req);
+        if (value == REMOVED) {
+            return null;
+        } else if (value != null) {
+            return (CandidateSelector) value;
+        }
+        CandidateSelector candidates = get(req);
+        if (candidates != null) {
+            candidates = candidates.copy();
+            put(req, candidates);
+        }
+        return candidates;
+    }
+
+    public CandidateSelector put(Requirement req, CandidateSelector candidates) {
+        CandidateSelector previous = get(req);
+        m_entries.put(req, candidates);
+        m_writes.incrementAndGet();
+        return previous;
+    }
+
+    public CandidateSelector remove(Requirement req) {
+        CandidateSelector previous = get(req);
+        if (m_parent == null) {
+            m_entries.remove(req);
+        } else if (previous != null) {
+            m_entries.put(req, REMOVED);
+            m_writes.incrementAndGet();
+        }
+        return previous;
+    }
+
+    /**
+     * Returns a copy of this map. Later changes to either map are not
+     * visible in the other one.
+     */
+    public CandidateMap copy() {
+        if (!m_entries.isEmpty() || (m_parent == null)) {
+            int depth = (m_parent == null) ? 1 : m_parent.m_depth + 1;
+            if (depth > MAX_DEPTH) {
+                OpenHashMap<Requirement, Object> flat = toMap();
+                m_writes.addAndGet(flat.size());
+                m_parent = new Layer(null, flat, 1);
+            } else {
+                m_parent = new Layer(m_parent, m_entries, depth);
+            }
+            m_entries = new OpenHashMap<Requirement, Object>(4);
+        }
+        return new CandidateMap(m_parent, m_writes);
+    }
+
+    /**
+     * Returns all entries of this map. The returned map must not be modified
+     * unless this map has never been copied.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<Requirement, CandidateSelector> entries() {
+        if (m_parent == null) {
+            return (Map) m_entries;
+        }
+        return (Map) toMap();
+    }
+
+    private OpenHashMap<Requirement, Object> toMap() {
+        OpenHashMap<Requirement, Object> result = new OpenHashMap<Requirement, Object>();
+        addEntries(m_parent, result);
+        for (Map.Entry<Requirement, Object> entry : m_entries.fast()) {
+            if (entry.getValue() == REMOVED) {
+                result.remove(entry.getKey());
+            } else {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    private static void addEntries(Layer layer, OpenHashMap<Requirement, Object> result) {
+        if (layer != null) {
+            addEntries(layer.m_parent, result);
+            for (Map.Entry<Requirement, Object> entry : layer.m_entries.fast()) {
+                if (entry.getValue() == REMOVED) {
+                    result.remove(entry.getKey());
+                } else {
+                    result.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    public void trim() {
+        m_entries.trim();
+    }
+
+    /**
+     * Returns the number of entries written by this map and all maps copied
+     * from it, which is a measure of the memory used by the copies.
+     */
+    public long getWriteCount() {
+        return m_writes.get();
+    }
+
+    private static class Layer {
+        final Layer m_parent;
+        final OpenHashMap<Requirement, Object> m_entries;
+        final int m_depth;
+
+        Layer(Layer parent, OpenHashMap<Requirement, Object> entries, int depth) {
+            m_parent = parent;
+            m_entries = entries;
+            m_depth = depth;
+        }
+    }
+}
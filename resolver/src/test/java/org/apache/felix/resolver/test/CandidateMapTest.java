@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.resolver.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.felix.resolver.test.util.GenericRequirement;
+import org.apache.felix.resolver.test.util.PackageCapability;
+import org.apache.felix.resolver.test.util.ResourceImpl;
+import org.apache.felix.resolver.util.CandidateMap;
+import org.apache.felix.resolver.util.CandidateSelector;
+import org.junit.Test;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+
+public class CandidateMapTest
+{
+    @Test
+    public void testCopiesShareUnchangedEntries() throws Exception
+    {
+        ResourceImpl resource = new ResourceImpl("a");
+        Capability cap1 = new PackageCapability(new ResourceImpl("b"), "p");
+        Capability cap2 = new PackageCapability(new ResourceImpl("c"), "p");
+        AtomicBoolean unmodifiable = new AtomicBoolean(true);
+
+        CandidateMap map = new CandidateMap();
+        List<Requirement> reqs = new ArrayList<Requirement>();
+        for (int i = 0; i < 20; i++)
+        {
+            Requirement req = new GenericRequirement(resource, PackageNamespace.PACKAGE_NAMESPACE);
+            reqs.add(req);
+            map.put(req, new CandidateSelector(Arrays.asList(cap1, cap2), unmodifiable));
+        }
+        long written = map.getWriteCount();
+
+        CandidateMap copy = map.copy();
+        copy.getForUpdate(reqs.get(0)).removeCurrentCandidate();
+        copy.remove(reqs.get(1));
+
+        // Only the changed entries were written and the original is unaffected.
+        assertEquals(written + 2, map.getWriteCount());
+        assertSame(cap2, copy.get(reqs.get(0)).getCurrentCandidate());
+        assertNull(copy.get(reqs.get(1)));
+        assertSame(map.get(reqs.get(2)), copy.get(reqs.get(2)));
+        assertSame(cap1, map.get(reqs.get(0)).getCurrentCandidate());
+        assertSame(cap1, map.get(reqs.get(1)).getCurrentCandidate());
+        assertEquals(20, map.entries().size());
+        assertEquals(19, copy.entries().size());
+
+        // Changes to the original after copying are not seen by the copy.
+        map.getForUpdate(reqs.get(2)).removeCurrentCandidate();
+        assertSame(cap1, copy.get(reqs.get(2)).getCurrentCandidate());
+
+        // Deep chains of copies are flattened and keep their entries.
+        CandidateMap current = copy;
+        for (int i = 2; i < 20; i++)
+        {
+            current = current.copy();
+            current.getForUpdate(reqs.get(i)).removeCurrentCandidate();
+        }
+        assertNull(current.get(reqs.get(1)));
+        for (int i = 2; i < 20; i++)
+        {
+            assertSame(cap2, current.get(reqs.get(i)).getCurrentCandidate());
+        }
+        assertEquals(19, current.entries().size());
+    }
+}
@@ -19,6 +19,7 @@
 package org.apache.felix.resolver.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -32,8 +33,12 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.felix.resolver.Logger;
+import org.apache.felix.resolver.ResolveStatistics;
 import org.apache.felix.resolver.ResolverImpl;
 import org.apache.felix.resolver.test.util.BundleCapability;
 import org.apache.felix.resolver.test.util.BundleRequirement;
@@ -825,6 +830,146 @@ public class ResolverTest
 
     }
 
+    @Test
+    public void testScenario17() throws Exception
+    {
+        ResolverImpl resolver = new ResolverImpl(new Logger(Logger.LOG_DEBUG), new Executor()
+        {
+            public void execute(Runnable command)
+            {
+                command.run();
+            }
+        }, true);
+
+        ResourceImpl c1 = new ResourceImpl("C1");
+        Capability c1_pkgCap = addCap(c1, PackageNamespace.PACKAGE_NAMESPACE, "org.foo.c");
+
+        ResourceImpl c2 = new ResourceImpl("C2");
+        Capability c2_pkgCap = addCap(c2, PackageNamespace.PACKAGE_NAMESPACE, "org.foo.c");
+
+        ResourceImpl b = new ResourceImpl("B");
+        Capability b_pkgCap = addCap(b, PackageNamespace.PACKAGE_NAMESPACE, "org.foo.b", "org.foo.c");
+        Requirement b_pkgReq = addReq(b, PackageNamespace.PACKAGE_NAMESPACE, "org.foo.c");
+
+        ResourceImpl a = new ResourceImpl("A");
+        Requirement a_pkgReq1 = addReq(a, PackageNamespace.PACKAGE_NAMESPACE, "org.foo.b");
+        Requirement a_pkgReq2 = addReq(a, PackageNamespace.PACKAGE_NAMESPACE, "org.foo.c");
+
+        Map<Requirement, List<Capability>> candMap = new HashMap<Requirement, List<Capability>>();
+        candMap.put(a_pkgReq1, Collections.singletonList(b_pkgCap));
+        candMap.put(a_pkgReq2, Arrays.asList(c2_pkgCap, c1_pkgCap));
+
+        // B is resolved against C1, so A has to use C1 as well.
+        Map<Resource, Wiring> wirings = populateScenario17(b, b_pkgReq, c1, c1_pkgCap, c2, c2_pkgCap, c1_pkgCap);
+        for (int i = 0; i < 2; i++)
+        {
+            // The second resolve reuses the package spaces of B, C1 and C2.
+            ResolveContextImpl rci = new ResolveContextImpl(wirings, candMap,
+                Collections.<Resource> singletonList(a), Collections.<Resource> emptyList());
+            Map<Resource, List<Wire>> wireMap = resolver.resolve(rci);
+            assertEquals(c1, getProvider(wireMap.get(a), a_pkgReq2));
+        }
+
+        // Once B is rewired to C2, its new package space has to be used.
+        wirings = populateScenario17(b, b_pkgReq, c1, c1_pkgCap, c2, c2_pkgCap, c2_pkgCap);
+        ResolveContextImpl rci = new ResolveContextImpl(wirings, candMap,
+            Collections.<Resource> singletonList(a), Collections.<Resource> emptyList());
+        Map<Resource, List<Wire>> wireMap = resolver.resolve(rci);
+        assertEquals(c2, getProvider(wireMap.get(a), a_pkgReq2));
+    }
+
+    @Test
+    public void testScenario18() throws Exception
+    {
+        ResourceImpl a = new ResourceImpl("A");
+        Map<Requirement, List<Capability>> candMap = new HashMap<Requirement, List<Capability>>();
+        List<Requirement> aReqs = new ArrayList<Requirement>();
+        List<Resource> bs = new ArrayList<Resource>();
+        populateScenario18(a, candMap, aReqs, bs);
+
+        Map<Resource, List<Wire>> expected = new ResolverImpl(new Logger(Logger.LOG_DEBUG), 1).resolve(
+            new ResolveContextImpl(new HashMap<Resource, Wiring>(), candMap,
+                Collections.<Resource> singletonList(a), Collections.<Resource> emptyList()));
+        for (int i = 0; i < aReqs.size(); i++)
+        {
+            assertEquals(bs.get(i), getProvider(expected.get(a), aReqs.get(i)));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            ResolverImpl resolver = new ResolverImpl(new Logger(Logger.LOG_DEBUG), executor, false, true);
+            for (int i = 0; i < 10; i++)
+            {
+                Map<Resource, List<Wire>> wireMap = resolver.resolve(
+                    new ResolveContextImpl(new HashMap<Resource, Wiring>(), candMap,
+                        Collections.<Resource> singletonList(a), Collections.<Resource> emptyList()));
+                assertEquals(expected, wireMap);
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testScenario19() throws Exception
+    {
+        ResourceImpl a = new ResourceImpl("A");
+        Map<Requirement, List<Capability>> candMap = new HashMap<Requirement, List<Capability>>();
+        populateScenario18(a, candMap, new ArrayList<Requirement>(), new ArrayList<Resource>());
+
+        final List<ResolveStatistics> statistics = new ArrayList<ResolveStatistics>();
+        Logger logger = new Logger(Logger.LOG_DEBUG)
+        {
+            @Override
+            public void logResolveStatistics(ResolveStatistics stats)
+            {
+                statistics.add(stats);
+            }
+        };
+
+        Executor executor = new Executor()
+        {
+            public void execute(Runnable command)
+            {
+                command.run();
+            }
+        };
+        ResolverImpl resolver = new ResolverImpl(logger, executor, false, false, 0, 0);
+        resolver.resolve(new ResolveContextImpl(new HashMap<Resource, Wiring>(), candMap,
+            Collections.<Resource> singletonList(a), Collections.<Resource> emptyList()));
+        assertEquals(1, statistics.size());
+        ResolveStatistics stats = statistics.get(0);
+        assertTrue(stats.isComplete());
+        assertFalse(stats.isBudgetExceeded());
+        assertTrue(stats.getTriedPermutationCount() > 2);
+        assertTrue(stats.getCreatedPermutationCount() >= stats.getTriedPermutationCount());
+        assertEquals(17, stats.getPopulatedResourceCount());
+
+        // The same resolve fails fast when it may only check two permutations.
+        statistics.clear();
+        resolver = new ResolverImpl(logger, executor, false, false, 0, 2);
+        try
+        {
+            resolver.resolve(new ResolveContextImpl(new HashMap<Resource, Wiring>(), candMap,
+                Collections.<Resource> singletonList(a), Collections.<Resource> emptyList()));
+            fail("Budget should have been exceeded");
+        }
+        catch (ResolutionException ex)
+        {
+            assertTrue(ex.getMessage().startsWith("Resolution aborted after checking 2"));
+            assertTrue(ex.getMessage().contains("Uses constraint violation"));
+            assertFalse(ex.getUnresolvedRequirements().isEmpty());
+        }
+        assertEquals(1, statistics.size());
+        stats = statistics.get(0);
+        assertTrue(stats.isComplete());
+        assertTrue(stats.isBudgetExceeded());
+        assertEquals(2, stats.getTriedPermutationCount());
+    }
+
     @Test
     public void testPackageSources() throws Exception {
         Method m = ResolverImpl.class.getDeclaredMethod("getPackageSources",
@@ -872,6 +1017,39 @@ public class ResolverTest
         return null;
     }
 
+    private static void populateScenario18(
+        ResourceImpl a, Map<Requirement, List<Capability>> candMap,
+        List<Requirement> aReqs, List<Resource> bs)
+    {
+        // A can only use the C2 exporters, but the B exporters prefer C1
+        // and the alternative BX exporters cannot use anything else, so it
+        // takes several permutations to find a consistent one.
+        for (int i = 0; i < 4; i++)
+        {
+            ResourceImpl c1 = new ResourceImpl("C1_" + i);
+            Capability c1_pkgCap = addCap(c1, PackageNamespace.PACKAGE_NAMESPACE, "org.foo.c" + i);
+            ResourceImpl c2 = new ResourceImpl("C2_" + i);
+            Capability c2_pkgCap = addCap(c2, PackageNamespace.PACKAGE_NAMESPACE, "org.foo.c" + i);
+
+            ResourceImpl b = new ResourceImpl("B_" + i);
+            Capability b_pkgCap = addCap(b, PackageNamespace.PACKAGE_NAMESPACE, "org.foo.b" + i, "org.foo.c" + i);
+            Requirement b_pkgReq = addReq(b, PackageNamespace.PACKAGE_NAMESPACE, "org.foo.c" + i);
+            candMap.put(b_pkgReq, Arrays.asList(c1_pkgCap, c2_pkgCap));
+            bs.add(b);
+
+            ResourceImpl bx = new ResourceImpl("BX_" + i);
+            Capability bx_pkgCap = addCap(bx, PackageNamespace.PACKAGE_NAMESPACE, "org.foo.b" + i, "org.foo.c" + i);
+            Requirement bx_pkgReq = addReq(bx, PackageNamespace.PACKAGE_NAMESPACE, "org.foo.c" + i);
+            candMap.put(bx_pkgReq, Collections.singletonList(c1_pkgCap));
+
+            Requirement a_pkgReq1 = addReq(a, PackageNamespace.PACKAGE_NAMESPACE, "org.foo.b" + i);
+            Requirement a_pkgReq2 = addReq(a, PackageNamespace.PACKAGE_NAMESPACE, "org.foo.c" + i);
+            candMap.put(a_pkgReq1, Arrays.asList(bx_pkgCap, b_pkgCap));
+            candMap.put(a_pkgReq2, Collections.singletonList(c2_pkgCap));
+            aReqs.add(a_pkgReq1);
+        }
+    }
+
     private static List<Resource> populateScenario1(Map<Resource, Wiring> wirings, Map<Requirement, List<Capability>> candMap)
     {
         ResourceImpl exporter = new ResourceImpl("A");
@@ -1223,6 +1401,41 @@ public class ResolverTest
         return Collections.<Resource>singletonList(b1);
     }
 
+    private static Map<Resource, Wiring> populateScenario17(
+        ResourceImpl b, Requirement b_pkgReq, ResourceImpl c1, Capability c1_pkgCap,
+        ResourceImpl c2, Capability c2_pkgCap, Capability b_provider)
+    {
+        Map<Resource, List<Wire>> wires = new HashMap<Resource, List<Wire>>();
+        wires.put(b, new ArrayList<Wire>());
+        wires.put(c1, new ArrayList<Wire>());
+        wires.put(c2, new ArrayList<Wire>());
+        wires.get(b).add(new SimpleWire(b_pkgReq, b_provider));
+
+        Map<Resource, List<Wire>> invertedWires = new HashMap<Resource, List<Wire>>();
+        invertedWires.put(b, new ArrayList<Wire>());
+        invertedWires.put(c1, new ArrayList<Wire>());
+        invertedWires.put(c2, new ArrayList<Wire>());
+        invertedWires.get(b_provider.getResource()).add(new SimpleWire(b_pkgReq, b_provider));
+
+        Map<Resource, Wiring> wirings = new HashMap<Resource, Wiring>();
+        wirings.put(b, new SimpleWiring(b, b.getCapabilities(null), wires, invertedWires));
+        wirings.put(c1, new SimpleWiring(c1, Collections.singletonList(c1_pkgCap), wires, invertedWires));
+        wirings.put(c2, new SimpleWiring(c2, Collections.singletonList(c2_pkgCap), wires, invertedWires));
+        return wirings;
+    }
+
+    private static Resource getProvider(List<Wire> wires, Requirement req)
+    {
+        for (Wire wire : wires)
+        {
+            if (wire.getRequirement().equals(req))
+            {
+                return wire.getProvider();
+            }
+        }
+        return null;
+    }
+
     private static Capability addCap(ResourceImpl res, String namespace, String value)
     {
         return addCap(res, namespace, value, null);
@@ -79,6 +79,12 @@ public class Activator extends AbstractExtender implements SimpleLogger
     //  thread acting upon configurations
     private ComponentActorThread m_componentActor;
 
+    // enables the components of started bundles concurrently, if configured
+    private ComponentActivationScheduler m_activationScheduler;
+
+    // warms up the delayed components of started bundles, if configured
+    private ComponentWarmUp m_warmUp;
+
     private ServiceRegistration<?> m_runtime_reg;
 
     private ScrCommand m_scrCommand;
@@ -169,6 +175,16 @@ public class Activator extends AbstractExtender implements SimpleLogger
         t.setDaemon( true );
         t.start();
 
+        if ( m_configuration.activationParallelism() > 1 )
+        {
+            m_activationScheduler = new ComponentActivationScheduler( m_configuration.activationParallelism() );
+        }
+
+        if ( m_configuration.warmUpDelay() >= 0 )
+        {
+            m_warmUp = new ComponentWarmUp( m_configuration.warmUpDelay(), m_configuration.warmUpComponents() );
+        }
+
         super.doStart();
 
         m_scrCommand = ScrCommand.register( m_context, runtime, m_configuration );
@@ -217,6 +233,18 @@ public class Activator extends AbstractExtender implements SimpleLogger
             m_componentActor = null;
         }
 
+        if ( m_activationScheduler != null )
+        {
+            m_activationScheduler.shutdown();
+            m_activationScheduler = null;
+        }
+
+        if ( m_warmUp != null )
+        {
+            m_warmUp.shutdown();
+            m_warmUp = null;
+        }
+
         // close the LogService tracker now
         if ( m_logService != null )
         {
@@ -386,7 +414,7 @@ public class Activator extends AbstractExtender implements SimpleLogger
         try
         {
             BundleComponentActivator ga = new BundleComponentActivator( this, m_componentRegistry, m_componentActor,
-                context, m_configuration );
+                m_activationScheduler, m_warmUp, context, m_configuration );
             ga.initialEnable();
 
             // replace bundle activator in the map
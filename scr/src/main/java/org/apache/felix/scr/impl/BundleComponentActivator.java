@@ -19,6 +19,7 @@
 package org.apache.felix.scr.impl;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -37,6 +38,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.felix.scr.impl.helper.ConfigAdminTracker;
 import org.apache.felix.scr.impl.helper.SimpleLogger;
+import org.apache.felix.scr.impl.inject.MemberCache;
 import org.apache.felix.scr.impl.manager.AbstractComponentManager;
 import org.apache.felix.scr.impl.manager.ComponentActivator;
 import org.apache.felix.scr.impl.manager.ComponentHolder;
@@ -46,15 +48,20 @@ import org.apache.felix.scr.impl.manager.ExtendedServiceListener;
 import org.apache.felix.scr.impl.manager.RegionConfigurationSupport;
 import org.apache.felix.scr.impl.manager.ScrConfiguration;
 import org.apache.felix.scr.impl.metadata.ComponentMetadata;
+import org.apache.felix.scr.impl.metadata.ComponentMetadataCache;
 import org.apache.felix.scr.impl.parser.KXml2SAXParser;
 import org.apache.felix.scr.impl.xml.XmlHandler;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Filter;
+import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceEvent;
 import org.osgi.framework.ServiceListener;
 import org.osgi.framework.ServiceReference;
+import org.osgi.framework.namespace.HostNamespace;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
 import org.osgi.service.cm.ConfigurationAdmin;
 import org.osgi.service.component.ComponentException;
 import org.osgi.service.log.LogService;
@@ -68,6 +75,9 @@ import org.osgi.util.tracker.ServiceTracker;
 public class BundleComponentActivator implements ComponentActivator
 {
 
+    // name of the file in the bundle data area holding the cached metadata
+    static final String METADATA_CACHE_FILE = "org.apache.felix.scr.metadata";
+
     // global component registration
     private final ComponentRegistry m_componentRegistry;
 
@@ -86,6 +96,15 @@ public class BundleComponentActivator implements ComponentActivator
     // thread acting upon configurations
     private final ComponentActorThread m_componentActor;
 
+    // enables the components concurrently if not null
+    private final ComponentActivationScheduler m_activationScheduler;
+
+    // warms up the delayed components in the background if not null
+    private final ComponentWarmUp m_warmUp;
+
+    // the methods and fields resolved for the component classes of the bundle
+    private final MemberCache m_memberCache = new MemberCache();
+
     // true as long as the dispose method is not called
     private final AtomicBoolean m_active = new AtomicBoolean( true );
     private final CountDownLatch m_closeLatch = new CountDownLatch( 1 );
@@ -237,16 +256,22 @@ public class BundleComponentActivator implements ComponentActivator
      * @param componentRegistry The <code>ComponentRegistry</code> used to
      *      register components with to ensure uniqueness of component names
      *      and to ensure configuration updates.
+     * @param activationScheduler The scheduler enabling the components
+     *      concurrently or <code>null</code> to enable them one after the other.
+     * @param warmUp The warm-up of the delayed components or <code>null</code>
+     *      to leave them alone until their first use.
      * @param   context  The bundle context owning the components
      *
      * @throws ComponentException if any error occurrs initializing this class
      */
-    public BundleComponentActivator(SimpleLogger logger, ComponentRegistry componentRegistry, ComponentActorThread componentActor, BundleContext context, ScrConfiguration configuration) throws ComponentException
+    public BundleComponentActivator(SimpleLogger logger, ComponentRegistry componentRegistry, ComponentActorThread componentActor, ComponentActivationScheduler activationScheduler, ComponentWarmUp warmUp, BundleContext context, ScrConfiguration configuration) throws ComponentException
     {
         // keep the parameters for later
         m_logger = logger;
         m_componentRegistry = componentRegistry;
         m_componentActor = componentActor;
+        m_activationScheduler = activationScheduler;
+        m_warmUp = warmUp;
         m_context = context;
         m_bundle = context.getBundle();
 
@@ -292,6 +317,27 @@ public class BundleComponentActivator implements ComponentActivator
         log( LogService.LOG_DEBUG, "BundleComponentActivator : Bundle [{0}] descriptor locations {1}",
             new Object[] { m_bundle.getBundleId(), descriptorLocations }, null, null, null );
 
+        // reuse the metadata validated on an earlier start unless the bundle changed since
+        final File cacheFile = getConfiguration().cacheMetadata() ? m_context.getDataFile( METADATA_CACHE_FILE )
+            : null;
+        final String stamp = ( cacheFile != null ) ? getMetadataStamp( descriptorLocations ) : null;
+        if ( cacheFile != null )
+        {
+            final List<ComponentMetadata> cached = readMetadataCache( cacheFile, stamp );
+            if ( cached != null )
+            {
+                for ( ComponentMetadata metadata : cached )
+                {
+                    registerComponent( metadata );
+                }
+                return;
+            }
+        }
+
+        // the metadata is only cached if all descriptors could be loaded without errors
+        final List<ComponentMetadata> validated = new ArrayList<ComponentMetadata>();
+        boolean complete = true;
+
         // 112.4.1: The value of the the header is a comma separated list of XML entries within the Bundle
         StringTokenizer st = new StringTokenizer( descriptorLocations, ", " );
 
@@ -306,14 +352,83 @@ public class BundleComponentActivator implements ComponentActivator
                 // fragments, SCR must log an error message with the Log Service, if present, and continue.
                 log( LogService.LOG_ERROR, "Component descriptor entry ''{0}'' not found",
                     new Object[] { descriptorLocation }, null, null, null );
+                complete = false;
                 continue;
             }
 
             // load from the descriptors
             for ( URL descriptorURL : descriptorURLs )
             {
-                loadDescriptor( descriptorURL );
+                complete &= loadDescriptor( descriptorURL, validated );
+            }
+        }
+
+        if ( cacheFile != null && complete )
+        {
+            writeMetadataCache( cacheFile, stamp, validated );
+        }
+    }
+
+    /**
+     * Returns the stamp identifying the cached metadata of the bundle. It
+     * changes whenever the bundle, one of its fragments or the SCR bundle is
+     * updated or the configuration used to parse the descriptors changes.
+     */
+    private String getMetadataStamp(String descriptorLocations)
+    {
+        final StringBuilder stamp = new StringBuilder( descriptorLocations );
+        stamp.append( '|' ).append( m_bundle.getLastModified() );
+        final BundleWiring wiring = m_bundle.adapt( BundleWiring.class );
+        if ( wiring != null )
+        {
+            for ( BundleWire wire : wiring.getProvidedWires( HostNamespace.HOST_NAMESPACE ) )
+            {
+                final Bundle fragment = wire.getRequirerWiring().getBundle();
+                stamp.append( '|' ).append( fragment.getBundleId() ).append( ':' ).append( fragment.getLastModified() );
+            }
+        }
+        stamp.append( '|' ).append( getConfiguration().isFactoryEnabled() );
+        stamp.append( '|' ).append( getConfiguration().keepInstances() );
+        final Bundle scrBundle = FrameworkUtil.getBundle( getClass() );
+        if ( scrBundle != null )
+        {
+            stamp.append( '|' ).append( scrBundle.getVersion() ).append( ':' ).append( scrBundle.getLastModified() );
+        }
+        return stamp.toString();
+    }
+
+    private List<ComponentMetadata> readMetadataCache(final File cacheFile, final String stamp)
+    {
+        try
+        {
+            final List<ComponentMetadata> cached = ComponentMetadataCache.read( cacheFile, stamp );
+            if ( cached != null )
+            {
+                log( LogService.LOG_DEBUG, "BundleComponentActivator : Bundle [{0}] loaded {1} cached components",
+                    new Object[] { m_bundle.getBundleId(), cached.size() }, null, null, null );
             }
+            return cached;
+        }
+        catch ( Exception ex )
+        {
+            log( LogService.LOG_WARNING, "Cannot read cached component metadata ''{0}''",
+                new Object[] { cacheFile }, null, null, ex );
+            cacheFile.delete();
+            return null;
+        }
+    }
+
+    private void writeMetadataCache(final File cacheFile, final String stamp, final List<ComponentMetadata> metadata)
+    {
+        try
+        {
+            ComponentMetadataCache.write( cacheFile, stamp, metadata );
+        }
+        catch ( Exception ex )
+        {
+            log( LogService.LOG_WARNING, "Cannot write cached component metadata ''{0}''",
+                new Object[] { cacheFile }, null, null, ex );
+            cacheFile.delete();
         }
     }
 
@@ -324,6 +439,7 @@ public class BundleComponentActivator implements ComponentActivator
     void initialEnable()
     {
         //enable all the enabled components
+        List<ComponentHolder<?>> enabled = new ArrayList<ComponentHolder<?>>();
         for ( ComponentHolder<?> componentHolder : m_holders )
         {
             log( LogService.LOG_DEBUG, "BundleComponentActivator : Bundle [{0}] May enable component holder {1}",
@@ -332,33 +448,7 @@ public class BundleComponentActivator implements ComponentActivator
 
             if ( componentHolder.getComponentMetadata().isEnabled() )
             {
-                log( LogService.LOG_DEBUG, "BundleComponentActivator : Bundle [{0}] Enabling component holder {1}",
-                    new Object[] { m_bundle.getBundleId(), componentHolder.getComponentMetadata().getName() }, null,
-                    null, null );
-
-                try
-                {
-                    componentHolder.enableComponents( false );
-                }
-                catch ( Throwable t )
-                {
-                    // caught on unhandled RuntimeException or Error
-                    // (e.g. ClassDefNotFoundError)
-
-                    // make sure the component is properly disabled, just in case
-                    try
-                    {
-                        componentHolder.disableComponents( false );
-                    }
-                    catch ( Throwable ignore )
-                    {
-                    }
-
-                    log( LogService.LOG_ERROR,
-                        "BundleComponentActivator : Bundle [{0}] Unexpected failure enabling component holder {1}",
-                        new Object[] { m_bundle.getBundleId(), componentHolder.getComponentMetadata().getName() }, null,
-                        null, t );
-                }
+                enabled.add( componentHolder );
             }
             else
             {
@@ -368,6 +458,83 @@ public class BundleComponentActivator implements ComponentActivator
                     null, null );
             }
         }
+
+        if ( m_activationScheduler != null && enabled.size() > 1 && m_activationScheduler.isAvailable() )
+        {
+            m_activationScheduler.enable( this, enabled );
+        }
+        else
+        {
+            for ( ComponentHolder<?> componentHolder : enabled )
+            {
+                enableComponentHolder( componentHolder );
+            }
+        }
+
+        if ( m_warmUp != null )
+        {
+            m_warmUp.schedule( this, enabled );
+        }
+    }
+
+    /**
+     * Enables the components of the given holder, making sure they are
+     * disabled again if this fails.
+     */
+    void enableComponentHolder(final ComponentHolder<?> componentHolder)
+    {
+        log( LogService.LOG_DEBUG, "BundleComponentActivator : Bundle [{0}] Enabling component holder {1}",
+            new Object[] { m_bundle.getBundleId(), componentHolder.getComponentMetadata().getName() }, null,
+            null, null );
+
+        try
+        {
+            componentHolder.enableComponents( false );
+        }
+        catch ( Throwable t )
+        {
+            // caught on unhandled RuntimeException or Error
+            // (e.g. ClassDefNotFoundError)
+
+            // make sure the component is properly disabled, just in case
+            try
+            {
+                componentHolder.disableComponents( false );
+            }
+            catch ( Throwable ignore )
+            {
+            }
+
+            log( LogService.LOG_ERROR,
+                "BundleComponentActivator : Bundle [{0}] Unexpected failure enabling component holder {1}",
+                new Object[] { m_bundle.getBundleId(), componentHolder.getComponentMetadata().getName() }, null,
+                null, t );
+        }
+    }
+
+    /**
+     * Resolves the methods and fields of the components of the given holder
+     * ahead of their first activation, optionally also creating the instance
+     * of a delayed component.
+     */
+    void warmUpComponentHolder(final ComponentHolder<?> componentHolder, final boolean createInstance)
+    {
+        log( LogService.LOG_DEBUG, "BundleComponentActivator : Bundle [{0}] Warming up component holder {1}",
+            new Object[] { m_bundle.getBundleId(), componentHolder.getComponentMetadata().getName() }, null,
+            null, null );
+
+        try
+        {
+            componentHolder.warmUp( createInstance );
+        }
+        catch ( Throwable t )
+        {
+            // the component is activated on its first use as usual
+            log( LogService.LOG_WARNING,
+                "BundleComponentActivator : Bundle [{0}] Unexpected failure warming up component holder {1}",
+                new Object[] { m_bundle.getBundleId(), componentHolder.getComponentMetadata().getName() }, null,
+                null, t );
+        }
     }
 
     /**
@@ -415,7 +582,14 @@ public class BundleComponentActivator implements ComponentActivator
         return urls.toArray( new URL[urls.size()] );
     }
 
-    private void loadDescriptor(final URL descriptorURL)
+    /**
+     * Loads the components of the given descriptor, adding the validated
+     * metadata of each registered component to the given list.
+     *
+     * @return <code>true</code> if all components of the descriptor have
+     *      been registered.
+     */
+    private boolean loadDescriptor(final URL descriptorURL, final List<ComponentMetadata> validated)
     {
         // simple path for log messages
         final String descriptorLocation = descriptorURL.getPath();
@@ -436,46 +610,20 @@ public class BundleComponentActivator implements ComponentActivator
 
             // 112.4.2 Component descriptors may contain a single, root component element
             // or one or more component elements embedded in a larger document
+            boolean complete = true;
             for ( Object o : handler.getComponentMetadataList() )
             {
                 ComponentMetadata metadata = (ComponentMetadata) o;
-                ComponentRegistryKey key = null;
-                try
+                if ( registerComponent( metadata ) )
                 {
-                    // check and reserve the component name (if not null)
-                    if ( metadata.getName() != null )
-                    {
-                        key = m_componentRegistry.checkComponentName( m_bundle, metadata.getName() );
-                    }
-
-                    // validate the component metadata
-                    metadata.validate( this );
-
-                    // Request creation of the component manager
-                    ComponentHolder<?> holder = m_componentRegistry.createComponentHolder( this, metadata );
-
-                    // register the component after validation
-                    m_componentRegistry.registerComponentHolder( key, holder );
-                    m_holders.add( holder );
-
-                    log( LogService.LOG_DEBUG,
-                        "BundleComponentActivator : Bundle [{0}] ComponentHolder created for {1}",
-                        new Object[] { m_bundle.getBundleId(), metadata.getName() }, null, null, null );
-
+                    validated.add( metadata );
                 }
-                catch ( Throwable t )
+                else
                 {
-                    // There is a problem with this particular component, we'll log the error
-                    // and proceed to the next one
-                    log( LogService.LOG_ERROR, "Cannot register Component", metadata, null, t );
-
-                    // make sure the name is not reserved any more
-                    if ( key != null )
-                    {
-                        m_componentRegistry.unregisterComponentHolder( key );
-                    }
+                    complete = false;
                 }
             }
+            return complete;
         }
         catch ( IOException ex )
         {
@@ -503,6 +651,53 @@ public class BundleComponentActivator implements ComponentActivator
                 }
             }
         }
+        return false;
+    }
+
+    /**
+     * Validates the given component metadata and registers a holder for it.
+     *
+     * @return <code>true</code> if the component has been registered.
+     */
+    private boolean registerComponent(final ComponentMetadata metadata)
+    {
+        ComponentRegistryKey key = null;
+        try
+        {
+            // check and reserve the component name (if not null)
+            if ( metadata.getName() != null )
+            {
+                key = m_componentRegistry.checkComponentName( m_bundle, metadata.getName() );
+            }
+
+            // validate the component metadata
+            metadata.validate( this );
+
+            // Request creation of the component manager
+            ComponentHolder<?> holder = m_componentRegistry.createComponentHolder( this, metadata );
+
+            // register the component after validation
+            m_componentRegistry.registerComponentHolder( key, holder );
+            m_holders.add( holder );
+
+            log( LogService.LOG_DEBUG,
+                "BundleComponentActivator : Bundle [{0}] ComponentHolder created for {1}",
+                new Object[] { m_bundle.getBundleId(), metadata.getName() }, null, null, null );
+            return true;
+        }
+        catch ( Throwable t )
+        {
+            // There is a problem with this particular component, we'll log the error
+            // and proceed to the next one
+            log( LogService.LOG_ERROR, "Cannot register Component", metadata, null, t );
+
+            // make sure the name is not reserved any more
+            if ( key != null )
+            {
+                m_componentRegistry.unregisterComponentHolder( key );
+            }
+            return false;
+        }
     }
 
     /**
@@ -538,6 +733,9 @@ public class BundleComponentActivator implements ComponentActivator
                 configAdminTracker.dispose();
             }
 
+            // do not keep the classes of the bundle from being unloaded
+            m_memberCache.clear();
+
             log( LogService.LOG_DEBUG, "BundleComponentActivator : Bundle [{0}] STOPPED",
                 new Object[] { m_bundle.getBundleId() }, null, null, null );
 
@@ -571,6 +769,17 @@ public class BundleComponentActivator implements ComponentActivator
         return m_active.get();
     }
 
+
+    /**
+     * Returns the cache of the methods and fields resolved for the component
+     * classes of the bundle, which is cleared when this instance is
+     * {@link #dispose(int) disposed} of.
+     */
+    public MemberCache getMemberCache()
+    {
+        return m_memberCache;
+    }
+
     /**
     * Returns the BundleContext
     *
@@ -0,0 +1,307 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl;
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.felix.scr.impl.manager.ComponentHolder;
+import org.apache.felix.scr.impl.metadata.ComponentMetadata;
+import org.apache.felix.scr.impl.metadata.ReferenceMetadata;
+import org.apache.felix.scr.impl.metadata.ServiceMetadata;
+
+
+/**
+ * The <code>ComponentActivationScheduler</code> enables the components of a
+ * bundle concurrently on a bounded pool of threads. A component referencing
+ * a service provided by another component of the same bundle is only enabled
+ * once that component has been enabled, so that it finds the service instead
+ * of being activated and then bound again. Components in or behind a cycle
+ * of references are only ordered after the components outside the cycle.
+ * <p>
+ * Each component holder is enabled by exactly one thread; concurrent state
+ * changes of a component are guarded by its component manager as they are
+ * for service events arriving on other threads.
+ */
+class ComponentActivationScheduler
+{
+
+    private final ThreadPoolExecutor m_executor;
+
+    // marks the threads of the pool to not schedule nested activations on it
+    private final ThreadLocal<Boolean> m_poolThread = new ThreadLocal<Boolean>();
+
+
+    ComponentActivationScheduler( final int parallelism )
+    {
+        m_executor = new ThreadPoolExecutor( parallelism, parallelism, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+            {
+                private final AtomicInteger m_count = new AtomicInteger();
+
+
+                public Thread newThread( final Runnable r )
+                {
+                    Thread t = new Thread( new Runnable()
+                    {
+                        public void run()
+                        {
+                            m_poolThread.set( Boolean.TRUE );
+                            r.run();
+                        }
+                    }, "SCR Component Activator " + m_count.incrementAndGet() );
+                    t.setDaemon( true );
+                    return t;
+                }
+            } );
+        m_executor.allowCoreThreadTimeOut( true );
+    }
+
+
+    /**
+     * Returns whether the components can be enabled concurrently by this
+     * scheduler. This is not the case on the threads of the pool itself,
+     * such as when a component activation starts another bundle, since
+     * waiting for the pool there could exhaust it.
+     */
+    boolean isAvailable()
+    {
+        return m_poolThread.get() == null && !m_executor.isShutdown();
+    }
+
+
+    /**
+     * Enables the given component holders by calling
+     * {@link BundleComponentActivator#enableComponentHolder(ComponentHolder)}
+     * and returns once all of them are enabled.
+     */
+    void enable( final BundleComponentActivator activator, final List<ComponentHolder<?>> holders )
+    {
+        final List<Node> nodes = buildGraph( holders );
+        final CountDownLatch done = new CountDownLatch( nodes.size() );
+        for ( Node node : nodes )
+        {
+            if ( node.m_pending.get() == 0 )
+            {
+                submit( activator, node, done );
+            }
+        }
+
+        boolean interrupted = false;
+        while ( true )
+        {
+            try
+            {
+                done.await();
+                break;
+            }
+            catch ( InterruptedException e )
+            {
+                interrupted = true;
+            }
+        }
+        if ( interrupted )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    void shutdown()
+    {
+        m_executor.shutdown();
+    }
+
+
+    private void submit( final BundleComponentActivator activator, final Node node, final CountDownLatch done )
+    {
+        final Runnable task = new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    activator.enableComponentHolder( node.m_holder );
+                }
+                finally
+                {
+                    for ( Node dependent : node.m_dependents )
+                    {
+                        if ( dependent.m_pending.decrementAndGet() == 0 )
+                        {
+                            submit( activator, dependent, done );
+                        }
+                    }
+                    done.countDown();
+                }
+            }
+
+
+            @Override
+            public String toString()
+            {
+                return "Enable: " + node.m_holder.getComponentMetadata().getName();
+            }
+        };
+
+        try
+        {
+            m_executor.execute( task );
+        }
+        catch ( RejectedExecutionException ree )
+        {
+            // shut down concurrently, enable on this thread
+            task.run();
+        }
+    }
+
+
+    /**
+     * Links each component to the components of the given list providing a
+     * service it references, ignoring references in or behind a cycle.
+     */
+    static List<Node> buildGraph( final List<ComponentHolder<?>> holders )
+    {
+        final List<Node> nodes = new ArrayList<Node>( holders.size() );
+        final Map<String, List<Node>> providers = new HashMap<String, List<Node>>();
+        for ( ComponentHolder<?> holder : holders )
+        {
+            final Node node = new Node( holder );
+            nodes.add( node );
+            final ServiceMetadata service = holder.getComponentMetadata().getServiceMetadata();
+            if ( service != null )
+            {
+                for ( String provide : service.getProvides() )
+                {
+                    List<Node> list = providers.get( provide );
+                    if ( list == null )
+                    {
+                        list = new ArrayList<Node>( 1 );
+                        providers.put( provide, list );
+                    }
+                    list.add( node );
+                }
+            }
+        }
+
+        for ( Node node : nodes )
+        {
+            final ComponentMetadata metadata = node.m_holder.getComponentMetadata();
+            for ( ReferenceMetadata reference : metadata.getDependencies() )
+            {
+                final List<Node> list = providers.get( reference.getInterface() );
+                if ( list != null )
+                {
+                    for ( Node provider : list )
+                    {
+                        if ( provider != node && !node.m_providers.contains( provider ) )
+                        {
+                            node.m_providers.add( provider );
+                        }
+                    }
+                }
+            }
+        }
+
+        // find the nodes that can be ordered, the others are in or behind a cycle
+        final Map<Node, Integer> pending = new HashMap<Node, Integer>();
+        final LinkedList<Node> ready = new LinkedList<Node>();
+        final Map<Node, List<Node>> dependents = new HashMap<Node, List<Node>>();
+        for ( Node node : nodes )
+        {
+            pending.put( node, node.m_providers.size() );
+            if ( node.m_providers.isEmpty() )
+            {
+                ready.add( node );
+            }
+            for ( Node provider : node.m_providers )
+            {
+                List<Node> list = dependents.get( provider );
+                if ( list == null )
+                {
+                    list = new ArrayList<Node>();
+                    dependents.put( provider, list );
+                }
+                list.add( node );
+            }
+        }
+        while ( !ready.isEmpty() )
+        {
+            final Node node = ready.removeFirst();
+            node.m_ordered = true;
+            final List<Node> list = dependents.get( node );
+            if ( list != null )
+            {
+                for ( Node dependent : list )
+                {
+                    final int count = pending.get( dependent ) - 1;
+                    pending.put( dependent, count );
+                    if ( count == 0 )
+                    {
+                        ready.add( dependent );
+                    }
+                }
+            }
+        }
+
+        // keep the edges from ordered providers only, which leaves no cycles
+        for ( Node node : nodes )
+        {
+            for ( Node provider : node.m_providers )
+            {
+                if ( provider.m_ordered )
+                {
+                    provider.m_dependents.add( node );
+                    node.m_pending.incrementAndGet();
+                }
+            }
+        }
+        return nodes;
+    }
+
+    static class Node
+    {
+        final ComponentHolder<?> m_holder;
+
+        final List<Node> m_providers = new ArrayList<Node>();
+
+        final List<Node> m_dependents = new ArrayList<Node>();
+
+        final AtomicInteger m_pending = new AtomicInteger();
+
+        boolean m_ordered;
+
+
+        Node( final ComponentHolder<?> holder )
+        {
+            m_holder = holder;
+        }
+    }
+}
@@ -435,7 +435,7 @@ public class ComponentRegistry
         @Override
         protected ComponentMethods createComponentMethods()
         {
-            return new ComponentMethodsImpl();
+            return new ComponentMethodsImpl( getActivator().getMemberCache() );
         }
     }
 
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.apache.felix.scr.impl.manager.ComponentHolder;
+
+
+/**
+ * The <code>ComponentWarmUp</code> resolves the methods and fields of the
+ * delayed components of a bundle on a background thread once a configured
+ * delay has passed after the components were enabled, such that the first
+ * use of a component service does not have to load the component class and
+ * search its methods. The instances of the delayed components named in the
+ * configuration are created then already, too.
+ * <p>
+ * Immediate components are not warmed up since they are activated as soon as
+ * they are satisfied anyway.
+ */
+class ComponentWarmUp
+{
+
+    private final Timer m_timer = new Timer( "SCR Component Warm-up", true );
+
+    private final long m_delay;
+
+    private final Set<String> m_createInstances;
+
+
+    ComponentWarmUp( final long delay, final String[] createInstances )
+    {
+        m_delay = delay;
+        m_createInstances = new HashSet<String>( Arrays.asList( createInstances ) );
+    }
+
+
+    /**
+     * Schedules the warm-up of the delayed components of the given holders
+     * by calling
+     * {@link BundleComponentActivator#warmUpComponentHolder(ComponentHolder, boolean)}
+     * unless the activator has been disposed of in the meantime.
+     */
+    void schedule( final BundleComponentActivator activator, final List<ComponentHolder<?>> holders )
+    {
+        final List<ComponentHolder<?>> delayed = new ArrayList<ComponentHolder<?>>();
+        for ( ComponentHolder<?> holder : holders )
+        {
+            if ( !holder.getComponentMetadata().isImmediate() )
+            {
+                delayed.add( holder );
+            }
+        }
+        if ( delayed.isEmpty() )
+        {
+            return;
+        }
+
+        try
+        {
+            m_timer.schedule( new TimerTask()
+            {
+                @Override
+                public void run()
+                {
+                    for ( ComponentHolder<?> holder : delayed )
+                    {
+                        if ( !activator.isActive() )
+                        {
+                            return;
+                        }
+                        activator.warmUpComponentHolder( holder,
+                            m_createInstances.contains( holder.getComponentMetadata().getName() ) );
+                    }
+                }
+            }, m_delay );
+        }
+        catch ( IllegalStateException ise )
+        {
+            // cancelled concurrently, SCR is stopping
+        }
+    }
+
+
+    void shutdown()
+    {
+        m_timer.cancel();
+    }
+}
@@ -34,6 +34,7 @@ import java.util.regex.Pattern;
 
 import org.apache.felix.scr.impl.config.ScrConfigurationImpl;
 import org.apache.felix.scr.impl.manager.ScrConfiguration;
+import org.apache.felix.scr.impl.runtime.ServiceComponentRuntimeImpl;
 import org.apache.felix.scr.info.ScrInfo;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
@@ -461,6 +462,16 @@ public class ScrCommand implements ScrInfo
         out.println( cc.id );
         out.print("    State: ");
         out.println( toStateString(cc.state));
+        if ( scrService instanceof ServiceComponentRuntimeImpl )
+        {
+            final long latency = ( ( ServiceComponentRuntimeImpl ) scrService ).getFirstActivationLatency( cc );
+            if ( latency >= 0 )
+            {
+                out.print("    First activation: ");
+                out.print( latency );
+                out.println( " ms" );
+            }
+        }
         for ( SatisfiedReferenceDTO ref: cc.satisfiedReferences)
         {
             out.print( "    SatisfiedReference: ");
@@ -560,6 +571,14 @@ public class ScrCommand implements ScrInfo
         out.println(scrConfiguration.stopTimeout());
         out.print("Global extender: ");
         out.println(scrConfiguration.globalExtender());
+        out.print("Cache component metadata: ");
+        out.println(scrConfiguration.cacheMetadata());
+        out.print("Activation parallelism: ");
+        out.println(scrConfiguration.activationParallelism());
+        out.print("Warm-up delay milliseconds: ");
+        out.println(scrConfiguration.warmUpDelay());
+        out.print("Warm-up components: ");
+        out.println(Arrays.toString(scrConfiguration.warmUpComponents()));
         out.print("Info Service registered: ");
         out.println(scrConfiguration.infoAsService() ? "Supported" : "Unsupported");
         out.flush();
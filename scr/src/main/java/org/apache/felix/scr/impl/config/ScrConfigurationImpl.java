@@ -19,8 +19,10 @@
 package org.apache.felix.scr.impl.config;
 
 
+import java.util.ArrayList;
 import java.util.Dictionary;
 import java.util.Hashtable;
+import java.util.List;
 
 import org.apache.felix.scr.impl.Activator;
 import org.apache.felix.scr.impl.ScrCommand;
@@ -87,6 +89,14 @@ public class ScrConfigurationImpl implements ScrConfiguration
 
     private Boolean globalExtender;
 
+    private boolean cacheMetadata;
+
+    private int activationParallelism = 1;
+
+    private long warmUpDelay = -1;
+
+    private String[] warmUpComponents = new String[0];
+
     private BundleContext bundleContext;
 
     private ServiceRegistration<ManagedService> managedService;
@@ -155,6 +165,10 @@ public class ScrConfigurationImpl implements ScrConfiguration
                         lockTimeout = DEFAULT_LOCK_TIMEOUT_MILLISECONDS;
                         stopTimeout = DEFAULT_STOP_TIMEOUT_MILLISECONDS;
                         newGlobalExtender = false;
+                        cacheMetadata = false;
+                        activationParallelism = 1;
+                        warmUpDelay = -1;
+                        warmUpComponents = new String[0];
                     }
                     else
                     {
@@ -165,6 +179,10 @@ public class ScrConfigurationImpl implements ScrConfiguration
                         lockTimeout = getDefaultLockTimeout();
                         stopTimeout = getDefaultStopTimeout();
                         newGlobalExtender = getDefaultGlobalExtender();
+                        cacheMetadata = getDefaultCacheMetadata();
+                        activationParallelism = getActivationParallelism( bundleContext.getProperty( PROP_ACTIVATION_PARALLELISM ) );
+                        warmUpDelay = getWarmUpDelay( bundleContext.getProperty( PROP_WARMUP_DELAY ) );
+                        warmUpComponents = getWarmUpComponents( bundleContext.getProperty( PROP_WARMUP_COMPONENTS ) );
                     }
                 }
                 else
@@ -183,6 +201,10 @@ public class ScrConfigurationImpl implements ScrConfiguration
                 timeout = ( Long ) config.get( PROP_STOP_TIMEOUT );
                 stopTimeout = timeout == null? DEFAULT_STOP_TIMEOUT_MILLISECONDS: timeout;
                 newGlobalExtender = VALUE_TRUE.equalsIgnoreCase( String.valueOf( config.get( PROP_GLOBAL_EXTENDER) ) );
+                cacheMetadata = VALUE_TRUE.equalsIgnoreCase( String.valueOf( config.get( PROP_CACHE_METADATA ) ) );
+                activationParallelism = getActivationParallelism( config.get( PROP_ACTIVATION_PARALLELISM ) );
+                warmUpDelay = getWarmUpDelay( config.get( PROP_WARMUP_DELAY ) );
+                warmUpComponents = getWarmUpComponents( config.get( PROP_WARMUP_COMPONENTS ) );
             }
             if ( scrCommand != null )
             {
@@ -238,6 +260,26 @@ public class ScrConfigurationImpl implements ScrConfiguration
         return globalExtender;
     }
 
+    public boolean cacheMetadata()
+    {
+        return cacheMetadata;
+    }
+
+    public int activationParallelism()
+    {
+        return activationParallelism;
+    }
+
+    public long warmUpDelay()
+    {
+        return warmUpDelay;
+    }
+
+    public String[] warmUpComponents()
+    {
+        return warmUpComponents;
+    }
+
     private boolean getDefaultFactoryEnabled()
     {
         return VALUE_TRUE.equals( bundleContext.getProperty( PROP_FACTORY_ENABLED ) );
@@ -286,6 +328,78 @@ public class ScrConfigurationImpl implements ScrConfiguration
         return VALUE_TRUE.equalsIgnoreCase( bundleContext.getProperty( PROP_GLOBAL_EXTENDER) );
     }
 
+    private boolean getDefaultCacheMetadata()
+    {
+        return VALUE_TRUE.equalsIgnoreCase( bundleContext.getProperty( PROP_CACHE_METADATA ) );
+    }
+
+    private int getActivationParallelism( final Object value )
+    {
+        if ( value instanceof Number )
+        {
+            return Math.max( 1, ( ( Number ) value ).intValue() );
+        }
+        else if ( value != null )
+        {
+            try
+            {
+                return Math.max( 1, Integer.parseInt( value.toString() ) );
+            }
+            catch ( NumberFormatException nfe )
+            {
+                // use the default
+            }
+        }
+        return 1;
+    }
+
+    private long getWarmUpDelay( final Object value )
+    {
+        if ( value instanceof Number )
+        {
+            return ( ( Number ) value ).longValue();
+        }
+        else if ( value != null )
+        {
+            try
+            {
+                return Long.parseLong( value.toString() );
+            }
+            catch ( NumberFormatException nfe )
+            {
+                // use the default
+            }
+        }
+        return -1;
+    }
+
+    private String[] getWarmUpComponents( final Object value )
+    {
+        final List<String> names = new ArrayList<String>();
+        if ( value instanceof String[] )
+        {
+            for ( String name : ( String[] ) value )
+            {
+                if ( name != null && name.trim().length() > 0 )
+                {
+                    names.add( name.trim() );
+                }
+            }
+        }
+        else if ( value != null )
+        {
+            // comma separated list from the framework properties
+            for ( String name : value.toString().split( "," ) )
+            {
+                if ( name.trim().length() > 0 )
+                {
+                    names.add( name.trim() );
+                }
+            }
+        }
+        return names.toArray( new String[names.size()] );
+    }
+
     private int getLogLevel( final Object levelObject )
     {
         if ( levelObject != null )
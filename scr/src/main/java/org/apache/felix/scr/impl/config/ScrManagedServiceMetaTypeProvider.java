@@ -124,6 +124,43 @@ class ScrManagedServiceMetaTypeProvider extends ScrManagedService
                 "Whether to extend all bundles whether or not visible to this bundle.",
                 false ) );
 
+        adList.add( new AttributeDefinitionImpl(
+                ScrConfiguration.PROP_CACHE_METADATA,
+                "Cache Component Metadata",
+                "Whether to keep the validated component metadata of each bundle in the data area of the bundle "
+                    + "and reuse it until the bundle is updated, instead of parsing the component descriptors on "
+                    + "every start. The default is to always parse the component descriptors.",
+                this.getScrConfiguration().cacheMetadata() ) );
+
+        adList.add( new AttributeDefinitionImpl(
+                ScrConfiguration.PROP_ACTIVATION_PARALLELISM,
+                "Activation parallelism",
+                "Number of threads enabling the components of a started bundle concurrently, taking the references "
+                    + "between the components into account. The default of 1 enables the components one after the "
+                    + "other on the thread starting the bundle. Changes take effect when SCR is restarted.",
+                AttributeDefinition.INTEGER,
+                new String[] { String.valueOf(this.getScrConfiguration().activationParallelism())},
+                0, null, null) );
+
+        adList.add( new AttributeDefinitionImpl(
+                ScrConfiguration.PROP_WARMUP_DELAY,
+                "Warm-up delay milliseconds",
+                "How long after enabling the components of a bundle the methods of its delayed components are "
+                    + "resolved in the background, to take this off the first use of the components. A negative "
+                    + "value, which is the default, disables the warm-up. Changes take effect when SCR is restarted.",
+                AttributeDefinition.LONG,
+                new String[] { String.valueOf(this.getScrConfiguration().warmUpDelay())},
+                0, null, null) );
+
+        adList.add( new AttributeDefinitionImpl(
+                ScrConfiguration.PROP_WARMUP_COMPONENTS,
+                "Warm-up components",
+                "Names of the delayed components whose instance is already created by the warm-up if they are "
+                    + "satisfied and singleton scoped.",
+                AttributeDefinition.STRING,
+                this.getScrConfiguration().warmUpComponents(),
+                Integer.MAX_VALUE, null, null) );
+
         return new ObjectClassDefinition()
         {
 
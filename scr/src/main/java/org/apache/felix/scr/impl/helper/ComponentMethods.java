@@ -35,4 +35,11 @@ public interface ComponentMethods
 
     ReferenceMethods getBindMethods(String refName );
 
+    /**
+     * Resolves the lifecycle methods and the methods and fields of all
+     * references ahead of their first invocation. This method must only be
+     * called after {@link #initComponentMethods(ComponentMetadata, Class)}.
+     */
+    void resolve( SimpleLogger logger );
+
 }
@@ -40,4 +40,7 @@ public interface ReferenceMethods
 
     /** This is optional and might return {@code null} */
     InitReferenceMethod getInit();
+
+    /** Resolves the methods or fields ahead of their first invocation. */
+    void resolve( SimpleLogger logger );
 }
@@ -51,9 +51,10 @@ public class ActivateMethod extends BaseMethod<ActivatorParameter> implements Co
             final Class<?> componentClass,
             final DSVersion dsVersion,
             final boolean configurableServiceProperties,
-            boolean supportsInterfaces )
+            boolean supportsInterfaces,
+            final MemberCache memberCache )
     {
-        super( methodName, methodRequired, componentClass, dsVersion, configurableServiceProperties );
+        super( methodName, methodRequired, componentClass, dsVersion, configurableServiceProperties, memberCache );
         m_supportsInterfaces = supportsInterfaces;
     }
 
@@ -179,6 +180,13 @@ public class ActivateMethod extends BaseMethod<ActivatorParameter> implements Co
     }
 
 
+    @Override
+    protected String getCacheKey()
+    {
+        return super.getCacheKey() + "/" + m_supportsInterfaces;
+    }
+
+
     boolean isDeactivate()
     {
         return false;
@@ -45,6 +45,8 @@ public abstract class BaseMethod<P>
     private final String m_methodName;
     private final Class<?> m_componentClass;
 
+    private final MemberCache m_memberCache;
+
     private volatile Method m_method;
 
     private final boolean m_methodRequired;
@@ -52,18 +54,21 @@ public abstract class BaseMethod<P>
     private volatile State m_state;
 
     protected BaseMethod( final String methodName,
-            final Class<?> componentClass, final DSVersion dsVersion, final boolean configurableServiceProperties )
+            final Class<?> componentClass, final DSVersion dsVersion, final boolean configurableServiceProperties,
+            final MemberCache memberCache )
     {
-        this( methodName, methodName != null, componentClass, dsVersion, configurableServiceProperties );
+        this( methodName, methodName != null, componentClass, dsVersion, configurableServiceProperties, memberCache );
     }
 
 
     protected BaseMethod( final String methodName,
-            final boolean methodRequired, final Class<?> componentClass, final DSVersion dsVersion, final boolean configurableServiceProperties )
+            final boolean methodRequired, final Class<?> componentClass, final DSVersion dsVersion, final boolean configurableServiceProperties,
+            final MemberCache memberCache )
     {
         m_methodName = methodName;
         m_methodRequired = methodRequired;
         m_componentClass = componentClass;
+        m_memberCache = memberCache;
         this.dsVersion = dsVersion;
         this.configurableServiceProperties = configurableServiceProperties;
         if ( m_methodName == null )
@@ -137,6 +142,31 @@ public abstract class BaseMethod<P>
     }
 
 
+    /**
+     * Returns the method resolved earlier for the component class by another
+     * instance of this class with the same {@link #getCacheKey() key} or
+     * {@link #searchMethod(SimpleLogger) searches} the method and caches it if
+     * found.
+     */
+    private Method findMethod( SimpleLogger logger ) throws InvocationTargetException
+    {
+        final String key = getCacheKey();
+        final CachedMethod cached = ( CachedMethod ) m_memberCache.get( getComponentClass(), key );
+        if ( cached != null )
+        {
+            setResolvedState( cached.m_state );
+            return cached.m_method;
+        }
+
+        final Method method = searchMethod( logger );
+        if ( method != null )
+        {
+            m_memberCache.put( getComponentClass(), key, new CachedMethod( method, getResolvedState() ) );
+        }
+        return method;
+    }
+
+
     /**
      * Finds the method named in the {@link #m_methodName} field in the given
      * <code>targetClass</code>. If the target class has no acceptable method
@@ -149,7 +179,7 @@ public abstract class BaseMethod<P>
      *      trying to find the requested method.
      * @param logger
      */
-    private Method findMethod( SimpleLogger logger ) throws InvocationTargetException
+    private Method searchMethod( SimpleLogger logger ) throws InvocationTargetException
     {
         boolean acceptPrivate = getDSVersion().isDS11();
         boolean acceptPackage = getDSVersion().isDS11();
@@ -211,6 +241,37 @@ public abstract class BaseMethod<P>
             final boolean acceptPackage, SimpleLogger logger ) throws SuitableMethodNotAccessibleException, InvocationTargetException;
 
 
+    /**
+     * Returns the key of the method resolved by this instance in the cache
+     * of the component class. Implementations finding the method based on
+     * further properties must add them to the key.
+     */
+    protected String getCacheKey()
+    {
+        return getClass().getName() + "/" + getMethodName() + "/" + getDSVersion() + "/" + isDS12Felix();
+    }
+
+
+    /**
+     * Returns the state which implementations set while finding the method,
+     * to be cached along with the method. This implementation returns
+     * <code>null</code>.
+     */
+    protected Object getResolvedState()
+    {
+        return null;
+    }
+
+
+    /**
+     * Restores the state returned by {@link #getResolvedState()} when the
+     * method is found in the cache. This implementation does nothing.
+     */
+    protected void setResolvedState( Object state )
+    {
+    }
+
+
     private MethodResult invokeMethod(final Object componentInstance, final P rawParameter, SimpleLogger logger )
         throws InvocationTargetException
     {
@@ -218,13 +279,25 @@ public abstract class BaseMethod<P>
         {
             if ( componentInstance != null )
             {
-                final Object[] params = getParameters(m_method, rawParameter);
-                logger.log( LogService.LOG_DEBUG, "invoking {0}: {1}: parameters {2}", new Object[]
-                        { getMethodNamePrefix(), getMethodName(), Arrays.asList( params ) }, null );
-                Object result = m_method.invoke(componentInstance, params);
-                logger.log( LogService.LOG_DEBUG, "invoked {0}: {1}", new Object[]
-                    { getMethodNamePrefix(), getMethodName() }, null );
-                return new MethodResult((m_method.getReturnType() != Void.TYPE), (Map<String, Object>) result);
+                final Method method = m_method;
+                final Object[] params = getParameters(method, rawParameter);
+                final boolean debug = logger.isLogEnabled( LogService.LOG_DEBUG );
+                if ( debug )
+                {
+                    logger.log( LogService.LOG_DEBUG, "invoking {0}: {1}: parameters {2}", new Object[]
+                            { getMethodNamePrefix(), getMethodName(), Arrays.asList( params ) }, null );
+                }
+                Object result = method.invoke(componentInstance, params);
+                if ( debug )
+                {
+                    logger.log( LogService.LOG_DEBUG, "invoked {0}: {1}", new Object[]
+                        { getMethodNamePrefix(), getMethodName() }, null );
+                }
+                if ( method.getReturnType() == Void.TYPE )
+                {
+                    return MethodResult.VOID;
+                }
+                return new MethodResult(true, (Map<String, Object>) result);
             }
             else
             {
@@ -548,24 +621,34 @@ public abstract class BaseMethod<P>
         private static final State INSTANCE = new NotResolved();
 
 
-        private synchronized <P> void resolve( final BaseMethod<P> baseMethod, SimpleLogger logger )
+        private <P> void resolve( final BaseMethod<P> baseMethod, SimpleLogger logger )
         {
-            logger.log( LogService.LOG_DEBUG, "getting {0}: {1}", new Object[]
-                    {baseMethod.getMethodNamePrefix(), baseMethod.getMethodName()}, null );
-
-            // resolve the method
-            Method method = null;
-            try
-            {
-                method = baseMethod.findMethod( logger );
-            }
-            catch ( InvocationTargetException ex )
+            // lock the method only, methods of other components are resolved concurrently
+            synchronized ( baseMethod )
             {
-                logger.log( LogService.LOG_WARNING, "{0} cannot be found", new Object[]
-                        {baseMethod.getMethodName()}, ex.getTargetException() );
-            }
+                if ( baseMethod.getState() != this )
+                {
+                    // resolved by another thread
+                    return;
+                }
 
-            baseMethod.setMethod( method, logger );
+                logger.log( LogService.LOG_DEBUG, "getting {0}: {1}", new Object[]
+                        {baseMethod.getMethodNamePrefix(), baseMethod.getMethodName()}, null );
+
+                // resolve the method
+                Method method = null;
+                try
+                {
+                    method = baseMethod.findMethod( logger );
+                }
+                catch ( InvocationTargetException ex )
+                {
+                    logger.log( LogService.LOG_WARNING, "{0} cannot be found", new Object[]
+                            {baseMethod.getMethodName()}, ex.getTargetException() );
+                }
+
+                baseMethod.setMethod( method, logger );
+            }
         }
 
 
@@ -606,6 +689,20 @@ public abstract class BaseMethod<P>
         }
     }
 
+    private static class CachedMethod
+    {
+        final Method m_method;
+
+        final Object m_state;
+
+
+        CachedMethod( final Method method, final Object state )
+        {
+            m_method = method;
+            m_state = state;
+        }
+    }
+
     private static class Resolved implements State
     {
         private static final State INSTANCE = new Resolved();
@@ -57,9 +57,10 @@ implements org.apache.felix.scr.impl.helper.ReferenceMethod
 
 
     public BindMethod( final String methodName,
-            final Class<?> componentClass, final String referenceClassName, final DSVersion dsVersion, final boolean configurableServiceProperties )
+            final Class<?> componentClass, final String referenceClassName, final DSVersion dsVersion, final boolean configurableServiceProperties,
+            final MemberCache memberCache )
     {
-        super( methodName, componentClass, dsVersion, configurableServiceProperties );
+        super( methodName, componentClass, dsVersion, configurableServiceProperties, memberCache );
         m_referenceClassName = referenceClassName;
     }
 
@@ -639,6 +640,27 @@ implements org.apache.felix.scr.impl.helper.ReferenceMethod
             { ClassUtils.MAP_CLASS }, acceptPrivate, acceptPackage, logger );
     }
 
+    @Override
+    protected String getCacheKey()
+    {
+        return super.getCacheKey() + "/" + m_referenceClassName;
+    }
+
+
+    @Override
+    protected Object getResolvedState()
+    {
+        return m_paramTypes;
+    }
+
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void setResolvedState( Object state )
+    {
+        m_paramTypes = ( List<ParamType> ) state;
+    }
+
     public <S, T> boolean getServiceObject( ComponentContextImpl<S> key, RefPair<S, T> refPair, BundleContext context, SimpleLogger logger )
     {
         //??? this resolves which we need.... better way?
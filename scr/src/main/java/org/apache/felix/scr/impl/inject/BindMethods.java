@@ -24,6 +24,7 @@ package org.apache.felix.scr.impl.inject;
 import org.apache.felix.scr.impl.helper.InitReferenceMethod;
 import org.apache.felix.scr.impl.helper.ReferenceMethod;
 import org.apache.felix.scr.impl.helper.ReferenceMethods;
+import org.apache.felix.scr.impl.helper.SimpleLogger;
 import org.apache.felix.scr.impl.inject.BindMethod;
 import org.apache.felix.scr.impl.inject.UnbindMethod;
 import org.apache.felix.scr.impl.inject.UpdatedMethod;
@@ -35,30 +36,30 @@ import org.apache.felix.scr.impl.metadata.ReferenceMetadata;
  */
 public class BindMethods implements ReferenceMethods
 {
-    private final ReferenceMethod m_bind;
-    private final ReferenceMethod m_updated;
-    private final ReferenceMethod m_unbind;
+    private final BindMethod m_bind;
+    private final BindMethod m_updated;
+    private final BindMethod m_unbind;
 
     public BindMethods( ReferenceMetadata m_dependencyMetadata, Class<?> instanceClass,
-            final DSVersion dsVersion, final boolean configurableServiceProperties )
+            final DSVersion dsVersion, final boolean configurableServiceProperties, final MemberCache memberCache )
     {
         m_bind = new BindMethod(
                 m_dependencyMetadata.getBind(),
                 instanceClass,
                 m_dependencyMetadata.getInterface(),
-                dsVersion, configurableServiceProperties
+                dsVersion, configurableServiceProperties, memberCache
         );
         m_updated = new UpdatedMethod(
                 m_dependencyMetadata.getUpdated(),
                 instanceClass,
                 m_dependencyMetadata.getInterface(),
-                dsVersion, configurableServiceProperties
+                dsVersion, configurableServiceProperties, memberCache
         );
         m_unbind = new UnbindMethod(
                 m_dependencyMetadata.getUnbind(),
                 instanceClass,
                 m_dependencyMetadata.getInterface(),
-                dsVersion, configurableServiceProperties
+                dsVersion, configurableServiceProperties, memberCache
         );
     }
 
@@ -81,4 +82,11 @@ public class BindMethods implements ReferenceMethods
     {
         return null;
     }
+
+    public void resolve( SimpleLogger logger )
+    {
+        m_bind.methodExists( logger );
+        m_updated.methodExists( logger );
+        m_unbind.methodExists( logger );
+    }
 }
@@ -26,6 +26,7 @@ import java.util.Map;
 import org.apache.felix.scr.impl.helper.ComponentMethod;
 import org.apache.felix.scr.impl.helper.ComponentMethods;
 import org.apache.felix.scr.impl.helper.ReferenceMethods;
+import org.apache.felix.scr.impl.helper.SimpleLogger;
 import org.apache.felix.scr.impl.inject.ActivateMethod;
 import org.apache.felix.scr.impl.inject.BindMethods;
 import org.apache.felix.scr.impl.inject.DeactivateMethod;
@@ -47,6 +48,18 @@ public class ComponentMethodsImpl implements ComponentMethods
 
     private final Map<String, ReferenceMethods> bindMethodMap = new HashMap<String, ReferenceMethods>();
 
+    private final MemberCache m_memberCache;
+
+    public ComponentMethodsImpl()
+    {
+        this( new MemberCache() );
+    }
+
+    public ComponentMethodsImpl( MemberCache memberCache )
+    {
+        m_memberCache = memberCache;
+    }
+
     public synchronized void initComponentMethods( ComponentMetadata componentMetadata, Class<?> implementationObjectClass )
     {
         if (m_activateMethod != null)
@@ -57,11 +70,11 @@ public class ComponentMethodsImpl implements ComponentMethods
         boolean configurableServiceProperties = componentMetadata.isConfigurableServiceProperties();
         boolean supportsInterfaces = componentMetadata.isConfigureWithInterfaces();
         m_activateMethod = new ActivateMethod( componentMetadata.getActivate(), componentMetadata
-                .isActivateDeclared(), implementationObjectClass, dsVersion, configurableServiceProperties, supportsInterfaces );
+                .isActivateDeclared(), implementationObjectClass, dsVersion, configurableServiceProperties, supportsInterfaces, m_memberCache );
         m_deactivateMethod = new DeactivateMethod( componentMetadata.getDeactivate(),
-                componentMetadata.isDeactivateDeclared(), implementationObjectClass, dsVersion, configurableServiceProperties, supportsInterfaces );
+                componentMetadata.isDeactivateDeclared(), implementationObjectClass, dsVersion, configurableServiceProperties, supportsInterfaces, m_memberCache );
 
-        m_modifiedMethod = new ModifiedMethod( componentMetadata.getModified(), implementationObjectClass, dsVersion, configurableServiceProperties, supportsInterfaces );
+        m_modifiedMethod = new ModifiedMethod( componentMetadata.getModified(), implementationObjectClass, dsVersion, configurableServiceProperties, supportsInterfaces, m_memberCache );
 
         for ( ReferenceMetadata referenceMetadata: componentMetadata.getDependencies() )
         {
@@ -70,16 +83,16 @@ public class ComponentMethodsImpl implements ComponentMethods
             if ( referenceMetadata.getField() != null && referenceMetadata.getBind() != null)
             {
                 methods = new DuplexReferenceMethods(
-                        new FieldMethods( referenceMetadata, implementationObjectClass, dsVersion, configurableServiceProperties),
-                        new BindMethods( referenceMetadata, implementationObjectClass, dsVersion, configurableServiceProperties));
+                        new FieldMethods( referenceMetadata, implementationObjectClass, dsVersion, configurableServiceProperties, m_memberCache),
+                        new BindMethods( referenceMetadata, implementationObjectClass, dsVersion, configurableServiceProperties, m_memberCache));
             }
             else if ( referenceMetadata.getField() != null )
             {
-                methods = new FieldMethods( referenceMetadata, implementationObjectClass, dsVersion, configurableServiceProperties);
+                methods = new FieldMethods( referenceMetadata, implementationObjectClass, dsVersion, configurableServiceProperties, m_memberCache);
             }
             else
             {
-                methods = new BindMethods( referenceMetadata, implementationObjectClass, dsVersion, configurableServiceProperties);
+                methods = new BindMethods( referenceMetadata, implementationObjectClass, dsVersion, configurableServiceProperties, m_memberCache);
             }
             bindMethodMap.put( refName, methods );
         }
@@ -105,4 +118,15 @@ public class ComponentMethodsImpl implements ComponentMethods
         return bindMethodMap.get( refName );
     }
 
+    public void resolve( SimpleLogger logger )
+    {
+        m_activateMethod.methodExists( logger );
+        m_deactivateMethod.methodExists( logger );
+        m_modifiedMethod.methodExists( logger );
+        for ( ReferenceMethods methods: bindMethodMap.values() )
+        {
+            methods.resolve( logger );
+        }
+    }
+
 }
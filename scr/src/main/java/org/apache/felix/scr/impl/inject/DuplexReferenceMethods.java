@@ -84,6 +84,12 @@ public class DuplexReferenceMethods implements ReferenceMethods
         };
     }
 
+    public void resolve(SimpleLogger logger)
+    {
+        first.resolve(logger);
+        second.resolve(logger);
+    }
+
     private static final class DuplexReferenceMethod implements ReferenceMethod
     {
 
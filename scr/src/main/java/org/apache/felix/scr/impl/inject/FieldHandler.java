@@ -65,6 +65,9 @@ public class FieldHandler
     /** The component class. */
     private final Class<?> componentClass;
 
+    /** The cache of the resolved fields. */
+    private final MemberCache memberCache;
+
     /** The field used for the injection. */
     private volatile Field field;
 
@@ -90,12 +93,15 @@ public class FieldHandler
      * @param fieldName name of the field
      * @param componentClass component class
      * @param referenceClassName service class name
+     * @param memberCache cache of the resolved fields
      */
     public FieldHandler( final ReferenceMetadata metadata,
-            final Class<?> componentClass)
+            final Class<?> componentClass,
+            final MemberCache memberCache)
     {
         this.metadata = metadata;
         this.componentClass = componentClass;
+        this.memberCache = memberCache;
         this.state = NotResolved.INSTANCE;
     }
 
@@ -803,6 +809,33 @@ public class FieldHandler
         return ( dot > 0 ) ? name.substring( 0, dot ) : "";
     }
 
+    /**
+     * Returns the key of the field resolved by this handler in the cache of
+     * the component class, made of the reference properties the resolution
+     * and validation of the field depend on.
+     */
+    private String getCacheKey()
+    {
+        return "field/" + metadata.getField() + "/" + metadata.getInterface() + "/" + metadata.isMultiple() + "/"
+            + metadata.isStatic() + "/" + metadata.isReplace() + "/" + metadata.getFieldCollectionType();
+    }
+
+    /**
+     * Field and value type cached for the component class.
+     */
+    private static class CachedField
+    {
+        final Field field;
+
+        final ParamType valueType;
+
+        CachedField( final Field field, final ParamType valueType )
+        {
+            this.field = field;
+            this.valueType = valueType;
+        }
+    }
+
     /**
      * Internal state interface.
      */
@@ -826,26 +859,55 @@ public class FieldHandler
     {
         private static final State INSTANCE = new NotResolved();
 
-        private synchronized void resolve( final FieldHandler handler, final SimpleLogger logger )
+        private void resolve( final FieldHandler handler, final SimpleLogger logger )
         {
-            logger.log( LogService.LOG_DEBUG, "getting field: {0}", new Object[]
-                    {handler.metadata.getField()}, null );
-
-            // resolve the field
-            Field field = null;
-            try
+            // lock the handler only, fields of other components are resolved concurrently
+            synchronized ( handler )
             {
-                field = handler.findField( logger );
-                field = handler.validateField( field, logger );
-            }
-            catch ( final InvocationTargetException ex )
-            {
-                logger.log( LogService.LOG_WARNING, "{0} cannot be found", new Object[]
-                        {handler.metadata.getField()}, ex.getTargetException() );
-                field = null;
-            }
+                if ( handler.state != this )
+                {
+                    // resolved by another thread
+                    return;
+                }
+
+                logger.log( LogService.LOG_DEBUG, "getting field: {0}", new Object[]
+                        {handler.metadata.getField()}, null );
 
-            handler.setField( field, logger );
+                // resolve the field, unless resolved for the class already
+                final String key = handler.getCacheKey();
+                final CachedField cached = ( CachedField ) handler.memberCache.get( handler.componentClass, key );
+                Field field = null;
+                if ( cached != null )
+                {
+                    field = cached.field;
+                    handler.valueType = cached.valueType;
+                }
+                else
+                {
+                    try
+                    {
+                        field = handler.findField( logger );
+                        if ( field != null )
+                        {
+                            field = handler.validateField( field, logger );
+                        }
+                    }
+                    catch ( final InvocationTargetException ex )
+                    {
+                        logger.log( LogService.LOG_WARNING, "{0} cannot be found", new Object[]
+                                {handler.metadata.getField()}, ex.getTargetException() );
+                        field = null;
+                    }
+
+                    // fields failing validation are not cached to log the failure for each component
+                    if ( field != null && handler.valueType != ParamType.ignore )
+                    {
+                        handler.memberCache.put( handler.componentClass, key, new CachedField( field, handler.valueType ) );
+                    }
+                }
+
+                handler.setField( field, logger );
+            }
         }
 
         public MethodResult invoke( final FieldHandler handler,
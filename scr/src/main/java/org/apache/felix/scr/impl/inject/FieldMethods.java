@@ -21,6 +21,7 @@ package org.apache.felix.scr.impl.inject;
 import org.apache.felix.scr.impl.helper.InitReferenceMethod;
 import org.apache.felix.scr.impl.helper.ReferenceMethod;
 import org.apache.felix.scr.impl.helper.ReferenceMethods;
+import org.apache.felix.scr.impl.helper.SimpleLogger;
 import org.apache.felix.scr.impl.metadata.DSVersion;
 import org.apache.felix.scr.impl.metadata.ReferenceMetadata;
 
@@ -34,15 +35,18 @@ public class FieldMethods implements ReferenceMethods
     private final ReferenceMethod updated;
     private final ReferenceMethod unbind;
     private final InitReferenceMethod init;
+    private final FieldHandler handler;
 
     public FieldMethods( final ReferenceMetadata m_dependencyMetadata,
             final Class<?> instanceClass,
             final DSVersion dsVersion,
-            final boolean configurableServiceProperties )
+            final boolean configurableServiceProperties,
+            final MemberCache memberCache )
     {
-        final FieldHandler handler = new FieldHandler(
+        handler = new FieldHandler(
                 m_dependencyMetadata,
-                instanceClass
+                instanceClass,
+                memberCache
         );
         bind = handler.getBind();
         unbind = handler.getUnbind();
@@ -69,4 +73,9 @@ public class FieldMethods implements ReferenceMethods
     {
         return init;
     }
+
+    public void resolve( SimpleLogger logger )
+    {
+        handler.fieldExists( logger );
+    }
 }
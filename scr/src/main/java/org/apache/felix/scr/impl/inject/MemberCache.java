@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl.inject;
+
+
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * The <code>MemberCache</code> keeps the methods and fields resolved for the
+ * component classes of a bundle, such that other components of the same class
+ * need not search the class hierarchy again.
+ * <p>
+ * The resolved members reference their classes, so the cache is owned by the
+ * <code>BundleComponentActivator</code> of the bundle and cleared when the
+ * activator is disposed of. Thus the cache does not keep the classes of
+ * stopped bundles from being unloaded.
+ * <p>
+ * The cached members are invoked by reflection, since
+ * <code>MethodHandle</code> requires Java 7 and SCR is built for Java 6.
+ */
+public class MemberCache
+{
+
+    private final Map<Class<?>, Map<String, Object>> m_members = new HashMap<Class<?>, Map<String, Object>>();
+
+
+    /**
+     * Returns the member resolved for the given key in the component class or
+     * <code>null</code> if it has not been resolved yet.
+     */
+    synchronized Object get( final Class<?> componentClass, final String key )
+    {
+        final Map<String, Object> members = m_members.get( componentClass );
+        if ( members != null )
+        {
+            return members.get( key );
+        }
+        return null;
+    }
+
+
+    synchronized void put( final Class<?> componentClass, final String key, final Object member )
+    {
+        Map<String, Object> members = m_members.get( componentClass );
+        if ( members == null )
+        {
+            members = new HashMap<String, Object>();
+            m_members.put( componentClass, members );
+        }
+        members.put( key, member );
+    }
+
+
+    /**
+     * Removes all resolved members.
+     */
+    public synchronized void clear()
+    {
+        m_members.clear();
+    }
+}
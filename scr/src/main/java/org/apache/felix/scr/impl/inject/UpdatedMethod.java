@@ -29,9 +29,10 @@ implements org.apache.felix.scr.impl.helper.ReferenceMethod
 {
 
     public UpdatedMethod( final String methodName,
-            final Class<?> componentClass, final String referenceClassName, final DSVersion dsVersion, final boolean configurableServiceProperties )
+            final Class<?> componentClass, final String referenceClassName, final DSVersion dsVersion, final boolean configurableServiceProperties,
+            final MemberCache memberCache )
     {
-        super( methodName, componentClass, referenceClassName, dsVersion, configurableServiceProperties );
+        super( methodName, componentClass, referenceClassName, dsVersion, configurableServiceProperties, memberCache );
     }
 
 
@@ -132,6 +132,9 @@ public abstract class AbstractComponentManager<S> implements SimpleLogger, Compo
 
     private volatile boolean m_dependencyManagersInitialized;
 
+    // milliseconds taken by the first activation of the component or -1
+    private volatile long m_firstActivationLatency = -1;
+
     private final AtomicInteger m_trackingCount = new AtomicInteger();
 
     // The ServiceRegistration is now tracked in the RegistrationManager
@@ -835,6 +838,67 @@ public abstract class AbstractComponentManager<S> implements SimpleLogger, Compo
         unregisterComponentId();
     }
 
+    /**
+     * Resolves the methods and fields of the component ahead of its first
+     * activation and, if requested, already creates the instance of a
+     * satisfied delayed component with singleton scope, such that the first
+     * use of the component service does not have to wait for either.
+     */
+    final void warmUp(boolean createInstance)
+    {
+        if (!getState().isEnabled())
+        {
+            return;
+        }
+        try
+        {
+            initDependencyManagers();
+        }
+        catch (IllegalStateException e)
+        {
+            // already logged
+            return;
+        }
+        m_componentMethods.resolve(this);
+
+        if (createInstance && !isImmediate() && !isFactory() && !m_factoryInstance
+            && getComponentMetadata().getServiceScope() == ServiceMetadata.Scope.singleton)
+        {
+            obtainActivationReadLock();
+            try
+            {
+                final ServiceRegistration<S> serviceRegistration = registrationManager.getServiceRegistration();
+                if (getState() == State.satisfied && serviceRegistration != null)
+                {
+                    log(LogService.LOG_DEBUG, "Creating delayed component instance ahead of its first use", null);
+                    getServiceInternal(serviceRegistration);
+                }
+            }
+            finally
+            {
+                releaseActivationReadLock();
+            }
+        }
+    }
+
+    /**
+     * Records the milliseconds since the given {@link System#nanoTime()} as
+     * the first activation latency unless an activation has been recorded
+     * already.
+     */
+    final void activationCompleted(long startNanos)
+    {
+        if (m_firstActivationLatency < 0)
+        {
+            m_firstActivationLatency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+    }
+
+    public long getFirstActivationLatency()
+    {
+        return m_firstActivationLatency;
+    }
+
     //---------- Component handling methods ----------------------------------
 
     protected abstract void deleteComponent(int reason);
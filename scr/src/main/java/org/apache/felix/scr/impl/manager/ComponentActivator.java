@@ -19,6 +19,7 @@
 package org.apache.felix.scr.impl.manager;
 
 import org.apache.felix.scr.impl.helper.Logger;
+import org.apache.felix.scr.impl.inject.MemberCache;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
 import org.osgi.service.cm.ConfigurationAdmin;
@@ -54,4 +55,6 @@ public interface ComponentActivator extends Logger, ExtendedServiceListenerConte
 
     void unsetRegionConfigurationSupport(RegionConfigurationSupport rcs);
 
+    MemberCache getMemberCache();
+
 }
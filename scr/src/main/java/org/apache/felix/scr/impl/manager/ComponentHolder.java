@@ -112,6 +112,16 @@ public interface ComponentHolder<S>
     boolean isEnabled();
 
 
+    /**
+     * Resolves the methods and fields of the components of this holder
+     * ahead of their first activation if the holder is enabled.
+     *
+     * @param createInstance Whether to also create the instance of a
+     *      satisfied delayed component with singleton scope.
+     */
+    void warmUp( boolean createInstance );
+
+
     /**
      * Disposes off all components of this holder.
      * @param reason
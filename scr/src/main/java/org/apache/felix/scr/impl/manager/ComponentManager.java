@@ -40,5 +40,12 @@ public interface ComponentManager<S> {
 	int getSpecState();
 	
 	List<? extends ReferenceManager<S, ?>> getReferenceManagers();
+
+	/**
+	 * Returns the milliseconds it took to first activate the component,
+	 * including loading its class, binding its references and calling its
+	 * activate method, or -1 if the component has not been activated yet.
+	 */
+	long getFirstActivationLatency();
 	
 }
\ No newline at end of file
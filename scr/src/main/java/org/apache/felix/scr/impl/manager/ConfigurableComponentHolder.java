@@ -591,6 +591,24 @@ public abstract class ConfigurableComponentHolder<S> implements ComponentHolder<
     }
 
 
+    public void warmUp( final boolean createInstance )
+    {
+        List<AbstractComponentManager<S>> cms;
+        synchronized ( m_components )
+        {
+            if ( !m_enabled )
+            {
+                return;
+            }
+            cms = getDirectComponentManagers( );
+        }
+        for ( AbstractComponentManager<S> cm : cms )
+        {
+            cm.warmUp( createInstance );
+        }
+    }
+
+
     private void wait(Promise<Void> promise)
     {
         boolean waited = false;
@@ -64,6 +64,14 @@ public interface ScrConfiguration
 
     String PROP_GLOBAL_EXTENDER="ds.global.extender";
 
+    String PROP_CACHE_METADATA = "ds.cache.metadata";
+
+    String PROP_ACTIVATION_PARALLELISM = "ds.activation.parallelism";
+
+    String PROP_WARMUP_DELAY = "ds.warmup.delay";
+
+    String PROP_WARMUP_COMPONENTS = "ds.warmup.components";
+
     /**
      * Returns the current log level.
      * @return
@@ -82,4 +90,34 @@ public interface ScrConfiguration
 
     long stopTimeout();
 
+    /**
+     * Returns whether the validated component metadata of each bundle is
+     * kept in the data area of the bundle and reused until the bundle is
+     * updated, instead of parsing its component descriptors on every start.
+     */
+    boolean cacheMetadata();
+
+    /**
+     * Returns the number of threads enabling the components of a bundle
+     * concurrently when the bundle is started. With one thread, which is the
+     * default, the components are enabled one after the other on the thread
+     * starting the bundle.
+     */
+    int activationParallelism();
+
+    /**
+     * Returns the milliseconds after enabling the components of a bundle
+     * after which the methods of its delayed components are resolved in the
+     * background, such that the first activation does not have to search
+     * them. A negative value, which is the default, disables the warm-up.
+     */
+    long warmUpDelay();
+
+    /**
+     * Returns the names of the delayed components whose instance is created
+     * by the warm-up already, provided they are satisfied and singleton
+     * scoped. Never returns <code>null</code>.
+     */
+    String[] warmUpComponents();
+
 }
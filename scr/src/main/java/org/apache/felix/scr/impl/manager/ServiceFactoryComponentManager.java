@@ -96,6 +96,7 @@ public class ServiceFactoryComponentManager<S> extends SingleComponentManager<S>
 
         // When the getServiceMethod is called, the implementation object must be created
 
+        final long start = System.nanoTime();
         ComponentContextImpl<S> componentContext = new ComponentContextImpl<S>(this, bundle, serviceRegistration);
         if (collectDependencies(componentContext) )
         {
@@ -141,6 +142,7 @@ public class ServiceFactoryComponentManager<S> extends SingleComponentManager<S>
         else 
         {
              setState(previousState, State.active);
+             activationCompleted( start );
         }
 
         return service;
@@ -104,8 +104,10 @@ public class ServiceTracker<S, T, U extends ServiceEvent> {
 
     /**
      * whether the DependencyManager is getting the service immediately.
+     * Written while synchronized on the Tracked object, read without locking
+     * by {@link #getTracked(Boolean, AtomicInteger)}.
      */
-    private boolean active;
+    private volatile boolean active;
 
 	/**
 	 * Accessor method for the current Tracked object. This method is only
@@ -549,24 +551,37 @@ public class ServiceTracker<S, T, U extends ServiceEvent> {
 	 * @return A {@code SortedMap} with the {@code ServiceReference}s and
 	 *         service objects for all services being tracked by this
 	 *         {@code ServiceTracker}. If no services are being tracked, then
-	 *         the returned map is empty.
+	 *         the returned map is empty. The map is unmodifiable and shared
+	 *         by all callers until the tracked services are modified.
 	 * @since 1.5
      * @param activate
      * @param trackingCount
      */
 	public SortedMap<ServiceReference<S>, T> getTracked( Boolean activate, AtomicInteger trackingCount ) {
-		SortedMap<ServiceReference<S>, T> map = new TreeMap<ServiceReference<S>, T>(Collections.reverseOrder());
 		final Tracked t = tracked();
 		if (t == null) { /* if ServiceTracker is not open */
-			return map;
+			return new TreeMap<ServiceReference<S>, T>(Collections.reverseOrder());
 		}
+        if ( activate == null || activate.booleanValue() == active )
+        {
+            // read the snapshot of the current tracking count without locking;
+            // the lock is only needed to change the active flag together with
+            // reading the snapshot
+            final Snapshot<ServiceReference<S>, T> snapshot = t.snapshot;
+            if ( snapshot != null )
+            {
+                trackingCount.set( snapshot.trackingCount );
+                return snapshot.map;
+            }
+        }
 		synchronized (t) {
             if ( activate != null )
             {
                 active = activate;
             }
-            trackingCount.set( t.getTrackingCount() );
-            return t.copyEntries(map);
+            final Snapshot<ServiceReference<S>, T> snapshot = t.getSnapshot();
+            trackingCount.set( snapshot.trackingCount );
+            return snapshot.map;
 		}
 	}
 
@@ -612,10 +627,7 @@ public class ServiceTracker<S, T, U extends ServiceEvent> {
         if (t == null) { /* if ServiceTracker is not open */
             return false;
         }
-        synchronized (t) {
-            return active;
-        }
-
+        return active;
     }
 
 	/**
@@ -669,6 +681,20 @@ public class ServiceTracker<S, T, U extends ServiceEvent> {
 		}
 	}
 
+    /**
+     * Immutable copy of the tracked items at a tracking count.
+     */
+    static class Snapshot<S, T> {
+        final SortedMap<S, T> map;
+
+        final int trackingCount;
+
+        Snapshot(final SortedMap<S, T> map, final int trackingCount) {
+            this.map = map;
+            this.trackingCount = trackingCount;
+        }
+    }
+
     /**
      * Abstract class to track items. If a Tracker is reused (closed then reopened),
      * then a new AbstractTracked object is used. This class acts a map of tracked
@@ -746,6 +772,17 @@ public class ServiceTracker<S, T, U extends ServiceEvent> {
          */
         private final LinkedList<S> initial;
 
+        /**
+         * Unmodifiable sorted copy of the tracked items, created on demand and
+         * discarded by {@link #modified()}. The tracked items are thus copied
+         * at most once per modification, however often they are read, and the
+         * current copy can be read without synchronizing on this object.
+         *
+         * This field is volatile because it is set while synchronized on this
+         * object and read without synchronization.
+         */
+        volatile Snapshot<S, T>     snapshot;
+
         /**
          * AbstractTracked constructor.
          * @param trackingCount
@@ -1054,6 +1091,7 @@ public class ServiceTracker<S, T, U extends ServiceEvent> {
          * @GuardedBy this
          */
         int modified() {
+            snapshot = null;
             return trackingCount.incrementAndGet();
         }
 
@@ -1088,6 +1126,24 @@ public class ServiceTracker<S, T, U extends ServiceEvent> {
             return map;
         }
 
+        /**
+         * Returns the snapshot of the tracked items and the tracking count,
+         * copying the tracked items if they were modified since the last call.
+         *
+         * @return The current snapshot.
+         * @GuardedBy this
+         */
+        Snapshot<S, T> getSnapshot() {
+            Snapshot<S, T> current = snapshot;
+            if (current == null) {
+                final SortedMap<S, T> map = new TreeMap<S, T>(Collections.<S>reverseOrder());
+                map.putAll(tracked);
+                current = new Snapshot<S, T>(Collections.unmodifiableSortedMap(map), trackingCount.get());
+                snapshot = current;
+            }
+            return current;
+        }
+
         /**
          * Call the specific customizer adding method. This method must not be
          * called while synchronized on this object.
@@ -855,6 +855,7 @@ public class SingleComponentManager<S> extends AbstractComponentManager<S> imple
         boolean success = true;
         if ( m_componentContext == null )
         {
+            final long start = System.nanoTime();
             ComponentContextImpl<S> componentContext = new ComponentContextImpl<S>(this, this.getBundle(), serviceRegistration);
             if ( collectDependencies(componentContext))
             {
@@ -884,6 +885,7 @@ public class SingleComponentManager<S> extends AbstractComponentManager<S> imple
                     else
                     {
                         setState(previousState, State.active);
+                        activationCompleted( start );
                     }
                 }
             }
@@ -19,6 +19,9 @@
 package org.apache.felix.scr.impl.metadata;
 
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -941,6 +944,105 @@ public class ComponentMetadata
     }
 
 
+    /**
+     * Writes this validated metadata for the {@link ComponentMetadataCache}.
+     */
+    void write( DataOutputStream out ) throws IOException
+    {
+        if ( !m_validated )
+        {
+            throw new IllegalStateException( "Component " + getName() + " has not been validated" );
+        }
+        out.writeUTF( m_dsVersion.name() );
+        ComponentMetadataCache.writeString( out, m_name );
+        out.writeBoolean( m_enabled );
+        ComponentMetadataCache.writeString( out, m_factory );
+        ComponentMetadataCache.writeValue( out, m_immediate );
+        ComponentMetadataCache.writeString( out, m_implementationClassName );
+        ComponentMetadataCache.writeString( out, m_activate );
+        out.writeBoolean( m_activateDeclared );
+        ComponentMetadataCache.writeString( out, m_deactivate );
+        out.writeBoolean( m_deactivateDeclared );
+        ComponentMetadataCache.writeString( out, m_modified );
+        ComponentMetadataCache.writeString( out, m_configurationPolicy );
+        ComponentMetadataCache.writeStrings( out, m_configurationPid );
+        out.writeInt( m_properties.size() );
+        for ( Map.Entry<String, Object> property : m_properties.entrySet() )
+        {
+            out.writeUTF( property.getKey() );
+            ComponentMetadataCache.writeValue( out, property.getValue() );
+        }
+        out.writeBoolean( m_service != null );
+        if ( m_service != null )
+        {
+            m_service.write( out );
+        }
+        out.writeInt( m_references.size() );
+        for ( ReferenceMetadata reference : m_references )
+        {
+            reference.write( out );
+        }
+        out.writeBoolean( m_configurableServiceProperties );
+        out.writeBoolean( m_persistentFactoryComponent );
+        out.writeBoolean( m_deleteCallsModify );
+        ComponentMetadataCache.writeValue( out, m_obsoleteFactoryComponentFactory );
+        out.writeBoolean( m_configureWithInterfaces );
+        out.writeBoolean( m_delayedKeepInstances );
+    }
+
+
+    /**
+     * Reads validated metadata written by {@link #write(DataOutputStream)}.
+     */
+    static ComponentMetadata read( DataInputStream in ) throws IOException
+    {
+        final ComponentMetadata metadata;
+        try
+        {
+            metadata = new ComponentMetadata( DSVersion.valueOf( in.readUTF() ) );
+        }
+        catch ( IllegalArgumentException iae )
+        {
+            throw new IOException( "Unknown DS version: " + iae.getMessage() );
+        }
+        metadata.m_name = ComponentMetadataCache.readString( in );
+        metadata.m_enabled = in.readBoolean();
+        metadata.m_factory = ComponentMetadataCache.readString( in );
+        metadata.m_immediate = ( Boolean ) ComponentMetadataCache.readValue( in );
+        metadata.m_implementationClassName = ComponentMetadataCache.readString( in );
+        metadata.m_activate = ComponentMetadataCache.readString( in );
+        metadata.m_activateDeclared = in.readBoolean();
+        metadata.m_deactivate = ComponentMetadataCache.readString( in );
+        metadata.m_deactivateDeclared = in.readBoolean();
+        metadata.m_modified = ComponentMetadataCache.readString( in );
+        metadata.m_configurationPolicy = ComponentMetadataCache.readString( in );
+        metadata.m_configurationPid = ComponentMetadataCache.readStrings( in );
+        int count = in.readInt();
+        for ( int i = 0; i < count; i++ )
+        {
+            final String key = in.readUTF();
+            metadata.m_properties.put( key, ComponentMetadataCache.readValue( in ) );
+        }
+        if ( in.readBoolean() )
+        {
+            metadata.m_service = ServiceMetadata.read( in );
+        }
+        count = in.readInt();
+        for ( int i = 0; i < count; i++ )
+        {
+            metadata.m_references.add( ReferenceMetadata.read( in ) );
+        }
+        metadata.m_configurableServiceProperties = in.readBoolean();
+        metadata.m_persistentFactoryComponent = in.readBoolean();
+        metadata.m_deleteCallsModify = in.readBoolean();
+        metadata.m_obsoleteFactoryComponentFactory = ( Boolean ) ComponentMetadataCache.readValue( in );
+        metadata.m_configureWithInterfaces = in.readBoolean();
+        metadata.m_delayedKeepInstances = in.readBoolean();
+        metadata.m_validated = true;
+        return metadata;
+    }
+
+
     /**
      * Returns a <code>ComponentException</code> for this compeonent with the
      * given explanation for failure.
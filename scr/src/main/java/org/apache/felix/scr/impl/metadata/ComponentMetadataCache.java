@@ -0,0 +1,315 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl.metadata;
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * The <code>ComponentMetadataCache</code> stores the validated component
+ * metadata of a bundle in a compact binary file, such that the component
+ * descriptors of the bundle need not be parsed and validated again as long
+ * as the bundle is not changed.
+ * <p>
+ * The file is tagged with a stamp provided by the caller, which identifies
+ * the state of the bundle and of the configuration the metadata was created
+ * from. A file with another stamp or format is ignored.
+ */
+public class ComponentMetadataCache
+{
+
+    private static final int MAGIC = 0x44534d43;
+
+    // Must be incremented whenever the format of the cached metadata changes
+    private static final int FORMAT_VERSION = 1;
+
+    // Types of property values; arrays are tagged with ARRAY plus the
+    // index of their component type
+    private static final Class<?>[] TYPES =
+        { String.class, Long.class, Double.class, Float.class, Integer.class, Byte.class, Character.class,
+            Boolean.class, Short.class };
+
+    private static final Class<?>[] PRIMITIVE_TYPES =
+        { String.class, long.class, double.class, float.class, int.class, byte.class, char.class, boolean.class,
+            short.class };
+
+    private static final int NULL = 0xff;
+
+    private static final int ARRAY = 0x80;
+
+
+    /**
+     * Reads the component metadata from the given file.
+     *
+     * @return the validated component metadata in the order it was written
+     *      or <code>null</code> if the file does not exist or was written
+     *      with another stamp or format.
+     * @throws IOException if the file cannot be read
+     */
+    public static List<ComponentMetadata> read( final File file, final String stamp ) throws IOException
+    {
+        if ( !file.isFile() )
+        {
+            return null;
+        }
+
+        final DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+        try
+        {
+            if ( in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !stamp.equals( in.readUTF() ) )
+            {
+                return null;
+            }
+            final int count = in.readInt();
+            final List<ComponentMetadata> metadata = new ArrayList<ComponentMetadata>( count );
+            for ( int i = 0; i < count; i++ )
+            {
+                metadata.add( ComponentMetadata.read( in ) );
+            }
+            return metadata;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+
+    /**
+     * Writes the given validated component metadata to the given file. The
+     * file is replaced at once so that concurrent readers never see a
+     * partially written file.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public static void write( final File file, final String stamp, final List<ComponentMetadata> metadata )
+        throws IOException
+    {
+        final File tmp = new File( file.getPath() + ".tmp" );
+        final DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tmp ) ) );
+        try
+        {
+            out.writeInt( MAGIC );
+            out.writeInt( FORMAT_VERSION );
+            out.writeUTF( stamp );
+            out.writeInt( metadata.size() );
+            for ( ComponentMetadata component : metadata )
+            {
+                component.write( out );
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+
+        file.delete();
+        if ( !tmp.renameTo( file ) )
+        {
+            tmp.delete();
+            throw new IOException( "Cannot rename " + tmp + " to " + file );
+        }
+    }
+
+
+    static void writeString( final DataOutputStream out, final String value ) throws IOException
+    {
+        out.writeBoolean( value != null );
+        if ( value != null )
+        {
+            out.writeUTF( value );
+        }
+    }
+
+
+    static String readString( final DataInputStream in ) throws IOException
+    {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+
+    static void writeStrings( final DataOutputStream out, final List<String> values ) throws IOException
+    {
+        out.writeInt( values.size() );
+        for ( String value : values )
+        {
+            writeString( out, value );
+        }
+    }
+
+
+    static List<String> readStrings( final DataInputStream in ) throws IOException
+    {
+        final int size = in.readInt();
+        final List<String> values = new ArrayList<String>( size );
+        for ( int i = 0; i < size; i++ )
+        {
+            values.add( readString( in ) );
+        }
+        return values;
+    }
+
+
+    /**
+     * Writes a property value, which is <code>null</code>, one of the
+     * property types of the specification or an array of one of them.
+     */
+    static void writeValue( final DataOutputStream out, final Object value ) throws IOException
+    {
+        if ( value == null )
+        {
+            out.writeByte( NULL );
+        }
+        else if ( value.getClass().isArray() )
+        {
+            final int type = getType( value.getClass().getComponentType(), PRIMITIVE_TYPES );
+            out.writeByte( ARRAY | type );
+            final int length = Array.getLength( value );
+            out.writeInt( length );
+            for ( int i = 0; i < length; i++ )
+            {
+                writeScalar( out, type, Array.get( value, i ) );
+            }
+        }
+        else
+        {
+            final int type = getType( value.getClass(), TYPES );
+            out.writeByte( type );
+            writeScalar( out, type, value );
+        }
+    }
+
+
+    static Object readValue( final DataInputStream in ) throws IOException
+    {
+        final int tag = in.readUnsignedByte();
+        if ( tag == NULL )
+        {
+            return null;
+        }
+        else if ( ( tag & ARRAY ) != 0 )
+        {
+            final int type = tag & ~ARRAY;
+            checkType( type );
+            final int length = in.readInt();
+            final Object value = Array.newInstance( PRIMITIVE_TYPES[type], length );
+            for ( int i = 0; i < length; i++ )
+            {
+                Array.set( value, i, readScalar( in, type ) );
+            }
+            return value;
+        }
+        checkType( tag );
+        return readScalar( in, tag );
+    }
+
+
+    private static int getType( final Class<?> clazz, final Class<?>[] types ) throws IOException
+    {
+        for ( int i = 0; i < types.length; i++ )
+        {
+            if ( types[i] == clazz )
+            {
+                return i;
+            }
+        }
+        throw new IOException( "Unsupported property type " + clazz.getName() );
+    }
+
+
+    private static void checkType( final int type ) throws IOException
+    {
+        if ( type >= TYPES.length )
+        {
+            throw new IOException( "Unknown property type " + type );
+        }
+    }
+
+
+    private static void writeScalar( final DataOutputStream out, final int type, final Object value )
+        throws IOException
+    {
+        switch ( type )
+        {
+            case 0:
+                out.writeUTF( ( String ) value );
+                break;
+            case 1:
+                out.writeLong( ( Long ) value );
+                break;
+            case 2:
+                out.writeDouble( ( Double ) value );
+                break;
+            case 3:
+                out.writeFloat( ( Float ) value );
+                break;
+            case 4:
+                out.writeInt( ( Integer ) value );
+                break;
+            case 5:
+                out.writeByte( ( Byte ) value );
+                break;
+            case 6:
+                out.writeChar( ( Character ) value );
+                break;
+            case 7:
+                out.writeBoolean( ( Boolean ) value );
+                break;
+            default:
+                out.writeShort( ( Short ) value );
+        }
+    }
+
+
+    private static Object readScalar( final DataInputStream in, final int type ) throws IOException
+    {
+        switch ( type )
+        {
+            case 0:
+                return in.readUTF();
+            case 1:
+                return in.readLong();
+            case 2:
+                return in.readDouble();
+            case 3:
+                return in.readFloat();
+            case 4:
+                return in.readInt();
+            case 5:
+                return in.readByte();
+            case 6:
+                return in.readChar();
+            case 7:
+                return in.readBoolean();
+            default:
+                return in.readShort();
+        }
+    }
+}
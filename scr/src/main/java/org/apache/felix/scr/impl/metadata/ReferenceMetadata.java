@@ -18,6 +18,9 @@
  */
 package org.apache.felix.scr.impl.metadata;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -726,6 +729,68 @@ public class ReferenceMetadata
         m_validated = true;
     }
 
+    /**
+     * Writes this validated metadata for the {@link ComponentMetadataCache}.
+     */
+    void write( DataOutputStream out ) throws IOException
+    {
+        ComponentMetadataCache.writeString( out, m_name );
+        ComponentMetadataCache.writeString( out, m_interface );
+        ComponentMetadataCache.writeString( out, m_cardinality );
+        ComponentMetadataCache.writeString( out, m_target );
+        ComponentMetadataCache.writeString( out, m_bind );
+        ComponentMetadataCache.writeString( out, m_updated );
+        ComponentMetadataCache.writeString( out, m_unbind );
+        ComponentMetadataCache.writeString( out, m_field );
+        ComponentMetadataCache.writeString( out, m_field_option );
+        ComponentMetadataCache.writeString( out, m_field_collection_type );
+        ComponentMetadataCache.writeString( out, m_policy );
+        ComponentMetadataCache.writeString( out, m_policy_option );
+        ComponentMetadataCache.writeString( out, m_scopeName );
+        out.writeUTF( m_scope.name() );
+        out.writeBoolean( m_isStatic );
+        out.writeBoolean( m_isOptional );
+        out.writeBoolean( m_isMultiple );
+        out.writeBoolean( m_isReluctant );
+        out.writeBoolean( m_isReplace );
+    }
+
+    /**
+     * Reads validated metadata written by {@link #write(DataOutputStream)}.
+     */
+    static ReferenceMetadata read( DataInputStream in ) throws IOException
+    {
+        final ReferenceMetadata metadata = new ReferenceMetadata();
+        metadata.m_name = ComponentMetadataCache.readString( in );
+        metadata.m_interface = ComponentMetadataCache.readString( in );
+        metadata.m_cardinality = ComponentMetadataCache.readString( in );
+        metadata.m_target = ComponentMetadataCache.readString( in );
+        metadata.m_bind = ComponentMetadataCache.readString( in );
+        metadata.m_updated = ComponentMetadataCache.readString( in );
+        metadata.m_unbind = ComponentMetadataCache.readString( in );
+        metadata.m_field = ComponentMetadataCache.readString( in );
+        metadata.m_field_option = ComponentMetadataCache.readString( in );
+        metadata.m_field_collection_type = ComponentMetadataCache.readString( in );
+        metadata.m_policy = ComponentMetadataCache.readString( in );
+        metadata.m_policy_option = ComponentMetadataCache.readString( in );
+        metadata.m_scopeName = ComponentMetadataCache.readString( in );
+        try
+        {
+            metadata.m_scope = ReferenceScope.valueOf( in.readUTF() );
+        }
+        catch ( IllegalArgumentException iae )
+        {
+            throw new IOException( "Unknown reference scope: " + iae.getMessage() );
+        }
+        metadata.m_isStatic = in.readBoolean();
+        metadata.m_isOptional = in.readBoolean();
+        metadata.m_isMultiple = in.readBoolean();
+        metadata.m_isReluctant = in.readBoolean();
+        metadata.m_isReplace = in.readBoolean();
+        metadata.m_validated = true;
+        return metadata;
+    }
+
     public String getDebugInfo()
     {
         return getName() +
@@ -18,6 +18,9 @@
  */
 package org.apache.felix.scr.impl.metadata;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -134,4 +137,36 @@ public class ServiceMetadata {
         }
         m_validated = true;
     }
+
+    /**
+     * Writes this validated metadata for the {@link ComponentMetadataCache}.
+     */
+    void write( DataOutputStream out ) throws IOException
+    {
+        ComponentMetadataCache.writeValue( out, m_serviceFactory );
+        ComponentMetadataCache.writeString( out, m_scopeName );
+        out.writeUTF( m_scope.name() );
+        ComponentMetadataCache.writeStrings( out, m_provides );
+    }
+
+    /**
+     * Reads validated metadata written by {@link #write(DataOutputStream)}.
+     */
+    static ServiceMetadata read( DataInputStream in ) throws IOException
+    {
+        final ServiceMetadata metadata = new ServiceMetadata();
+        metadata.m_serviceFactory = ( Boolean ) ComponentMetadataCache.readValue( in );
+        metadata.m_scopeName = ComponentMetadataCache.readString( in );
+        try
+        {
+            metadata.m_scope = Scope.valueOf( in.readUTF() );
+        }
+        catch ( IllegalArgumentException iae )
+        {
+            throw new IOException( "Unknown service scope: " + iae.getMessage() );
+        }
+        metadata.m_provides = ComponentMetadataCache.readStrings( in );
+        metadata.m_validated = true;
+        return metadata;
+    }
 }
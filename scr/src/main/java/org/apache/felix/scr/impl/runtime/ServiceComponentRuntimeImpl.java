@@ -185,6 +185,34 @@ public class ServiceComponentRuntimeImpl implements ServiceComponentRuntime
         }
 	}
 
+	/**
+	 * Returns the milliseconds the first activation of the given component
+	 * configuration took, or -1 if it has not been activated yet or is not
+	 * known any longer.
+	 */
+	public long getFirstActivationLatency(ComponentConfigurationDTO configuration)
+	{
+        try
+        {
+            ComponentHolder<?> holder = getHolderFromDescription( configuration.description);
+            if ( holder != null )
+            {
+                for (ComponentManager<?> manager: holder.getComponents())
+                {
+                    if ( manager.getId() == configuration.id )
+                    {
+                        return manager.getFirstActivationLatency();
+                    }
+                }
+            }
+        }
+        catch ( IllegalStateException ise)
+        {
+            // the bundle is not active any longer
+        }
+        return -1;
+	}
+
 	private ComponentConfigurationDTO managerToConfiguration(ComponentManager<?> manager, ComponentDescriptionDTO description)
 	{
 		ComponentConfigurationDTO dto = new ComponentConfigurationDTO();
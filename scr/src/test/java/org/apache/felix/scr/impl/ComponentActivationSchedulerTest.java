@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.scr.impl.ComponentActivationScheduler.Node;
+import org.apache.felix.scr.impl.manager.ComponentHolder;
+import org.apache.felix.scr.impl.metadata.ComponentMetadata;
+import org.apache.felix.scr.impl.metadata.DSVersion;
+import org.apache.felix.scr.impl.metadata.ReferenceMetadata;
+import org.apache.felix.scr.impl.metadata.ServiceMetadata;
+import org.easymock.EasyMock;
+
+public class ComponentActivationSchedulerTest extends TestCase
+{
+
+    public void test_buildGraph()
+    {
+        List<ComponentHolder<?>> holders = new ArrayList<ComponentHolder<?>>();
+        holders.add( createHolder( "a", "service.a", "service.b" ) );
+        holders.add( createHolder( "b", "service.b" ) );
+        holders.add( createHolder( "c", "service.c", "service.d" ) );
+        holders.add( createHolder( "d", "service.d", "service.c" ) );
+        holders.add( createHolder( "e", null, "service.c", "service.b" ) );
+
+        List<Node> nodes = ComponentActivationScheduler.buildGraph( holders );
+        assertEquals( 5, nodes.size() );
+
+        // a waits for b
+        assertEquals( 1, nodes.get( 0 ).m_pending.get() );
+        assertEquals( 0, nodes.get( 1 ).m_pending.get() );
+        assertEquals( Arrays.asList( nodes.get( 0 ), nodes.get( 4 ) ), nodes.get( 1 ).m_dependents );
+
+        // the cycle of c and d is not ordered, e only waits for b
+        assertEquals( 0, nodes.get( 2 ).m_pending.get() );
+        assertEquals( 0, nodes.get( 3 ).m_pending.get() );
+        assertEquals( Collections.emptyList(), nodes.get( 2 ).m_dependents );
+        assertEquals( 1, nodes.get( 4 ).m_pending.get() );
+    }
+
+
+    private ComponentHolder<?> createHolder( String name, String provide, String... references )
+    {
+        ComponentMetadata cm = new ComponentMetadata( DSVersion.DS13 );
+        cm.setName( name );
+        cm.setImplementationClassName( name );
+        if ( provide != null )
+        {
+            ServiceMetadata sm = new ServiceMetadata();
+            sm.addProvide( provide );
+            cm.setService( sm );
+        }
+        for ( String reference : references )
+        {
+            ReferenceMetadata rm = new ReferenceMetadata();
+            rm.setName( reference );
+            rm.setInterface( reference );
+            cm.addDependency( rm );
+        }
+
+        ComponentHolder<?> holder = EasyMock.createMock( ComponentHolder.class );
+        EasyMock.expect( holder.getComponentMetadata() ).andReturn( cm ).anyTimes();
+        EasyMock.replay( holder );
+        return holder;
+    }
+}
@@ -446,19 +446,48 @@ public class BindMethodTest extends TestCase
     }
 
 
-    private void testMethod( final String methodName, final T1 component, final DSVersion dsVersion,
+    public void test_cached()
+    {
+        final MemberCache memberCache = new MemberCache();
+
+        // the second method takes the method and its parameters from the cache
+        final BindMethod bm1 = testMethod( "privateT1SIMap", new T1(), DSVersion.DS11, "privateT1SIMap", memberCache );
+        final BindMethod bm2 = testMethod( "privateT1SIMap", new T1(), DSVersion.DS11, "privateT1SIMap", memberCache );
+        assertSame( bm1.getMethod(), bm2.getMethod() );
+
+        // the method is resolved for each DS version
+        final BindMethod bm3 = testMethod( "privateT1SIMap", new T1(), DSVersion.DS10, null, memberCache );
+        assertNull( bm3.getMethod() );
+
+        // the method is searched again once the cache is cleared
+        memberCache.clear();
+        final BindMethod bm4 = testMethod( "privateT1SIMap", new T1(), DSVersion.DS11, "privateT1SIMap", memberCache );
+        assertNotSame( bm1.getMethod(), bm4.getMethod() );
+        assertEquals( bm1.getMethod(), bm4.getMethod() );
+    }
+
+
+    private BindMethod testMethod( final String methodName, final T1 component, final DSVersion dsVersion,
         final String expectCallPerformed )
+    {
+        return testMethod( methodName, component, dsVersion, expectCallPerformed, new MemberCache() );
+    }
+
+
+    private BindMethod testMethod( final String methodName, final T1 component, final DSVersion dsVersion,
+        final String expectCallPerformed, final MemberCache memberCache )
     {
         ComponentContainer container = newContainer();
         SingleComponentManager icm = new SingleComponentManager( container, new ComponentMethodsImpl() );
         BindMethod bm = new BindMethod( methodName, component.getClass(),
-                FakeService.class.getName(), dsVersion, false );
+                FakeService.class.getName(), dsVersion, false, memberCache );
         RefPair refPair = new SingleRefPair( m_serviceReference );
         ComponentContextImpl<T1> cc = new ComponentContextImpl(icm, new MockBundle(), null);
         assertTrue( bm.getServiceObject( cc, refPair, m_context, icm ) );
         BindParameters bp = new BindParameters(cc, refPair);
         bm.invoke( component, bp, null, icm );
         assertEquals( expectCallPerformed, component.callPerformed );
+        return bm;
     }
 
     private ComponentContainer newContainer()
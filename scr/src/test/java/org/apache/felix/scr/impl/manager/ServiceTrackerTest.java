@@ -0,0 +1,372 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl.manager;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.mockito.Mockito;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Filter;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceReference;
+
+
+public class ServiceTrackerTest extends TestCase
+{
+
+    private ExtendedServiceListener<ExtendedServiceEvent> m_listener;
+
+
+    public void test_snapshot_shared_until_modified()
+    {
+        final ServiceTracker<Object, Object, ExtendedServiceEvent> tracker = openTracker();
+        final TestServiceReference ref1 = new TestServiceReference( 1 );
+        final TestServiceReference ref2 = new TestServiceReference( 2 );
+        register( ref1 );
+
+        final AtomicInteger trackingCount = new AtomicInteger();
+        final SortedMap<ServiceReference<Object>, Object> first = tracker.getTracked( null, trackingCount );
+        assertEquals( 1, first.size() );
+        assertEquals( tracker.getTrackingCount(), trackingCount.get() );
+        assertSame( first, tracker.getTracked( null, trackingCount ) );
+        assertSame( first, tracker.getTracked( true, trackingCount ) );
+        try
+        {
+            first.put( ref2, ref2 );
+            fail( "snapshot must not be modifiable" );
+        }
+        catch ( UnsupportedOperationException uoe )
+        {
+            // expected
+        }
+
+        // a modification creates a new snapshot and leaves the old one alone
+        register( ref2 );
+        final SortedMap<ServiceReference<Object>, Object> second = tracker.getTracked( null, trackingCount );
+        assertNotSame( first, second );
+        assertEquals( 1, first.size() );
+        assertEquals( 2, second.size() );
+        assertEquals( tracker.getTrackingCount(), trackingCount.get() );
+
+        // the map is sorted in reverse order of the references
+        assertSame( ref2, second.firstKey() );
+
+        unregister( ref1 );
+        final SortedMap<ServiceReference<Object>, Object> third = tracker.getTracked( null, trackingCount );
+        assertEquals( Collections.singleton( ref2 ), third.keySet() );
+        assertEquals( 2, second.size() );
+    }
+
+
+    public void test_activating_read_skips_lock_when_active() throws Exception
+    {
+        final ServiceTracker<Object, Object, ExtendedServiceEvent> tracker = openTracker();
+        register( new TestServiceReference( 1 ) );
+        final AtomicInteger trackingCount = new AtomicInteger();
+        assertFalse( tracker.isActive() );
+        assertEquals( 1, tracker.getTracked( true, trackingCount ).size() );
+        assertTrue( tracker.isActive() );
+
+        // once active, reads that keep it active do not wait for the lock
+        final AtomicInteger size = new AtomicInteger( -1 );
+        final Thread reader = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                size.set( tracker.getTracked( true, new AtomicInteger() ).size() );
+            }
+        };
+        synchronized ( tracker.tracked() )
+        {
+            reader.start();
+            reader.join( 10000 );
+            assertFalse( "read must not wait for the tracker lock", reader.isAlive() );
+        }
+        assertEquals( 1, size.get() );
+        assertTrue( tracker.isActive() );
+    }
+
+
+    public void test_snapshot_concurrent_add_remove_get() throws Exception
+    {
+        final ServiceTracker<Object, Object, ExtendedServiceEvent> tracker = openTracker();
+
+        // services which stay registered all the time
+        final List<TestServiceReference> stable = new ArrayList<TestServiceReference>();
+        for ( int i = 0; i < 10; i++ )
+        {
+            final TestServiceReference ref = new TestServiceReference( i );
+            stable.add( ref );
+            register( ref );
+        }
+
+        final int writers = 4;
+        final int readers = 4;
+        final int iterations = 2000;
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final CountDownLatch done = new CountDownLatch( writers + readers );
+        final AtomicBoolean writing = new AtomicBoolean( true );
+        final AtomicInteger writersLeft = new AtomicInteger( writers );
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        for ( int w = 0; w < writers; w++ )
+        {
+            final int base = 1000 * ( w + 1 );
+            new Thread( new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                        for ( int i = 0; i < iterations; i++ )
+                        {
+                            final TestServiceReference ref = new TestServiceReference( base + i % 10 );
+                            register( ref );
+                            unregister( ref );
+                        }
+                    }
+                    catch ( Throwable t )
+                    {
+                        failure.compareAndSet( null, t );
+                    }
+                    finally
+                    {
+                        if ( writersLeft.decrementAndGet() == 0 )
+                        {
+                            writing.set( false );
+                        }
+                        done.countDown();
+                    }
+                }
+            }, "writer-" + w ).start();
+        }
+
+        for ( int r = 0; r < readers; r++ )
+        {
+            final Boolean activate = ( r % 2 == 0 ) ? null : Boolean.TRUE;
+            new Thread( new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                        int lastCount = -1;
+                        while ( writing.get() )
+                        {
+                            final AtomicInteger trackingCount = new AtomicInteger();
+                            final SortedMap<ServiceReference<Object>, Object> map = tracker.getTracked( activate,
+                                trackingCount );
+
+                            // the tracking count never goes back
+                            assertTrue( trackingCount.get() >= lastCount );
+                            lastCount = trackingCount.get();
+
+                            // the snapshot does not change while it is iterated
+                            final int size = map.size();
+                            int count = 0;
+                            ServiceReference<Object> previous = null;
+                            for ( Map.Entry<ServiceReference<Object>, Object> entry : map.entrySet() )
+                            {
+                                assertSame( entry.getKey(), entry.getValue() );
+                                if ( previous != null )
+                                {
+                                    assertTrue( previous.compareTo( entry.getKey() ) > 0 );
+                                }
+                                previous = entry.getKey();
+                                count++;
+                            }
+                            assertEquals( size, count );
+                            assertTrue( map.keySet().containsAll( stable ) );
+                            assertTrue( size <= stable.size() + writers );
+                        }
+                    }
+                    catch ( Throwable t )
+                    {
+                        failure.compareAndSet( null, t );
+                    }
+                    finally
+                    {
+                        done.countDown();
+                    }
+                }
+            }, "reader-" + r ).start();
+        }
+
+        start.countDown();
+        done.await();
+        if ( failure.get() != null )
+        {
+            throw new AssertionError( failure.get() );
+        }
+
+        final AtomicInteger trackingCount = new AtomicInteger();
+        final SortedMap<ServiceReference<Object>, Object> map = tracker.getTracked( null, trackingCount );
+        assertEquals( stable.size(), map.size() );
+        assertTrue( map.keySet().containsAll( stable ) );
+        assertEquals( tracker.getTrackingCount(), trackingCount.get() );
+        assertEquals( stable.size() + 2 * writers * iterations, trackingCount.get() );
+    }
+
+
+    private ServiceTracker<Object, Object, ExtendedServiceEvent> openTracker()
+    {
+        final BundleContext context = Mockito.mock( BundleContext.class );
+        final ServiceTracker<Object, Object, ExtendedServiceEvent> tracker = new ServiceTracker<Object, Object, ExtendedServiceEvent>(
+            context, new ServiceTrackerCustomizer<Object, Object, ExtendedServiceEvent>()
+            {
+                public Object addingService( ServiceReference<Object> reference )
+                {
+                    return reference;
+                }
+
+
+                public void addedService( ServiceReference<Object> reference, Object service, int trackingCount,
+                    int serviceCount, ExtendedServiceEvent event )
+                {
+                }
+
+
+                public void modifiedService( ServiceReference<Object> reference, Object service, int trackingCount,
+                    ExtendedServiceEvent event )
+                {
+                }
+
+
+                public void removedService( ServiceReference<Object> reference, Object service, int trackingCount,
+                    ExtendedServiceEvent event )
+                {
+                }
+            }, false, new ExtendedServiceListenerContext<ExtendedServiceEvent>()
+            {
+                public void addServiceListener( String className, Filter filter,
+                    ExtendedServiceListener<ExtendedServiceEvent> listener )
+                {
+                    m_listener = listener;
+                }
+
+
+                public void removeServiceListener( String className, Filter filter,
+                    ExtendedServiceListener<ExtendedServiceEvent> listener )
+                {
+                    m_listener = null;
+                }
+            }, null, null, null );
+        tracker.open( new AtomicInteger() );
+        return tracker;
+    }
+
+
+    private void register( final ServiceReference<Object> ref )
+    {
+        m_listener.serviceChanged( new ExtendedServiceEvent( ServiceEvent.REGISTERED, ref ) );
+    }
+
+
+    private void unregister( final ServiceReference<Object> ref )
+    {
+        m_listener.serviceChanged( new ExtendedServiceEvent( ServiceEvent.UNREGISTERING, ref ) );
+    }
+
+    /**
+     * Service reference ordered by its id only.
+     */
+    private static class TestServiceReference implements ServiceReference<Object>
+    {
+        private final long m_id;
+
+
+        TestServiceReference( final long id )
+        {
+            m_id = id;
+        }
+
+
+        public Object getProperty( String key )
+        {
+            return null;
+        }
+
+
+        public String[] getPropertyKeys()
+        {
+            return new String[0];
+        }
+
+
+        public Bundle getBundle()
+        {
+            return null;
+        }
+
+
+        public Bundle[] getUsingBundles()
+        {
+            return null;
+        }
+
+
+        public boolean isAssignableTo( Bundle bundle, String className )
+        {
+            return true;
+        }
+
+
+        public int compareTo( Object reference )
+        {
+            final long other = ( ( TestServiceReference ) reference ).m_id;
+            return ( m_id < other ) ? -1 : ( ( m_id == other ) ? 0 : 1 );
+        }
+
+
+        @Override
+        public boolean equals( Object obj )
+        {
+            return ( obj instanceof TestServiceReference ) && ( ( TestServiceReference ) obj ).m_id == m_id;
+        }
+
+
+        @Override
+        public int hashCode()
+        {
+            return ( int ) m_id;
+        }
+
+
+        @Override
+        public String toString()
+        {
+            return "TestServiceReference[" + m_id + "]";
+        }
+    }
+}
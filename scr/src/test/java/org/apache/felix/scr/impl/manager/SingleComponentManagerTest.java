@@ -21,17 +21,21 @@ package org.apache.felix.scr.impl.manager;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.lang.reflect.Field;
+import java.util.Dictionary;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.imageio.spi.ServiceRegistry;
 
 import org.apache.felix.scr.impl.helper.ComponentMethods;
 import org.apache.felix.scr.impl.inject.ComponentMethodsImpl;
+import org.apache.felix.scr.impl.inject.MemberCache;
 import org.apache.felix.scr.impl.manager.AbstractComponentManager.State;
 import org.apache.felix.scr.impl.metadata.ComponentMetadata;
 import org.apache.felix.scr.impl.metadata.DSVersion;
+import org.apache.felix.scr.impl.metadata.ServiceMetadata;
 import org.junit.Test;
 import org.mockito.Mockito;
 import org.osgi.framework.Bundle;
@@ -165,6 +169,11 @@ public class SingleComponentManagerTest
             // TODO Auto-generated method stub
             
         }
+
+        public MemberCache getMemberCache()
+        {
+            return new MemberCache();
+        }
         
     };
     
@@ -241,4 +250,83 @@ public class SingleComponentManagerTest
         AtomicInteger use = (AtomicInteger) u.get(scm);
         assertEquals(0, use.get());
     }
+
+    @Test
+    public void testWarmUpCreatesInstanceWithoutUse() throws Exception
+    {
+        ComponentMetadata cm = new ComponentMetadata(DSVersion.DS13);
+        cm.setName("warm.up.component");
+        cm.setImplementationClassName(WarmUpComponent.class.getName());
+        ServiceMetadata sm = new ServiceMetadata();
+        sm.addProvide(WarmUpComponent.class.getName());
+        cm.setService(sm);
+        cm.validate(null);
+
+        BundleContext bc = Mockito.mock(BundleContext.class);
+        Bundle b = Mockito.mock(Bundle.class);
+        Mockito.when(b.getBundleContext()).thenReturn(bc);
+        Mockito.when(bc.getBundle()).thenReturn(b);
+        Mockito.when(b.loadClass(WarmUpComponent.class.getName())).thenReturn((Class) WarmUpComponent.class);
+        Mockito.when(bc.registerService(Mockito.any(String[].class), Mockito.any(),
+            Mockito.any(Dictionary.class))).thenReturn(serviceRegistration);
+        Mockito.when(serviceRegistration.getReference()).thenReturn(serviceReference);
+
+        ComponentActivator activator = Mockito.mock(ComponentActivator.class);
+        Mockito.when(activator.getBundleContext()).thenReturn(bc);
+        Mockito.when(activator.isActive()).thenReturn(true);
+
+        @SuppressWarnings("unchecked")
+        ComponentContainer<Object> cc = Mockito.mock(ComponentContainer.class);
+        Mockito.when(cc.getComponentMetadata()).thenReturn(cm);
+        Mockito.when(cc.getActivator()).thenReturn(activator);
+
+        SingleComponentManager<Object> scm = new SingleComponentManager<Object>(cc, new ComponentMethodsImpl());
+        scm.enableInternal();
+        assertEquals(State.satisfied, scm.getState());
+        assertEquals(-1, scm.getFirstActivationLatency());
+
+        Field u = SingleComponentManager.class.getDeclaredField("m_useCount");
+        u.setAccessible(true);
+        AtomicInteger use = (AtomicInteger) u.get(scm);
+
+        // the warm-up creates the instance but nobody uses it yet
+        WarmUpComponent.activations.set(0);
+        scm.warmUp(true);
+        assertEquals(State.active, scm.getState());
+        assertEquals(0, use.get());
+        assertEquals(1, WarmUpComponent.activations.get());
+        long latency = scm.getFirstActivationLatency();
+        assertTrue(latency >= WarmUpComponent.FIRST_ACTIVATION_MILLIS);
+
+        // the first use takes the warmed up instance
+        Object service = scm.getService(b, serviceRegistration);
+        assertTrue(service instanceof WarmUpComponent);
+        assertEquals(1, use.get());
+        assertEquals(1, WarmUpComponent.activations.get());
+
+        // the last unget deactivates the delayed component as usual, a new
+        // activation does not replace the latency of the first one
+        scm.ungetService(b, serviceRegistration, service);
+        assertEquals(0, use.get());
+        assertEquals(State.satisfied, scm.getState());
+        scm.getService(b, serviceRegistration);
+        assertEquals(2, WarmUpComponent.activations.get());
+        assertEquals(latency, scm.getFirstActivationLatency());
+    }
+
+    public static class WarmUpComponent
+    {
+        static final long FIRST_ACTIVATION_MILLIS = 50;
+
+        static final AtomicInteger activations = new AtomicInteger();
+
+        protected void activate() throws InterruptedException
+        {
+            if (activations.incrementAndGet() == 1)
+            {
+                // only the first activation is slow
+                Thread.sleep(FIRST_ACTIVATION_MILLIS);
+            }
+        }
+    }
 }
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl.metadata;
+
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.scr.impl.MockLogger;
+
+
+public class ComponentMetadataCacheTest extends TestCase
+{
+
+    private MockLogger logger = new MockLogger();
+
+    private File file;
+
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        file = File.createTempFile( "scr", ".metadata" );
+        file.delete();
+    }
+
+
+    protected void tearDown() throws Exception
+    {
+        file.delete();
+        super.tearDown();
+    }
+
+
+    public void test_round_trip() throws Exception
+    {
+        final ComponentMetadata cm = new ComponentMetadata( DSVersion.DS13 );
+        cm.setName( "cached" );
+        cm.setImplementationClassName( "DummyClass" );
+        cm.setImmediate( false );
+        cm.setConfigurationPolicy( ComponentMetadata.CONFIGURATION_POLICY_REQUIRE );
+        cm.setConfigurationPid( new String[] { "$", "other.pid" } );
+        cm.setModified( "modified" );
+        cm.addProperty( createPropertyMetadata( "string", "String", "value", null ) );
+        cm.addProperty( createPropertyMetadata( "long", "Long", "42", null ) );
+        cm.addProperty( createPropertyMetadata( "char", "Character", "65", null ) );
+        cm.addProperty( createPropertyMetadata( "strings", "String", null, "a\nb" ) );
+        cm.addProperty( createPropertyMetadata( "ints", "Integer", null, "1\n2\n3" ) );
+        cm.addProperty( createPropertyMetadata( "booleans", "Boolean", null, "true\nfalse" ) );
+
+        final ServiceMetadata sm = new ServiceMetadata();
+        sm.addProvide( "org.foo.Service" );
+        sm.setScope( "bundle" );
+        cm.setService( sm );
+
+        final ReferenceMetadata rm = new ReferenceMetadata();
+        rm.setName( "ref" );
+        rm.setInterface( "org.foo.Dependency" );
+        rm.setCardinality( ReferenceMetadata.CARDINALITY_0_N );
+        rm.setPolicy( ReferenceMetadata.POLICY_DYNAMIC );
+        rm.setTarget( "(foo=bar)" );
+        rm.setField( "refs" );
+        rm.setScope( "prototype" );
+        cm.addDependency( rm );
+        cm.validate( logger );
+
+        ComponentMetadataCache.write( file, "stamp", Collections.singletonList( cm ) );
+        final List<ComponentMetadata> cached = ComponentMetadataCache.read( file, "stamp" );
+        assertEquals( 1, cached.size() );
+        final ComponentMetadata cmc = cached.get( 0 );
+
+        assertEquals( DSVersion.DS13, cmc.getDSVersion() );
+        assertEquals( "cached", cmc.getName() );
+        assertEquals( "DummyClass", cmc.getImplementationClassName() );
+        assertFalse( cmc.isImmediate() );
+        assertTrue( cmc.isConfigurationRequired() );
+        assertEquals( Arrays.asList( "cached", "other.pid" ), cmc.getConfigurationPid() );
+        assertEquals( "activate", cmc.getActivate() );
+        assertFalse( cmc.isActivateDeclared() );
+        assertEquals( "modified", cmc.getModified() );
+        assertTrue( cmc.isDeleteCallsModify() );
+
+        assertEquals( cm.getProperties().keySet(), cmc.getProperties().keySet() );
+        assertEquals( "value", cmc.getProperties().get( "string" ) );
+        assertEquals( Long.valueOf( 42 ), cmc.getProperties().get( "long" ) );
+        assertEquals( Character.valueOf( 'A' ), cmc.getProperties().get( "char" ) );
+        assertTrue( Arrays.equals( new String[] { "a", "b" }, ( String[] ) cmc.getProperties().get( "strings" ) ) );
+        assertTrue( Arrays.equals( new int[] { 1, 2, 3 }, ( int[] ) cmc.getProperties().get( "ints" ) ) );
+        assertTrue( Arrays.equals( new boolean[] { true, false }, ( boolean[] ) cmc.getProperties().get( "booleans" ) ) );
+
+        assertTrue( Arrays.equals( new String[] { "org.foo.Service" }, cmc.getServiceMetadata().getProvides() ) );
+        assertEquals( ServiceMetadata.Scope.bundle, cmc.getServiceScope() );
+
+        assertEquals( 1, cmc.getDependencies().size() );
+        final ReferenceMetadata rmc = cmc.getDependencies().get( 0 );
+        assertEquals( rm.getDebugInfo(), rmc.getDebugInfo() );
+        assertEquals( ReferenceMetadata.ReferenceScope.prototype, rmc.getScope() );
+        assertTrue( rmc.isOptional() );
+        assertTrue( rmc.isMultiple() );
+        assertFalse( rmc.isStatic() );
+
+        // cached metadata is validated and cannot be changed any more
+        cmc.validate( logger );
+        cmc.setName( "changed" );
+        assertEquals( "cached", cmc.getName() );
+    }
+
+
+    public void test_stale_stamp() throws Exception
+    {
+        final ComponentMetadata cm = new ComponentMetadata( DSVersion.DS11 );
+        cm.setImplementationClassName( "DummyClass" );
+        cm.validate( logger );
+
+        ComponentMetadataCache.write( file, "stamp", Collections.singletonList( cm ) );
+        assertNotNull( ComponentMetadataCache.read( file, "stamp" ) );
+        assertNull( ComponentMetadataCache.read( file, "other" ) );
+
+        file.delete();
+        assertNull( ComponentMetadataCache.read( file, "stamp" ) );
+    }
+
+
+    private PropertyMetadata createPropertyMetadata( String name, String type, String value, String values )
+    {
+        PropertyMetadata meta = new PropertyMetadata();
+        meta.setName( name );
+        meta.setType( type );
+        if ( value != null )
+        {
+            meta.setValue( value );
+        }
+        if ( values != null )
+        {
+            meta.setValues( values );
+        }
+        return meta;
+    }
+}